@@ -1,21 +1,22 @@
 package org.quarkos;
 
+import org.quarkos.ai.ModelRace;
+import org.quarkos.ai.ModelRouter;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class Configuration {
 
-    // CommandParser settings
-    public static final List<String> PLAY_TRIGGERS = Arrays.asList(
-            "play", "spiele", "spiel", "search for", "find", "listen to", "please play"
-    );
-    public static final List<String> ARTIST_SEPARATORS = Arrays.asList(
-            "by", "von", "from", "bei"
-    );
-    public static final List<String> JUNK_WORDS = Arrays.asList(
-            "the song", "the track", "the artist", "a song", "song", "track", "artist",
-            "can you", "could you", "please", "the trick"
-    );
+    // CommandGrammar settings: language packs loaded from /grammar/<language>.properties
+    public static final List<String> COMMAND_LANGUAGES = Arrays.asList("en", "de");
+
+    // IntentRouter settings
+    public static final double LOCAL_INTENT_MIN_CONFIDENCE = 0.8;
 
     // WhisperVoiceListener settings
     public static final int SAMPLE_RATE = 16000;
@@ -28,6 +29,116 @@ public class Configuration {
     public static final int PRE_SPEECH_BUFFER_MS = 500;
     public static final int START_SPEAKING_THRESHOLD = 600;
     public static final int STOP_SPEAKING_THRESHOLD = 450;
+    // Barge-in: talking over our own speech stops it
+    public static final double BARGE_IN_THRESHOLD_FACTOR = 2.0; // the start threshold is raised this much while audio plays
+    public static final double BARGE_IN_ECHO_MARGIN = 2.0; // speech must be this much louder than the expected echo
+    public static final long BARGE_IN_MIN_SPEECH_MS = 150;
+    public static final long BARGE_IN_ECHO_TAIL_MS = 300; // how long played audio may still reach the microphone
+
+    // SpotifyDeviceCache settings
+    public static final long SPOTIFY_DEVICE_CACHE_TTL_MS = 30_000;
+    public static final long SPOTIFY_DEVICE_CACHE_IDLE_MS = 10 * 60_000; // stop refreshing after 10 minutes without commands
+
+    // SpotifyController settings
+    public static final boolean SPOTIFY_SPECULATIVE_SEARCH = true; // run precise and fallback search in parallel
+
+    // TrackResolutionCache settings
+    public static final Path SYNAPSE_HOME = Paths.get(System.getProperty("user.home"), ".synapse");
+    public static final Path TRACK_CACHE_FILE = SYNAPSE_HOME.resolve("track-cache.json");
+    public static final double TRACK_CACHE_FUZZY_THRESHOLD = 0.8;
+
+    // SpotifyLibrarySync settings
+    public static final Path LIBRARY_FILE = SYNAPSE_HOME.resolve("library.json");
+    public static final long LIBRARY_SYNC_INTERVAL_MINUTES = 30;
+
+    // SpotifyHttpTransport settings
+    public static final long SPOTIFY_HTTP_CONNECT_TIMEOUT_MS = 5_000;
+    public static final long SPOTIFY_HTTP_REQUEST_TIMEOUT_MS = 10_000;
+    public static final boolean SPOTIFY_HTTP2 = true; // falls back to HTTP/1.1 where the server doesn't support it
+
+    // SpotifyRateLimiter settings
+    public static final int SPOTIFY_RATE_LIMIT_BURST = 20; // requests that may be sent at once
+    public static final double SPOTIFY_RATE_LIMIT_PER_SECOND = 10; // sustained requests per second
+    public static final long SPOTIFY_MAX_RETRY_WAIT_MS = 5_000; // longer Retry-After waits fail the command instead
+
+    // PlaybackCoalescer settings
+    public static final long SPOTIFY_COALESCE_WINDOW_MS = 300; // repeated skips/pauses within this window are batched
+
+    // SpotifyCredentialStore / SpotifyTokenManager settings
+    public static final Path SPOTIFY_CREDENTIALS_FILE = SYNAPSE_HOME.resolve("spotify-credentials.json");
+    public static final long SPOTIFY_TOKEN_REFRESH_MARGIN_SECONDS = 300; // refresh this long before the access token expires
+
+    // PlayHistory / TrackPrefetcher settings
+    public static final Path PLAY_HISTORY_FILE = SYNAPSE_HOME.resolve("play-history.json");
+    public static final int PLAY_HISTORY_SIZE = 500;
+    public static final String SPOTIFY_MARKET = Locale.getDefault().getCountry(); // for artist top tracks, US if empty
+    public static final boolean SPOTIFY_PREFETCH_QUEUE = false; // add the most likely next track to the Spotify queue
+    public static final long SPOTIFY_PREFETCH_WAIT_MS = 2_000; // how long "play another one by them" waits for a running prefetch
+
+    // TextToSpeech settings
+    public static final String TTS_VOICE = "en-US-NovaTurboMultilingualNeural";
+    public static final Path TTS_CACHE_DIR = SYNAPSE_HOME.resolve("tts-cache");
+    public static final long TTS_MEMORY_CACHE_BYTES = 16L * 1024 * 1024;
+    public static final long TTS_DISK_CACHE_BYTES = 256L * 1024 * 1024;
+    // Synthesized in the background at startup, so these confirmations never wait for Azure.
+    public static final List<String> TTS_COMMON_PHRASES = List.of(
+            "Pausing music.", "Resuming music.", "Skipping to the next song.", "Going back to the previous song.",
+            "Playing more by this artist.", "Please specify a song to play.", "Timer is up!",
+            "What should I remind you about?", "When should I remind you?",
+            "Sorry, I didn't understand the timer duration.", "Sorry, I didn't understand the time for the reminder.");
+    public static final int TTS_LOCAL_MAX_CHARS = 60; // shorter texts are spoken by the local engine, if installed
+    public static final List<String> LOCAL_TTS_COMMAND = List.of("piper",
+            "--model", SYNAPSE_HOME.resolve("piper").resolve("en_US-lessac-medium.onnx").toString(), "--output-raw");
+    public static final int LOCAL_TTS_SAMPLE_RATE = 22_050; // of the local engine's raw output
+
+    // AudioOutputService settings
+    public static final float AUDIO_DUCK_GAIN = 0.3f; // volume of earcons while speech is playing
+    public static final int AUDIO_OUTPUT_BUFFER_MS = 100; // how much audio an interrupt can still let through
+
+    // HotkeyManager settings
+    public static final long HOTKEY_DEBOUNCE_MS = 300; // presses of a debounced hotkey within this time are dropped
+    public static final long HOTKEY_SEQUENCE_TIMEOUT_MS = 1_500; // how long the next combination of a sequence may take
+
+    // ClipboardMonitor settings
+    public static final long CLIPBOARD_POLL_MS = 250;
+    public static final long CLIPBOARD_SETTLE_MS = 400; // text is answered speculatively once it stayed this long
+    public static final int CLIPBOARD_PREFETCH_MIN_CHARS = 10;
+    public static final int CLIPBOARD_PREFETCH_MAX_CHARS = 4_000;
+    public static final int CLIPBOARD_PREFETCH_MAX_PER_HOUR = 30; // cap on speculative requests
+    public static final long CLIPBOARD_PREFETCH_MAX_CHARS_PER_HOUR = 40_000; // cap on characters sent speculatively
+    public static final int CLIPBOARD_ANSWER_CACHE_SIZE = 32;
+    // Hedged clipboard answers: a slow request is sent to a second model too, and the first answer wins
+    public static final boolean CLIPBOARD_HEDGING_ENABLED = false;
+    public static final Model HEDGE_MODEL = Model.GEMINI_2_0_FLASH;
+    public static final double HEDGE_PERCENTILE = 95; // of the primary model's latency
+    public static final long HEDGE_INITIAL_DELAY_MS = 4_000; // until its latency is known
+    public static final int HEDGE_MIN_SAMPLES = 20;
+
+    // ModelRouter settings: for each kind of request, the models to choose from (best answers first) and the
+    // latency the chosen one should keep to; picking a model in the menu turns automatic selection off
+    public static final boolean AUTOMATIC_MODEL_SELECTION = true;
+    public static final Map<ModelRouter.RequestClass, ModelRouter.Route> MODEL_ROUTES = Map.of(
+            ModelRouter.RequestClass.VOICE_INTENT, new ModelRouter.Route(
+                    List.of(Model.GEMINI_2_5_FLASH_LITE_PREVIEW_06_17, Model.GEMINI_2_0_FLASH_LITE, Model.GEMINI_2_0_FLASH), 2_500),
+            ModelRouter.RequestClass.CLIPBOARD, new ModelRouter.Route(
+                    List.of(Model.GEMINI_2_5_FLASH_LITE_PREVIEW_06_17, Model.GEMINI_2_0_FLASH, Model.GEMINI_2_0_FLASH_LITE), 4_000),
+            ModelRouter.RequestClass.IMAGE, new ModelRouter.Route(
+                    List.of(Model.GEMINI_2_5_FLASH, Model.GEMINI_2_5_FLASH_LITE_PREVIEW_06_17, Model.GEMINI_2_0_FLASH), 8_000),
+            ModelRouter.RequestClass.LONG_CONTEXT, new ModelRouter.Route(
+                    List.of(Model.GEMINI_2_5_FLASH, Model.GEMINI_2_0_FLASH), 20_000));
+    public static final double MODEL_ROUTER_SLO_PERCENTILE = 95;
+    public static final double MODEL_ROUTER_MAX_ERROR_RATE = 0.2;
+    public static final int MODEL_ROUTER_MIN_SAMPLES = 5; // per window, before a model is judged
+    public static final long MODEL_ROUTER_WINDOW_MS = 120_000;
+    public static final int MODEL_ROUTER_MAX_ATTEMPTS = 2; // a failed request is retried once with the next model
+
+    // ClipboardHistory settings
+    public static final Path CLIPBOARD_HISTORY_FILE = SYNAPSE_HOME.resolve("clipboard-history.json");
+    public static final int CLIPBOARD_HISTORY_SIZE = 100;
+    // Regenerating an answer races these models, the preferred one first
+    public static final List<Model> REGENERATE_MODELS = List.of(Model.GEMINI_2_5_FLASH, Model.GEMINI_2_0_FLASH);
+    public static final ModelRace.Strategy REGENERATE_STRATEGY = ModelRace.Strategy.FIRST;
+    public static final long REGENERATE_TIMEOUT_MS = 30_000;
 
     // WhisperTranscriber settings
     public static final String WHISPER_MODEL = "tiny";
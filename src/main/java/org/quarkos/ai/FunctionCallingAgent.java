@@ -0,0 +1,199 @@
+package org.quarkos.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.genai.types.*;
+import org.quarkos.util.GeminiUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Runs a multi-turn function calling loop against the Gemini model.
+ * Every function call the model makes is executed locally and its result is sent back
+ * as a FunctionResponse, so the model can answer with the actual tool data.
+ * All calls the model makes within one step are executed in parallel.
+ */
+public class FunctionCallingAgent {
+
+    public static final int DEFAULT_MAX_STEPS = 5;
+
+    private static final Logger logger = LoggerFactory.getLogger(FunctionCallingAgent.class);
+
+    private static final String SYSTEM_INSTRUCTION =
+            "You are a voice assistant. If you need several functions to answer, call all of them in the same turn. "
+                    + "Once you have the function results, answer the user in one or two short sentences.";
+
+    private final int maxSteps;
+    private final BiFunction<List<Content>, GenerateContentConfig, GenerateContentResponse> model;
+    private final Function<FunctionCall, Map<String, Object>> functionHandler;
+    private final ExecutorService toolExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "agent-tool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates an agent that executes function calls through {@link GeminiUtil#handleFunctionCall(FunctionCall)}.
+     *
+     * @param maxSteps The maximum number of model round-trips for one prompt.
+     */
+    public FunctionCallingAgent(int maxSteps) {
+        this(maxSteps, GeminiUtil::handleFunctionCall);
+    }
+
+    /**
+     * @param maxSteps The maximum number of model round-trips for one prompt.
+     * @param functionHandler Executes a single function call and returns its result.
+     */
+    public FunctionCallingAgent(int maxSteps, Function<FunctionCall, Map<String, Object>> functionHandler) {
+        this(maxSteps, (history, config) ->
+                Gemini.client.models.generateContent(Gemini.currentModel.getModelName(), history, config), functionHandler);
+    }
+
+    /**
+     * @param maxSteps The maximum number of model round-trips for one prompt.
+     * @param model Sends the conversation so far with the given config and returns the model's response.
+     * @param functionHandler Executes a single function call and returns its result.
+     */
+    FunctionCallingAgent(int maxSteps, BiFunction<List<Content>, GenerateContentConfig, GenerateContentResponse> model,
+                         Function<FunctionCall, Map<String, Object>> functionHandler) {
+        if (maxSteps < 1) {
+            throw new IllegalArgumentException("maxSteps must be at least 1.");
+        }
+        this.maxSteps = maxSteps;
+        this.model = model;
+        this.functionHandler = functionHandler;
+    }
+
+    /**
+     * Sends the prompt to the model and keeps feeding function results back until the model
+     * answers with text or the step budget is used up. The last step is sent with function
+     * calling disabled, so the model always has to answer with what it has.
+     *
+     * @param prompt The user's prompt.
+     * @return The final answer along with a trace of every step.
+     */
+    public AgentResult run(String prompt) {
+        long start = System.nanoTime();
+        List<Content> history = new ArrayList<>();
+        history.add(Content.builder().role("user").parts(ImmutableList.of(Part.fromText(prompt))).build());
+
+        List<StepTrace> trace = new ArrayList<>();
+        for (int step = 1; step <= maxSteps; step++) {
+            boolean lastStep = step == maxSteps;
+
+            long modelStart = System.nanoTime();
+            GenerateContentResponse response = model.apply(history, createConfig(lastStep));
+            long modelMillis = (System.nanoTime() - modelStart) / 1_000_000;
+
+            List<FunctionCall> calls = response.functionCalls();
+            if (calls == null || calls.isEmpty()) {
+                trace.add(new StepTrace(step, modelMillis, 0, List.of()));
+                logger.info("Step {}: model answered in {}ms", step, modelMillis);
+                return new AgentResult(response.text(), trace, (System.nanoTime() - start) / 1_000_000);
+            }
+
+            // Keep the model's turn (with its function calls) in the history, the API needs it to match the responses.
+            response.candidates()
+                    .flatMap(candidates -> candidates.isEmpty() ? java.util.Optional.empty() : candidates.get(0).content())
+                    .ifPresent(history::add);
+
+            long toolStart = System.nanoTime();
+            List<Part> responseParts = executeAll(calls);
+            long toolMillis = (System.nanoTime() - toolStart) / 1_000_000;
+
+            List<String> names = calls.stream().map(call -> call.name().orElse("?")).toList();
+            trace.add(new StepTrace(step, modelMillis, toolMillis, names));
+            logger.info("Step {}: model {}ms, tools {}ms, calls {}", step, modelMillis, toolMillis, names);
+
+            history.add(Content.builder().role("user").parts(responseParts).build());
+        }
+
+        logger.warn("Function calling loop stopped after {} steps without a text answer.", maxSteps);
+        return new AgentResult(null, trace, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Executes all function calls of one step in parallel and returns their responses in call order.
+     */
+    private List<Part> executeAll(List<FunctionCall> calls) {
+        List<Callable<Map<String, Object>>> tasks = new ArrayList<>();
+        for (FunctionCall call : calls) {
+            tasks.add(() -> functionHandler.apply(call));
+        }
+
+        List<Future<Map<String, Object>>> futures;
+        try {
+            futures = toolExecutor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while executing function calls.", e);
+        }
+
+        List<Part> parts = new ArrayList<>();
+        for (int i = 0; i < calls.size(); i++) {
+            FunctionCall call = calls.get(i);
+            Map<String, Object> result;
+            try {
+                result = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while executing function calls.", e);
+            } catch (ExecutionException e) {
+                logger.error("Function '{}' failed.", call.name().orElse("?"), e.getCause());
+                result = new LinkedHashMap<>();
+                result.put("status", "error");
+                result.put("error", String.valueOf(e.getCause().getMessage()));
+            }
+
+            FunctionResponse.Builder functionResponse = FunctionResponse.builder()
+                    .name(call.name().orElse(""))
+                    .response(result);
+            call.id().ifPresent(functionResponse::id);
+            parts.add(Part.builder().functionResponse(functionResponse.build()).build());
+        }
+        return parts;
+    }
+
+    private static GenerateContentConfig createConfig(boolean lastStep) {
+        GenerateContentConfig.Builder builder = FunctionDeclarations.createFunctionCallingConfig().toBuilder()
+                .systemInstruction(Content.fromParts(Part.fromText(SYSTEM_INSTRUCTION)));
+        if (lastStep) {
+            builder.toolConfig(ToolConfig.builder()
+                    .functionCallingConfig(FunctionCallingConfig.builder().mode(FunctionCallingConfigMode.Known.NONE)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Stops the tool executor. The agent cannot be used afterwards.
+     */
+    public void shutdown() {
+        toolExecutor.shutdownNow();
+    }
+
+    /**
+     * Timing of one model round-trip and the function calls it triggered.
+     */
+    public record StepTrace(int step, long modelMillis, long toolMillis, List<String> functionCalls) {
+    }
+
+    /**
+     * @param text The final answer of the model, or null if the step budget ran out.
+     * @param steps Trace of every step that was executed.
+     * @param totalMillis Total time for the whole loop.
+     */
+    public record AgentResult(String text, List<StepTrace> steps, long totalMillis) {
+    }
+}
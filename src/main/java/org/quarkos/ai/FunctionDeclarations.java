@@ -2,93 +2,23 @@ package org.quarkos.ai;
 
 import com.google.common.collect.ImmutableList;
 import com.google.genai.types.FunctionDeclaration;
-import com.google.genai.types.Schema;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.ThinkingConfig;
+import com.google.genai.types.Tool;
+import org.quarkos.ai.tool.ToolFunction;
+import org.quarkos.ai.tool.ToolRegistry;
+import org.quarkos.util.GeminiUtil;
 
 import java.util.List;
 
 /**
  * A centralized repository for all function declarations available to the Gemini model.
+ * The declarations are generated from the {@link ToolFunction} methods in {@link GeminiUtil},
+ * so every declared function also has a handler.
  */
 public class FunctionDeclarations {
 
-    private static final List<FunctionDeclaration> declarations = ImmutableList.of(
-            FunctionDeclaration.builder()
-                    .name("getWeather")
-                    .description("gets the weather for a requested city")
-                    .parameters(Schema.fromJson("""
-                        { "type": "object", "properties": { "city": { "type": "string" } } }
-                        """))
-                    .build(),
-
-            FunctionDeclaration.builder()
-                    .name("playMusic")
-                    .description("Plays a song on Spotify. Can specify artist to improve search.")
-                    .parameters(Schema.fromJson("""
-                        {
-                          "type": "object",
-                          "properties": {
-                            "songName": { "type": "string" },
-                            "artist": { "type": "string" }
-                          }
-                        }
-                        """))
-                    .build(),
-
-            FunctionDeclaration.builder()
-                    .name("controlPlayback")
-                    .description("Controls music playback on Spotify.")
-                    .parameters(Schema.fromJson("""
-                        {
-                          "type": "object",
-                          "properties": {
-                            "action": { "type": "string", "enum": ["pause", "resume", "skip", "previous"] }
-                          }
-                        }
-                        """))
-                    .build(),
-
-            FunctionDeclaration.builder()
-                    .name("setTimer")
-                    .description("Sets a timer for a specified duration.")
-                    .parameters(Schema.fromJson("""
-                        {
-                          "type": "object",
-                          "properties": {
-                            "duration": { "type": "string", "description": "e.g., '10 minutes', '1 hour 30 seconds'" },
-                            "timerName": { "type": "string" }
-                          }
-                        }
-                        """))
-                    .build(),
-
-            FunctionDeclaration.builder()
-                    .name("setAlarm")
-                    .description("Sets an alarm for a specific time.")
-                    .parameters(Schema.fromJson("""
-                        {
-                          "type": "object",
-                          "properties": {
-                            "time": { "type": "string", "description": "e.g., '7 AM', 'tomorrow at 8:30 PM'" },
-                            "label": { "type": "string" }
-                          }
-                        }
-                        """))
-                    .build(),
-
-            FunctionDeclaration.builder()
-                    .name("createReminder")
-                    .description("Creates a reminder for the user at a specific time.")
-                    .parameters(Schema.fromJson("""
-                        {
-                          "type": "object",
-                          "properties": {
-                            "reminderText": { "type": "string", "description": "The text of the reminder" },
-                            "timeString": { "type": "string", "description": "The time for the reminder, e.g., 'in 10 minutes', 'at 8pm'" }
-                          }
-                        }
-                        """))
-                    .build()
-    );
+    private static final ToolRegistry registry = ToolRegistry.scan(GeminiUtil.class);
 
     /**
      * Returns a complete list of all defined function declarations.
@@ -97,6 +27,30 @@ public class FunctionDeclarations {
      * @return An immutable list of {@link FunctionDeclaration} objects.
      */
     public static List<FunctionDeclaration> getDeclarations() {
-        return declarations;
+        return registry.getDeclarations();
+    }
+
+    /**
+     * Returns the registry that dispatches function calls to their handlers.
+     *
+     * @return The {@link ToolRegistry} built from the declared functions.
+     */
+    public static ToolRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Builds the config used for function calling requests, with all declared functions attached as a tool.
+     */
+    static GenerateContentConfig createFunctionCallingConfig() {
+        Tool tool = Tool.builder()
+                .functionDeclarations(getDeclarations())
+                .build();
+
+        return GenerateContentConfig.builder()
+                .thinkingConfig(ThinkingConfig.builder().thinkingBudget(-1).build())
+                .tools(ImmutableList.of(tool))
+                .responseMimeType("text/plain")
+                .build();
     }
 }
@@ -8,6 +8,7 @@ import com.google.genai.ResponseStream;
 import com.google.genai.types.*;
 import com.google.gson.Gson;
 import io.github.cdimascio.dotenv.Dotenv;
+import org.quarkos.Configuration;
 import org.quarkos.Model;
 import org.quarkos.util.*;
 import org.slf4j.Logger;
@@ -16,6 +17,9 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class Gemini {
     static Dotenv dotenv = Dotenv.load();
@@ -26,6 +30,9 @@ public class Gemini {
     public static final Model DEFAULT_MODEL = Model.GEMINI_2_5_FLASH_LITE_PREVIEW_06_17;
     //public static final Model DEFAULT_SPEECH_MODEL = Model.GEMINI_2_5_FLASH_PREVIEW_TTS;
     public static Model currentModel = DEFAULT_MODEL;
+    // Whether requests that can go to any model get the one the router picks, rather than the current model.
+    public static volatile boolean automaticModelSelection = Configuration.AUTOMATIC_MODEL_SELECTION;
+    private static final ModelRouter router = new ModelRouter();
 
     private static CachedContent cachedContent;
 
@@ -35,6 +42,9 @@ public class Gemini {
 
     private final static Chat activeChat = createNewChat();
 
+    private static final RequestHedger hedger = new RequestHedger((prompt, model) -> generateDetachedResponse(prompt, model).getKey(),
+            Configuration.HEDGE_PERCENTILE, Configuration.HEDGE_INITIAL_DELAY_MS, Configuration.HEDGE_MIN_SAMPLES);
+
     private static Schema createSongArtistSchema() {
         return Schema.builder()
                 .type("object")
@@ -57,19 +67,25 @@ public class Gemini {
     }
 
     private static GenerateContentConfig createDefaultConfig(Schema schema) {
-        if (currentModel.isThinkingEnabled()) {
+        return createDefaultConfig(schema, currentModel);
+    }
+
+    private static GenerateContentConfig createDefaultConfig(Schema schema, Model model) {
+        if (model.isThinkingEnabled()) {
             logger.info("Thinking enabled | supported");
 
-            return GenerateContentConfig
+            GenerateContentConfig.Builder builder = GenerateContentConfig
                     .builder()
                     .thinkingConfig(
                             ThinkingConfig
                                     .builder()
                                     .thinkingBudget(-1)
                                     .build()
-                    )
-                    .cachedContent(cachedContent.toString())
-
+                    );
+            if (cachedContent != null) {
+                builder.cachedContent(cachedContent.toString());
+            }
+            return builder
                     .responseMimeType("application/json")
                     .responseSchema(schema)
                     .build();
@@ -84,7 +100,7 @@ public class Gemini {
         }
     }
 
-    private static Map.Entry<String, Long> executeGeneration(String modelName, Content content, GenerateContentConfig config) {
+    private static Map.Entry<String, Long> executeGeneration(Content content) {
         TimerUtil.lap("Content preparation");
 
         GenerateContentResponse response = activeChat.sendMessage(content.text()); // Have an active session
@@ -97,6 +113,13 @@ public class Gemini {
         return new AbstractMap.SimpleEntry<>(response.text(), elapsedTime);
     }
 
+    /**
+     * Like {@link #extractSongFromAudio(byte[], String)}, with the model for voice commands.
+     */
+    public static Map.Entry<String, Long> extractSongFromAudio(byte[] audioBytes) {
+        return routed(ModelRouter.RequestClass.VOICE_INTENT, model -> extractSongFromAudio(audioBytes, model.getModelName()));
+    }
+
     public static Map.Entry<String, Long> extractSongFromAudio(byte[] audioBytes, String modelName) {
         TimerUtil.start();
 
@@ -122,13 +145,104 @@ public class Gemini {
 
     public static Map.Entry<String, Long> generateStructuredResponse(String prompt) {
         TimerUtil.start();
-        Content content = Content.fromParts(Part.fromText(prompt));
-        Schema schema = createDefaultSchema();
-        GenerateContentConfig config = createDefaultConfig(schema);
+        Content content = Content.fromParts(Part.fromText(prompt)); // The chat has the config already
 
         System.out.println("Generating structured response for prompt: " + prompt);
 
-        return executeGeneration(Gemini.currentModel.getModelName(), content, config);
+        return executeGeneration(content);
+    }
+
+    /**
+     * Sends a single request to the given model outside the active chat, so it can carry images and cached
+     * documents, and copies the answer to the clipboard.
+     */
+    private static Map.Entry<String, Long> executeDetachedGeneration(String modelName, Content content, GenerateContentConfig config) {
+        TimerUtil.lap("Content preparation");
+        GenerateContentResponse response = client.models.generateContent(modelName, content, config);
+        TimerUtil.lap("AI response generation");
+
+        ClipboardUtil.copyToClipboard(JSONUtil.extractTextFromResponse(response.text()));
+        long elapsedTime = TimerUtil.stop();
+        return new AbstractMap.SimpleEntry<>(response.text(), elapsedTime);
+    }
+
+    /**
+     * Answers a prompt like {@link #generateStructuredResponse(String)}, but outside the active chat and without
+     * touching the clipboard, so it can run in the background, e.g. speculatively, and be used later or not at all.
+     * @return The JSON response and the elapsed time in ms
+     */
+    public static Map.Entry<String, Long> generateDetachedResponse(String prompt) {
+        return routed(ModelRouter.RequestClass.CLIPBOARD, model -> generateDetachedResponse(prompt, model));
+    }
+
+    /**
+     * Like {@link #generateDetachedResponse(String)}, but says which model answered instead of how long it took;
+     * after a failure the router may have fallen back to another one.
+     * @return The JSON response and the model that gave it
+     */
+    public static Map.Entry<String, Model> generateRoutedResponse(String prompt) {
+        return routed(ModelRouter.RequestClass.CLIPBOARD,
+                model -> new AbstractMap.SimpleEntry<>(generateDetachedResponse(prompt, model).getKey(), model));
+    }
+
+    /**
+     * Like {@link #generateDetachedResponse(String)}, with the given model instead of the current one.
+     * @return The JSON response and the elapsed time in ms
+     */
+    public static Map.Entry<String, Long> generateDetachedResponse(String prompt, Model model) {
+        long start = System.currentTimeMillis();
+        Content content = Content.fromParts(Part.fromText(prompt));
+        GenerateContentConfig config = createDefaultConfig(createDefaultSchema(), model);
+        GenerateContentResponse response = client.models.generateContent(model.getModelName(), content, config);
+        return new AbstractMap.SimpleEntry<>(response.text(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Like {@link #generateDetachedResponse(String)}, but if the model is slower than usual the request is
+     * sent to {@link Configuration#HEDGE_MODEL} too, and the first answer is used.
+     * @return The JSON response, the model that gave it and the elapsed time
+     */
+    public static RequestHedger.Result generateHedgedResponse(String prompt) {
+        Model primary = modelFor(ModelRouter.RequestClass.CLIPBOARD);
+        try {
+            RequestHedger.Result result = hedger.request(prompt, primary, Configuration.HEDGE_MODEL);
+            if (result.hedged()) {
+                logger.info("{} answered before {}", result.model().getModelName(), primary.getModelName());
+            }
+            router.record(ModelRouter.RequestClass.CLIPBOARD, result.model(),
+                    TimeUnit.MILLISECONDS.toNanos(result.latencyMillis()), true);
+            return result;
+        } catch (ExecutionException e) {
+            router.record(ModelRouter.RequestClass.CLIPBOARD, primary, 0, false);
+            throw new RuntimeException("Hedged request failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Hedged request interrupted", e);
+        }
+    }
+
+    public static RequestHedger.HedgeStats getHedgeStats() {
+        return hedger.getStats();
+    }
+
+    /**
+     * @return The model for the next request of the given kind: the router's pick, or the current model if one
+     * was picked by hand.
+     */
+    public static Model modelFor(ModelRouter.RequestClass requestClass) {
+        return automaticModelSelection ? router.choose(requestClass) : currentModel;
+    }
+
+    public static ModelRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * Sends a request to the model for its kind, see {@link #modelFor(ModelRouter.RequestClass)}, and lets the
+     * router measure it; the router falls back to another model if it fails.
+     */
+    private static <T> T routed(ModelRouter.RequestClass requestClass, Function<Model, T> request) {
+        return automaticModelSelection ? router.call(requestClass, request) : router.call(requestClass, currentModel, request);
     }
 
     public static Map.Entry<String, Long> generateStructuredResponseWithImageData(String prompt) {
@@ -148,8 +262,8 @@ public class Gemini {
                         Part.fromBytes(screenshotBytes, "image/png")
                 );
         Schema schema = createDefaultSchema();
-        GenerateContentConfig config = createDefaultConfig(schema);
-        return executeGeneration(Gemini.currentModel.getModelName(), content, config);
+        return routed(ModelRouter.RequestClass.IMAGE,
+                model -> executeDetachedGeneration(model.getModelName(), content, createDefaultConfig(schema, model)));
     }
 
     private static Object uploadFile(String filePath) {
@@ -225,6 +339,15 @@ public class Gemini {
                 .build();
     }
 
+    /**
+     * Like {@link #generateStructuredResponseWithMultipleContexts(String, Map, String)}, with the model for long
+     * contexts.
+     */
+    public static Map.Entry<String, Long> generateStructuredResponseWithMultipleContexts(String prompt, Map<String, byte[]> contexts) {
+        return routed(ModelRouter.RequestClass.LONG_CONTEXT,
+                model -> generateStructuredResponseWithMultipleContexts(prompt, contexts, model.getModelName()));
+    }
+
     public static Map.Entry<String, Long> generateStructuredResponseWithMultipleContexts(String prompt, Map<String, byte[]> contexts, String modelName) {
         TimerUtil.start();
 
@@ -235,26 +358,17 @@ public class Gemini {
         Schema schema = createDefaultSchema();
         GenerateContentConfig configWithCache = createConfigWithCache(schema, contextCache);
 
-        return executeGeneration(modelName, promptContent, configWithCache);
+        return executeDetachedGeneration(modelName, promptContent, configWithCache);
     }
 
     public static FunctionCall addCustomFunctionToGemini(String prompt) {
-        Tool tool = Tool.builder()
-                .functionDeclarations(FunctionDeclarations.getDeclarations())
-                .build();
-
         List<Content> contents =
                 ImmutableList.of(
                         Content.builder()
                                 .role("user")
                                 .parts(ImmutableList.of(Part.fromText(prompt)))
                                 .build());
-        GenerateContentConfig config =
-                GenerateContentConfig.builder()
-                        .thinkingConfig(ThinkingConfig.builder().thinkingBudget(-1).build())
-                        .tools(ImmutableList.of(tool))
-                        .responseMimeType("text/plain")
-                        .build();
+        GenerateContentConfig config = FunctionDeclarations.createFunctionCallingConfig();
 
         ResponseStream<GenerateContentResponse> responseStream =
                 client.models.generateContentStream(Gemini.currentModel.getModelName(), contents, config);
@@ -281,6 +395,7 @@ public class Gemini {
     }
 
     private static Chat createNewChat() {
-        return client.chats.create(Gemini.currentModel.getModelName(), Gemini.createDefaultConfig(Gemini.createDefaultSchema()));
+        Model model = modelFor(ModelRouter.RequestClass.CLIPBOARD);
+        return client.chats.create(model.getModelName(), createDefaultConfig(createDefaultSchema(), model));
     }
 }
\ No newline at end of file
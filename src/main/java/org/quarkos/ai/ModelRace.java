@@ -0,0 +1,112 @@
+package org.quarkos.ai;
+
+import org.quarkos.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+
+/**
+ * Sends the same prompt to several models at once and keeps one answer, e.g. to regenerate an answer as fast as
+ * the quickest model allows, or in the best quality that arrives in time.
+ */
+public class ModelRace {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelRace.class);
+
+    /**
+     * Which answer wins.
+     */
+    public enum Strategy {
+        /** The first answer; the other requests are cancelled. */
+        FIRST,
+        /** The answer of the model listed first among those that answered within the timeout. */
+        BEST
+    }
+
+    private final BiFunction<String, Model, String> answerer;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "model-race");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Races Gemini models, see {@link Gemini#generateDetachedResponse(String, Model)}.
+     */
+    public ModelRace() {
+        this((prompt, model) -> Gemini.generateDetachedResponse(prompt, model).getKey());
+    }
+
+    /**
+     * @param answerer Answers a prompt with a model; may block.
+     */
+    public ModelRace(BiFunction<String, Model, String> answerer) {
+        this.answerer = answerer;
+    }
+
+    /**
+     * @param prompt The prompt.
+     * @param models The models to race, the preferred one first.
+     * @param strategy Which answer wins.
+     * @param timeoutMillis How long to wait for answers.
+     * @return The winning answer.
+     * @throws ExecutionException If no model answered in time.
+     */
+    public Result race(String prompt, List<Model> models, Strategy strategy, long timeoutMillis)
+            throws ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Result>> futures = new ArrayList<>(models.size());
+        for (Model model : models) {
+            futures.add(completion.submit(() -> new Result(answerer.apply(prompt, model), model,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))));
+        }
+        List<Result> answered = new ArrayList<>();
+        Exception lastFailure = null;
+        try {
+            for (int pending = models.size(); pending > 0; pending--) {
+                Future<Result> done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    break; // Timed out.
+                }
+                try {
+                    Result result = done.get();
+                    if (strategy == Strategy.FIRST || result.model() == models.get(0)) {
+                        return result; // The preferred model can't be beaten.
+                    }
+                    answered.add(result);
+                } catch (ExecutionException e) {
+                    lastFailure = e;
+                    logger.warn("A model in the race failed: {}", e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+                }
+            }
+        } finally {
+            for (Future<Result> future : futures) {
+                future.cancel(true);
+            }
+        }
+        if (answered.isEmpty()) {
+            throw new ExecutionException("No model answered within " + timeoutMillis + "ms", lastFailure);
+        }
+        answered.sort(Comparator.comparingInt(result -> models.indexOf(result.model())));
+        return answered.get(0);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param answer The answer.
+     * @param model The model that gave it.
+     * @param latencyMillis How long it took.
+     */
+    public record Result(String answer, Model model, long latencyMillis) {
+    }
+}
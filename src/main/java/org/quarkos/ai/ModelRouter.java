@@ -0,0 +1,315 @@
+package org.quarkos.ai;
+
+import org.quarkos.Configuration;
+import org.quarkos.Model;
+import org.quarkos.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Picks the model for each request from how the models have been doing lately, instead of one model for
+ * everything. Each kind of request has its candidate models, best answers first, and a latency objective: the
+ * first candidate that has recently kept to the objective (a percentile of its latency) without too many errors
+ * is used. A request that fails is retried once with the next candidate.
+ *
+ * <p>Only the last couple of minutes count, in two windows: a model that degrades is avoided as soon as a window
+ * shows it, and as it then gets no requests, its measurements expire and it is tried again two windows later.
+ * Until a model has enough measurements, it is assumed to be fine.</p>
+ */
+public class ModelRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelRouter.class);
+
+    /**
+     * The kinds of requests, each with its own models and latency objective.
+     */
+    public enum RequestClass {
+        /** A spoken command, e.g. the song to play; the user is waiting. */
+        VOICE_INTENT,
+        /** A question from the clipboard. */
+        CLIPBOARD,
+        /** A question about a screenshot. */
+        IMAGE,
+        /** A question about uploaded documents. */
+        LONG_CONTEXT
+    }
+
+    /**
+     * @param models The candidate models, the one with the best answers first.
+     * @param sloMillis The latency the chosen model should keep to, at {@link Configuration#MODEL_ROUTER_SLO_PERCENTILE}.
+     */
+    public record Route(List<Model> models, long sloMillis) {
+    }
+
+    private final Map<RequestClass, Route> routes;
+    private final double sloPercentile;
+    private final double maxErrorRate;
+    private final int minSamples;
+    private final long windowMillis;
+    private final int maxAttempts;
+    private final LongSupplier clock;
+
+    private final Map<RequestClass, Map<Model, Telemetry>> telemetry = new EnumMap<>(RequestClass.class);
+    private final Map<RequestClass, Model> lastChoice = new ConcurrentHashMap<>();
+
+    public ModelRouter() {
+        this(Configuration.MODEL_ROUTES, Configuration.MODEL_ROUTER_SLO_PERCENTILE, Configuration.MODEL_ROUTER_MAX_ERROR_RATE,
+                Configuration.MODEL_ROUTER_MIN_SAMPLES, Configuration.MODEL_ROUTER_WINDOW_MS, Configuration.MODEL_ROUTER_MAX_ATTEMPTS,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * @param routes The candidate models and latency objective of each kind of request.
+     * @param sloPercentile The latency percentile the objectives are for, e.g. 95.
+     * @param maxErrorRate The share of failed requests above which a model is avoided.
+     * @param minSamples How many requests a window needs before a model is judged by it.
+     * @param windowMillis How long a window is.
+     * @param maxAttempts How many models a request is tried with at most.
+     * @param clock The current time in milliseconds.
+     */
+    ModelRouter(Map<RequestClass, Route> routes, double sloPercentile, double maxErrorRate, int minSamples,
+                long windowMillis, int maxAttempts, LongSupplier clock) {
+        this.routes = routes;
+        this.sloPercentile = sloPercentile;
+        this.maxErrorRate = maxErrorRate;
+        this.minSamples = minSamples;
+        this.windowMillis = windowMillis;
+        this.maxAttempts = maxAttempts;
+        this.clock = clock;
+        for (RequestClass requestClass : RequestClass.values()) {
+            telemetry.put(requestClass, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * @return The model to use for the next request of the given kind.
+     */
+    public Model choose(RequestClass requestClass) {
+        return candidates(requestClass).get(0);
+    }
+
+    /**
+     * Runs a request with the model chosen for its kind, measures it, and if it fails, retries it with the next
+     * candidate model. A request cancelled by interrupting its thread is neither counted against the model
+     * nor retried: nobody wants its answer anymore.
+     *
+     * @param requestClass The kind of request.
+     * @param request Sends the request to the given model.
+     * @return The response.
+     * @throws RuntimeException The last failure, if the request failed with every model it was tried with.
+     */
+    public <T> T call(RequestClass requestClass, Function<Model, T> request) {
+        List<Model> candidates = candidates(requestClass);
+        RuntimeException failure = null;
+        for (int attempt = 0; attempt < Math.min(maxAttempts, candidates.size()); attempt++) {
+            Model model = candidates.get(attempt);
+            try {
+                return call(requestClass, model, request);
+            } catch (RuntimeException e) {
+                if (isCancellation(e)) {
+                    throw e;
+                }
+                failure = e;
+                logger.warn("{} request to {} failed: {}", requestClass, model.getModelName(), e.getMessage());
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Runs a request with the given model, e.g. one the user picked, and measures it.
+     */
+    public <T> T call(RequestClass requestClass, Model model, Function<Model, T> request) {
+        long start = System.nanoTime();
+        try {
+            T response = request.apply(model);
+            record(requestClass, model, System.nanoTime() - start, true);
+            return response;
+        } catch (RuntimeException e) {
+            if (!isCancellation(e)) {
+                record(requestClass, model, System.nanoTime() - start, false);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Records a request that was made without the router.
+     *
+     * @param nanos How long it took.
+     * @param success Whether it was answered.
+     */
+    public void record(RequestClass requestClass, Model model, long nanos, boolean success) {
+        telemetry(requestClass, model).record(nanos, success);
+    }
+
+    /**
+     * @return The statistics of every model used for the given kind of requests.
+     */
+    public Map<Model, ModelStats> getStats(RequestClass requestClass) {
+        Route route = routes.get(requestClass);
+        Map<Model, ModelStats> stats = new LinkedHashMap<>();
+        telemetry.get(requestClass).forEach((model, modelTelemetry) -> stats.put(model, modelTelemetry.stats(route)));
+        return stats;
+    }
+
+    /**
+     * @return The candidate models, the healthy ones first, each group in order of preference; the least
+     * degraded first if none is healthy.
+     */
+    private List<Model> candidates(RequestClass requestClass) {
+        Route route = routes.get(requestClass);
+        List<Model> healthy = new ArrayList<>();
+        List<Model> degraded = new ArrayList<>();
+        for (Model model : route.models()) {
+            (telemetry(requestClass, model).isHealthy(route) ? healthy : degraded).add(model);
+        }
+        degraded.sort(Comparator.comparingDouble((Model model) -> telemetry(requestClass, model).recentErrorRate())
+                .thenComparingDouble(model -> telemetry(requestClass, model).recentLatencyMillis()));
+        List<Model> candidates = new ArrayList<>(healthy);
+        candidates.addAll(degraded);
+
+        Model previous = lastChoice.put(requestClass, candidates.get(0));
+        if (previous != null && previous != candidates.get(0)) {
+            logger.info("{} requests now go to {} instead of {}", requestClass, candidates.get(0).getModelName(),
+                    previous.getModelName());
+        }
+        return candidates;
+    }
+
+    /**
+     * @return Whether the request failed because its thread was interrupted, e.g. when the clipboard changed.
+     */
+    private static boolean isCancellation(RuntimeException e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof InterruptedIOException
+                    || cause instanceof ClosedByInterruptException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Telemetry telemetry(RequestClass requestClass, Model model) {
+        return telemetry.get(requestClass).computeIfAbsent(model, m -> new Telemetry());
+    }
+
+    /**
+     * The measurements of one model for one kind of requests.
+     */
+    private final class Telemetry {
+
+        private final LatencyHistogram latency = new LatencyHistogram(); // Since the start, for the statistics.
+        private long requests;
+        private long errors;
+        private Window current = new Window(clock.getAsLong());
+        private Window previous;
+
+        synchronized void record(long nanos, boolean success) {
+            rotate();
+            requests++;
+            current.requests++;
+            if (success) {
+                latency.record(nanos);
+                current.latency.record(nanos);
+            } else {
+                errors++;
+                current.errors++;
+            }
+        }
+
+        synchronized boolean isHealthy(Route route) {
+            Window window = recent();
+            return window == null || window.errorRate() <= maxErrorRate
+                    && window.latency.percentileMillis(sloPercentile) <= route.sloMillis();
+        }
+
+        synchronized double recentErrorRate() {
+            Window window = recent();
+            return window == null ? 0 : window.errorRate();
+        }
+
+        synchronized double recentLatencyMillis() {
+            Window window = recent();
+            return window == null ? 0 : window.latency.percentileMillis(sloPercentile);
+        }
+
+        synchronized ModelStats stats(Route route) {
+            Window window = recent();
+            return new ModelStats(requests, errors, window == null ? 0 : window.errorRate(),
+                    window == null ? null : window.latency.snapshot(), latency.snapshot(), route == null || isHealthy(route));
+        }
+
+        /**
+         * @return The current window if it has enough requests to judge by yet, else the previous one if that does;
+         * null if neither does.
+         */
+        private Window recent() {
+            rotate();
+            if (current.requests >= minSamples) {
+                return current;
+            }
+            return previous != null && previous.requests >= minSamples ? previous : null;
+        }
+
+        private void rotate() {
+            long now = clock.getAsLong();
+            if (now - current.startMillis >= windowMillis) {
+                // After a window without requests, the last one is too old to go by.
+                previous = now - current.startMillis < 2 * windowMillis ? current : null;
+                current = new Window(now);
+            }
+        }
+    }
+
+    private static final class Window {
+
+        private final long startMillis;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private long requests;
+        private long errors;
+
+        private Window(long startMillis) {
+            this.startMillis = startMillis;
+        }
+
+        private double errorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+    }
+
+    /**
+     * @param requests How many requests the model got.
+     * @param errors How many of them failed.
+     * @param recentErrorRate The share of failed requests lately; 0 if there were too few to tell.
+     * @param recentLatency The latency lately, null if there were too few requests to tell.
+     * @param latency The latency since the start.
+     * @param healthy Whether the model is meeting the latency objective without too many errors.
+     */
+    public record ModelStats(long requests, long errors, double recentErrorRate, LatencyHistogram.Snapshot recentLatency,
+                             LatencyHistogram.Snapshot latency, boolean healthy) {
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, %d errors, %.0f%% errors lately, p95 %s lately, %s",
+                    requests, errors, recentErrorRate * 100,
+                    recentLatency == null ? "unknown" : String.format("%.0fms", recentLatency.p95Millis()),
+                    healthy ? "healthy" : "degraded");
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.quarkos.ai;
+
+import org.quarkos.Model;
+import org.quarkos.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Hedges requests to cut their latency tail: a request goes to the primary model, and if that hasn't answered
+ * once the usual requests would have (a percentile of its past latencies), or fails, the same request goes to a
+ * secondary model. Whichever answers first wins and the other is cancelled. With the 95th percentile, about one
+ * request in twenty is sent twice.
+ *
+ * <p>The primary model's latency is recorded even when the hedge wins, if its request finishes anyway (blocking
+ * HTTP calls usually ignore the interrupt). If it does stop, it is only known to have taken at least as long as
+ * it ran, and that is recorded instead; the p99 improvement in the statistics is then a lower bound.</p>
+ */
+public class RequestHedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestHedger.class);
+
+    private final BiFunction<String, Model, String> answerer;
+    private final double hedgePercentile;
+    private final long initialDelayMillis;
+    private final int minSamples;
+    private final LongSupplier nanoTime;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hedged-request");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // How long each model takes to answer on its own, for the hedge delay.
+    private final Map<Model, LatencyHistogram> modelLatency = new ConcurrentHashMap<>();
+    // How long the primary model takes, whichever it was, and how long the request takes with hedging.
+    private final LatencyHistogram primaryLatency = new LatencyHistogram();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    /**
+     * @param answerer Answers a prompt with a model; may block, and should stop when interrupted.
+     * @param hedgePercentile The percentile of the primary model's latency after which the request is hedged.
+     * @param initialDelayMillis The hedge delay until enough latencies are known.
+     * @param minSamples How many latencies of a model are needed before its percentile is used.
+     */
+    public RequestHedger(BiFunction<String, Model, String> answerer, double hedgePercentile, long initialDelayMillis,
+                         int minSamples) {
+        this(answerer, hedgePercentile, initialDelayMillis, minSamples, System::nanoTime);
+    }
+
+    /**
+     * @param nanoTime The clock the latencies are measured with.
+     */
+    RequestHedger(BiFunction<String, Model, String> answerer, double hedgePercentile, long initialDelayMillis,
+                  int minSamples, LongSupplier nanoTime) {
+        this.answerer = answerer;
+        this.hedgePercentile = hedgePercentile;
+        this.initialDelayMillis = initialDelayMillis;
+        this.minSamples = minSamples;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @param prompt The prompt.
+     * @param primary The model to ask first.
+     * @param secondary The model to hedge with; if it is the primary one, the request is not hedged.
+     * @return The first answer.
+     * @throws ExecutionException If both models failed.
+     */
+    public Result request(String prompt, Model primary, Model secondary) throws ExecutionException, InterruptedException {
+        long start = nanoTime.getAsLong();
+        requests.incrementAndGet();
+        CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+        AtomicBoolean lost = new AtomicBoolean();
+        Future<Result> primaryFuture = completion.submit(() -> {
+            try {
+                Result result = call(prompt, primary, start);
+                recordPrimary(primary, TimeUnit.MILLISECONDS.toNanos(result.latencyMillis()));
+                return result;
+            } catch (RuntimeException e) {
+                if (lost.get()) {
+                    // Stopped after losing to the hedge: it would have taken at least this long.
+                    recordPrimary(primary, nanoTime.getAsLong() - start);
+                }
+                throw e;
+            }
+        });
+        Future<Result> hedgeFuture = null;
+        try {
+            if (primary == secondary) {
+                return answered(primaryFuture.get(), start);
+            }
+            ExecutionException failure = null;
+            int pending = 1;
+            Future<Result> done = completion.poll(hedgeDelayMillis(primary), TimeUnit.MILLISECONDS);
+            if (done != null) {
+                pending = 0;
+                try {
+                    return answered(done.get(), start);
+                } catch (ExecutionException e) {
+                    failure = e;
+                    logger.warn("{} failed, hedging with {}: {}", primary.getModelName(), secondary.getModelName(), message(e));
+                }
+            }
+            hedged.incrementAndGet();
+            hedgeFuture = completion.submit(() -> call(prompt, secondary, start).asHedge());
+            for (pending++; pending > 0; pending--) {
+                done = completion.take();
+                try {
+                    Result result = done.get();
+                    if (result.hedged()) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    return answered(result, start);
+                } catch (ExecutionException e) {
+                    failure = e;
+                }
+            }
+            throw failure;
+        } finally {
+            lost.set(!primaryFuture.isDone());
+            primaryFuture.cancel(true);
+            if (hedgeFuture != null) {
+                hedgeFuture.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * @return How long the primary model gets before the request is hedged.
+     */
+    public long hedgeDelayMillis(Model primary) {
+        LatencyHistogram histogram = modelLatency(primary);
+        if (histogram.count() < minSamples) {
+            return initialDelayMillis;
+        }
+        return (long) Math.ceil(histogram.percentileMillis(hedgePercentile));
+    }
+
+    /**
+     * @return How long the model took to answer on its own; at least, when it lost to the hedge.
+     */
+    public LatencyHistogram getModelLatency(Model model) {
+        return modelLatency(model);
+    }
+
+    /**
+     * @return A snapshot of the hedging statistics.
+     */
+    public HedgeStats getStats() {
+        return new HedgeStats(requests.get(), hedged.get(), hedgeWins.get(), primaryLatency.snapshot(), latency.snapshot());
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Waits for the requests still running after {@link #shutdown()}, including losers that record their latency.
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private Result call(String prompt, Model model, long start) {
+        String answer = answerer.apply(prompt, model);
+        long latencyNanos = nanoTime.getAsLong() - start;
+        return new Result(answer, model, TimeUnit.NANOSECONDS.toMillis(latencyNanos), false);
+    }
+
+    private Result answered(Result result, long start) {
+        latency.record(nanoTime.getAsLong() - start);
+        return result;
+    }
+
+    private void recordPrimary(Model primary, long nanos) {
+        modelLatency(primary).record(nanos);
+        primaryLatency.record(nanos);
+    }
+
+    private LatencyHistogram modelLatency(Model model) {
+        return modelLatency.computeIfAbsent(model, m -> new LatencyHistogram());
+    }
+
+    private static String message(ExecutionException e) {
+        return e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+    }
+
+    /**
+     * @param answer The answer.
+     * @param model The model that gave it.
+     * @param latencyMillis How long the request took.
+     * @param hedged Whether it came from the secondary model.
+     */
+    public record Result(String answer, Model model, long latencyMillis, boolean hedged) {
+
+        private Result asHedge() {
+            return new Result(answer, model, latencyMillis, true);
+        }
+    }
+
+    /**
+     * @param requests How many requests were made.
+     * @param hedged How many of them were sent to the secondary model too.
+     * @param hedgeWins How many were answered by the secondary model.
+     * @param primaryLatency How long the primary model took on its own, see {@link RequestHedger}.
+     * @param hedgedLatency How long the requests took with hedging.
+     */
+    public record HedgeStats(long requests, long hedged, long hedgeWins, LatencyHistogram.Snapshot primaryLatency,
+                             LatencyHistogram.Snapshot hedgedLatency) {
+
+        public double hedgeRate() {
+            return requests == 0 ? 0 : (double) hedged / requests;
+        }
+
+        public double winRate() {
+            return hedged == 0 ? 0 : (double) hedgeWins / hedged;
+        }
+
+        /**
+         * @return How much lower the 99th percentile is with hedging than for the primary model alone.
+         */
+        public double p99ImprovementMillis() {
+            return primaryLatency.p99Millis() - hedgedLatency.p99Millis();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, %.1f%% hedged, %.1f%% of hedges won, p99 %.1fms instead of %.1fms",
+                    requests, hedgeRate() * 100, winRate() * 100, hedgedLatency.p99Millis(), primaryLatency.p99Millis());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.quarkos.ai.tool;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a static method as a function the Gemini model can call.
+ * The {@link ToolRegistry} generates the FunctionDeclaration from the method signature
+ * and dispatches calls with that name to the method.
+ * The method must return void or a {@code Map<String, Object>} with the result for the model.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ToolFunction {
+
+    /**
+     * @return The function name exposed to the model. Defaults to the method name.
+     */
+    String name() default "";
+
+    /**
+     * @return The description the model uses to decide when to call the function.
+     */
+    String description();
+}
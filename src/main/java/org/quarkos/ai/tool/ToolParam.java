@@ -0,0 +1,36 @@
+package org.quarkos.ai.tool;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Describes a parameter of a {@link ToolFunction} method.
+ * Every parameter of a tool function needs this annotation, since parameter names
+ * are not available at runtime without the -parameters compiler flag.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface ToolParam {
+
+    /**
+     * @return The argument name in the model's function call.
+     */
+    String value();
+
+    /**
+     * @return An optional description, e.g. the expected format of the value.
+     */
+    String description() default "";
+
+    /**
+     * @return The allowed values for a String parameter. Enum parameters use their constants automatically.
+     */
+    String[] allowedValues() default {};
+
+    /**
+     * @return Whether the model has to provide this argument.
+     */
+    boolean required() default false;
+}
@@ -0,0 +1,319 @@
+package org.quarkos.ai.tool;
+
+import com.google.genai.types.FunctionCall;
+import com.google.genai.types.FunctionDeclaration;
+import com.google.genai.types.Schema;
+import com.google.genai.types.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Scans classes for {@link ToolFunction} methods once and builds everything the function calling
+ * path needs from them: the FunctionDeclarations sent to the model, and a precompiled dispatcher
+ * per function. Dispatching a call is a hash lookup, argument conversion and a direct MethodHandle call,
+ * so the declarations and the handlers can no longer drift apart.
+ */
+public class ToolRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ToolRegistry.class);
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final Map<String, Invoker> invokers;
+    private final List<FunctionDeclaration> declarations;
+
+    private ToolRegistry(Map<String, Invoker> invokers, List<FunctionDeclaration> declarations) {
+        this.invokers = invokers;
+        this.declarations = declarations;
+    }
+
+    /**
+     * Scans the given classes for static {@link ToolFunction} methods.
+     *
+     * @param handlerClasses The classes declaring the tool functions.
+     * @return The registry with one declaration and dispatcher per function.
+     * @throws IllegalStateException If a tool function is declared incorrectly.
+     */
+    public static ToolRegistry scan(Class<?>... handlerClasses) {
+        Map<String, Invoker> invokers = new HashMap<>();
+        List<FunctionDeclaration> declarations = new ArrayList<>();
+
+        for (Class<?> handlerClass : handlerClasses) {
+            MethodHandles.Lookup lookup;
+            try {
+                lookup = MethodHandles.privateLookupIn(handlerClass, MethodHandles.lookup());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access tool functions of " + handlerClass.getName(), e);
+            }
+
+            Method[] methods = handlerClass.getDeclaredMethods();
+            // getDeclaredMethods has no defined order, sort so the declarations are stable between runs.
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+            for (Method method : methods) {
+                ToolFunction annotation = method.getAnnotation(ToolFunction.class);
+                if (annotation == null) {
+                    continue;
+                }
+                String name = annotation.name().isEmpty() ? method.getName() : annotation.name();
+                if (invokers.containsKey(name)) {
+                    throw new IllegalStateException("Duplicate tool function: " + name);
+                }
+                invokers.put(name, createInvoker(name, method, lookup));
+                declarations.add(createDeclaration(name, annotation, method));
+            }
+        }
+
+        logger.debug("Registered {} tool functions: {}", invokers.size(), invokers.keySet());
+        return new ToolRegistry(invokers, List.copyOf(declarations));
+    }
+
+    /**
+     * @return The generated declarations, ready to be passed to the model's tool configuration.
+     */
+    public List<FunctionDeclaration> getDeclarations() {
+        return declarations;
+    }
+
+    /**
+     * @return The names of all registered functions.
+     */
+    public Set<String> getFunctionNames() {
+        return Collections.unmodifiableSet(invokers.keySet());
+    }
+
+    /**
+     * Dispatches a function call from the model to its handler.
+     *
+     * @param functionCall The FunctionCall object from the Gemini response.
+     * @return The handler's result, or an error result if the call could not be executed. Never null.
+     */
+    public Map<String, Object> dispatch(FunctionCall functionCall) {
+        String functionName = functionCall.name()
+                .orElseThrow(() -> new IllegalArgumentException("Function call is missing a name."));
+        return dispatch(functionName, functionCall.args().orElse(Collections.emptyMap()));
+    }
+
+    /**
+     * Dispatches a call by function name with already decoded arguments.
+     *
+     * @param functionName The name of the function.
+     * @param args The arguments by parameter name.
+     * @return The handler's result, or an error result if the call could not be executed. Never null.
+     */
+    public Map<String, Object> dispatch(String functionName, Map<String, Object> args) {
+        Invoker invoker = invokers.get(functionName);
+        if (invoker == null) {
+            logger.error("Unknown function call: {}", functionName);
+            return error("Unknown function: " + functionName);
+        }
+
+        Object[] boundArgs;
+        try {
+            boundArgs = invoker.bind(args);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid arguments for '{}': {}", functionName, e.getMessage());
+            return error(e.getMessage());
+        }
+
+        try {
+            return invoker.invoke(boundArgs);
+        } catch (Throwable t) {
+            logger.error("Function '{}' failed.", functionName, t);
+            return error(functionName + " failed: " + t.getMessage());
+        }
+    }
+
+    private static Invoker createInvoker(String name, Method method, MethodHandles.Lookup lookup) {
+        if (!Modifier.isStatic(method.getModifiers())) {
+            throw new IllegalStateException("Tool function must be static: " + method);
+        }
+        Class<?> returnType = method.getReturnType();
+        if (returnType != void.class && !Map.class.isAssignableFrom(returnType)) {
+            throw new IllegalStateException("Tool function must return void or Map<String, Object>: " + method);
+        }
+
+        Parameter[] parameters = method.getParameters();
+        ArgumentBinder[] binders = new ArgumentBinder[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            ToolParam param = parameters[i].getAnnotation(ToolParam.class);
+            if (param == null) {
+                throw new IllegalStateException("Parameter " + i + " of " + method + " is missing @ToolParam.");
+            }
+            Class<?> type = parameters[i].getType();
+            binders[i] = new ArgumentBinder(param.value(), param.required(), createConverter(type, method), defaultValue(type));
+        }
+
+        MethodHandle handle;
+        try {
+            handle = lookup.unreflect(method)
+                    .asSpreader(Object[].class, parameters.length)
+                    .asType(INVOKER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access tool function " + method, e);
+        }
+        return new Invoker(name, handle, binders, returnType == void.class);
+    }
+
+    private static FunctionDeclaration createDeclaration(String name, ToolFunction annotation, Method method) {
+        Map<String, Schema> properties = new LinkedHashMap<>();
+        List<String> required = new ArrayList<>();
+
+        for (Parameter parameter : method.getParameters()) {
+            ToolParam param = parameter.getAnnotation(ToolParam.class);
+            Schema.Builder schema = Schema.builder().type(schemaType(parameter.getType()));
+            if (!param.description().isEmpty()) {
+                schema.description(param.description());
+            }
+            List<String> allowedValues = allowedValues(parameter.getType(), param);
+            if (!allowedValues.isEmpty()) {
+                schema.enum_(allowedValues);
+            }
+            properties.put(param.value(), schema.build());
+            if (param.required()) {
+                required.add(param.value());
+            }
+        }
+
+        Schema.Builder parameters = Schema.builder()
+                .type(Type.Known.OBJECT)
+                .properties(properties);
+        if (!required.isEmpty()) {
+            parameters.required(required);
+        }
+
+        return FunctionDeclaration.builder()
+                .name(name)
+                .description(annotation.description())
+                .parameters(parameters.build())
+                .build();
+    }
+
+    private static Type.Known schemaType(Class<?> type) {
+        if (type == int.class || type == Integer.class || type == long.class || type == Long.class) {
+            return Type.Known.INTEGER;
+        }
+        if (type == double.class || type == Double.class || type == float.class || type == Float.class) {
+            return Type.Known.NUMBER;
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return Type.Known.BOOLEAN;
+        }
+        return Type.Known.STRING;
+    }
+
+    private static List<String> allowedValues(Class<?> type, ToolParam param) {
+        if (type.isEnum()) {
+            List<String> values = new ArrayList<>();
+            for (Object constant : type.getEnumConstants()) {
+                values.add(((Enum<?>) constant).name().toLowerCase(Locale.ROOT));
+            }
+            return values;
+        }
+        return Arrays.asList(param.allowedValues());
+    }
+
+    /**
+     * Creates the conversion from a decoded JSON value to the parameter type. Numbers arrive
+     * as Double or Integer depending on the JSON, so all numeric types accept any Number or a numeric String.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Function<Object, Object> createConverter(Class<?> type, Method method) {
+        if (type == String.class) {
+            return String::valueOf;
+        }
+        if (type == int.class || type == Integer.class) {
+            return value -> value instanceof Number number ? number.intValue() : Integer.parseInt(value.toString().trim());
+        }
+        if (type == long.class || type == Long.class) {
+            return value -> value instanceof Number number ? number.longValue() : Long.parseLong(value.toString().trim());
+        }
+        if (type == double.class || type == Double.class) {
+            return value -> value instanceof Number number ? number.doubleValue() : Double.parseDouble(value.toString().trim());
+        }
+        if (type == float.class || type == Float.class) {
+            return value -> value instanceof Number number ? number.floatValue() : Float.parseFloat(value.toString().trim());
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return value -> value instanceof Boolean bool ? bool : Boolean.parseBoolean(value.toString().trim());
+        }
+        if (type.isEnum()) {
+            Map<String, Object> constants = new HashMap<>();
+            for (Object constant : type.getEnumConstants()) {
+                constants.put(((Enum) constant).name().toLowerCase(Locale.ROOT), constant);
+            }
+            return value -> {
+                Object constant = constants.get(value.toString().trim().toLowerCase(Locale.ROOT));
+                if (constant == null) {
+                    throw new IllegalArgumentException("Unsupported value '" + value + "', expected one of " + constants.keySet());
+                }
+                return constant;
+            };
+        }
+        throw new IllegalStateException("Unsupported tool parameter type " + type.getName() + " in " + method);
+    }
+
+    /**
+     * Missing optional arguments are passed as null, except for primitives which cannot hold null.
+     */
+    private static Object defaultValue(Class<?> type) {
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == boolean.class) return false;
+        return null;
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", "error");
+        result.put("error", message);
+        return result;
+    }
+
+    private record ArgumentBinder(String name, boolean required, Function<Object, Object> converter, Object defaultValue) {
+    }
+
+    private record Invoker(String name, MethodHandle handle, ArgumentBinder[] binders, boolean returnsVoid) {
+
+        Object[] bind(Map<String, Object> args) {
+            Object[] bound = new Object[binders.length];
+            for (int i = 0; i < binders.length; i++) {
+                ArgumentBinder binder = binders[i];
+                Object value = args.get(binder.name());
+                if (value == null) {
+                    if (binder.required()) {
+                        throw new IllegalArgumentException("Missing required argument '" + binder.name() + "'.");
+                    }
+                    bound[i] = binder.defaultValue();
+                    continue;
+                }
+                try {
+                    bound[i] = binder.converter().apply(value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value '" + value + "' for argument '" + binder.name() + "'.");
+                }
+            }
+            return bound;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> invoke(Object[] boundArgs) throws Throwable {
+            Object result = handle.invokeExact(boundArgs);
+            if (returnsVoid || result == null) {
+                Map<String, Object> ok = new LinkedHashMap<>();
+                ok.put("status", "ok");
+                return ok;
+            }
+            return (Map<String, Object>) result;
+        }
+    }
+}
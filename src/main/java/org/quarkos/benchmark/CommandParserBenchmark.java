@@ -0,0 +1,134 @@
+package org.quarkos.benchmark;
+
+import org.quarkos.voice.command.CommandParser;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the grammar based CommandParser with the previous regex based implementation
+ * on the {@link VoiceCommandCorpus}. The previous implementation is kept here as it was,
+ * including its junk word bug, so the numbers show the cost of the old approach.
+ */
+public class CommandParserBenchmark {
+
+    public static void main(String[] args) {
+        CommandParser parser = new CommandParser(null);
+        List<String> corpus = VoiceCommandCorpus.COMMANDS;
+
+        System.out.println("\n--- Parse results (current | previous) ---");
+        for (String command : corpus) {
+            Optional<CommandParser.PlayRequest> current = parser.extractPlayRequest(command);
+            String[] previous = LegacyParser.parse(command);
+            System.out.printf("%-62s %-45s | %s%n", command,
+                    current.map(r -> r.trackName() + " / " + r.artistName()).orElse("-"),
+                    previous == null ? "-" : previous[0] + " / " + previous[1]);
+        }
+
+        int warmup = 5_000;
+        int runs = 500;
+        double currentNanos = measure(warmup, runs, corpus, command -> parser.extractPlayRequest(command));
+        double previousNanos = measure(warmup, runs, corpus, LegacyParser::parse);
+
+        System.out.println("\n--- Command Parser Benchmark (average of " + runs + " passes over " + corpus.size() + " commands) ---");
+        System.out.printf("Grammar parser: %.2fus/command%n", currentNanos / 1_000);
+        System.out.printf("Previous regex parser: %.2fus/command%n", previousNanos / 1_000);
+        System.out.printf("Speedup: %.1fx%n", previousNanos / currentNanos);
+    }
+
+    private static double measure(int warmup, int runs, List<String> corpus, java.util.function.Function<String, Object> parse) {
+        Object sink = null;
+        for (int i = 0; i < warmup; i++) {
+            for (String command : corpus) {
+                sink = parse.apply(command);
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            for (String command : corpus) {
+                sink = parse.apply(command);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink == Boolean.TRUE) {
+            System.out.println(); // Keeps the result alive so the loop is not optimized away.
+        }
+        return (double) elapsed / (runs * corpus.size());
+    }
+
+    /**
+     * The parsing logic of CommandParser before the PhraseMatcher and the grammar, returning [track, artist] instead of playing.
+     */
+    private static class LegacyParser {
+
+        // The phrase lists from Configuration at the time, before they moved into the grammar packs.
+        private static final List<String> PLAY_TRIGGERS = Arrays.asList(
+                "play", "spiele", "spiel", "search for", "find", "listen to", "please play"
+        );
+        private static final List<String> ARTIST_SEPARATORS = Arrays.asList(
+                "by", "von", "from", "bei"
+        );
+        private static final List<String> JUNK_WORDS = Arrays.asList(
+                "the song", "the track", "the artist", "a song", "song", "track", "artist",
+                "can you", "could you", "please", "the trick"
+        );
+
+        static String[] parse(String text) {
+            String commandToParse = Arrays.stream(text.split("\\R"))
+                    .map(String::trim)
+                    .filter(line -> !line.startsWith("Detecting language"))
+                    .filter(line -> !line.startsWith("Detected language"))
+                    .filter(line -> !line.matches("\\[\\d{2}:\\d{2}\\.\\d{3} --> \\d{2}:\\d{2}\\.\\d{3}\\]"))
+                    .collect(Collectors.joining(" "))
+                    .trim();
+            if (commandToParse.isEmpty()) {
+                commandToParse = text;
+            }
+
+            String lowerCaseText = commandToParse.toLowerCase();
+            Optional<String> foundTrigger = findFirstWord(lowerCaseText, PLAY_TRIGGERS);
+            if (foundTrigger.isEmpty()) {
+                return null;
+            }
+            String query = lowerCaseText.substring(lowerCaseText.indexOf(foundTrigger.get()) + foundTrigger.get().length()).trim();
+            for (String junk : JUNK_WORDS) {
+                query = query.replaceAll("\b" + junk + "\b", " ").trim();
+            }
+            query = query.replaceAll("\s+", " ");
+
+            Optional<String> foundSeparator = findFirstWord(query, ARTIST_SEPARATORS);
+            String trackName;
+            String artistName = null;
+            if (foundSeparator.isPresent()) {
+                int separatorIndex = query.indexOf(foundSeparator.get());
+                trackName = query.substring(0, separatorIndex).trim();
+                artistName = query.substring(separatorIndex + foundSeparator.get().length()).trim();
+            } else {
+                trackName = query;
+            }
+            trackName = trackName.replaceAll("^[.,?¿!¡\\s]+|[.,?¿!¡\\s]+$", "").trim();
+            if (artistName != null) {
+                artistName = artistName.replaceAll("^[.,?¿!¡\\s]+|[.,?¿!¡\\s]+$", "").trim();
+            }
+            return trackName.isEmpty() ? null : new String[]{trackName, artistName};
+        }
+
+        private static Optional<String> findFirstWord(String text, List<String> words) {
+            return words.stream()
+                    .map(word -> {
+                        Pattern pattern = Pattern.compile("\\b" + Pattern.quote(word) + "\\b");
+                        Matcher matcher = pattern.matcher(text);
+                        if (matcher.find()) return new Object[]{word, matcher.start()};
+                        return null;
+                    })
+                    .filter(java.util.Objects::nonNull)
+                    .min(Comparator.comparingInt(match -> (Integer) match[1]))
+                    .map(match -> (String) match[0]);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.quarkos.benchmark;
+
+import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
+import org.quarkos.hotkey.HotkeyCombination;
+import org.quarkos.hotkey.HotkeyMatcher;
+import org.quarkos.hotkey.HotkeySequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays a long stretch of simulated heavy typing (mostly plain letters, some shifted, now and then a chord)
+ * against several hundred registered hotkeys, once with the old matching (a map of pressed keys, every combination
+ * checked on every key press) and once with the {@link HotkeyMatcher}. Reports the time per key event and checks
+ * that both trigger the same hotkeys. A third run adds a few hundred leader key sequences, which must not make
+ * a key event any slower. The number of hotkeys can be passed as the first argument.
+ */
+public class HotkeyMatcherBenchmark {
+
+    private static final int[] MODIFIERS = {
+            NativeKeyEvent.VC_CONTROL, NativeKeyEvent.VC_ALT, NativeKeyEvent.VC_SHIFT, NativeKeyEvent.VC_META
+    };
+
+    public static void main(String[] args) {
+        int hotkeys = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int[] keys = keys();
+        List<HotkeyCombination> combinations = combinations(keys, hotkeys);
+        int[] events = typing(keys, 1_000_000);
+
+        Map<HotkeyCombination, Runnable> legacyBindings = new HashMap<>();
+        HotkeyMatcher<Runnable> matcher = new HotkeyMatcher<>(1_000);
+        HotkeyMatcher<Runnable> withSequences = new HotkeyMatcher<>(1_000);
+        for (HotkeyCombination combination : combinations) {
+            legacyBindings.put(combination, () -> { });
+            matcher.put(combination, () -> { });
+            withSequences.put(combination, () -> { });
+        }
+        int sequences = 0;
+        for (HotkeyCombination leader : new HotkeyCombination[]{
+                HotkeyCombination.ctrlKey(NativeKeyEvent.VC_SPACE), HotkeyCombination.altKey(NativeKeyEvent.VC_SPACE)}) {
+            for (int key : keys) {
+                withSequences.put(HotkeySequence.of(leader).then(key), () -> { });
+                withSequences.put(HotkeySequence.of(leader, HotkeyCombination.shiftKey(key)), () -> { });
+                sequences += 2;
+            }
+        }
+
+        for (int i = 0; i < 3; i++) { // Warm up.
+            legacy(legacyBindings, events);
+            matched(matcher, events);
+            matched(withSequences, events);
+        }
+
+        long start = System.nanoTime();
+        long legacyHits = legacy(legacyBindings, events);
+        double legacyNanos = (double) (System.nanoTime() - start) / events.length;
+
+        start = System.nanoTime();
+        long matcherHits = matched(matcher, events);
+        double matcherNanos = (double) (System.nanoTime() - start) / events.length;
+
+        start = System.nanoTime();
+        long sequenceHits = matched(withSequences, events);
+        double sequenceNanos = (double) (System.nanoTime() - start) / events.length;
+
+        System.out.println("\n--- Hotkey Matcher Benchmark (" + combinations.size() + " hotkeys, " + events.length + " key events) ---");
+        System.out.printf("Map of pressed keys, scan all hotkeys: %8.1fns/event, %d hotkeys triggered%n", legacyNanos, legacyHits);
+        System.out.printf("HotkeyMatcher (bitset, chord hash):    %8.1fns/event, %d hotkeys triggered%n", matcherNanos, matcherHits);
+        System.out.printf("HotkeyMatcher, %3d sequences added:     %8.1fns/event, %d hotkeys triggered%n", sequences, sequenceNanos, sequenceHits);
+        if (legacyHits != matcherHits || matcherHits != sequenceHits) {
+            System.out.println("MISMATCH: the matchers triggered different hotkeys.");
+        }
+    }
+
+    /**
+     * The matching HotkeyManager did before the HotkeyMatcher.
+     */
+    private static long legacy(Map<HotkeyCombination, Runnable> bindings, int[] events) {
+        Map<Integer, Boolean> pressedKeys = new HashMap<>();
+        long hits = 0;
+        for (int event : events) {
+            int keyCode = Math.abs(event);
+            if (event > 0) {
+                pressedKeys.put(keyCode, true);
+                for (Map.Entry<HotkeyCombination, Runnable> entry : bindings.entrySet()) {
+                    if (entry.getKey().isPressed(pressedKeys)) {
+                        entry.getValue().run();
+                        hits++;
+                    }
+                }
+            } else {
+                pressedKeys.put(keyCode, false);
+            }
+        }
+        return hits;
+    }
+
+    private static long matched(HotkeyMatcher<Runnable> matcher, int[] events) {
+        matcher.reset();
+        long hits = 0;
+        for (int event : events) {
+            if (event > 0) {
+                HotkeyMatcher.Binding<Runnable> binding = matcher.keyPressed(event);
+                if (binding != null) {
+                    binding.action().run();
+                    hits++;
+                }
+            } else {
+                matcher.keyReleased(-event);
+            }
+        }
+        return hits;
+    }
+
+    private static int[] keys() {
+        List<Integer> keys = new ArrayList<>();
+        for (int keyCode : new int[]{
+                NativeKeyEvent.VC_A, NativeKeyEvent.VC_B, NativeKeyEvent.VC_C, NativeKeyEvent.VC_D, NativeKeyEvent.VC_E,
+                NativeKeyEvent.VC_F, NativeKeyEvent.VC_G, NativeKeyEvent.VC_H, NativeKeyEvent.VC_I, NativeKeyEvent.VC_J,
+                NativeKeyEvent.VC_K, NativeKeyEvent.VC_L, NativeKeyEvent.VC_M, NativeKeyEvent.VC_N, NativeKeyEvent.VC_O,
+                NativeKeyEvent.VC_P, NativeKeyEvent.VC_Q, NativeKeyEvent.VC_R, NativeKeyEvent.VC_S, NativeKeyEvent.VC_T,
+                NativeKeyEvent.VC_U, NativeKeyEvent.VC_V, NativeKeyEvent.VC_W, NativeKeyEvent.VC_X, NativeKeyEvent.VC_Y,
+                NativeKeyEvent.VC_Z, NativeKeyEvent.VC_0, NativeKeyEvent.VC_1, NativeKeyEvent.VC_2, NativeKeyEvent.VC_3,
+                NativeKeyEvent.VC_4, NativeKeyEvent.VC_5, NativeKeyEvent.VC_6, NativeKeyEvent.VC_7, NativeKeyEvent.VC_8,
+                NativeKeyEvent.VC_9, NativeKeyEvent.VC_F1, NativeKeyEvent.VC_F2, NativeKeyEvent.VC_F3, NativeKeyEvent.VC_F4,
+                NativeKeyEvent.VC_F5, NativeKeyEvent.VC_F6, NativeKeyEvent.VC_F7, NativeKeyEvent.VC_F8, NativeKeyEvent.VC_F9,
+                NativeKeyEvent.VC_F10, NativeKeyEvent.VC_F11, NativeKeyEvent.VC_F12}) {
+            keys.add(keyCode);
+        }
+        return keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Every key with every non-empty set of modifiers, multi-modifier chords first, as far as the count goes.
+     */
+    private static List<HotkeyCombination> combinations(int[] keys, int count) {
+        List<HotkeyCombination> combinations = new ArrayList<>(count);
+        for (int modifierSet = (1 << MODIFIERS.length) - 1; modifierSet > 0 && combinations.size() < count; modifierSet--) {
+            List<Integer> modifiers = new ArrayList<>();
+            for (int i = 0; i < MODIFIERS.length; i++) {
+                if ((modifierSet & (1 << i)) != 0) {
+                    modifiers.add(MODIFIERS[i]);
+                }
+            }
+            for (int key : keys) {
+                if (combinations.size() == count) {
+                    break;
+                }
+                combinations.add(HotkeyCombination.of(key, modifiers.stream().mapToInt(Integer::intValue).toArray()));
+            }
+        }
+        return combinations;
+    }
+
+    /**
+     * Key events as key codes, positive for a press and negative for a release.
+     */
+    private static int[] typing(int[] keys, int count) {
+        Random random = new Random(42);
+        int[] events = new int[count];
+        int n = 0;
+        while (n < count - 8) {
+            int key = keys[random.nextInt(26)]; // Letters, mostly.
+            double kind = random.nextDouble();
+            if (kind < 0.9) {
+                events[n++] = key;
+                events[n++] = -key;
+            } else {
+                // Shift for a capital letter, now and then a chord of two modifiers.
+                int first = kind < 0.98 ? NativeKeyEvent.VC_SHIFT : NativeKeyEvent.VC_CONTROL;
+                int second = kind < 0.98 ? 0 : MODIFIERS[1 + random.nextInt(3)];
+                events[n++] = first;
+                if (second != 0) {
+                    events[n++] = second;
+                }
+                events[n++] = key;
+                events[n++] = -key;
+                if (second != 0) {
+                    events[n++] = -second;
+                }
+                events[n++] = -first;
+            }
+        }
+        return Arrays.copyOf(events, n);
+    }
+}
@@ -0,0 +1,57 @@
+package org.quarkos.benchmark;
+
+import org.quarkos.Configuration;
+import org.quarkos.intent.Intent;
+import org.quarkos.intent.LocalIntentClassifier;
+
+import java.util.Optional;
+
+/**
+ * Measures how many commands of the {@link VoiceCommandCorpus} the local intent classifier can serve
+ * without the LLM, how long classification takes, and the latency that saves.
+ * The LLM round-trip time is not measured here (it needs an API key); pass your observed
+ * average in milliseconds as the first argument. The IntentRouter reports the live numbers at runtime.
+ */
+public class IntentRouterBenchmark {
+
+    public static void main(String[] args) {
+        double llmMillis = args.length > 0 ? Double.parseDouble(args[0]) : 1500;
+        LocalIntentClassifier classifier = new LocalIntentClassifier();
+
+        int served = 0;
+        System.out.println("\n--- Classification ---");
+        for (String command : VoiceCommandCorpus.COMMANDS) {
+            Optional<Intent> intent = classifier.classify(command);
+            boolean local = intent.isPresent() && intent.get().confidence() >= Configuration.LOCAL_INTENT_MIN_CONFIDENCE;
+            if (local) {
+                served++;
+            }
+            System.out.printf("%-6s %-70s %s%n", local ? "LOCAL" : "LLM", command,
+                    intent.map(i -> i.functionName() + " " + i.args()).orElse(""));
+        }
+
+        int warmup = 20_000;
+        int runs = 200;
+        for (int i = 0; i < warmup; i++) {
+            for (String command : VoiceCommandCorpus.COMMANDS) {
+                classifier.classify(command);
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            for (String command : VoiceCommandCorpus.COMMANDS) {
+                classifier.classify(command);
+            }
+        }
+        double nanosPerCommand = (double) (System.nanoTime() - start) / (runs * VoiceCommandCorpus.COMMANDS.size());
+
+        int total = VoiceCommandCorpus.COMMANDS.size();
+        double share = (double) served / total;
+        System.out.println("\n--- Local Intent Router Benchmark ---");
+        System.out.printf("Served locally: %d/%d (%.0f%%)%n", served, total, share * 100);
+        System.out.printf("Classification: %.2fus/command%n", nanosPerCommand / 1_000);
+        System.out.printf("Latency saved per locally served command: ~%.0fms (assuming %.0fms per LLM round-trip)%n",
+                llmMillis - nanosPerCommand / 1_000_000, llmMillis);
+        System.out.printf("Average latency saved over the corpus: ~%.0fms/command%n", share * llmMillis);
+    }
+}
@@ -0,0 +1,79 @@
+package org.quarkos.benchmark;
+
+import org.quarkos.spotify.SpotifyController;
+import org.quarkos.spotify.SpotifyDeviceCache;
+import org.quarkos.spotify.SpotifyLibrarySync;
+import org.quarkos.spotify.TrackResolutionCache;
+import se.michaelthelin.spotify.SpotifyApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Syncs a generated library (saved tracks and playlists) from the {@link MockSpotifyServer}, first in full,
+ * then incrementally after a few changes, and then plays requests for library songs with and without the mirror.
+ * The simulated latency in milliseconds can be passed as the first argument.
+ */
+public class LibrarySyncBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long latencyMillis = args.length > 0 ? Long.parseLong(args[0]) : 20;
+        int savedTracks = 2_000;
+        int playlists = 20;
+        int playlistSize = 100;
+        int requests = 50;
+        Random random = new Random(42);
+
+        try (MockSpotifyServer server = new MockSpotifyServer(latencyMillis)) {
+            List<String> ids = new ArrayList<>();
+            List<String[]> songs = new ArrayList<>();
+            for (int i = 0; i < savedTracks + playlists * playlistSize / 2; i++) {
+                String[] song = {"Song " + Integer.toString(i * 7919, 36) + " " + i, "Artist " + (i % 300)};
+                songs.add(song);
+                ids.add(server.addTrack(song[0], song[1]));
+            }
+            for (int i = savedTracks - 1; i >= 0; i--) {
+                server.saveTrack(ids.get(i));
+            }
+            for (int p = 0; p < playlists; p++) {
+                List<String> playlist = new ArrayList<>();
+                for (int i = 0; i < playlistSize; i++) {
+                    playlist.add(ids.get(random.nextInt(ids.size())));
+                }
+                server.setPlaylist("playlist" + p, "Playlist " + p, playlist);
+            }
+
+            SpotifyApi api = server.createApi();
+            TrackResolutionCache trackCache = new TrackResolutionCache();
+            SpotifyLibrarySync sync = new SpotifyLibrarySync(api, trackCache, null);
+
+            System.out.println("\n--- Library Sync Benchmark (" + latencyMillis + "ms per request) ---");
+            System.out.println("Full sync:        " + sync.syncNow());
+            server.saveTrack(ids.get(savedTracks));
+            server.setPlaylist("playlist0", "Playlist 0", List.of(ids.get(1), ids.get(2)));
+            System.out.println("Incremental sync: " + sync.syncNow());
+
+            SpotifyDeviceCache deviceCache = new SpotifyDeviceCache(api);
+            SpotifyController withLibrary = new SpotifyController(api, deviceCache, trackCache, sync);
+            SpotifyController withoutLibrary = new SpotifyController(api, deviceCache);
+            List<String[]> asked = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                asked.add(songs.get(random.nextInt(savedTracks)));
+            }
+            play("Without mirror:", server, withoutLibrary, asked);
+            play("With mirror:", server, withLibrary, asked);
+            deviceCache.shutdown();
+        }
+    }
+
+    private static void play(String label, MockSpotifyServer server, SpotifyController controller, List<String[]> asked) {
+        server.resetCounts();
+        long start = System.nanoTime();
+        for (String[] song : asked) {
+            controller.searchAndPlayTrack(song[0].toLowerCase(), song[1].toLowerCase());
+        }
+        System.out.printf("%-16s %6.1fms/request, %d search requests for %d library songs%n", label,
+                (System.nanoTime() - start) / 1_000_000.0 / asked.size(), server.getRequestCount("/v1/search"), asked.size());
+    }
+}
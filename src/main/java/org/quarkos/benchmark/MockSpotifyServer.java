@@ -0,0 +1,399 @@
+package org.quarkos.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import se.michaelthelin.spotify.SpotifyApi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local stand-in for the Spotify Web API, for benchmarks that need to count round-trips without
+ * a Spotify account. Every request waits a configurable latency to model the real network.
+ * Supports the devices endpoint, the playback controls and queue, track search over a small catalog, tracks,
+ * album tracks and artist top tracks, and the user's library: saved tracks, playlists and followed artists.
+ * Playback on an unknown device answers 404 "Device not found" like the real API, and a request
+ * with anything but the current access token answers 401 "The access token expired". Rate limiting can be
+ * simulated with {@link #rejectNext(int, int)}.
+ */
+public class MockSpotifyServer implements AutoCloseable {
+
+    static {
+        // Without TCP_NODELAY, Nagle's algorithm and delayed ACKs add ~40ms to every response on keep-alive connections.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static final Pattern FIELD_FILTER = Pattern.compile("track:\"([^\"]*)\" artist:\"([^\"]*)\"");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "mock-spotify");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private volatile List<String> deviceIds = List.of("desktop");
+    private final List<String[]> catalog = new CopyOnWriteArrayList<>();
+    private final Map<String, String[]> tracksById = new ConcurrentHashMap<>();
+    private final List<String> savedTrackIds = new CopyOnWriteArrayList<>();
+    private final Map<String, Playlist> playlists = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile List<String> followedArtists = List.of();
+    private final List<String> queuedUris = new CopyOnWriteArrayList<>();
+    private volatile String accessToken = "mock-token";
+    private final AtomicInteger issuedTokens = new AtomicInteger();
+    private final AtomicInteger rejections = new AtomicInteger();
+    private volatile String retryAfter;
+    private volatile long latencyMillis;
+    private volatile long jitterMillis;
+
+    /**
+     * Starts the server on a free local port.
+     *
+     * @param latencyMillis The time every request takes.
+     */
+    public MockSpotifyServer(long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return A SpotifyApi that talks to this server.
+     */
+    public SpotifyApi createApi() {
+        return apiBuilder().build();
+    }
+
+    /**
+     * @return A SpotifyApi builder set up to talk to this server, with the current access token.
+     */
+    public SpotifyApi.Builder apiBuilder() {
+        return new SpotifyApi.Builder()
+                .setScheme("http")
+                .setHost("localhost")
+                .setPort(server.getAddress().getPort())
+                .setAccessToken(accessToken);
+    }
+
+    /**
+     * Issues a new access token, like the token endpoint does on a refresh. From now on, requests with
+     * the previous token are answered with 401, as if it had expired.
+     *
+     * @return The new access token.
+     */
+    public String issueAccessToken() {
+        accessToken = "mock-token-" + issuedTokens.incrementAndGet();
+        return accessToken;
+    }
+
+    /**
+     * Replaces the user's devices, e.g. to simulate switching from the desktop app to the phone.
+     *
+     * @param ids The device IDs; the first one is the active device.
+     */
+    public void setDevices(String... ids) {
+        this.deviceIds = List.of(ids);
+    }
+
+    /**
+     * Adds a track to the catalog the search endpoint answers from.
+     *
+     * @return The track's ID.
+     */
+    public String addTrack(String name, String artist) {
+        return addTrack(name, artist, null);
+    }
+
+    /**
+     * Adds a track of an album to the catalog; the tracks of an album are numbered in the order they are added.
+     * The first tracks added for an artist are their top tracks.
+     *
+     * @return The track's ID.
+     */
+    public String addTrack(String name, String artist, String album) {
+        String[] track = {name, artist, "mock" + catalog.size(), album};
+        catalog.add(track);
+        tracksById.put(track[2], track);
+        return track[2];
+    }
+
+    /**
+     * Saves a track to the user's library; it becomes the newest saved track.
+     */
+    public void saveTrack(String trackId) {
+        savedTrackIds.add(0, trackId);
+    }
+
+    public void unsaveTrack(String trackId) {
+        savedTrackIds.remove(trackId);
+    }
+
+    /**
+     * Creates or replaces a playlist. Every change gets a new snapshot ID.
+     */
+    public void setPlaylist(String id, String name, List<String> trackIds) {
+        Playlist previous = playlists.get(id);
+        int version = previous == null ? 1 : previous.version() + 1;
+        playlists.put(id, new Playlist(id, name, version, List.copyOf(trackIds)));
+    }
+
+    public void setFollowedArtists(String... names) {
+        this.followedArtists = List.of(names);
+    }
+
+    /**
+     * Answers the next requests with 429 "API rate limit exceeded", like Spotify does when the app sent too much.
+     *
+     * @param count How many requests to reject.
+     * @param retryAfterSeconds The Retry-After header of the rejections.
+     */
+    public void rejectNext(int count, int retryAfterSeconds) {
+        rejectNext(count, String.valueOf(retryAfterSeconds));
+    }
+
+    /**
+     * Like {@link #rejectNext(int, int)}, with any Retry-After header, e.g. an HTTP date.
+     */
+    public void rejectNext(int count, String retryAfter) {
+        this.retryAfter = retryAfter;
+        rejections.set(count);
+    }
+
+    /**
+     * @return The URIs added to the playback queue, in order.
+     */
+    public List<String> getQueuedUris() {
+        return List.copyOf(queuedUris);
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param jitterMillis A random extra delay of up to this many milliseconds per request.
+     */
+    public void setJitterMillis(long jitterMillis) {
+        this.jitterMillis = jitterMillis;
+    }
+
+    /**
+     * @param path The request path, e.g. "/v1/me/player/devices".
+     * @return How many requests the path received.
+     */
+    public int getRequestCount(String path) {
+        AtomicInteger count = requestCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    public void resetCounts() {
+        requestCounts.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        URI uri = exchange.getRequestURI();
+        String path = uri.getPath();
+        requestCounts.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        exchange.getRequestBody().readAllBytes(); // Must be consumed before answering, or keep-alive connections break.
+        try {
+            long jitter = jitterMillis;
+            Thread.sleep(latencyMillis + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!("Bearer " + accessToken).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            respond(exchange, 401, "{\"error\":{\"status\":401,\"message\":\"The access token expired\"}}");
+            return;
+        }
+        if (rejections.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+            exchange.getResponseHeaders().set("Retry-After", retryAfter);
+            respond(exchange, 429, "{\"error\":{\"status\":429,\"message\":\"API rate limit exceeded\"}}");
+            return;
+        }
+
+        switch (path) {
+            case "/v1/me/player/devices" -> respond(exchange, 200, devicesJson());
+            case "/v1/search" -> respond(exchange, 200, searchJson(queryParameter(uri, "q"), queryParameter(uri, "limit")));
+            case "/v1/me/tracks" -> respond(exchange, 200, page(uri, savedTrackIds, id ->
+                    "{\"added_at\":\"2024-01-01T00:00:00Z\",\"track\":" + trackJson(tracksById.get(id)) + "}"));
+            case "/v1/me/playlists" -> respond(exchange, 200, page(uri, new ArrayList<>(playlists.values()), playlist ->
+                    "{\"id\":\"" + playlist.id() + "\",\"name\":" + jsonString(playlist.name()) + ",\"snapshot_id\":\"" + playlist.id()
+                            + "-" + playlist.version() + "\",\"type\":\"playlist\",\"tracks\":{\"total\":" + playlist.trackIds().size() + "}}"));
+            case "/v1/me/following" -> respond(exchange, 200, "{\"artists\":{\"items\":[" + String.join(",", followedArtists.stream()
+                    .map(name -> "{\"id\":\"" + name.hashCode() + "\",\"name\":" + jsonString(name) + ",\"type\":\"artist\"}").toList())
+                    + "],\"next\":null,\"cursors\":{\"after\":null},\"limit\":50,\"total\":" + followedArtists.size() + "}}");
+            case "/v1/me/player/queue" -> {
+                queuedUris.add(queryParameter(uri, "uri"));
+                respond(exchange, 204, null);
+            }
+            case "/v1/me/player/play", "/v1/me/player/pause", "/v1/me/player/next", "/v1/me/player/previous" -> {
+                String deviceId = queryParameter(uri, "device_id");
+                if (deviceId != null && !deviceIds.contains(deviceId)) {
+                    respond(exchange, 404, "{\"error\":{\"status\":404,\"message\":\"Device not found\"}}");
+                } else {
+                    respond(exchange, 204, null);
+                }
+            }
+            default -> {
+                Playlist playlist = path.startsWith("/v1/playlists/") && path.endsWith("/tracks")
+                        ? playlists.get(path.substring("/v1/playlists/".length(), path.length() - "/tracks".length()))
+                        : null;
+                String[] track = path.startsWith("/v1/tracks/") ? tracksById.get(path.substring("/v1/tracks/".length())) : null;
+                if (playlist != null) {
+                    respond(exchange, 200, page(uri, playlist.trackIds(), id ->
+                            "{\"added_at\":\"2024-01-01T00:00:00Z\",\"is_local\":false,\"track\":" + trackJson(tracksById.get(id)) + "}"));
+                } else if (track != null) {
+                    respond(exchange, 200, trackJson(track));
+                } else if (path.startsWith("/v1/artists/") && path.endsWith("/top-tracks")) {
+                    String artistId = path.substring("/v1/artists/".length(), path.length() - "/top-tracks".length());
+                    List<String> topTracks = catalog.stream().filter(t -> id(t[1]).equals(artistId)).limit(10)
+                            .map(MockSpotifyServer::trackJson).toList();
+                    respond(exchange, 200, "{\"tracks\":[" + String.join(",", topTracks) + "]}");
+                } else if (path.startsWith("/v1/albums/") && path.endsWith("/tracks")) {
+                    String albumId = path.substring("/v1/albums/".length(), path.length() - "/tracks".length());
+                    respond(exchange, 200, page(uri, catalog.stream().filter(t -> t[3] != null && id(t[3]).equals(albumId)).toList(),
+                            MockSpotifyServer::trackJson));
+                } else {
+                    respond(exchange, 404, "{\"error\":{\"status\":404,\"message\":\"Not found: " + path + "\"}}");
+                }
+            }
+        }
+    }
+
+    private String devicesJson() {
+        List<String> devices = new ArrayList<>();
+        List<String> ids = deviceIds;
+        for (int i = 0; i < ids.size(); i++) {
+            devices.add("{\"id\":\"" + ids.get(i) + "\",\"is_active\":" + (i == 0) + ",\"is_private_session\":false,"
+                    + "\"is_restricted\":false,\"name\":\"" + ids.get(i) + "\",\"type\":\"Computer\",\"volume_percent\":50}");
+        }
+        return "{\"devices\":[" + String.join(",", devices) + "]}";
+    }
+
+    /**
+     * A field-filtered query (track:"..." artist:"...") only returns exact matches, like Spotify's filters
+     * for a spoken title with a typo. A plain query returns the tracks sharing the most words with it.
+     */
+    private String searchJson(String query, String limitParameter) {
+        int limit = limitParameter == null ? 20 : Integer.parseInt(limitParameter);
+        String q = query == null ? "" : query.toLowerCase(Locale.ROOT);
+        List<String[]> results = new ArrayList<>();
+        Matcher filter = FIELD_FILTER.matcher(q);
+        if (filter.matches()) {
+            for (String[] track : catalog) {
+                if (track[0].equalsIgnoreCase(filter.group(1)) && track[1].equalsIgnoreCase(filter.group(2))) {
+                    results.add(track);
+                }
+            }
+        } else {
+            Set<String> words = new HashSet<>(Arrays.asList(q.split("\\s+")));
+            Map<String[], Integer> scores = new HashMap<>();
+            for (String[] track : catalog) {
+                int score = 0;
+                for (String word : (track[0] + " " + track[1]).toLowerCase(Locale.ROOT).split("\\s+")) {
+                    if (words.contains(word)) {
+                        score++;
+                    }
+                }
+                if (score > 0) {
+                    scores.put(track, score);
+                    results.add(track);
+                }
+            }
+            results.sort(Comparator.comparingInt((String[] track) -> scores.get(track)).reversed());
+        }
+
+        List<String> items = new ArrayList<>();
+        for (String[] track : results.subList(0, Math.min(limit, results.size()))) {
+            items.add(trackJson(track));
+        }
+        return "{\"tracks\":{\"items\":[" + String.join(",", items) + "],\"limit\":" + limit + ",\"offset\":0,\"total\":"
+                + results.size() + "}}";
+    }
+
+    private static String trackJson(String[] track) {
+        String album = track[3] == null ? "" : ",\"album\":{\"id\":\"" + id(track[3]) + "\",\"name\":" + jsonString(track[3])
+                + ",\"type\":\"album\"}";
+        return "{\"id\":\"" + track[2] + "\",\"name\":" + jsonString(track[0]) + ",\"uri\":\"spotify:track:" + track[2] + "\","
+                + "\"type\":\"track\",\"artists\":[{\"id\":\"" + id(track[1]) + "\",\"name\":" + jsonString(track[1])
+                + ",\"type\":\"artist\"}]" + album + "}";
+    }
+
+    /**
+     * @return The ID of an artist or album, derived from its name.
+     */
+    private static String id(String name) {
+        return "id" + Integer.toHexString(name.toLowerCase(Locale.ROOT).hashCode());
+    }
+
+    /**
+     * Answers one page of an offset-paged list, honouring the offset and limit parameters.
+     */
+    private static <T> String page(URI uri, List<T> all, java.util.function.Function<T, String> toJson) {
+        String offsetParameter = queryParameter(uri, "offset");
+        String limitParameter = queryParameter(uri, "limit");
+        int offset = offsetParameter == null ? 0 : Integer.parseInt(offsetParameter);
+        int limit = limitParameter == null ? 20 : Integer.parseInt(limitParameter);
+        List<T> snapshot = new ArrayList<>(all);
+        List<String> items = new ArrayList<>();
+        for (T item : snapshot.subList(Math.min(offset, snapshot.size()), Math.min(offset + limit, snapshot.size()))) {
+            items.add(toJson.apply(item));
+        }
+        String next = offset + limit < snapshot.size() ? "\"" + uri.getPath() + "?offset=" + (offset + limit) + "\"" : "null";
+        return "{\"items\":[" + String.join(",", items) + "],\"limit\":" + limit + ",\"offset\":" + offset
+                + ",\"next\":" + next + ",\"total\":" + snapshot.size() + "}";
+    }
+
+    private static String jsonString(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String queryParameter(URI uri, String name) {
+        if (uri.getRawQuery() == null) {
+            return null;
+        }
+        return Arrays.stream(uri.getRawQuery().split("&"))
+                .filter(pair -> pair.startsWith(name + "="))
+                .map(pair -> URLDecoder.decode(pair.substring(name.length() + 1), StandardCharsets.UTF_8))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private record Playlist(String id, String name, int version, List<String> trackIds) {
+    }
+}
@@ -0,0 +1,65 @@
+package org.quarkos.benchmark;
+
+import org.quarkos.Model;
+import org.quarkos.ai.RequestHedger;
+import org.quarkos.util.LatencyHistogram;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends simulated requests to two models whose latencies have a long tail, the way Gemini's do (mostly around a
+ * second, now and then several times that), once to the primary model alone and once hedged with a
+ * {@link RequestHedger}. Reports the latency percentiles of both, how often requests were hedged and how often
+ * the hedge won. Like a blocking HTTP call, a simulated request doesn't stop when it is cancelled. Time is scaled
+ * down a hundredfold. The number of requests can be passed as the first argument.
+ */
+public class RequestHedgingBenchmark {
+
+    private static final Model PRIMARY = Model.GEMINI_2_5_FLASH_LITE_PREVIEW_06_17;
+    private static final Model SECONDARY = Model.GEMINI_2_0_FLASH;
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        Random random = new Random(42);
+
+        LatencyHistogram unhedged = new LatencyHistogram();
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            answer(PRIMARY, random);
+            unhedged.recordSince(start);
+        }
+
+        RequestHedger hedger = new RequestHedger((prompt, model) -> answer(model, random), 95, 20, 20);
+        for (int i = 0; i < requests; i++) {
+            hedger.request("q", PRIMARY, SECONDARY);
+        }
+        RequestHedger.HedgeStats stats = hedger.getStats();
+        hedger.shutdown();
+
+        System.out.println("Primary only: " + unhedged.snapshot());
+        System.out.println("Hedged:       " + stats.hedgedLatency());
+        System.out.println(stats);
+    }
+
+    /**
+     * Takes 10ms give or take, one time in thirty up to 8 times as long; the secondary model is a bit slower.
+     */
+    private static String answer(Model model, Random random) {
+        double millis;
+        synchronized (random) {
+            millis = 8 + 4 * random.nextDouble();
+            if (random.nextInt(30) == 0) {
+                millis *= 1 + 7 * random.nextDouble();
+            }
+        }
+        if (model == SECONDARY) {
+            millis *= 1.2;
+        }
+        long end = System.nanoTime() + (long) (millis * 1e6);
+        while (System.nanoTime() < end) {
+            LockSupport.parkNanos(end - System.nanoTime()); // Returns early when interrupted, and is parked again.
+        }
+        return model.getModelName();
+    }
+}
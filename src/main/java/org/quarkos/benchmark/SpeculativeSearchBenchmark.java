@@ -0,0 +1,98 @@
+package org.quarkos.benchmark;
+
+import org.quarkos.spotify.SpotifyController;
+import org.quarkos.spotify.SpotifyDeviceCache;
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares sequential and speculative track search on a recorded set of play requests against the
+ * {@link MockSpotifyServer}. About a third of the requests have a misheard title or artist, so the
+ * high-precision search misses and the fallback search decides. Reports p50/p95 resolution latency.
+ * The simulated latency and jitter in milliseconds can be passed as the first two arguments.
+ */
+public class SpeculativeSearchBenchmark {
+
+    static final String[][] CATALOG = {
+            {"Bohemian Rhapsody", "Queen"}, {"Numb", "Linkin Park"}, {"Blinding Lights", "The Weeknd"},
+            {"Shape of You", "Ed Sheeran"}, {"Stand by Me", "Ben E. King"}, {"Hotel California", "Eagles"},
+            {"Levitating", "Dua Lipa"}, {"Smells Like Teen Spirit", "Nirvana"}, {"Believer", "Imagine Dragons"},
+            {"Atemlos durch die Nacht", "Helene Fischer"}, {"99 Luftballons", "Nena"}, {"Billie Jean", "Michael Jackson"},
+            {"Take on Me", "a-ha"}, {"Wonderwall", "Oasis"}, {"Hey Jude", "The Beatles"}, {"Africa", "Toto"},
+            {"Rolling in the Deep", "Adele"}, {"Bad Guy", "Billie Eilish"}, {"Mr. Brightside", "The Killers"},
+            {"Dancing Queen", "ABBA"}
+    };
+
+    // Requests as the parser hands them over: {track, artist}.
+    static final String[][] REQUESTS = {
+            {"bohemian rhapsody", "queen"}, {"numb", "linkin park"}, {"blinding lights", "the weeknd"},
+            {"shape of you", "ed sheeran"}, {"stand by me", "ben e king"}, {"hotel california", "the eagles"},
+            {"levitating", "dua lipa"}, {"smells like teen spirit", "nirvana"}, {"believer", "imagine dragons"},
+            {"atemlos durch die nacht", "helene fischer"}, {"99 luftballons", "nena"}, {"billie jean", "michael jackson"},
+            {"take on me", "aha"}, {"wonderwall", "oasis"}, {"hey jude", "beatles"}, {"africa", "toto"},
+            {"rolling in the deep", "adele"}, {"bad guy", "billie eilish"}, {"mr brightside", "the killers"},
+            {"dancing queen", "abba"}, {"bohemian rapsody", "queen"}, {"numb", "linkin park"}, {"wonderwall", "oasis"},
+            {"dancing queen", "abba"}, {"levitating", "dua leepa"}, {"billie jean", "michael jackson"}
+    };
+
+    public static void main(String[] args) throws Exception {
+        long latencyMillis = args.length > 0 ? Long.parseLong(args[0]) : 60;
+        long jitterMillis = args.length > 1 ? Long.parseLong(args[1]) : 40;
+        int rounds = 4;
+
+        try (MockSpotifyServer server = new MockSpotifyServer(latencyMillis)) {
+            for (String[] track : CATALOG) {
+                server.addTrack(track[0], track[1]);
+            }
+            server.setJitterMillis(jitterMillis);
+            SpotifyApi api = server.createApi();
+            SpotifyDeviceCache deviceCache = new SpotifyDeviceCache(api);
+            SpotifyController controller = new SpotifyController(api, deviceCache);
+
+            controller.setSpeculativeSearch(false);
+            measure(controller, 1); // Warm up the HTTP client.
+            server.resetCounts();
+            long[] sequential = measure(controller, rounds);
+            int sequentialRequests = server.getRequestCount("/v1/search");
+
+            controller.setSpeculativeSearch(true);
+            server.resetCounts();
+            long[] speculative = measure(controller, rounds);
+            int speculativeRequests = server.getRequestCount("/v1/search");
+
+            System.out.println("\n--- Speculative Search Benchmark (" + sequential.length + " requests, "
+                    + latencyMillis + "ms + up to " + jitterMillis + "ms per request) ---");
+            System.out.printf("Sequential:  p50 %4dms, p95 %4dms, %d search requests%n",
+                    percentile(sequential, 50), percentile(sequential, 95), sequentialRequests);
+            System.out.printf("Speculative: p50 %4dms, p95 %4dms, %d search requests%n",
+                    percentile(speculative, 50), percentile(speculative, 95), speculativeRequests);
+            deviceCache.shutdown();
+        }
+    }
+
+    private static long[] measure(SpotifyController controller, int rounds) {
+        List<Long> millis = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            for (String[] request : REQUESTS) {
+                long start = System.nanoTime();
+                Track track = controller.resolveTrack(request[0], request[1]);
+                millis.add((System.nanoTime() - start) / 1_000_000);
+                if (track == null) {
+                    System.out.println("Not found: " + Arrays.toString(request));
+                }
+            }
+        }
+        return millis.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long percentile(long[] values, int percentile) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
@@ -0,0 +1,70 @@
+package org.quarkos.benchmark;
+
+import org.quarkos.spotify.SpotifyController;
+import org.quarkos.spotify.SpotifyDeviceCache;
+import se.michaelthelin.spotify.SpotifyApi;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a session of playback commands against the {@link MockSpotifyServer} and compares the previous behaviour,
+ * one devices round-trip before every command, with the {@link SpotifyDeviceCache}. Halfway through the session
+ * the user switches to another device, so the cached run also pays for one "device not found" and its retry.
+ * The simulated network latency in milliseconds can be passed as the first argument.
+ */
+public class SpotifyDeviceCacheBenchmark {
+
+    private static final String DEVICES_PATH = "/v1/me/player/devices";
+    private static final List<Consumer<SpotifyController>> SESSION = List.of(
+            SpotifyController::pause, SpotifyController::resume, SpotifyController::skip,
+            SpotifyController::skip, SpotifyController::previous, SpotifyController::pause
+    );
+
+    public static void main(String[] args) throws Exception {
+        long latencyMillis = args.length > 0 ? Long.parseLong(args[0]) : 40;
+        int commands = 60;
+
+        try (MockSpotifyServer server = new MockSpotifyServer(latencyMillis)) {
+            SpotifyApi api = server.createApi();
+
+            // Warm up the HTTP client and its connection pool so the first run does not pay for it.
+            SpotifyDeviceCache warmup = new SpotifyDeviceCache(api, 30_000, 0);
+            run(server, new SpotifyController(api, warmup), SESSION.size() * 2, warmup::invalidate);
+
+            SpotifyDeviceCache uncached = new SpotifyDeviceCache(api, 30_000, 0);
+            // Invalidating before every command reproduces the old lookup per command.
+            Result previous = run(server, new SpotifyController(api, uncached), commands, uncached::invalidate);
+
+            SpotifyDeviceCache cache = new SpotifyDeviceCache(api, 30_000, 600_000).start();
+            Result cached = run(server, new SpotifyController(api, cache), commands, () -> { });
+            cache.shutdown();
+
+            System.out.println("\n--- Spotify Device Cache Benchmark (" + commands + " commands, " + latencyMillis + "ms per request) ---");
+            System.out.printf("Lookup per command: %.1fms/command, %d device requests%n", previous.millisPerCommand(), previous.deviceRequests());
+            System.out.printf("Device cache:       %.1fms/command, %d device requests%n", cached.millisPerCommand(), cached.deviceRequests());
+            System.out.println("Cache: " + cache.getStats() + ", saved round-trips: " + cache.getStats().savedRoundTrips());
+        }
+    }
+
+    private static Result run(MockSpotifyServer server, SpotifyController controller, int commands, Runnable beforeCommand)
+            throws InterruptedException {
+        server.setDevices("desktop", "phone");
+        server.resetCounts();
+        long start = System.nanoTime();
+        for (int i = 0; i < commands; i++) {
+            if (i == commands / 2) {
+                server.setDevices("phone"); // The desktop app was closed.
+            }
+            beforeCommand.run();
+            SESSION.get(i % SESSION.size()).accept(controller);
+            controller.getPlaybackCoalescer().awaitSent(5, TimeUnit.SECONDS); // Commands are sent in the background.
+        }
+        long elapsed = System.nanoTime() - start;
+        return new Result(elapsed / 1_000_000.0 / commands, server.getRequestCount(DEVICES_PATH));
+    }
+
+    private record Result(double millisPerCommand, int deviceRequests) {
+    }
+}
@@ -0,0 +1,106 @@
+package org.quarkos.benchmark;
+
+import org.quarkos.spotify.SpotifyHttpTransport;
+import se.michaelthelin.spotify.IHttpManager;
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.SpotifyHttpManager;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the library's default HTTP manager with the {@link SpotifyHttpTransport} against the
+ * {@link MockSpotifyServer}: the first request of a fresh transport (with and without prewarming),
+ * sequential requests, and bursts of parallel searches like the speculative search sends.
+ * Then prints the per-endpoint statistics of the transport.
+ * The simulated latency in milliseconds can be passed as the first argument.
+ */
+public class SpotifyTransportBenchmark {
+
+    private static final int REQUESTS = 200;
+    private static final int BURSTS = 50;
+    private static final int BURST_SIZE = 4;
+
+    public static void main(String[] args) throws Exception {
+        long latencyMillis = args.length > 0 ? Long.parseLong(args[0]) : 0;
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "benchmark");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (MockSpotifyServer server = new MockSpotifyServer(latencyMillis)) {
+            for (String[] track : SpeculativeSearchBenchmark.CATALOG) {
+                server.addTrack(track[0], track[1]);
+            }
+            URI origin = URI.create("http://localhost:" + server.apiBuilder().build().getPort());
+
+            // Warm up the JIT for both transports, so "first" below only measures the new connection.
+            run(null, server, new SpotifyHttpManager.Builder().build(), executor);
+            run(null, server, newTransport(), executor);
+
+            System.out.println("\n--- Spotify Transport Benchmark (" + latencyMillis + "ms per request) ---");
+            System.out.printf("%-28s %10s %12s %14s%n", "", "first", "sequential", "burst of " + BURST_SIZE);
+            run("SpotifyHttpManager", server, new SpotifyHttpManager.Builder().build(), executor);
+            SpotifyHttpTransport transport = newTransport();
+            run("SpotifyHttpTransport", server, transport, executor);
+            SpotifyHttpTransport prewarmed = newTransport();
+            prewarmed.prewarm(origin).join();
+            run("SpotifyHttpTransport, warm", server, prewarmed, executor);
+
+            System.out.println();
+            prewarmed.getStats().forEach(System.out::println);
+        }
+    }
+
+    private static SpotifyHttpTransport newTransport() {
+        return new SpotifyHttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(10), true);
+    }
+
+    private static void run(String label, MockSpotifyServer server, IHttpManager httpManager, ExecutorService executor) {
+        SpotifyApi api = server.apiBuilder().setHttpManager(httpManager).build();
+
+        long start = System.nanoTime();
+        search(api, 0);
+        double firstMillis = (System.nanoTime() - start) / 1e6;
+
+        for (int i = 0; i < REQUESTS; i++) { // Warm up.
+            search(api, i);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            search(api, i);
+        }
+        double sequentialMillis = (System.nanoTime() - start) / 1e6 / REQUESTS;
+
+        start = System.nanoTime();
+        for (int burst = 0; burst < BURSTS; burst++) {
+            List<CompletableFuture<Void>> searches = new ArrayList<>();
+            for (int i = 0; i < BURST_SIZE; i++) {
+                int index = burst * BURST_SIZE + i;
+                searches.add(CompletableFuture.runAsync(() -> search(api, index), executor));
+            }
+            CompletableFuture.allOf(searches.toArray(CompletableFuture<?>[]::new)).join();
+        }
+        double burstMillis = (System.nanoTime() - start) / 1e6 / BURSTS;
+
+        if (label != null) {
+            System.out.printf("%-28s %8.2fms %10.2fms %12.2fms%n", label + ":", firstMillis, sequentialMillis, burstMillis);
+        }
+    }
+
+    private static void search(SpotifyApi api, int index) {
+        String[] request = SpeculativeSearchBenchmark.REQUESTS[index % SpeculativeSearchBenchmark.REQUESTS.length];
+        try {
+            api.searchTracks(request[0] + " " + request[1]).limit(10).build().execute();
+        } catch (Exception e) {
+            throw new IllegalStateException("Search failed: " + Arrays.toString(request), e);
+        }
+    }
+}
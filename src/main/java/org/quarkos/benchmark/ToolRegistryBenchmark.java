@@ -0,0 +1,58 @@
+package org.quarkos.benchmark;
+
+import org.quarkos.ai.tool.ToolFunction;
+import org.quarkos.ai.tool.ToolParam;
+import org.quarkos.ai.tool.ToolRegistry;
+import org.quarkos.util.GeminiUtil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures the startup cost of scanning the tool functions and the cost of dispatching a call.
+ * Scanning does not initialize GeminiUtil, so no Spotify or Azure credentials are needed.
+ */
+public class ToolRegistryBenchmark {
+
+    public static void main(String[] args) {
+        long coldStart = System.nanoTime();
+        ToolRegistry registry = ToolRegistry.scan(GeminiUtil.class);
+        long coldNanos = System.nanoTime() - coldStart;
+
+        int scans = 1_000;
+        long warmStart = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            registry = ToolRegistry.scan(GeminiUtil.class);
+        }
+        long warmNanos = (System.nanoTime() - warmStart) / scans;
+
+        ToolRegistry benchmarkRegistry = ToolRegistry.scan(BenchmarkTools.class);
+        Map<String, Object> callArgs = new LinkedHashMap<>();
+        callArgs.put("city", "Salzburg");
+        callArgs.put("days", 3.0); // JSON numbers arrive as Double
+
+        int warmup = 200_000;
+        int runs = 2_000_000;
+        for (int i = 0; i < warmup; i++) {
+            benchmarkRegistry.dispatch("forecast", callArgs);
+        }
+        long dispatchStart = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            benchmarkRegistry.dispatch("forecast", callArgs);
+        }
+        double dispatchNanos = (double) (System.nanoTime() - dispatchStart) / runs;
+
+        System.out.println("\n--- Tool Registry Benchmark ---");
+        System.out.printf("Registered functions: %d%n", registry.getFunctionNames().size());
+        System.out.printf("Cold scan (first call, includes class loading): %.3fms%n", coldNanos / 1_000_000.0);
+        System.out.printf("Warm scan (average of %d): %.1fus%n", scans, warmNanos / 1_000.0);
+        System.out.printf("Dispatch (average of %d): %.1fns/call%n", runs, dispatchNanos);
+    }
+
+    static class BenchmarkTools {
+        @ToolFunction(description = "Benchmark function with typed arguments.")
+        static Map<String, Object> forecast(@ToolParam("city") String city, @ToolParam("days") int days) {
+            return Map.of("city", city, "days", days);
+        }
+    }
+}
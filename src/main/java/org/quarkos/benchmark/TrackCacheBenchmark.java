@@ -0,0 +1,71 @@
+package org.quarkos.benchmark;
+
+import org.quarkos.spotify.SpotifyController;
+import org.quarkos.spotify.SpotifyDeviceCache;
+import org.quarkos.spotify.TrackResolutionCache;
+import se.michaelthelin.spotify.SpotifyApi;
+
+/**
+ * Plays the recorded requests of the {@link SpeculativeSearchBenchmark} three times against the
+ * {@link MockSpotifyServer}: cold, repeated, and as near-repeats with different mishearings.
+ * Shows the time per play request and how many searches the {@link TrackResolutionCache} saved,
+ * then the cost of a cache lookup on its own.
+ */
+public class TrackCacheBenchmark {
+
+    // The same songs, misheard differently than in the recorded requests.
+    private static final String[][] NEAR_REPEATS = {
+            {"bohemian rhapsodie", "queen"}, {"numb", null}, {"blinding light", "weeknd"}, {"shape of you", null},
+            {"stand by me", "ben e. king"}, {"hotel californya", "eagles"}, {"levitating", "dua lipa"},
+            {"smells like teen spirits", "nirvana"}, {"believer", null}, {"atemlos", "helene fischer"},
+            {"99 luftballon", "nena"}, {"billy jean", "michael jackson"}, {"take on me", "a ha"},
+            {"wonder wall", "oasis"}, {"hey jude", "the beatles"}, {"africa", null}
+    };
+
+    public static void main(String[] args) throws Exception {
+        long latencyMillis = args.length > 0 ? Long.parseLong(args[0]) : 60;
+
+        try (MockSpotifyServer server = new MockSpotifyServer(latencyMillis)) {
+            for (String[] track : SpeculativeSearchBenchmark.CATALOG) {
+                server.addTrack(track[0], track[1]);
+            }
+            SpotifyApi api = server.createApi();
+            SpotifyDeviceCache deviceCache = new SpotifyDeviceCache(api);
+            TrackResolutionCache trackCache = new TrackResolutionCache();
+            SpotifyController controller = new SpotifyController(api, deviceCache, trackCache);
+            controller.getDeviceCache().getDeviceId();
+
+            System.out.println("\n--- Track Cache Benchmark (" + latencyMillis + "ms per request) ---");
+            run("Cold", server, controller, SpeculativeSearchBenchmark.REQUESTS);
+            run("Repeated", server, controller, SpeculativeSearchBenchmark.REQUESTS);
+            run("Near-repeats", server, controller, NEAR_REPEATS);
+            System.out.println("Cache: " + trackCache.getStats() + ", " + trackCache.size() + " resolved requests");
+
+            int warmup = 20_000;
+            int runs = 100;
+            for (int i = 0; i < warmup; i++) {
+                String[] request = NEAR_REPEATS[i % NEAR_REPEATS.length];
+                trackCache.lookup(request[0], request[1]);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                for (String[] request : NEAR_REPEATS) {
+                    trackCache.lookup(request[0], request[1]);
+                }
+            }
+            System.out.printf("Lookup (near-repeats): %.2fus%n", (System.nanoTime() - start) / 1_000.0 / (runs * NEAR_REPEATS.length));
+            deviceCache.shutdown();
+        }
+    }
+
+    private static void run(String label, MockSpotifyServer server, SpotifyController controller, String[][] requests) {
+        server.resetCounts();
+        long start = System.nanoTime();
+        for (String[] request : requests) {
+            controller.searchAndPlayTrack(request[0], request[1]);
+        }
+        double millis = (System.nanoTime() - start) / 1_000_000.0 / requests.length;
+        System.out.printf("%-13s %6.1fms/request, %3d search requests for %d play requests%n",
+                label + ":", millis, server.getRequestCount("/v1/search"), requests.length);
+    }
+}
@@ -0,0 +1,162 @@
+package org.quarkos.benchmark;
+
+import org.apache.commons.text.similarity.LevenshteinDistance;
+import org.quarkos.spotify.ResolvedTrack;
+import org.quarkos.spotify.TrackResolutionCache;
+import org.quarkos.spotify.TrackScorer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Ranks a generated library of several thousand tracks against misheard play requests, once with the old
+ * ranking (plain Levenshtein, lower-casing inside the comparator) and once with the {@link TrackScorer} over
+ * precomputed candidates, scanning every track. Then the same requests through the indexed fuzzy lookup
+ * of the {@link TrackResolutionCache}. Reports the time per request and how many requests found the right song.
+ * The library size can be passed as the first argument.
+ */
+public class TrackScorerBenchmark {
+
+    private static final String[] WORDS = {
+            "love", "night", "heart", "fire", "dream", "summer", "rain", "light", "dance", "city", "gold", "river",
+            "moon", "wild", "blue", "home", "time", "road", "sky", "young", "forever", "electric", "shadow", "ocean",
+            "liebe", "nacht", "herz", "sommer", "stadt", "himmel", "zeit", "welt", "morgen", "traum", "feuer", "weg"
+    };
+
+    // Misheard requests for the songs of the SpeculativeSearchBenchmark catalog: {track, artist, expected title}.
+    private static final String[][] REQUESTS = {
+            {"bohemian rapsody", "queen", "Bohemian Rhapsody"}, {"billy jean", null, "Billie Jean"},
+            {"levitating", "dua leepa", "Levitating"}, {"hotel californya", "eagles", "Hotel California"},
+            {"smells like teen spirits", "nirvana", "Smells Like Teen Spirit"}, {"wonder wall", "oasis", "Wonderwall"},
+            {"atemlos durch die nacht", "helene fisher", "Atemlos durch die Nacht"}, {"take on me", "a ha", "Take on Me"},
+            {"mister brightside", "the killers", "Mr. Brightside"}, {"blinding lites", null, "Blinding Lights"},
+            {"rolling in the deep", "adel", "Rolling in the Deep"}, {"shape of you", "ed sheran", "Shape of You"}
+    };
+
+    // Real titles that are spelled closer to some of the requests than the song that was meant.
+    private static final String[][] SOUND_ALIKES = {
+            {"Billy Bean", "Juno Reactor"}, {"Blinding Kites", "Paper Planes"}, {"Levitation", "Beach House"},
+            {"Mister Bright Side", "Cover Kings"}
+    };
+
+    public static void main(String[] args) {
+        int librarySize = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        List<ResolvedTrack> library = generateLibrary(librarySize);
+
+        List<TrackScorer.Candidate> candidates = prepare(library); // Warm up.
+        long prepareStart = System.nanoTime();
+        candidates = prepare(library);
+        double prepareMillis = (System.nanoTime() - prepareStart) / 1_000_000.0;
+
+        TrackResolutionCache cache = new TrackResolutionCache();
+        library.forEach(cache::addToIndex);
+
+        for (int i = 0; i < 20; i++) { // Warm up.
+            for (String[] request : REQUESTS) {
+                legacyBest(library, request[0], request[1]);
+                scorerBest(candidates, request[0], request[1]);
+                cache.lookup(request[0], request[1]);
+            }
+        }
+
+        int rounds = 20;
+        int legacyCorrect = 0;
+        int scorerCorrect = 0;
+        int indexCorrect = 0;
+        long legacyNanos = 0;
+        long scorerNanos = 0;
+        long indexNanos = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (String[] request : REQUESTS) {
+                long start = System.nanoTime();
+                ResolvedTrack legacy = legacyBest(library, request[0], request[1]);
+                legacyNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                ResolvedTrack scored = scorerBest(candidates, request[0], request[1]);
+                scorerNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                ResolvedTrack indexed = cache.lookup(request[0], request[1]).orElse(null);
+                indexNanos += System.nanoTime() - start;
+
+                if (round == 0) {
+                    legacyCorrect += legacy.name().equals(request[2]) ? 1 : 0;
+                    scorerCorrect += scored.name().equals(request[2]) ? 1 : 0;
+                    indexCorrect += indexed != null && indexed.name().equals(request[2]) ? 1 : 0;
+                }
+            }
+        }
+
+        int lookups = rounds * REQUESTS.length;
+        System.out.println("\n--- Track Scorer Benchmark (" + library.size() + " library tracks, " + REQUESTS.length + " misheard requests) ---");
+        System.out.printf("Preparing candidates:            %7.1fms once%n", prepareMillis);
+        System.out.printf("Levenshtein, full scan:          %7.2fms/request, %2d/%d correct%n",
+                legacyNanos / 1_000_000.0 / lookups, legacyCorrect, REQUESTS.length);
+        System.out.printf("TrackScorer, full scan:          %7.2fms/request, %2d/%d correct%n",
+                scorerNanos / 1_000_000.0 / lookups, scorerCorrect, REQUESTS.length);
+        System.out.printf("TrackScorer, index (>= 0.8):     %7.2fms/request, %2d/%d correct%n",
+                indexNanos / 1_000_000.0 / lookups, indexCorrect, REQUESTS.length);
+    }
+
+    private static List<TrackScorer.Candidate> prepare(List<ResolvedTrack> library) {
+        List<TrackScorer.Candidate> candidates = new ArrayList<>(library.size());
+        for (ResolvedTrack track : library) {
+            candidates.add(TrackScorer.Candidate.of(track));
+        }
+        return candidates;
+    }
+
+    /**
+     * The ranking SpotifyController used before the TrackScorer.
+     */
+    private static ResolvedTrack legacyBest(List<ResolvedTrack> library, String trackName, String artistName) {
+        LevenshteinDistance levenshtein = LevenshteinDistance.getDefaultInstance();
+        return library.stream()
+                .min(Comparator.comparingInt(track -> {
+                    int trackDistance = levenshtein.apply(trackName.toLowerCase(), track.name().toLowerCase());
+                    if (artistName != null && track.artist() != null) {
+                        int artistDistance = levenshtein.apply(artistName.toLowerCase(), track.artist().toLowerCase());
+                        return (trackDistance * 2) + artistDistance;
+                    }
+                    return trackDistance;
+                }))
+                .orElse(null);
+    }
+
+    private static ResolvedTrack scorerBest(List<TrackScorer.Candidate> candidates, String trackName, String artistName) {
+        TrackScorer.Candidate best = TrackScorer.best(TrackScorer.Query.of(trackName, artistName), candidates);
+        return best == null ? null : best.track();
+    }
+
+    private static List<ResolvedTrack> generateLibrary(int size) {
+        Random random = new Random(42);
+        List<ResolvedTrack> library = new ArrayList<>(size);
+        for (String[] track : SpeculativeSearchBenchmark.CATALOG) {
+            library.add(new ResolvedTrack("spotify:track:" + library.size(), track[0], track[1]));
+        }
+        for (String[] track : SOUND_ALIKES) {
+            library.add(new ResolvedTrack("spotify:track:" + library.size(), track[0], track[1]));
+        }
+        while (library.size() < size) {
+            String title = words(random, 1 + random.nextInt(4));
+            String artist = words(random, 1 + random.nextInt(2));
+            library.add(new ResolvedTrack("spotify:track:" + library.size(), title, artist));
+        }
+        // The songs that are looked for shouldn't be the first ones scanned.
+        Collections.shuffle(library, random);
+        return library;
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            text.append(i == 0 ? "" : " ").append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package org.quarkos.benchmark;
+
+import java.util.List;
+
+/**
+ * A set of voice commands as they come out of Whisper, used by the command parsing benchmarks.
+ * It mixes simple controls, play requests with and without artist, German commands and
+ * requests that really need the LLM.
+ */
+public class VoiceCommandCorpus {
+
+    public static final List<String> COMMANDS = List.of(
+            "Pause.",
+            "Pause the music.",
+            "Stop the music, please.",
+            "Next song.",
+            "Skip.",
+            "Skip this song.",
+            "Next.",
+            "Resume.",
+            "Continue playing.",
+            "Go back.",
+            "Previous track.",
+            "Play Bohemian Rhapsody by Queen.",
+            "Play the song Numb by Linkin Park.",
+            "Can you play Blinding Lights by The Weeknd?",
+            "Please play Shape of You.",
+            "Play stand by me by Ben E King.",
+            "Listen to Hotel California by the Eagles.",
+            "Search for the track Levitating by Dua Lipa.",
+            "Play Smells Like Teen Spirit from Nirvana.",
+            "Play the trick Believer by Imagine Dragons.",
+            "Spiele Atemlos durch die Nacht von Helene Fischer.",
+            "Spiel 99 Luftballons von Nena.",
+            "Nächstes Lied bitte.",
+            "Zurück.",
+            "Musik pausieren.",
+            "[00:00.000 --> 00:02.480]  Play Billie Jean by Michael Jackson.",
+            "[00:00.000 --> 00:01.200]  Skip this song.",
+            "What's the weather like in Salzburg?",
+            "Set a timer for 10 minutes.",
+            "Remind me to call mom at 8pm.",
+            "What time is it in Tokyo?",
+            "Play something relaxing and then set a timer for 20 minutes.",
+            "Pause and remind me in 5 minutes to continue.",
+            "Could you turn it up a bit?",
+            "Who sings this song?",
+            "Play some music from the eighties."
+    );
+}
@@ -21,18 +21,17 @@ public class SynapseHotkeyDemo {
             System.out.println("Synapse Hotkey Demo Initialized");
             System.out.println("====================================");
             System.out.println("The following hotkeys are available:");
-            System.out.println("CTRL+SHIFT+S: Toggle Synapse activation");
-            System.out.println("CTRL+ALT+C: Force answer generation for current clipboard content");
-            System.out.println("CTRL+SHIFT+,: Show settings");
-            System.out.println("CTRL+ALT+Q: Exit application");
-            System.out.println("CTRL+SHIFT+H: Show clipboard history");
+            System.out.println("CTRL+ALT+SHIFT+S: Toggle Synapse activation");
+            System.out.println("CTRL+SHIFT+C: Force answer generation for current clipboard content");
+            System.out.println("CTRL+SPACE, then S: Show settings");
+            System.out.println("CTRL+SPACE, then Q: Exit application");
+            System.out.println("CTRL+SPACE, then H: Show clipboard history");
             System.out.println("CTRL+SHIFT+LEFT/RIGHT: Navigate clipboard history");
             System.out.println("CTRL+ALT+O: Copy original question");
             System.out.println("CTRL+ALT+R: Regenerate last answer");
-            System.out.println("CTRL+ALT+D: Toggle between detailed and concise answers");
             System.out.println("CTRL+SHIFT+D: Toggle debug mode");
             System.out.println("====================================");
-            System.out.println("Press CTRL+ALT+Q to exit");
+            System.out.println("Press CTRL+SPACE, then Q to exit");
 
             // Keep the application running
             while (true) {
@@ -72,5 +71,52 @@ public class SynapseHotkeyDemo {
             debugMode = !debugMode;
             System.out.println("Debug mode is now " + (debugMode ? "on" : "off"));
         }
+
+        @Override
+        public void onPreviousAnswer() {
+            if (debugMode) {
+                System.out.println("Copying the previous answer from the clipboard history");
+            }
+        }
+
+        @Override
+        public void onNextAnswer() {
+            if (debugMode) {
+                System.out.println("Copying the next answer from the clipboard history");
+            }
+        }
+
+        @Override
+        public void onRegenerateAnswer() {
+            if (debugMode) {
+                System.out.println("Regenerating the current answer");
+            }
+        }
+
+        @Override
+        public void onCopyQuestion() {
+            if (debugMode) {
+                System.out.println("Copying the question of the current answer");
+            }
+        }
+
+        @Override
+        public void onShowSettings() {
+            System.out.println("Settings: Synapse " + (synapseActive ? "active" : "inactive")
+                    + ", debug mode " + (debugMode ? "on" : "off"));
+        }
+
+        @Override
+        public void onShowClipboardHistory() {
+            if (debugMode) {
+                System.out.println("Showing the clipboard history");
+            }
+        }
+
+        @Override
+        public void onExit() {
+            System.out.println("Exiting Synapse Hotkey Demo");
+            System.exit(0);
+        }
     }
 }
@@ -1,10 +1,13 @@
 package org.quarkos.example;
 
+import org.quarkos.intent.IntentRouter;
 import org.quarkos.spotify.SpotifyAuthenticator;
 import org.quarkos.spotify.SpotifyController;
+import org.quarkos.util.GeminiUtil;
 import org.quarkos.voice.WhisperVoiceListener;
 import org.quarkos.voice.command.CommandParser;
 
+import java.util.Arrays;
 import java.util.Scanner;
 
 /**
@@ -23,11 +26,16 @@ import java.util.Scanner;
  * 4. Speak a command like "Play Bohemian Rhapsody" into your microphone.
  * 5. The application will print the transcribed text and execute the command.
  * 6. To stop the application, type "exit" in the console where it's running and press Enter.
+ *
+ * With the argument "--intent-router", commands go through the {@link IntentRouter} instead of the
+ * {@link CommandParser}: simple ones are handled locally, anything else by Gemini with function calling.
+ * How many were served locally and how much time that saved is printed after each command and at the end.
  */
 public class VoiceControlledSpotifyExample {
 
     public static void main(String[] args) {
         System.out.println("--- Starting Synapse Voice Controller ---");
+        boolean useIntentRouter = Arrays.asList(args).contains("--intent-router");
 
         // Step 1: Handle Spotify Authentication
         // The SpotifyAuthenticator handles the entire OAuth 2.0 flow.
@@ -42,17 +50,22 @@ public class VoiceControlledSpotifyExample {
         // This object will be responsible for all interactions with the Spotify API,
         // such as searching for and playing tracks. It needs the authenticated API client.
         SpotifyController spotifyController = new SpotifyController(authenticator.getSpotifyApi());
+        GeminiUtil.setSpotifyController(spotifyController); // The tool functions use the same one
 
         // Step 3: Create the Command Parser
         // The parser's job is to take raw text and convert it into a concrete Command object.
         // It needs the spotifyController to pass it to the commands it creates.
-        CommandParser commandParser = new CommandParser(spotifyController);
+        // The intent router instead dispatches to the tool functions, which need the authentication from step 1.
+        IntentRouter intentRouter = useIntentRouter ? new IntentRouter() : null;
+        CommandParser commandParser = useIntentRouter ? null : new CommandParser(spotifyController);
 
         // Step 4: Create and Start the Voice Listener
         // The VoiceListener handles all microphone input and streams it to the
         // Google Cloud Speech-to-Text API. When it gets a result, it passes the
         // text to the commandParser.
-        WhisperVoiceListener voiceListener = new WhisperVoiceListener(commandParser);
+        WhisperVoiceListener voiceListener = useIntentRouter
+                ? new WhisperVoiceListener(intentRouter)
+                : new WhisperVoiceListener(commandParser);
         voiceListener.startListening(); // This starts the listener on a new background thread.
 
         // Step 5: Keep the main application alive
@@ -75,6 +88,14 @@ public class VoiceControlledSpotifyExample {
         // Step 6: Gracefully shut down the application
         System.out.println("--- Shutting down ---");
         voiceListener.stopListening(); // Signal the voice listener to stop
+        // Show how long the Spotify calls of this session took, per endpoint.
+        SpotifyAuthenticator.getHttpTransport().getStats().forEach(System.out::println);
+        System.out.println("Rate limiter: " + SpotifyAuthenticator.getRateLimiter().getStats());
+        System.out.println("Playback: " + spotifyController.getPlaybackCoalescer().getStats());
+        System.out.println("Prefetch: " + spotifyController.getPrefetcher().getStats());
+        if (intentRouter != null) {
+            System.out.println("Intent routing: " + intentRouter.getStats());
+        }
         System.out.println("Application has been terminated.");
     }
 }
\ No newline at end of file
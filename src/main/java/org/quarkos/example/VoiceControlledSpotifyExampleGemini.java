@@ -1,7 +1,10 @@
 package org.quarkos.example;
 
+import org.quarkos.Configuration;
 import org.quarkos.spotify.SpotifyAuthenticator;
 import org.quarkos.spotify.SpotifyController;
+import org.quarkos.util.GeminiUtil;
+import org.quarkos.voice.TextToSpeech;
 import org.quarkos.voice.WhisperVoiceListener;
 import org.quarkos.voice.command.GeminiCommandParser;
 import org.slf4j.Logger;
@@ -23,7 +26,10 @@ public class VoiceControlledSpotifyExampleGemini {
 
         // Initialize the components
         logger.info("Step 2: Initializing components...");
+        // Common confirmations are synthesized in the background now, so they play instantly later.
+        TextToSpeech.presynthesize(Configuration.TTS_COMMON_PHRASES);
         SpotifyController spotifyController = new SpotifyController(spotifyApi);
+        GeminiUtil.setSpotifyController(spotifyController); // The tool functions use the same one
         GeminiCommandParser geminiCommandParser = new GeminiCommandParser(spotifyController);
         WhisperVoiceListener voiceListener = new WhisperVoiceListener(geminiCommandParser);
         logger.info("Components initialized.");
@@ -36,6 +42,7 @@ public class VoiceControlledSpotifyExampleGemini {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             logger.info("Shutdown hook triggered. Stopping voice listener.");
             voiceListener.stopListening();
+            TextToSpeech.getRouter().getStats().forEach((engine, stats) -> logger.info("TTS {}: {}", engine, stats));
         }));
 
         logger.info("Voice control is active. Say a command like \"Play Bohemian Rhapsody by Queen\".");
@@ -0,0 +1,202 @@
+package org.quarkos.hotkey;
+
+import org.quarkos.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs hotkey actions off the native hook thread. The hook thread only hands the action over and returns,
+ * so a slow action (e.g. a Gemini request) never holds up the system's keyboard events.
+ *
+ * <p>Each action has a {@link Policy} for being triggered again while it is still running or was just run.
+ * Per action, the time from the key press to the start of the action is measured, along with how often it was
+ * triggered, dropped, cancelled and how often it failed.</p>
+ */
+public class HotkeyActionExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotkeyActionExecutor.class);
+
+    /**
+     * What happens when an action is triggered again.
+     */
+    public enum Policy {
+        /** Runs right away; triggers within the debounce time of the previous one are dropped, e.g. for toggles. */
+        DEBOUNCE,
+        /** Triggers are dropped while the action is still running. */
+        SINGLE_FLIGHT,
+        /** The running action is cancelled (interrupted) and started over, e.g. when newer input replaces older. */
+        CANCEL_PREVIOUS
+    }
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+    // Actions mostly wait on the network; a cached pool keeps an idle thread ready, so starting one is quick.
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hotkey-action-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Action> actions = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param name The name in logs and statistics, e.g. the key combination.
+     * @param action What to run.
+     * @param policy What happens when it is triggered again.
+     * @param debounceMillis For {@link Policy#DEBOUNCE}: how long after a trigger further ones are dropped.
+     * @return The action, to trigger from the hook thread.
+     */
+    public Action register(String name, Runnable action, Policy policy, long debounceMillis) {
+        Action registered = new Action(name, action, policy, TimeUnit.MILLISECONDS.toNanos(debounceMillis));
+        actions.add(registered);
+        return registered;
+    }
+
+    /**
+     * Stops the registered action from being counted in the statistics, e.g. after its hotkey was unregistered.
+     */
+    public void unregister(Action action) {
+        actions.remove(action);
+    }
+
+    /**
+     * @return The statistics per action, by name.
+     */
+    public Map<String, ActionStats> getStats() {
+        Map<String, ActionStats> stats = new LinkedHashMap<>();
+        for (Action action : actions) {
+            stats.put(action.name, action.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Interrupts running actions and stops the threads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A registered action.
+     */
+    public final class Action {
+
+        private final String name;
+        private final Runnable action;
+        private final Policy policy;
+        private final long debounceNanos;
+
+        private final AtomicLong lastTrigger = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final AtomicReference<Future<?>> current = new AtomicReference<>();
+
+        private final AtomicLong triggered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong cancelled = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final LatencyHistogram startLatency = new LatencyHistogram();
+
+        private Action(String name, Runnable action, Policy policy, long debounceNanos) {
+            this.name = name;
+            this.action = action;
+            this.policy = policy;
+            this.debounceNanos = debounceNanos;
+        }
+
+        /**
+         * Starts the action according to its policy. Returns right away; meant for the hook thread.
+         */
+        public void trigger() {
+            long now = System.nanoTime();
+            triggered.incrementAndGet();
+            switch (policy) {
+                case DEBOUNCE -> {
+                    long last = lastTrigger.get();
+                    if ((last != Long.MIN_VALUE && now - last < debounceNanos) || !lastTrigger.compareAndSet(last, now)) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    submit(now);
+                }
+                case SINGLE_FLIGHT -> {
+                    if (!running.compareAndSet(false, true)) {
+                        dropped.incrementAndGet();
+                        return;
+                    }
+                    submit(now);
+                }
+                case CANCEL_PREVIOUS -> {
+                    Future<?> previous = current.getAndSet(submit(now));
+                    if (previous != null && previous.cancel(true)) {
+                        cancelled.incrementAndGet();
+                        logger.debug("Hotkey action {} started over.", name);
+                    }
+                }
+            }
+        }
+
+        public Policy getPolicy() {
+            return policy;
+        }
+
+        public ActionStats getStats() {
+            return new ActionStats(triggered.get(), dropped.get(), cancelled.get(), failed.get(), startLatency.snapshot());
+        }
+
+        private Future<?> submit(long triggeredAt) {
+            try {
+                return executor.submit(() -> run(triggeredAt));
+            } catch (RuntimeException e) {
+                // Shut down.
+                running.set(false);
+                dropped.incrementAndGet();
+                return null;
+            }
+        }
+
+        private void run(long triggeredAt) {
+            startLatency.recordSince(triggeredAt);
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                logger.error("Hotkey action {} failed.", name, e);
+            } finally {
+                running.set(false);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * @param triggered Key presses that triggered the action.
+     * @param dropped Triggers that were ignored by the policy.
+     * @param cancelled Runs that were cancelled by a newer trigger.
+     * @param failed Runs that threw an exception.
+     * @param startLatency The time from the key press to the start of the action.
+     */
+    public record ActionStats(long triggered, long dropped, long cancelled, long failed, LatencyHistogram.Snapshot startLatency) {
+
+        @Override
+        public String toString() {
+            return String.format("%d triggered, %d dropped, %d cancelled, %d failed, start: %s",
+                    triggered, dropped, cancelled, failed, startLatency);
+        }
+    }
+}
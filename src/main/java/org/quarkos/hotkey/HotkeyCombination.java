@@ -3,6 +3,7 @@ package org.quarkos.hotkey;
 import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Map;
 
 /**
@@ -11,6 +12,8 @@ import java.util.Map;
  */
 public class HotkeyCombination {
     private final int[] keyCodes;
+    private final int[] distinctKeyCodes;
+    private final long chordHash;
 
     /**
      * Creates a new hotkey combination with the specified key codes.
@@ -19,6 +22,8 @@ public class HotkeyCombination {
     public HotkeyCombination(int... keyCodes) {
         this.keyCodes = Arrays.copyOf(keyCodes, keyCodes.length);
         Arrays.sort(this.keyCodes); // Sort for consistent equals/hashCode
+        this.distinctKeyCodes = Arrays.stream(this.keyCodes).distinct().toArray();
+        this.chordHash = HotkeyMatcher.chordHash(distinctKeyCodes);
     }
 
     /**
@@ -51,6 +56,31 @@ public class HotkeyCombination {
         return totalPressed == keyCodes.length;
     }
 
+    /**
+     * Checks if exactly the keys of this combination are held.
+     * @param pressed The key codes that are held
+     * @param pressedCount The number of key codes that are held
+     * @return true if all keys in this combination and no others are held
+     */
+    boolean matches(BitSet pressed, int pressedCount) {
+        if (pressedCount != distinctKeyCodes.length) {
+            return false;
+        }
+        for (int keyCode : distinctKeyCodes) {
+            if (!pressed.get(keyCode)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The Zobrist hash of the keys, see {@link HotkeyMatcher}
+     */
+    long chordHash() {
+        return chordHash;
+    }
+
     /**
      * Convenience method to create a CTRL+key combination.
      * @param key The main key code
@@ -4,24 +4,30 @@ import com.github.kwhat.jnativehook.GlobalScreen;
 import com.github.kwhat.jnativehook.NativeHookException;
 import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
 import com.github.kwhat.jnativehook.keyboard.NativeKeyListener;
+import org.quarkos.Configuration;
+import org.quarkos.util.LatencyHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.logging.Level;
-
 
 /**
  * A manager for global hotkeys using JNativeHook library
  * This class allows registering callbacks for specific key combinations
- * that will trigger even when the application is not in focus
+ * that will trigger even when the application is not in focus.
+ * Key events are matched against the registered combinations by a {@link HotkeyMatcher}, in constant time
+ * per event, as every key typed anywhere on the system goes through here.
+ * The actions run on a {@link HotkeyActionExecutor}, never on the hook thread, so the hook returns right away.
  */
 public class HotkeyManager implements NativeKeyListener {
 
     private static final Logger logger = LoggerFactory.getLogger(HotkeyManager.class);
-    private final Map<HotkeyCombination, Runnable> registeredHotkeys;
-    private final Map<Integer, Boolean> pressedKeys;
+    // Hook callbacks take microseconds; the default 100µs floor would put every one in the first bucket.
+    private static final long HOOK_LATENCY_MIN_NANOS = 1_000;
+    private final HotkeyMatcher<HotkeyActionExecutor.Action> matcher = new HotkeyMatcher<>(Configuration.HOTKEY_SEQUENCE_TIMEOUT_MS);
+    private final HotkeyActionExecutor executor = new HotkeyActionExecutor();
+    // Time spent in the hook callback per key press or release, which holds up the system's keyboard events.
+    private final LatencyHistogram hookLatency = new LatencyHistogram(HOOK_LATENCY_MIN_NANOS);
 
     /**
      * Exception thrown when there's an issue with the hotkey functionality
@@ -36,9 +42,6 @@ public class HotkeyManager implements NativeKeyListener {
     }
 
     public HotkeyManager() throws HotkeyException {
-        registeredHotkeys = new HashMap<>();
-        pressedKeys = new HashMap<>();
-
         try {
             GlobalScreen.registerNativeHook();
         } catch (NativeHookException e) {
@@ -50,32 +53,101 @@ public class HotkeyManager implements NativeKeyListener {
         GlobalScreen.addNativeKeyListener(this);
     }
 
+    /**
+     * Registers an action that is not started again while it is still running.
+     */
     public void registerHotkey(HotkeyCombination combination, Runnable action) {
-        if (combination == null || action == null) {
-            // Or throw an IllegalArgumentException
-            logger.error("HotkeyCombination or Runnable action cannot be null.");
+        registerHotkey(combination, action, HotkeyActionExecutor.Policy.SINGLE_FLIGHT);
+    }
+
+    /**
+     * Registers an action with the given policy for repeated presses; debounced actions use
+     * {@link Configuration#HOTKEY_DEBOUNCE_MS}.
+     */
+    public void registerHotkey(HotkeyCombination combination, Runnable action, HotkeyActionExecutor.Policy policy) {
+        if (combination == null) {
+            logger.error("HotkeyCombination cannot be null.");
             return;
         }
-        registeredHotkeys.put(combination, action);
+        registerSequence(HotkeySequence.of(combination), action, policy);
     }
 
     public void unregisterHotkey(HotkeyCombination combination) {
         if (combination == null) {
             return;
         }
-        registeredHotkeys.remove(combination);
+        unregisterSequence(HotkeySequence.of(combination));
+    }
+
+    /**
+     * Registers an action for combinations pressed one after the other, e.g. CTRL+SPACE then C.
+     * Each combination has to follow the previous one within {@link Configuration#HOTKEY_SEQUENCE_TIMEOUT_MS}.
+     * The action is not started again while it is still running.
+     */
+    public void registerSequence(HotkeySequence sequence, Runnable action) {
+        registerSequence(sequence, action, HotkeyActionExecutor.Policy.SINGLE_FLIGHT);
+    }
+
+    /**
+     * Registers an action for a sequence with the given policy for repeated presses. A sequence can't start
+     * with another registered sequence or combination, as it could never be completed.
+     */
+    public void registerSequence(HotkeySequence sequence, Runnable action, HotkeyActionExecutor.Policy policy) {
+        if (sequence == null || action == null || policy == null) {
+            // Or throw an IllegalArgumentException
+            logger.error("HotkeySequence, Runnable action or policy cannot be null.");
+            return;
+        }
+        HotkeyActionExecutor.Action registered = executor.register(sequence.toString(), action, policy, Configuration.HOTKEY_DEBOUNCE_MS);
+        try {
+            HotkeyActionExecutor.Action previous = matcher.put(sequence, registered);
+            if (previous != null) {
+                executor.unregister(previous);
+            }
+        } catch (IllegalArgumentException e) {
+            executor.unregister(registered);
+            logger.error("Cannot register hotkey: {}", e.getMessage());
+        }
+    }
+
+    public void unregisterSequence(HotkeySequence sequence) {
+        if (sequence == null) {
+            return;
+        }
+        HotkeyActionExecutor.Action removed = matcher.remove(sequence);
+        if (removed != null) {
+            executor.unregister(removed);
+        }
     }
 
-    // TODO: Implement single key registration if needed
+    /**
+     * @return The statistics per hotkey action, by key combination.
+     */
+    public Map<String, HotkeyActionExecutor.ActionStats> getActionStats() {
+        return executor.getStats();
+    }
+
+    /**
+     * @return The time spent in the hook callback per key press or release, whether or not a hotkey matched.
+     */
+    public LatencyHistogram.Snapshot getHookLatency() {
+        return hookLatency.snapshot();
+    }
+
+    /**
+     * Registers an action for a single key pressed on its own, e.g. ESC. It does not trigger while other keys
+     * are held.
+     */
     public void registerSingleKey(int keyCode, Runnable action) {
-        System.out.println("registerSingleKey is not yet implemented.");
+        registerHotkey(new HotkeyCombination(keyCode), action);
     }
 
     public void unregisterSingleKey(int keyCode) {
-        System.out.println("unregisterSingleKey is not yet implemented.");
+        unregisterHotkey(new HotkeyCombination(keyCode));
     }
 
     public void shutdown() {
+        executor.shutdown();
         try {
             GlobalScreen.removeNativeKeyListener(this);
             GlobalScreen.unregisterNativeHook();
@@ -88,41 +160,24 @@ public class HotkeyManager implements NativeKeyListener {
 
     @Override
     public void nativeKeyPressed(NativeKeyEvent e) {
-        pressedKeys.put(e.getKeyCode(), true);
-         logger.debug("Key Pressed: " + NativeKeyEvent.getKeyText(e.getKeyCode()));
-         printPressedKeys(); // For debugging
-
-        for (Map.Entry<HotkeyCombination, Runnable> entry : registeredHotkeys.entrySet()) {
-            if (entry.getKey().isPressed(pressedKeys)) {
-                 System.out.println("Hotkey combination pressed: " + entry.getKey());
-                entry.getValue().run(); // Execute the action
-            }
+        long start = System.nanoTime();
+        HotkeyMatcher.Binding<HotkeyActionExecutor.Action> binding = matcher.keyPressed(e.getKeyCode());
+        if (binding != null) {
+            binding.action().trigger(); // Hands the action over to the executor
+            logger.debug("Hotkey pressed: {}", binding.sequence());
         }
+        hookLatency.recordSince(start);
     }
 
     @Override
     public void nativeKeyReleased(NativeKeyEvent e) {
-        pressedKeys.put(e.getKeyCode(), false);
-        // Or pressedKeys.remove(e.getKeyCode()); if you prefer to only store currently pressed keys
-         System.out.println("Key Released: " + NativeKeyEvent.getKeyText(e.getKeyCode()));
-         printPressedKeys(); // For debugging
+        long start = System.nanoTime();
+        matcher.keyReleased(e.getKeyCode());
+        hookLatency.recordSince(start);
     }
 
     @Override
     public void nativeKeyTyped(NativeKeyEvent e) {
         // Not used for hotkey combinations
     }
-
-    // Optional: For debugging purposes
-
-    private void printPressedKeys() {
-        System.out.print("Currently pressed: ");
-        for (Map.Entry<Integer, Boolean> entry : pressedKeys.entrySet()) {
-            if (entry.getValue()) {
-                System.out.print(NativeKeyEvent.getKeyText(entry.getKey()) + " ");
-            }
-        }
-        System.out.println();
-    }
-
 }
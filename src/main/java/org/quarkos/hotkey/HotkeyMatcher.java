@@ -0,0 +1,323 @@
+package org.quarkos.hotkey;
+
+import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the hotkey bound to the keys that are currently held, in constant time per key event however many
+ * hotkeys are registered.
+ *
+ * <p>The held keys are kept in a {@link BitSet} together with a Zobrist hash of the chord: every key code has a
+ * fixed random 64-bit value, and the chord's hash is the XOR of the values of its keys, so pressing or releasing
+ * a key updates it with a single XOR. The bindings live in open-addressing tables keyed by that hash; a key
+ * press is one probe of a table, without allocating.</p>
+ *
+ * <p>{@link HotkeySequence Sequences} are matched by a trie of such tables: the first combination of a sequence
+ * leads from the root to a node, whose table holds the combinations that may follow, and so on. A key press is
+ * looked up in the current node only; the sequence is abandoned when a key that is not a modifier doesn't
+ * continue it, or when the next combination doesn't follow within the timeout. A sequence can't start with
+ * another bound sequence or combination, so every binding triggers as soon as it is complete.</p>
+ *
+ * <p>Key events are expected from one thread, the native hook's dispatch thread. Bindings can be changed from any
+ * thread: each change publishes a new trie.</p>
+ *
+ * @param <T> The action bound to a combination or sequence.
+ */
+public class HotkeyMatcher<T> {
+
+    private final long sequenceTimeoutNanos;
+    private final Map<HotkeySequence, T> bindings = new LinkedHashMap<>();
+    private volatile Node<T> root = Node.build(List.of(), 0);
+
+    // Only touched by the key event thread.
+    private final BitSet pressed = new BitSet(256);
+    private int pressedCount;
+    private long chordHash;
+    private Node<T> pending; // the node of a started sequence, or null
+    private long pendingSince;
+
+    /**
+     * @param sequenceTimeoutMillis How long the next combination of a sequence may take.
+     */
+    public HotkeyMatcher(long sequenceTimeoutMillis) {
+        this.sequenceTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sequenceTimeoutMillis);
+    }
+
+    /**
+     * Binds the action to the combination, replacing the previous one.
+     *
+     * @return The action that was bound to the combination before, or null.
+     * @throws IllegalArgumentException If a bound sequence starts with the combination.
+     */
+    public T put(HotkeyCombination combination, T action) {
+        return put(HotkeySequence.of(combination), action);
+    }
+
+    /**
+     * Binds the action to the sequence, replacing the previous one.
+     *
+     * @return The action that was bound to the sequence before, or null.
+     * @throws IllegalArgumentException If the sequence starts with a bound one or a bound one starts with it.
+     */
+    public synchronized T put(HotkeySequence sequence, T action) {
+        for (HotkeySequence bound : bindings.keySet()) {
+            if (!bound.equals(sequence) && (bound.startsWith(sequence) || sequence.startsWith(bound))) {
+                throw new IllegalArgumentException(sequence + " conflicts with " + bound);
+            }
+        }
+        T previous = bindings.put(sequence, action);
+        rebuild();
+        return previous;
+    }
+
+    /**
+     * @return The action that was bound to the combination, or null.
+     */
+    public T remove(HotkeyCombination combination) {
+        return remove(HotkeySequence.of(combination));
+    }
+
+    /**
+     * @return The action that was bound to the sequence, or null.
+     */
+    public synchronized T remove(HotkeySequence sequence) {
+        T removed = bindings.remove(sequence);
+        if (removed != null) {
+            rebuild();
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return bindings.size();
+    }
+
+    /**
+     * Called for every key press.
+     *
+     * @param keyCode The key code from the native key event.
+     * @return The binding completed by this key, or null if there is none or the key was already held
+     * (auto-repeat does not trigger a hotkey again).
+     */
+    public Binding<T> keyPressed(int keyCode) {
+        return keyPressed(keyCode, System.nanoTime());
+    }
+
+    Binding<T> keyPressed(int keyCode, long nanos) {
+        if (keyCode < 0 || pressed.get(keyCode)) {
+            return null;
+        }
+        pressed.set(keyCode);
+        pressedCount++;
+        chordHash ^= keyHash(keyCode);
+
+        Node<T> node = root;
+        if (pending != null) {
+            if (nanos - pendingSince > sequenceTimeoutNanos || !pending.isIn(node)) {
+                pending = null; // Timed out, or the bindings changed.
+            } else {
+                Node<T> next = pending.children.find(chordHash, pressed, pressedCount);
+                if (next != null) {
+                    return advance(next, nanos);
+                }
+                if (isModifier(keyCode)) {
+                    return null; // Maybe the start of the next combination.
+                }
+                pending = null;
+            }
+        }
+        Node<T> next = node.children.find(chordHash, pressed, pressedCount);
+        return next == null ? null : advance(next, nanos);
+    }
+
+    /**
+     * Called for every key release.
+     *
+     * @param keyCode The key code from the native key event.
+     */
+    public void keyReleased(int keyCode) {
+        if (keyCode < 0 || !pressed.get(keyCode)) {
+            return;
+        }
+        pressed.clear(keyCode);
+        pressedCount--;
+        chordHash ^= keyHash(keyCode);
+    }
+
+    /**
+     * Forgets the held keys and a started sequence, e.g. after the key events were interrupted and releases may
+     * have been missed.
+     */
+    public void reset() {
+        pressed.clear();
+        pressedCount = 0;
+        chordHash = 0;
+        pending = null;
+    }
+
+    /**
+     * @return The number of keys currently held.
+     */
+    public int getPressedCount() {
+        return pressedCount;
+    }
+
+    /**
+     * @return Whether a sequence was started and waits for its next combination.
+     */
+    public boolean isSequencePending() {
+        return pending != null;
+    }
+
+    private Binding<T> advance(Node<T> next, long nanos) {
+        if (next.binding != null) {
+            pending = null;
+            return next.binding;
+        }
+        pending = next;
+        pendingSince = nanos;
+        return null;
+    }
+
+    private void rebuild() {
+        List<Binding<T>> entries = new ArrayList<>(bindings.size());
+        bindings.forEach((sequence, action) -> entries.add(new Binding<>(sequence, action)));
+        root = Node.build(entries, 0);
+    }
+
+    private static boolean isModifier(int keyCode) {
+        return keyCode == NativeKeyEvent.VC_CONTROL || keyCode == NativeKeyEvent.VC_ALT
+                || keyCode == NativeKeyEvent.VC_SHIFT || keyCode == NativeKeyEvent.VC_META;
+    }
+
+    /**
+     * @return The Zobrist hash of a set of distinct key codes.
+     */
+    static long chordHash(int[] distinctKeyCodes) {
+        long hash = 0;
+        for (int keyCode : distinctKeyCodes) {
+            hash ^= keyHash(keyCode);
+        }
+        return hash;
+    }
+
+    /**
+     * @return The fixed random value of a key code (the SplitMix64 finalizer), computed instead of looked up,
+     * so any key code works without a table.
+     */
+    static long keyHash(int keyCode) {
+        long z = keyCode + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * A sequence or combination and its action.
+     */
+    public record Binding<T>(HotkeySequence sequence, T action) {
+    }
+
+    /**
+     * A node of the trie: either a complete binding, or the combinations that may follow.
+     */
+    private static final class Node<T> {
+
+        private final Binding<T> binding;
+        private final ChordTable<Node<T>> children;
+        private final Node<T> root;
+
+        private Node(Binding<T> binding, ChordTable<Node<T>> children, Node<T> root) {
+            this.binding = binding;
+            this.children = children;
+            this.root = root;
+        }
+
+        /**
+         * @param entries Bindings whose sequences all have the same first {@code depth} combinations.
+         */
+        static <T> Node<T> build(List<Binding<T>> entries, int depth) {
+            return build(entries, depth, null);
+        }
+
+        private static <T> Node<T> build(List<Binding<T>> entries, int depth, Node<T> root) {
+            if (entries.size() == 1 && entries.get(0).sequence().getSteps().size() == depth) {
+                return new Node<>(entries.get(0), ChordTable.empty(), root);
+            }
+            Map<HotkeyCombination, List<Binding<T>>> byStep = new LinkedHashMap<>();
+            for (Binding<T> entry : entries) {
+                byStep.computeIfAbsent(entry.sequence().getSteps().get(depth), step -> new ArrayList<>()).add(entry);
+            }
+            ChordTable<Node<T>> children = new ChordTable<>(byStep.size());
+            Node<T> node = new Node<>(null, children, root);
+            Node<T> trieRoot = root == null ? node : root;
+            byStep.forEach((step, group) -> children.add(step, build(group, depth + 1, trieRoot)));
+            return node;
+        }
+
+        /**
+         * @return Whether this node belongs to the trie with the given root.
+         */
+        boolean isIn(Node<T> trieRoot) {
+            return root == trieRoot;
+        }
+    }
+
+    /**
+     * An open-addressing hash table from chord hash to value, with linear probing. Filled once, then only read.
+     */
+    private static final class ChordTable<V> {
+
+        private static final ChordTable<?> EMPTY = new ChordTable<>(0);
+
+        private final long[] hashes;
+        private final HotkeyCombination[] combinations;
+        private final Object[] values;
+        private final int mask;
+
+        ChordTable(int size) {
+            int capacity = Integer.highestOneBit(Math.max(2, size * 2 - 1)) << 1;
+            hashes = new long[capacity];
+            combinations = new HotkeyCombination[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <V> ChordTable<V> empty() {
+            return (ChordTable<V>) EMPTY;
+        }
+
+        void add(HotkeyCombination combination, V value) {
+            long hash = combination.chordHash();
+            int slot = slot(hash);
+            while (combinations[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            combinations[slot] = combination;
+            values[slot] = value;
+        }
+
+        @SuppressWarnings("unchecked")
+        V find(long hash, BitSet pressed, int pressedCount) {
+            for (int slot = slot(hash); combinations[slot] != null; slot = (slot + 1) & mask) {
+                // Equal hashes of different chords are unlikely, but possible.
+                if (hashes[slot] == hash && combinations[slot].matches(pressed, pressedCount)) {
+                    return (V) values[slot];
+                }
+            }
+            return null;
+        }
+
+        private int slot(long hash) {
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
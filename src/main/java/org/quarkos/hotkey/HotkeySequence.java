@@ -0,0 +1,80 @@
+package org.quarkos.hotkey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Key combinations pressed one after the other, e.g. CTRL+SPACE then C, like the leader keys of an editor.
+ * Allows many more hotkeys than chords alone: a leader combination opens a group of actions on single keys.
+ */
+public final class HotkeySequence {
+
+    private final List<HotkeyCombination> steps;
+
+    private HotkeySequence(List<HotkeyCombination> steps) {
+        this.steps = List.copyOf(steps);
+    }
+
+    /**
+     * @param steps The combinations to press one after the other, at least one
+     * @return A new HotkeySequence
+     */
+    public static HotkeySequence of(HotkeyCombination... steps) {
+        if (steps.length == 0) {
+            throw new IllegalArgumentException("A hotkey sequence needs at least one combination.");
+        }
+        return new HotkeySequence(List.of(steps));
+    }
+
+    /**
+     * @param step The combination to press after this sequence
+     * @return A new, longer HotkeySequence
+     */
+    public HotkeySequence then(HotkeyCombination step) {
+        List<HotkeyCombination> longer = new ArrayList<>(steps);
+        longer.add(step);
+        return new HotkeySequence(longer);
+    }
+
+    /**
+     * @param keyCode A single key to press after this sequence
+     * @return A new, longer HotkeySequence
+     */
+    public HotkeySequence then(int keyCode) {
+        return then(new HotkeyCombination(keyCode));
+    }
+
+    public List<HotkeyCombination> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return true if the other sequence is the start of this one, or the same
+     */
+    boolean startsWith(HotkeySequence other) {
+        return other.steps.size() <= steps.size() && steps.subList(0, other.steps.size()).equals(other.steps);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return steps.equals(((HotkeySequence) o).steps);
+    }
+
+    @Override
+    public int hashCode() {
+        return steps.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("HotkeySequence[");
+        for (int i = 0; i < steps.size(); i++) {
+            if (i > 0) sb.append(" then ");
+            sb.append(steps.get(i));
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
@@ -35,6 +35,31 @@ public class PresetHotkeys {
     public static final HotkeyCombination TOGGLE_DEBUG_MODE_HOTKEY =
             HotkeyCombination.ctrlShiftKey(NativeKeyEvent.VC_D);
 
+    public static final HotkeyCombination PREVIOUS_ANSWER_HOTKEY =
+            HotkeyCombination.ctrlShiftKey(NativeKeyEvent.VC_LEFT);
+
+    public static final HotkeyCombination NEXT_ANSWER_HOTKEY =
+            HotkeyCombination.ctrlShiftKey(NativeKeyEvent.VC_RIGHT);
+
+    public static final HotkeyCombination REGENERATE_ANSWER_HOTKEY =
+            HotkeyCombination.ctrlAltKey(NativeKeyEvent.VC_R);
+
+    public static final HotkeyCombination COPY_QUESTION_HOTKEY =
+            HotkeyCombination.ctrlAltKey(NativeKeyEvent.VC_O);
+
+    // Less frequent actions: CTRL+SPACE, then a single key.
+    public static final HotkeyCombination LEADER_KEY =
+            HotkeyCombination.ctrlKey(NativeKeyEvent.VC_SPACE);
+
+    public static final HotkeySequence SHOW_SETTINGS_SEQUENCE =
+            HotkeySequence.of(LEADER_KEY).then(NativeKeyEvent.VC_S);
+
+    public static final HotkeySequence SHOW_CLIPBOARD_HISTORY_SEQUENCE =
+            HotkeySequence.of(LEADER_KEY).then(NativeKeyEvent.VC_H);
+
+    public static final HotkeySequence EXIT_SEQUENCE =
+            HotkeySequence.of(LEADER_KEY).then(NativeKeyEvent.VC_Q);
+
     /**
      * Registers all preset hotkeys with the provided HotkeyManager and associated actions.
      *
@@ -45,9 +70,18 @@ public class PresetHotkeys {
         // When hotkeys are defined, they would be registered here. For example:
         // manager.registerHotkey(EXAMPLE_HOTKEY, actions::onExampleHotkey);
 
-        manager.registerHotkey(ACTIVATE_SYNAPSE_HOTKEY, actions::onActivateSynapse);
-        manager.registerHotkey(SEND_CLIPBOARD_PROMPT_HOTKEY, actions::onSendClipboardPrompt);
-        manager.registerHotkey(TOGGLE_DEBUG_MODE_HOTKEY, actions::onToggleDebugMode);
+        // Toggles are debounced, so a bouncing key doesn't switch them back; a new prompt replaces a running one.
+        manager.registerHotkey(ACTIVATE_SYNAPSE_HOTKEY, actions::onActivateSynapse, HotkeyActionExecutor.Policy.DEBOUNCE);
+        manager.registerHotkey(SEND_CLIPBOARD_PROMPT_HOTKEY, actions::onSendClipboardPrompt, HotkeyActionExecutor.Policy.CANCEL_PREVIOUS);
+        manager.registerHotkey(TOGGLE_DEBUG_MODE_HOTKEY, actions::onToggleDebugMode, HotkeyActionExecutor.Policy.DEBOUNCE);
+        // Browsing the history is instant; a new regeneration replaces a running one.
+        manager.registerHotkey(PREVIOUS_ANSWER_HOTKEY, actions::onPreviousAnswer);
+        manager.registerHotkey(NEXT_ANSWER_HOTKEY, actions::onNextAnswer);
+        manager.registerHotkey(REGENERATE_ANSWER_HOTKEY, actions::onRegenerateAnswer, HotkeyActionExecutor.Policy.CANCEL_PREVIOUS);
+        manager.registerHotkey(COPY_QUESTION_HOTKEY, actions::onCopyQuestion);
+        manager.registerSequence(SHOW_SETTINGS_SEQUENCE, actions::onShowSettings);
+        manager.registerSequence(SHOW_CLIPBOARD_HISTORY_SEQUENCE, actions::onShowClipboardHistory);
+        manager.registerSequence(EXIT_SEQUENCE, actions::onExit);
     }
 
     /**
@@ -61,6 +95,13 @@ public class PresetHotkeys {
         manager.unregisterHotkey(ACTIVATE_SYNAPSE_HOTKEY);
         manager.unregisterHotkey(SEND_CLIPBOARD_PROMPT_HOTKEY);
         manager.unregisterHotkey(TOGGLE_DEBUG_MODE_HOTKEY);
+        manager.unregisterHotkey(PREVIOUS_ANSWER_HOTKEY);
+        manager.unregisterHotkey(NEXT_ANSWER_HOTKEY);
+        manager.unregisterHotkey(REGENERATE_ANSWER_HOTKEY);
+        manager.unregisterHotkey(COPY_QUESTION_HOTKEY);
+        manager.unregisterSequence(SHOW_SETTINGS_SEQUENCE);
+        manager.unregisterSequence(SHOW_CLIPBOARD_HISTORY_SEQUENCE);
+        manager.unregisterSequence(EXIT_SEQUENCE);
     }
 
     /**
@@ -74,5 +115,12 @@ public class PresetHotkeys {
         void onActivateSynapse();
         void onSendClipboardPrompt();
         void onToggleDebugMode();
+        void onPreviousAnswer();
+        void onNextAnswer();
+        void onRegenerateAnswer();
+        void onCopyQuestion();
+        void onShowSettings();
+        void onShowClipboardHistory();
+        void onExit();
     }
 }
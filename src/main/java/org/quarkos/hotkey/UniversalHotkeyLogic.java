@@ -1,22 +1,38 @@
 package org.quarkos.hotkey;
 
+import org.quarkos.Configuration;
 import org.quarkos.ai.Gemini;
+import org.quarkos.ai.ModelRace;
+import org.quarkos.ai.ModelRouter;
+import org.quarkos.util.ClipboardHistory;
+import org.quarkos.util.ClipboardMonitor;
 import org.quarkos.util.ClipboardUtil;
+import org.quarkos.util.JSONUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
 
 public class UniversalHotkeyLogic implements PresetHotkeys.PresetHotkeyActions {
 
     private static Logger logger = LoggerFactory.getLogger(UniversalHotkeyLogic.class);
 
-    private boolean synapseActive = false;
-    private boolean debugMode = false;
+    private static final int HISTORY_LINES = 10;
+
+    private volatile boolean synapseActive = false;
+    private volatile boolean debugMode = false;
+    // Answers new clipboard text in the background while Synapse is active.
+    private final ClipboardMonitor clipboardMonitor = new ClipboardMonitor().start();
+    // Earlier answers, to go back to them or regenerate them without copying the question again.
+    private final ClipboardHistory clipboardHistory = ClipboardHistory.load(Configuration.CLIPBOARD_HISTORY_FILE);
+    private final ModelRace modelRace = new ModelRace();
 
     @Override
     public void onActivateSynapse() {
         this.synapseActive = !this.synapseActive;
+        clipboardMonitor.setActive(this.synapseActive);
         if (this.synapseActive) {
             logger.info("Synapse activated. You can now use the hotkeys.");
         } else {
@@ -31,13 +47,31 @@ public class UniversalHotkeyLogic implements PresetHotkeys.PresetHotkeyActions {
         if (prompt != null && !prompt.trim().isEmpty()) {
             try {
                 logger.debug("Prompt from clipboard: \"" + prompt + "\"");
-                Map.Entry<String, Long> response = Gemini.generateStructuredResponse(prompt);
-                logger.debug("Gemini Response: " + response);
-                // Optionally, copy the response back to the clipboard or show a notification
-                // ClipboardUtil.copyToClipboard(response); // Example
+                long start = System.currentTimeMillis();
+                ClipboardMonitor.Answer response = clipboardMonitor.answer(prompt); // Usually prefetched already
+                logger.debug("Gemini Response by {} ({}ms): {}", response.model().getModelName(),
+                        System.currentTimeMillis() - start, response.response());
+                if (Thread.currentThread().isInterrupted()) {
+                    // Replaced by a newer prompt while the model was answering; its answer must not overwrite ours.
+                    logger.debug("Dropping the answer to a replaced clipboard prompt.");
+                    return;
+                }
+                String answer = JSONUtil.extractTextFromResponse(response.response());
+                clipboardHistory.record(new ClipboardHistory.Entry(prompt, answer, response.model().getModelName(),
+                        System.currentTimeMillis() - start, System.currentTimeMillis()));
+                copyAnswer(answer);
+                logger.debug("Clipboard prefetch stats: {}", clipboardMonitor.getStats());
+                if (Configuration.CLIPBOARD_HEDGING_ENABLED) {
+                    logger.debug("Hedging stats: {}", Gemini.getHedgeStats());
+                }
+            } catch (CancellationException e) {
+                logger.debug("Clipboard prompt replaced by a newer one.");
             } catch (Exception e) {
-                logger.error("Error generating response from clipboard content: " + e.getMessage());
-                e.printStackTrace();
+                if (Thread.currentThread().isInterrupted()) {
+                    logger.debug("Clipboard prompt replaced by a newer one.");
+                } else {
+                    logger.error("Error generating response from clipboard content: " + e.getMessage(), e);
+                }
             }
         } else {
             logger.debug("Clipboard is empty or contains no text.");
@@ -54,5 +88,101 @@ public class UniversalHotkeyLogic implements PresetHotkeys.PresetHotkeyActions {
         }
     }
 
+    @Override
+    public void onPreviousAnswer() {
+        showHistoryEntry(clipboardHistory.previous());
+    }
+
+    @Override
+    public void onNextAnswer() {
+        showHistoryEntry(clipboardHistory.next());
+    }
+
+    /**
+     * Asks the question of the current answer again, racing {@link Configuration#REGENERATE_MODELS},
+     * and adds the new answer to the history.
+     */
+    @Override
+    public void onRegenerateAnswer() {
+        Optional<ClipboardHistory.Entry> current = clipboardHistory.current();
+        if (current.isEmpty()) {
+            logger.debug("No answer to regenerate yet.");
+            return;
+        }
+        String question = current.get().question();
+        try {
+            ModelRace.Result result = modelRace.race(question, Configuration.REGENERATE_MODELS,
+                    Configuration.REGENERATE_STRATEGY, Configuration.REGENERATE_TIMEOUT_MS);
+            if (Thread.currentThread().isInterrupted()) {
+                return; // Replaced by a newer regeneration after the race was decided.
+            }
+            String answer = JSONUtil.extractTextFromResponse(result.answer());
+            clipboardHistory.record(new ClipboardHistory.Entry(question, answer, result.model().getModelName(),
+                    result.latencyMillis(), System.currentTimeMillis()));
+            copyAnswer(answer);
+            logger.debug("Regenerated answer by {} ({}ms)", result.model().getModelName(), result.latencyMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Replaced by a newer regeneration.
+        } catch (Exception e) {
+            logger.error("Error regenerating the answer: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onCopyQuestion() {
+        clipboardHistory.current().ifPresentOrElse(entry -> {
+            // Copying it back mustn't ask it again.
+            clipboardMonitor.ignore(entry.question());
+            ClipboardUtil.copyToClipboard(entry.question());
+        }, () -> logger.debug("The clipboard history is empty."));
+    }
+
+    @Override
+    public void onShowSettings() {
+        logger.info("Synapse {}, debug mode {}", synapseActive ? "active" : "inactive", debugMode ? "on" : "off");
+        logger.info("Model: {}", Gemini.automaticModelSelection ? "automatic" : Gemini.currentModel.getModelName());
+        Gemini.getRouter().getStats(ModelRouter.RequestClass.CLIPBOARD)
+                .forEach((model, stats) -> logger.info("  {}: {}", model.getModelName(), stats));
+        logger.info("Hedged clipboard answers: {}", Configuration.CLIPBOARD_HEDGING_ENABLED ? "on" : "off");
+        logger.info("Clipboard prefetch: {}", clipboardMonitor.getStats());
+    }
+
+    @Override
+    public void onShowClipboardHistory() {
+        List<ClipboardHistory.Entry> entries = clipboardHistory.entries();
+        if (entries.isEmpty()) {
+            logger.info("The clipboard history is empty.");
+            return;
+        }
+        // Newest first, like the history is browsed.
+        for (int i = entries.size() - 1; i >= Math.max(0, entries.size() - HISTORY_LINES); i--) {
+            ClipboardHistory.Entry entry = entries.get(i);
+            logger.info("{}. {} -> {} ({}, {}ms)", entries.size() - i, entry.question(), entry.answer(),
+                    entry.model(), entry.latencyMillis());
+        }
+    }
+
+    @Override
+    public void onExit() {
+        logger.info("Exiting Synapse.");
+        clipboardMonitor.shutdown();
+        modelRace.shutdown();
+        clipboardHistory.save();
+        System.exit(0);
+    }
+
+    private void showHistoryEntry(Optional<ClipboardHistory.Entry> entry) {
+        entry.ifPresentOrElse(e -> {
+            copyAnswer(e.answer());
+            logger.debug("Answer from the history by {} ({}ms): {}", e.model(), e.latencyMillis(), e.answer());
+        }, () -> logger.debug("The clipboard history is empty."));
+    }
+
+    private void copyAnswer(String answer) {
+        // The answer goes back to the clipboard; it is not a new question.
+        clipboardMonitor.ignore(answer);
+        ClipboardUtil.copyToClipboard(answer);
+    }
+
     // Add other hotkey action implementations here if you define more in PresetHotkeyActions
 }
@@ -0,0 +1,13 @@
+package org.quarkos.intent;
+
+import java.util.Map;
+
+/**
+ * An intent recognized from a command, expressed as a call to one of the declared tool functions.
+ *
+ * @param functionName The tool function to call, e.g. "controlPlayback".
+ * @param args The arguments for the function.
+ * @param confidence How sure the classifier is, from 0 to 1.
+ */
+public record Intent(String functionName, Map<String, Object> args, double confidence) {
+}
@@ -0,0 +1,124 @@
+package org.quarkos.intent;
+
+import org.quarkos.Configuration;
+import org.quarkos.ai.FunctionCallingAgent;
+import org.quarkos.ai.FunctionDeclarations;
+import org.quarkos.ai.tool.ToolRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Entry point for text commands. Simple, unambiguous commands are recognized by the
+ * {@link LocalIntentClassifier} and dispatched straight to the tool functions, everything else
+ * goes through the {@link FunctionCallingAgent}. Keeps statistics on how many commands were
+ * served locally and how much time that saved compared to the LLM round-trips it observed.
+ */
+public class IntentRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(IntentRouter.class);
+
+    private final LocalIntentClassifier classifier;
+    private final ToolRegistry registry;
+    private final FunctionCallingAgent agent;
+    private final double minConfidence;
+
+    private final AtomicLong localCount = new AtomicLong();
+    private final AtomicLong localNanos = new AtomicLong();
+    private final AtomicLong llmCount = new AtomicLong();
+    private final AtomicLong llmNanos = new AtomicLong();
+
+    public IntentRouter() {
+        this(new LocalIntentClassifier(), FunctionDeclarations.getRegistry(),
+                new FunctionCallingAgent(FunctionCallingAgent.DEFAULT_MAX_STEPS), Configuration.LOCAL_INTENT_MIN_CONFIDENCE);
+    }
+
+    public IntentRouter(LocalIntentClassifier classifier, ToolRegistry registry, FunctionCallingAgent agent, double minConfidence) {
+        this.classifier = classifier;
+        this.registry = registry;
+        this.agent = agent;
+        this.minConfidence = minConfidence;
+    }
+
+    /**
+     * Handles a command, locally if possible.
+     *
+     * @param text The command text, e.g. a Whisper transcript.
+     * @return What was done with the command.
+     */
+    public RouteResult route(String text) {
+        long start = System.nanoTime();
+        Optional<Intent> intent = classifier.classify(text);
+
+        if (intent.isPresent() && intent.get().confidence() >= minConfidence) {
+            Intent local = intent.get();
+            long classifyNanos = System.nanoTime() - start;
+            logger.info("Local intent: {} {} (confidence {}, classified in {}us)",
+                    local.functionName(), local.args(), local.confidence(), classifyNanos / 1_000);
+            Map<String, Object> result = registry.dispatch(local.functionName(), local.args());
+            localCount.incrementAndGet();
+            localNanos.addAndGet(classifyNanos);
+            return new RouteResult(true, local, result, null, System.nanoTime() - start);
+        }
+
+        logger.info("No confident local intent for '{}', asking the LLM.", text);
+        FunctionCallingAgent.AgentResult answer = agent.run(text);
+        long elapsed = System.nanoTime() - start;
+        llmCount.incrementAndGet();
+        llmNanos.addAndGet(elapsed);
+        return new RouteResult(false, intent.orElse(null), null, answer.text(), elapsed);
+    }
+
+    /**
+     * @return A snapshot of the routing statistics.
+     */
+    public RoutingStats getStats() {
+        return new RoutingStats(localCount.get(), localNanos.get(), llmCount.get(), llmNanos.get());
+    }
+
+    /**
+     * @param servedLocally Whether the command was handled without the LLM.
+     * @param intent The locally recognized intent, possibly below the confidence threshold; null if none.
+     * @param toolResult The tool function's result for local commands.
+     * @param answer The LLM's answer for commands that went to the LLM.
+     * @param elapsedNanos Total time to handle the command.
+     */
+    public record RouteResult(boolean servedLocally, Intent intent, Map<String, Object> toolResult, String answer,
+                              long elapsedNanos) {
+    }
+
+    /**
+     * Routing statistics. The saved latency assumes every local command would otherwise have taken
+     * as long as the average LLM round-trip observed so far; the tool execution itself is not counted
+     * on either side, since it is the same for both paths.
+     */
+    public record RoutingStats(long localCount, long localNanos, long llmCount, long llmNanos) {
+
+        public double localShare() {
+            long total = localCount + llmCount;
+            return total == 0 ? 0 : (double) localCount / total;
+        }
+
+        public double averageLocalMicros() {
+            return localCount == 0 ? 0 : localNanos / 1_000.0 / localCount;
+        }
+
+        public double averageLlmMillis() {
+            return llmCount == 0 ? 0 : llmNanos / 1_000_000.0 / llmCount;
+        }
+
+        public double estimatedSavedMillis() {
+            return localCount * averageLlmMillis() - localNanos / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("served locally: %d/%d (%.0f%%), avg local %.1fus, avg LLM %.0fms, saved ~%.0fms",
+                    localCount, localCount + llmCount, localShare() * 100, averageLocalMicros(), averageLlmMillis(),
+                    estimatedSavedMillis());
+        }
+    }
+}
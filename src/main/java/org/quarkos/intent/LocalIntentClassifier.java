@@ -0,0 +1,97 @@
+package org.quarkos.intent;
+
+import org.quarkos.voice.command.CommandGrammar;
+import org.quarkos.voice.command.GrammarMatch;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes simple commands ("pause", "next song", "play Bohemian Rhapsody by Queen") without the LLM.
+ * Commands are matched by the same {@link CommandGrammar} the offline voice path uses, so classifying a command
+ * is a single walk over its words and takes microseconds, in every language the grammar has a pack for.
+ * Anything the classifier is not sure about gets a low confidence and should go to the LLM.
+ */
+public class LocalIntentClassifier {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    // Grammar intents that map one-to-one onto controlPlayback actions.
+    private static final Set<String> CONTROL_ACTIONS = Set.of("pause", "resume", "skip", "previous", "more");
+    // Applied when words around the command were skipped, e.g. "hey synapse" or "i want to".
+    private static final double SKIPPED_WORDS_FACTOR = 0.95;
+    private static final double UNSURE_CONFIDENCE = 0.5;
+
+    private final CommandGrammar grammar;
+    private final Set<String> compoundMarkers;
+    private final Set<String> vagueQueryWords;
+
+    public LocalIntentClassifier() {
+        this(CommandGrammar.getDefault());
+    }
+
+    public LocalIntentClassifier(CommandGrammar grammar) {
+        this.grammar = grammar;
+        this.compoundMarkers = grammar.getWordList("compound");
+        this.vagueQueryWords = grammar.getWordList("vague");
+    }
+
+    /**
+     * Classifies a command.
+     *
+     * @param text The command, e.g. a Whisper transcript.
+     * @return The recognized intent, or empty if the command is not a simple command at all.
+     */
+    public Optional<Intent> classify(String text) {
+        return grammar.match(text).flatMap(this::toIntent);
+    }
+
+    private Optional<Intent> toIntent(GrammarMatch match) {
+        Intent intent;
+        if (CONTROL_ACTIONS.contains(match.intent())) {
+            intent = new Intent("controlPlayback", Map.of("action", match.intent()), 1.0);
+        } else if (match.intent().equals("play")) {
+            intent = classifyPlay(match.slot("track"), match.slot("artist"));
+        } else {
+            return Optional.empty();
+        }
+
+        double confidence = intent.confidence();
+        if (match.skippedWords() > 0) {
+            confidence *= SKIPPED_WORDS_FACTOR;
+        }
+        if (containsCompoundMarker(WHITESPACE.split(match.command()))) {
+            // "play X and then turn it up" - more than one action, let the LLM handle it.
+            confidence = Math.min(confidence, UNSURE_CONFIDENCE);
+        }
+        return Optional.of(new Intent(intent.functionName(), intent.args(), confidence));
+    }
+
+    /**
+     * The grammar already split "X by Y" into song and artist; this only decides how sure we are
+     * that it is a single, specific song.
+     */
+    private Intent classifyPlay(String song, String artist) {
+        double confidence = artist != null ? 0.85 : 0.9;
+        String[] songWords = WHITESPACE.split(song);
+        if (vagueQueryWords.contains(songWords[0])) {
+            // "play some jazz from the eighties" - a description, not a title.
+            confidence = UNSURE_CONFIDENCE;
+        }
+
+        Map<String, Object> args = new LinkedHashMap<>();
+        args.put("songName", song);
+        if (artist != null) {
+            args.put("artist", artist);
+        }
+        return new Intent("playMusic", args, confidence);
+    }
+
+    private boolean containsCompoundMarker(String[] words) {
+        for (String word : words) {
+            if (compoundMarkers.contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
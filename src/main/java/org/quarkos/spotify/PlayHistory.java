@@ -0,0 +1,186 @@
+package org.quarkos.spotify;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The tracks the user started, most recent last. Used by the {@link TrackPrefetcher} to tell which tracks the
+ * user tends to ask for after a given one, and which ones were just played and shouldn't be suggested again.
+ * Only the most recent plays are kept; the history is persisted as JSON, written in the background.
+ */
+public class PlayHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlayHistory.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // A track started more than this long after the previous one belongs to another listening session.
+    private static final long SESSION_GAP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path file;
+    private final int capacity;
+    private final ArrayDeque<Play> plays = new ArrayDeque<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "play-history-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    /**
+     * Creates a history that is kept in memory only.
+     */
+    public PlayHistory() {
+        this(null, Configuration.PLAY_HISTORY_SIZE);
+    }
+
+    /**
+     * @param file The JSON file to persist to, or null to keep the history in memory only.
+     * @param capacity How many plays to keep.
+     */
+    public PlayHistory(Path file, int capacity) {
+        this.file = file;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates a history persisted to the given file and loads what was saved there before.
+     * A missing or unreadable file starts an empty history.
+     *
+     * @param file The JSON file, e.g. {@link Configuration#PLAY_HISTORY_FILE}.
+     * @return The history.
+     */
+    public static PlayHistory load(Path file) {
+        PlayHistory history = new PlayHistory(file, Configuration.PLAY_HISTORY_SIZE);
+        if (Files.isRegularFile(file)) {
+            try {
+                List<Play> stored = objectMapper.readValue(file.toFile(), new TypeReference<>() { });
+                for (Play play : stored) {
+                    history.add(play);
+                }
+                logger.info("Loaded {} plays from {}", stored.size(), file);
+            } catch (IOException e) {
+                logger.warn("Could not read the play history {}, starting empty: {}", file, e.getMessage());
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Records that a track was started now and saves the history in the background.
+     */
+    public void record(ResolvedTrack track) {
+        add(new Play(track, System.currentTimeMillis()));
+        scheduleSave();
+    }
+
+    /**
+     * Finds the tracks the user started right after the given one in the past.
+     *
+     * @param uri The track's Spotify URI.
+     * @param limit The maximum number of tracks.
+     * @return The tracks, the most frequent follower first.
+     */
+    public synchronized List<ResolvedTrack> followers(String uri, int limit) {
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, ResolvedTrack> tracks = new HashMap<>();
+        Play previous = null;
+        for (Play play : plays) {
+            if (previous != null && previous.track().uri().equals(uri) && !play.track().uri().equals(uri)
+                    && play.playedAtMillis() - previous.playedAtMillis() < SESSION_GAP_MILLIS) {
+                counts.merge(play.track().uri(), 1, Integer::sum);
+                tracks.put(play.track().uri(), play.track());
+            }
+            previous = play;
+        }
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(limit)
+                .map(entry -> tracks.get(entry.getKey()))
+                .toList();
+    }
+
+    /**
+     * @param uri The track's Spotify URI.
+     * @param lastPlays How many of the most recent plays to look at.
+     * @return Whether the track is among them.
+     */
+    public synchronized boolean playedRecently(String uri, int lastPlays) {
+        Iterator<Play> recent = plays.descendingIterator();
+        for (int i = 0; i < lastPlays && recent.hasNext(); i++) {
+            if (recent.next().track().uri().equals(uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The most recently started track, if any.
+     */
+    public synchronized Optional<ResolvedTrack> last() {
+        return plays.isEmpty() ? Optional.empty() : Optional.of(plays.getLast().track());
+    }
+
+    public synchronized int size() {
+        return plays.size();
+    }
+
+    /**
+     * Writes the history to its file now.
+     */
+    public void save() {
+        if (file == null) {
+            return;
+        }
+        List<Play> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(plays);
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), snapshot);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save the play history to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private synchronized void add(Play play) {
+        plays.addLast(play);
+        while (plays.size() > capacity) {
+            plays.removeFirst();
+        }
+    }
+
+    /**
+     * Coalesces saves: any number of plays while a save is queued are written by that one save.
+     */
+    private void scheduleSave() {
+        if (file != null && savePending.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                savePending.set(false);
+                save();
+            });
+        }
+    }
+
+    /**
+     * @param track The started track.
+     * @param playedAtMillis When it was started.
+     */
+    record Play(ResolvedTrack track, long playedAtMillis) {
+    }
+}
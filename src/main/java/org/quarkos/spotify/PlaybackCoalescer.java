@@ -0,0 +1,206 @@
+package org.quarkos.spotify;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Batches bursts of playback commands, like a skip key pressed five times in a row.
+ *
+ * <p>The first command of a burst is executed right away, so a single press has no added latency. Commands of
+ * the same kind that follow within the window (which restarts with every command) are collected and executed as
+ * one batch once the burst is over: skips and previous-track commands add up to a net number of steps, so five
+ * skips and two steps back are sent as three skips; repeated pauses or resumes are dropped since the first one
+ * already did it. A command of another kind ends the burst: the pending batch is executed first, then the new
+ * command.</p>
+ *
+ * <p>Commands and batches are all executed on one thread, in the order they were decided on, so a batch that is
+ * flushed at the end of a burst can never overtake a newer command.</p>
+ */
+public class PlaybackCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlaybackCoalescer.class);
+
+    public enum Action {
+        NEXT, PREVIOUS, PAUSE, RESUME;
+
+        private Action group() {
+            return this == PREVIOUS ? NEXT : this;
+        }
+    }
+
+    private final BatchExecutor executor;
+    private final long windowNanos;
+    // Runs every command and batch, and the flush at the end of a burst.
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier nanoTime;
+
+    private Action openGroup;
+    private long windowEndsNanos;
+    private int pendingSteps;
+    private ScheduledFuture<?> flushTask;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * @param executor Executes the commands and batches.
+     * @param windowMillis How long after a command the next one still belongs to the same burst.
+     */
+    public PlaybackCoalescer(BatchExecutor executor, long windowMillis) {
+        this(executor, windowMillis, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "spotify-playback");
+            thread.setDaemon(true);
+            return thread;
+        }), System::nanoTime);
+    }
+
+    /**
+     * @param scheduler Executes the commands and batches; it must run them one at a time, in submission order.
+     * @param nanoTime The clock the window is measured with.
+     */
+    PlaybackCoalescer(BatchExecutor executor, long windowMillis, ScheduledExecutorService scheduler, LongSupplier nanoTime) {
+        this.executor = executor;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.scheduler = scheduler;
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Executes the command right away in the background, or adds it to the batch of the current burst.
+     */
+    public void submit(Action action) {
+        submitted.incrementAndGet();
+        synchronized (this) {
+            long now = nanoTime.getAsLong();
+            if (action.group() == openGroup && now < windowEndsNanos) {
+                if (action.group() == Action.NEXT) {
+                    pendingSteps += action == Action.NEXT ? 1 : -1;
+                }
+                windowEndsNanos = now + windowNanos;
+                coalesced.incrementAndGet();
+                return;
+            }
+            int flushSteps = takePendingSteps();
+            openGroup = action.group();
+            windowEndsNanos = now + windowNanos;
+            // Queued while holding the lock, so the order on the scheduler is the order of the decisions.
+            scheduler.execute(() -> {
+                executeSteps(flushSteps);
+                execute(action, 1);
+            });
+            scheduleFlush(windowNanos);
+        }
+    }
+
+    /**
+     * Waits until the commands submitted so far have been executed. Batches of a burst that is still going on
+     * are not waited for.
+     *
+     * @return False if the timeout elapsed first.
+     */
+    public boolean awaitSent(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            scheduler.submit(() -> { }).get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return A snapshot of the batching statistics.
+     */
+    public CoalescerStats getStats() {
+        return new CoalescerStats(submitted.get(), coalesced.get(), batches.get());
+    }
+
+    /**
+     * Stops the background flushing; pending batches are dropped.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void scheduleFlush(long delayNanos) {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flushTask = scheduler.schedule(this::flush, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void flush() {
+        int steps;
+        synchronized (this) {
+            long remaining = windowEndsNanos - nanoTime.getAsLong();
+            if (remaining > 0) {
+                // The burst is still going on.
+                scheduleFlush(remaining);
+                return;
+            }
+            openGroup = null;
+            steps = takePendingSteps();
+        }
+        executeSteps(steps);
+    }
+
+    private int takePendingSteps() {
+        int steps = pendingSteps;
+        pendingSteps = 0;
+        return steps;
+    }
+
+    private void executeSteps(int steps) {
+        if (steps == 0) {
+            return;
+        }
+        batches.incrementAndGet();
+        logger.info("Executing {} coalesced track {}.", Math.abs(steps), steps > 0 ? "skips" : "steps back");
+        execute(steps > 0 ? Action.NEXT : Action.PREVIOUS, Math.abs(steps));
+    }
+
+    private void execute(Action action, int count) {
+        try {
+            executor.execute(action, count);
+        } catch (RuntimeException e) {
+            logger.error("Playback command {} x{} failed.", action, count, e);
+        }
+    }
+
+    /**
+     * Executes playback commands.
+     */
+    @FunctionalInterface
+    public interface BatchExecutor {
+
+        /**
+         * @param action The command.
+         * @param count How many times in a row; only greater than 1 for {@link Action#NEXT} and {@link Action#PREVIOUS}.
+         */
+        void execute(Action action, int count);
+    }
+
+    /**
+     * @param submitted All commands.
+     * @param coalesced How many of them were absorbed into a batch instead of being sent on their own.
+     * @param batches How many batches were executed.
+     */
+    public record CoalescerStats(long submitted, long coalesced, long batches) {
+
+        @Override
+        public String toString() {
+            return String.format("%d playback commands, %d coalesced into %d batches", submitted, coalesced, batches);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.quarkos.spotify;
+
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+
+/**
+ * A track a spoken request was resolved to, with everything needed to play it again.
+ *
+ * @param uri The Spotify URI to pass to startResumeUsersPlayback.
+ * @param name The track's name on Spotify.
+ * @param artist The track's first artist on Spotify, or null if it has none.
+ */
+public record ResolvedTrack(String uri, String name, String artist) {
+
+    public static ResolvedTrack of(Track track) {
+        String artist = track.getArtists() != null && track.getArtists().length > 0 ? track.getArtists()[0].getName() : null;
+        return new ResolvedTrack(track.getUri(), track.getName(), artist);
+    }
+
+    public static ResolvedTrack of(TrackSimplified track) {
+        String artist = track.getArtists() != null && track.getArtists().length > 0 ? track.getArtists()[0].getName() : null;
+        return new ResolvedTrack(track.getUri(), track.getName(), artist);
+    }
+}
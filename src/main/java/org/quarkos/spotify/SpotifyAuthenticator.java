@@ -21,6 +21,8 @@ import org.apache.hc.core5.http.ParseException;
  * This class opens a browser for the user to log in and then
  * runs a temporary local server to catch the redirect and exchange the
  * authorization code for an access token.
+ * The tokens are persisted and kept fresh by a {@link SpotifyTokenManager},
+ * so the login is only needed on the first start.
  */
 public class SpotifyAuthenticator {
 
@@ -28,21 +30,31 @@ public class SpotifyAuthenticator {
     private static final URI redirectUri = URI.create("http://127.0.0.1:8888/callback");
     private static final Logger logger = LoggerFactory.getLogger(SpotifyAuthenticator.class);
 
-    private static final SpotifyApi spotifyApi = new SpotifyApi.Builder()
+    private static final SpotifyHttpTransport httpTransport = new SpotifyHttpTransport();
+    private static final SpotifyRateLimiter rateLimiter = new SpotifyRateLimiter(httpTransport);
+    private static final SpotifyTokenManager tokenManager = new SpotifyTokenManager(new SpotifyApi.Builder()
             .setClientId(dotenv.get("SPOTIFY_CLIENT_ID"))
             .setClientSecret(dotenv.get("SPOTIFY_CLIENT_SECRET"))
-            .setRedirectUri(redirectUri)
-            .build();
+            .setRedirectUri(redirectUri), rateLimiter, new SpotifyCredentialStore(),
+            SpotifyTokenManager.TokenRefresher.SPOTIFY_ACCOUNTS);
+    private static final SpotifyApi spotifyApi = tokenManager.getSpotifyApi();
 
     /**
-     * The main authentication method. It orchestrates the entire OAuth 2.0 flow.
-     * This method will block program execution until authentication is complete or has failed.
+     * The main authentication method. It restores the session from the stored tokens if possible
+     * and otherwise orchestrates the entire OAuth 2.0 flow.
+     * Only the browser login blocks program execution until authentication is complete or has failed.
      */
     public void authenticate() {
+        // Connect to the API and the token service while the session is restored or the user logs in.
+        httpTransport.prewarm(URI.create(SpotifyApi.DEFAULT_SCHEME + "://" + SpotifyApi.DEFAULT_HOST),
+                URI.create(SpotifyApi.DEFAULT_AUTHENTICATION_SCHEME + "://" + SpotifyApi.DEFAULT_AUTHENTICATION_HOST));
+        if (tokenManager.restore()) {
+            return;
+        }
         try {
             // Step 1: Build the authorization URI with the necessary scopes.
             AuthorizationCodeUriRequest uriRequest = spotifyApi.authorizationCodeUri()
-                    .scope("user-read-private,user-read-email,playlist-read-private,app-remote-control,streaming,user-modify-playback-state,user-read-playback-state")
+                    .scope("user-read-private,user-read-email,playlist-read-private,user-library-read,user-follow-read,app-remote-control,streaming,user-modify-playback-state,user-read-playback-state")
                     .build();
 
             URI authorizationURI = uriRequest.execute();
@@ -116,9 +128,9 @@ public class SpotifyAuthenticator {
             AuthorizationCodeRequest codeRequest = spotifyApi.authorizationCode(code).build();
             AuthorizationCodeCredentials credentials = codeRequest.execute();
 
-            // Step 5: Set the tokens on the SpotifyApi instance, making it ready for use.
-            spotifyApi.setAccessToken(credentials.getAccessToken());
-            spotifyApi.setRefreshToken(credentials.getRefreshToken());
+            // Step 5: Set the tokens on the SpotifyApi instance, making it ready for use,
+            // and store them so the next start doesn't need the browser.
+            tokenManager.onAuthorized(credentials);
         }
     }
 
@@ -129,4 +141,25 @@ public class SpotifyAuthenticator {
     public static SpotifyApi getSpotifyApi() {
         return spotifyApi;
     }
+
+    /**
+     * @return The transport of {@link #getSpotifyApi()}, with its per-endpoint latency statistics.
+     */
+    public static SpotifyHttpTransport getHttpTransport() {
+        return httpTransport;
+    }
+
+    /**
+     * @return The rate limiter of {@link #getSpotifyApi()}, with its throttling statistics.
+     */
+    public static SpotifyRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return The token manager that keeps the access token of {@link #getSpotifyApi()} valid.
+     */
+    public static SpotifyTokenManager getTokenManager() {
+        return tokenManager;
+    }
 }
\ No newline at end of file
@@ -1,64 +1,130 @@
 package org.quarkos.spotify;
 
 import com.google.gson.JsonArray;
-import org.apache.commons.text.similarity.LevenshteinDistance;
+import org.quarkos.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.michaelthelin.spotify.SpotifyApi;
-import se.michaelthelin.spotify.model_objects.miscellaneous.Device;
+import se.michaelthelin.spotify.exceptions.detailed.NotFoundException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
 import se.michaelthelin.spotify.model_objects.specification.Track;
 
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * This class is the main bridge to the Spotify Web API.
- * It handles finding a device to play on, searching for tracks, and initiating playback.
+ * It handles finding a device to play on (through the {@link SpotifyDeviceCache}), searching for tracks, and initiating playback.
  * It uses a resilient search strategy to provide the best possible user experience.
  */
 public class SpotifyController {
 
     private final SpotifyApi spotifyApi;
+    private final SpotifyDeviceCache deviceCache;
+    private final TrackResolutionCache trackCache;
+    private final SpotifyLibrarySync librarySync;
+    private final TrackPrefetcher prefetcher;
+    private volatile boolean speculativeSearch = Configuration.SPOTIFY_SPECULATIVE_SEARCH;
+    private final PlaybackCoalescer playback = new PlaybackCoalescer(this::executePlayback, Configuration.SPOTIFY_COALESCE_WINDOW_MS);
     private static final Logger logger = LoggerFactory.getLogger(SpotifyController.class);
+    // Shared by all controllers; the threads only wait on search requests.
+    private static final ExecutorService searchExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "spotify-search");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public SpotifyController(SpotifyApi spotifyApi) {
+        this(spotifyApi, TrackResolutionCache.load(Configuration.TRACK_CACHE_FILE));
+    }
+
+    private SpotifyController(SpotifyApi spotifyApi, TrackResolutionCache trackCache) {
+        this(spotifyApi, new SpotifyDeviceCache(spotifyApi).start(), trackCache,
+                new SpotifyLibrarySync(spotifyApi, trackCache).start(),
+                new TrackPrefetcher(spotifyApi, trackCache, PlayHistory.load(Configuration.PLAY_HISTORY_FILE)));
+    }
+
+    /**
+     * Creates a controller whose track cache is kept in memory only.
+     */
+    public SpotifyController(SpotifyApi spotifyApi, SpotifyDeviceCache deviceCache) {
+        this(spotifyApi, deviceCache, new TrackResolutionCache());
+    }
+
+    public SpotifyController(SpotifyApi spotifyApi, SpotifyDeviceCache deviceCache, TrackResolutionCache trackCache) {
+        this(spotifyApi, deviceCache, trackCache, null);
+    }
+
+    /**
+     * @param librarySync The mirror of the user's library, or null to match against resolved requests only.
+     *                    Its tracks are expected in the given track cache's index.
+     */
+    public SpotifyController(SpotifyApi spotifyApi, SpotifyDeviceCache deviceCache, TrackResolutionCache trackCache,
+                             SpotifyLibrarySync librarySync) {
+        this(spotifyApi, deviceCache, trackCache, librarySync, null);
+    }
+
+    /**
+     * @param prefetcher Predicts the next requests after a track started, or null to not prefetch.
+     *                   It is expected to add to the given track cache.
+     */
+    public SpotifyController(SpotifyApi spotifyApi, SpotifyDeviceCache deviceCache, TrackResolutionCache trackCache,
+                             SpotifyLibrarySync librarySync, TrackPrefetcher prefetcher) {
         this.spotifyApi = spotifyApi;
+        this.deviceCache = deviceCache;
+        this.trackCache = trackCache;
+        this.librarySync = librarySync;
+        this.prefetcher = prefetcher;
     }
 
     /**
-     * Finds an available Spotify device to play music on.
-     * It prioritizes an already active device (e.g., a currently playing desktop or phone app)
-     * to ensure playback happens where the user expects it.
+     * Runs a playback call on the cached device. If Spotify answers that the device is not found,
+     * the cache was stale: it is invalidated and the call is retried once on a freshly fetched device.
      *
-     * @return The ID of an available device, or null if no devices are found.
+     * @param call The playback call.
+     * @return False if no device is available.
      */
-    private String getAvailableDeviceId() {
+    private boolean runOnDevice(DeviceCall call) throws Exception {
+        String deviceId = deviceCache.getDeviceId();
+        if (deviceId == null) {
+            return false;
+        }
         try {
-            Device[] devices = spotifyApi.getUsersAvailableDevices().build().execute();
-            if (devices == null || devices.length == 0) {
-                logger.error("No Spotify devices found. Is Spotify open on any device?");
-                return null;
+            call.execute(deviceId);
+        } catch (NotFoundException e) {
+            logger.warn("Device " + deviceId + " not found (" + e.getMessage() + "), refreshing the device list.");
+            deviceCache.invalidate();
+            deviceId = deviceCache.getDeviceId();
+            if (deviceId == null) {
+                return false;
             }
+            call.execute(deviceId);
+        }
+        deviceCache.markActive(deviceId);
+        return true;
+    }
 
-            // Find the device that is currently active.
-            Optional<Device> activeDevice = Arrays.stream(devices)
-                    .filter(Device::getIs_active)
-                    .findFirst();
-
-            if (activeDevice.isPresent()) {
-                logger.info("Found active device: " + activeDevice.get().getName());
-                return activeDevice.get().getId();
-            }
+    /**
+     * @return The device cache, e.g. to read its statistics.
+     */
+    public SpotifyDeviceCache getDeviceCache() {
+        return deviceCache;
+    }
 
-            // If no device is active, fall back to the first device in the list.
-            logger.info("No active device found. Using first available: " + devices[0].getName());
-            return devices[0].getId();
+    /**
+     * @return The cache of resolved play requests.
+     */
+    public TrackResolutionCache getTrackCache() {
+        return trackCache;
+    }
 
-        } catch (Exception e) {
-            logger.error("Error fetching Spotify devices: " + e.getMessage());
-            return null;
-        }
+    /**
+     * @return The prefetcher, or null if this controller doesn't prefetch.
+     */
+    public TrackPrefetcher getPrefetcher() {
+        return prefetcher;
     }
 
     /**
@@ -74,161 +140,280 @@ public class SpotifyController {
             return;
         }
 
-        // Find a device to play on. This is a prerequisite for playback.
-        String deviceId = getAvailableDeviceId();
-        if (deviceId == null) {
-            logger.error("Playback failed: No available Spotify device found. Please open Spotify on a device.");
+        logger.info("Searching for track: '" + trackName + "' by artist: '" + (artistName != null ? artistName : "Any") + "'");
+
+        // A request that was resolved before, a near-repeat of one, or a song from the user's library
+        // skips the search entirely.
+        Optional<ResolvedTrack> cached = trackCache.lookup(trackName, artistName);
+        if (cached.isPresent()) {
+            logger.info("   - Resolved from cache: " + cached.get().name() + " by " + cached.get().artist());
+            if (playUri(cached.get().uri()) && prefetcher != null) {
+                prefetcher.onTrackStarted(cached.get());
+            }
             return;
         }
 
-        logger.info("Searching for track: '" + trackName + "' by artist: '" + (artistName != null ? artistName : "Any") + "'");
+        Track foundTrack = resolveTrack(trackName, artistName);
+
+        // --- Playback --- //
+
+        // If a track was found by either strategy, remember and play it.
+        if (foundTrack != null) {
+            logger.info("   - Found best match: " + foundTrack.getName() + " by " + foundTrack.getArtists()[0].getName());
+            trackCache.put(trackName, artistName, ResolvedTrack.of(foundTrack));
+            if (playUri(foundTrack.getUri()) && prefetcher != null) {
+                prefetcher.onTrackStarted(foundTrack);
+            }
+        } else {
+            logger.warn("No song found for '" + trackName + "'. Please try again.");
+        }
+    }
+
+    /**
+     * Plays another track by the artist of the track that was started last, e.g. for "play the next one by them".
+     * The track comes from the {@link TrackPrefetcher}'s prediction, so there is no search.
+     */
+    public void playMoreByArtist() {
+        if (prefetcher == null) {
+            logger.warn("Cannot play more by this artist: prefetching is disabled.");
+            return;
+        }
+        Optional<ResolvedTrack> next = prefetcher.nextByArtist();
+        if (next.isEmpty()) {
+            logger.warn("No other track by this artist is known yet. Please ask for a song by name.");
+            return;
+        }
+        logger.info("Playing the next one by " + next.get().artist() + ": " + next.get().name());
+        if (playUri(next.get().uri())) {
+            prefetcher.onTrackStarted(next.get());
+        }
+    }
 
-        Track foundTrack = null;
+    /**
+     * Starts playback of a track on the cached device.
+     *
+     * @param uri The track's Spotify URI.
+     * @return Whether the playback command was sent.
+     */
+    private boolean playUri(String uri) {
+        try {
+            // The Spotify API requires the track's URI to be in a JSON array.
+            JsonArray uris = new JsonArray();
+            uris.add(uri);
+
+            // Send the command to the Spotify API to start playback on the cached device.
+            boolean sent = runOnDevice(deviceId -> spotifyApi.startResumeUsersPlayback()
+                    .device_id(deviceId)
+                    .uris(uris)
+                    .build()
+                    .execute());
+
+            if (sent) {
+                logger.info("Playback command sent successfully!");
+            } else {
+                logger.error("Playback failed: No available Spotify device found. Please open Spotify on a device.");
+            }
+            return sent;
+        } catch (TooManyRequestsException e) {
+            logger.warn("Playback failed: Spotify rate limit reached. " + e.getMessage());
+        } catch (Exception e) {
+            logger.error("Playback failed: Error sending playback command. Do you have the correct scopes?", e);
+            logger.error("   (Required scope: user-modify-playback-state)");
+        }
+        return false;
+    }
+
+    /**
+     * Finds the track the user most likely means, without playing it.
+     *
+     * @param trackName The name of the track from the user's command.
+     * @param artistName The name of the artist (can be null if not specified).
+     * @return The best matching Track object, or null if no suitable match is found.
+     */
+    public Track resolveTrack(String trackName, String artistName) {
+        if (librarySync != null) {
+            // Spell followed artists the way Spotify does, so the high-precision search finds them.
+            artistName = librarySync.canonicalArtist(artistName);
+        }
+        String generalQuery = trackName + (artistName != null ? " " + artistName : "");
+        if (artistName == null || artistName.isBlank()) {
+            // Without an artist there is no high-precision query, only the smart search.
+            return rankCandidates(searchCandidates(generalQuery), trackName, null);
+        }
+        if (speculativeSearch) {
+            return resolveSpeculatively(generalQuery, trackName, artistName);
+        }
 
         // --- Search Strategy --- //
 
         // High-Precision Search.
         // If we have both a track and an artist, we use Spotify's field filters (track:"..." artist:"...")
         // for a very specific search. This is fast and usually returns the exact match.
-        if (artistName != null && !artistName.isBlank()) {
-            String specificQuery = "track:\"" + trackName + "\" artist:\"" + artistName + "\"";
-            logger.info("   - Attempting high-precision search...");
-            try {
-                Track[] tracks = spotifyApi.searchTracks(specificQuery).limit(1).build().execute().getItems();
-                if (tracks.length > 0) {
-                    foundTrack = tracks[0];
-                }
-            } catch (Exception e) { /* Fails silently, the fallback will handle it */ }
-        }
+        logger.info("   - Attempting high-precision search...");
+        Track foundTrack = searchPrecise(trackName, artistName);
 
         // Smart Fallback Search.
-        // This runs if the high-precision search fails or wasn't possible (e.g., no artist specified).
-        // It performs a general search and then uses a Levenshtein distance algorithm
-        // to find the best match from the results. This is more resilient to typos or slight mismatches.
+        // This runs if the high-precision search fails.
+        // It performs a general search and then scores the results with the TrackScorer
+        // to find the best match. This is more resilient to typos or slight mismatches.
         if (foundTrack == null) {
-            String generalQuery = trackName + (artistName != null ? " " + artistName : "");
             logger.info("   - High-precision search failed. Using smart fallback search...");
-            foundTrack = findBestMatch(generalQuery, trackName, artistName);
+            foundTrack = rankCandidates(searchCandidates(generalQuery), trackName, artistName);
         }
+        return foundTrack;
+    }
 
-        // --- Playback --- //
-
-        // If a track was found by either strategy, play it.
-        if (foundTrack != null) {
-            logger.info("   - Found best match: " + foundTrack.getName() + " by " + foundTrack.getArtists()[0].getName());
-            try {
-                // The Spotify API requires the track's URI to be in a JSON array.
-                JsonArray uris = new JsonArray();
-                uris.add(foundTrack.getUri());
-
-                // Send the command to the Spotify API to start playback on the selected device.
-                spotifyApi.startResumeUsersPlayback()
-                        .device_id(deviceId)
-                        .uris(uris)
-                        .build()
-                        .execute();
+    /**
+     * Runs the high-precision and the fallback search at the same time, so a miss no longer costs
+     * two sequential round-trips. A precise hit is always preferred; the fallback is only ranked if the precise
+     * search found nothing, or if it arrives first with an exact title and artist match, which is what the precise
+     * search would return anyway. The search that is no longer needed is cancelled: if it has not started yet it
+     * never runs, otherwise its response is dropped (the Spotify client cannot abort a request in flight).
+     */
+    private Track resolveSpeculatively(String generalQuery, String trackName, String artistName) {
+        logger.info("   - Running high-precision and fallback search in parallel...");
+        CompletableFuture<Track> precise = CompletableFuture.supplyAsync(() -> searchPrecise(trackName, artistName), searchExecutor);
+        CompletableFuture<Track[]> fallback = CompletableFuture.supplyAsync(() -> searchCandidates(generalQuery), searchExecutor);
 
-                logger.info("Playback command sent successfully!");
-            } catch (Exception e) {
-                logger.error("Playback failed: Error sending playback command. Do you have the correct scopes?", e);
-                logger.error("   (Required scope: user-modify-playback-state)");
+        CompletableFuture.anyOf(precise, fallback).join();
+        if (precise.isDone()) {
+            Track hit = precise.join();
+            if (hit != null) {
+                fallback.cancel(true);
+                return hit;
             }
-        } else {
-            logger.warn("No song found for '" + trackName + "'. Please try again.");
+            logger.info("   - High-precision search failed. Using smart fallback results...");
+            return rankCandidates(fallback.join(), trackName, artistName);
+        }
+
+        Track best = rankCandidates(fallback.join(), trackName, artistName);
+        if (best != null && isExactMatch(best, trackName, artistName)) {
+            precise.cancel(true);
+            return best;
         }
+        Track hit = precise.join();
+        return hit != null ? hit : best;
     }
 
     /**
-     * Implements the "smart search" functionality.
-     * It fetches a list of results for a general query and then scores each result
-     * based on its similarity to the original user command.
+     * @return The first result of the field-filtered search, or null if there is none.
+     */
+    private Track searchPrecise(String trackName, String artistName) {
+        String specificQuery = "track:\"" + trackName + "\" artist:\"" + artistName + "\"";
+        try {
+            Track[] tracks = spotifyApi.searchTracks(specificQuery).limit(1).build().execute().getItems();
+            if (tracks.length > 0) {
+                return tracks[0];
+            }
+        } catch (Exception e) { /* Fails silently, the fallback will handle it */ }
+        return null;
+    }
+
+    /**
+     * Fetches a list of candidates for the "smart search".
      *
      * @param fullQuery The combined query string (e.g., "bohemian rhapsody queen") for the API.
-     * @param originalTrackName The track name as spoken by the user.
-     * @param originalArtistName The artist name as spoken by the user (can be null).
-     * @return The best matching Track object, or null if no suitable match is found.
+     * @return The candidates, or null if the search failed or found nothing.
      */
-    private Track findBestMatch(String fullQuery, String originalTrackName, String originalArtistName) {
+    private Track[] searchCandidates(String fullQuery) {
         try {
-            // Fetch a list of candidates to compare.
             Track[] tracks = spotifyApi.searchTracks(fullQuery).limit(10).build().execute().getItems();
-            if (tracks == null || tracks.length == 0) {
-                return null;
-            }
-
-            // Levenshtein distance is a string metric for measuring the difference between two sequences.
-            // In simple terms, it's the number of edits (insertions, deletions, or substitutions)
-            // required to change one word into the other. A lower score means a better match.
-            LevenshteinDistance levenshtein = new LevenshteinDistance();
-
-            // Find the track with the minimum "distance" (i.e., the best match) to the original query.
-            return Arrays.stream(tracks)
-                    .min(Comparator.comparingInt(track -> {
-                        // Calculate the similarity of the track title from the API vs. the command.
-                        int trackDistance = levenshtein.apply(originalTrackName.toLowerCase(), track.getName().toLowerCase());
-
-                        // If an artist was specified, we factor in the artist's similarity as well.
-                        // This helps differentiate between songs with the same title by different artists.
-                        if (originalArtistName != null && track.getArtists().length > 0) {
-                            int artistDistance = levenshtein.apply(originalArtistName.toLowerCase(), track.getArtists()[0].getName().toLowerCase());
-                            // We give more weight to the track title match, as it's usually more important.
-                            return (trackDistance * 2) + artistDistance;
-                        }
-                        return trackDistance;
-                    }))
-                    .orElse(null); // Return the best match, or null if the stream is empty.
-
+            return tracks == null || tracks.length == 0 ? null : tracks;
+        } catch (TooManyRequestsException e) {
+            logger.warn("Smart search skipped: Spotify rate limit reached. " + e.getMessage());
+            return null;
         } catch (Exception e) {
             logger.error("Error during smart search: " + e.getMessage(), e);
             return null;
         }
     }
 
+    /**
+     * Implements the "smart search" functionality.
+     * It scores each candidate based on its similarity to the original user command.
+     *
+     * @param tracks The candidates from the general search (can be null).
+     * @param originalTrackName The track name as spoken by the user.
+     * @param originalArtistName The artist name as spoken by the user (can be null).
+     * @return The best matching Track object, or null if no suitable match is found.
+     */
+    private Track rankCandidates(Track[] tracks, String originalTrackName, String originalArtistName) {
+        // The scorer combines edit distance, shared words and how the words sound, so a misheard
+        // "billy jean" still prefers "Billie Jean" over a title that is merely spelled similarly.
+        return TrackScorer.best(tracks, originalTrackName, originalArtistName);
+    }
+
+    private static boolean isExactMatch(Track track, String trackName, String artistName) {
+        return track.getName().equalsIgnoreCase(trackName)
+                && track.getArtists().length > 0
+                && track.getArtists()[0].getName().equalsIgnoreCase(artistName);
+    }
+
+    /**
+     * @param speculativeSearch Whether to run the high-precision and the fallback search in parallel.
+     */
+    public void setSpeculativeSearch(boolean speculativeSearch) {
+        this.speculativeSearch = speculativeSearch;
+    }
+
     public void pause() {
-        try {
-            String deviceId = getAvailableDeviceId();
-            if (deviceId != null) {
-                spotifyApi.pauseUsersPlayback().device_id(deviceId).build().execute();
-                logger.info("Playback paused.");
-            }
-        } catch (Exception e) {
-            logger.error("Failed to pause playback.", e);
-        }
+        playback.submit(PlaybackCoalescer.Action.PAUSE);
     }
 
     public void resume() {
-        try {
-            String deviceId = getAvailableDeviceId();
-            if (deviceId != null) {
-                spotifyApi.startResumeUsersPlayback().device_id(deviceId).build().execute();
-                logger.info("Playback resumed.");
-            }
-        } catch (Exception e) {
-            logger.error("Failed to resume playback.", e);
-        }
+        playback.submit(PlaybackCoalescer.Action.RESUME);
     }
 
     public void skip() {
-        try {
-            String deviceId = getAvailableDeviceId();
-            if (deviceId != null) {
-                spotifyApi.skipUsersPlaybackToNextTrack().device_id(deviceId).build().execute();
-                logger.info("Skipped to next track.");
-            }
-        } catch (Exception e) {
-            logger.error("Failed to skip track.", e);
-        }
+        playback.submit(PlaybackCoalescer.Action.NEXT);
     }
 
     public void previous() {
+        playback.submit(PlaybackCoalescer.Action.PREVIOUS);
+    }
+
+    /**
+     * @return The coalescer of playback commands, e.g. to read its statistics.
+     */
+    public PlaybackCoalescer getPlaybackCoalescer() {
+        return playback;
+    }
+
+    /**
+     * Sends a playback command, possibly several times in a row. Spotify has no request for several steps at once,
+     * so each step is its own call; a stale device is retried for the failing step only, so steps that already
+     * went through are not sent again.
+     */
+    private void executePlayback(PlaybackCoalescer.Action action, int count) {
         try {
-            String deviceId = getAvailableDeviceId();
-            if (deviceId != null) {
-                spotifyApi.skipUsersPlaybackToPreviousTrack().device_id(deviceId).build().execute();
-                logger.info("Skipped to previous track.");
+            boolean sent = true;
+            for (int i = 0; i < count && sent; i++) {
+                sent = runOnDevice(deviceId -> {
+                    switch (action) {
+                        case PAUSE -> spotifyApi.pauseUsersPlayback().device_id(deviceId).build().execute();
+                        case RESUME -> spotifyApi.startResumeUsersPlayback().device_id(deviceId).build().execute();
+                        case NEXT -> spotifyApi.skipUsersPlaybackToNextTrack().device_id(deviceId).build().execute();
+                        case PREVIOUS -> spotifyApi.skipUsersPlaybackToPreviousTrack().device_id(deviceId).build().execute();
+                    }
+                });
             }
+            if (sent) {
+                switch (action) {
+                    case PAUSE -> logger.info("Playback paused.");
+                    case RESUME -> logger.info("Playback resumed.");
+                    case NEXT -> logger.info(count == 1 ? "Skipped to next track." : "Skipped " + count + " tracks ahead.");
+                    case PREVIOUS -> logger.info(count == 1 ? "Skipped to previous track." : "Skipped " + count + " tracks back.");
+                }
+            }
+        } catch (TooManyRequestsException e) {
+            logger.warn("Spotify rate limit reached, {} was not sent: {}", action.name().toLowerCase(), e.getMessage());
         } catch (Exception e) {
-            logger.error("Failed to skip to previous track.", e);
+            logger.error("Failed to " + action.name().toLowerCase() + " playback.", e);
         }
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    private interface DeviceCall {
+        void execute(String deviceId) throws Exception;
+    }
+}
@@ -0,0 +1,91 @@
+package org.quarkos.spotify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Optional;
+
+/**
+ * Persists the Spotify tokens between runs, so only the very first start needs the browser login.
+ * The file is only readable by the current user where the file system supports POSIX permissions.
+ */
+public class SpotifyCredentialStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpotifyCredentialStore.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path file;
+
+    public SpotifyCredentialStore() {
+        this(Configuration.SPOTIFY_CREDENTIALS_FILE);
+    }
+
+    /**
+     * @param file The JSON file to store the tokens in.
+     */
+    public SpotifyCredentialStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return The stored tokens, or empty if there are none or the file can't be read.
+     */
+    public Optional<StoredCredentials> load() {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            StoredCredentials credentials = objectMapper.readValue(file.toFile(), StoredCredentials.class);
+            return credentials.refreshToken() == null ? Optional.empty() : Optional.of(credentials);
+        } catch (IOException e) {
+            logger.warn("Could not read the Spotify credentials {}: {}", file, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Replaces the stored tokens.
+     */
+    public synchronized void save(StoredCredentials credentials) {
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.deleteIfExists(temp);
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                // Created owner-only before anything is written, so the tokens are never readable by others.
+                Files.createFile(temp, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            }
+            objectMapper.writeValue(temp.toFile(), credentials);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save the Spotify credentials to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Forgets the stored tokens, e.g. after the user revoked the app's access.
+     */
+    public synchronized void clear() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Could not delete the Spotify credentials {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * @param refreshToken The long-lived token that gets new access tokens.
+     * @param accessToken The last access token, may be expired.
+     * @param expiresAtMillis When the access token expires, in epoch milliseconds.
+     */
+    public record StoredCredentials(String refreshToken, String accessToken, long expiresAtMillis) {
+    }
+}
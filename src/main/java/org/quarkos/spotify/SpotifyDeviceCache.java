@@ -0,0 +1,209 @@
+package org.quarkos.spotify;
+
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.miscellaneous.Device;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches which Spotify device playback commands go to, so that pause, skip and friends
+ * no longer need a devices round-trip before every call.
+ *
+ * <ul>
+ *     <li>A fresh entry (younger than the TTL) is used as is.</li>
+ *     <li>A stale entry is still used optimistically, the Spotify app rarely changes devices, and a refresh
+ *     is started in the background. If the device is gone after all, the playback call fails with
+ *     "device not found" and the caller {@link #invalidate() invalidates} the cache and retries.</li>
+ *     <li>While the cache is in use, a background task keeps it fresh so most lookups never wait.</li>
+ * </ul>
+ */
+public class SpotifyDeviceCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpotifyDeviceCache.class);
+
+    private final SpotifyApi spotifyApi;
+    private final long ttlMillis;
+    private final long idleMillis;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private ScheduledFuture<?> refreshTask;
+
+    private volatile CachedDevice cached;
+    private volatile long lastAccess;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong optimisticHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public SpotifyDeviceCache(SpotifyApi spotifyApi) {
+        this(spotifyApi, Configuration.SPOTIFY_DEVICE_CACHE_TTL_MS, Configuration.SPOTIFY_DEVICE_CACHE_IDLE_MS);
+    }
+
+    /**
+     * @param spotifyApi The API to fetch the devices with.
+     * @param ttlMillis How long a fetched device list counts as fresh.
+     * @param idleMillis How long after the last lookup the background refresh keeps running.
+     */
+    public SpotifyDeviceCache(SpotifyApi spotifyApi, long ttlMillis, long idleMillis) {
+        this.spotifyApi = spotifyApi;
+        this.ttlMillis = ttlMillis;
+        this.idleMillis = idleMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "spotify-device-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts refreshing the device in the background shortly before the TTL runs out,
+     * as long as the cache was used within the idle time.
+     *
+     * @return This cache.
+     */
+    public synchronized SpotifyDeviceCache start() {
+        if (refreshTask == null) {
+            long period = Math.max(1, ttlMillis * 3 / 4);
+            refreshTask = scheduler.scheduleWithFixedDelay(() -> {
+                if (System.currentTimeMillis() - lastAccess < idleMillis) {
+                    refreshInBackground();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the device to play on, preferring the active one.
+     *
+     * @return The device ID, or null if no device is available.
+     */
+    public String getDeviceId() {
+        lastAccess = System.currentTimeMillis();
+        CachedDevice current = cached;
+        if (current != null) {
+            if (lastAccess - current.fetchedAt() < ttlMillis) {
+                hits.incrementAndGet();
+                return current.deviceId();
+            }
+            optimisticHits.incrementAndGet();
+            refreshInBackground();
+            return current.deviceId();
+        }
+        misses.incrementAndGet();
+        return fetch();
+    }
+
+    /**
+     * Drops the cached device, e.g. after a playback call answered "device not found".
+     * The next lookup fetches the device list again.
+     */
+    public void invalidate() {
+        if (cached != null) {
+            invalidations.incrementAndGet();
+            logger.info("Device cache invalidated.");
+        }
+        cached = null;
+    }
+
+    /**
+     * Records that a playback call on the device succeeded. That confirms the device as well as a fetch would,
+     * and makes it the active device.
+     *
+     * @param deviceId The device the call went to.
+     */
+    public void markActive(String deviceId) {
+        cached = new CachedDevice(deviceId, System.currentTimeMillis());
+    }
+
+    /**
+     * @return A snapshot of the cache statistics.
+     */
+    public DeviceCacheStats getStats() {
+        return new DeviceCacheStats(hits.get(), optimisticHits.get(), misses.get(), fetches.get(), invalidations.get());
+    }
+
+    /**
+     * Stops the background refresh.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void refreshInBackground() {
+        if (refreshing.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                try {
+                    fetch();
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Fetches the devices and caches the active one, or the first one if none is active.
+     */
+    private String fetch() {
+        fetches.incrementAndGet();
+        try {
+            Device[] devices = spotifyApi.getUsersAvailableDevices().build().execute();
+            if (devices == null || devices.length == 0) {
+                logger.error("No Spotify devices found. Is Spotify open on any device?");
+                cached = null;
+                return null;
+            }
+
+            Optional<Device> activeDevice = Arrays.stream(devices)
+                    .filter(Device::getIs_active)
+                    .findFirst();
+            Device device = activeDevice.orElse(devices[0]);
+            if (cached == null || !cached.deviceId().equals(device.getId())) {
+                logger.info((activeDevice.isPresent() ? "Found active device: " : "No active device found. Using first available: ")
+                        + device.getName());
+            }
+            cached = new CachedDevice(device.getId(), System.currentTimeMillis());
+            return device.getId();
+        } catch (Exception e) {
+            logger.error("Error fetching Spotify devices: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private record CachedDevice(String deviceId, long fetchedAt) {
+    }
+
+    /**
+     * Device cache statistics. Every hit, fresh or optimistic, saved one devices round-trip.
+     */
+    public record DeviceCacheStats(long hits, long optimisticHits, long misses, long fetches, long invalidations) {
+
+        public long savedRoundTrips() {
+            return hits + optimisticHits;
+        }
+
+        public double hitRate() {
+            long lookups = hits + optimisticHits + misses;
+            return lookups == 0 ? 0 : (double) savedRoundTrips() / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hit rate %.0f%% (%d fresh, %d optimistic, %d misses), %d fetches, %d invalidations",
+                    hitRate() * 100, hits, optimisticHits, misses, fetches, invalidations);
+        }
+    }
+}
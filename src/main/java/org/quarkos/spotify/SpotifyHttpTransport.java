@@ -0,0 +1,307 @@
+package org.quarkos.spotify;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.michaelthelin.spotify.IHttpManager;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.exceptions.detailed.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * The HTTP transport for the {@link se.michaelthelin.spotify.SpotifyApi}, built on one shared {@link HttpClient}:
+ *
+ * <ul>
+ *     <li>Connections are kept alive and reused by all requests, and HTTP/2 is negotiated where the server
+ *     supports it, so concurrent requests (like the speculative searches) share one TLS connection.</li>
+ *     <li>{@link #prewarm(URI...)} opens the connections at startup, so the first command doesn't pay for
+ *     DNS, TCP and the TLS handshake.</li>
+ *     <li>Latency is recorded per endpoint, with IDs in the path collapsed, see {@link #getStats()}.</li>
+ * </ul>
+ *
+ * Responses are mapped to the same exceptions as the library's own SpotifyHttpManager.
+ */
+public class SpotifyHttpTransport implements IHttpManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpotifyHttpTransport.class);
+    // Spotify IDs are 22 base62 characters; anything as long with a digit is treated as an ID too.
+    private static final Pattern ID_SEGMENT = Pattern.compile("[0-9A-Za-z]{22}|(?=.*\\d)[^/]{16,}");
+    // Set by the HttpClient itself, it refuses requests that try to.
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "host", "expect", "upgrade");
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final Map<String, EndpointMetrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a transport with the timeouts and protocol from the {@link Configuration}.
+     */
+    public SpotifyHttpTransport() {
+        this(Duration.ofMillis(Configuration.SPOTIFY_HTTP_CONNECT_TIMEOUT_MS),
+                Duration.ofMillis(Configuration.SPOTIFY_HTTP_REQUEST_TIMEOUT_MS), Configuration.SPOTIFY_HTTP2);
+    }
+
+    /**
+     * @param connectTimeout How long to wait for a new connection.
+     * @param requestTimeout How long to wait for a response.
+     * @param http2 Whether to negotiate HTTP/2; servers without it are still spoken to with HTTP/1.1.
+     */
+    public SpotifyHttpTransport(Duration connectTimeout, Duration requestTimeout, boolean http2) {
+        this.requestTimeout = requestTimeout;
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "spotify-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * Opens connections to the given origins in the background. Any response counts, even an error:
+     * all that matters is that a connection is established and stays in the pool.
+     *
+     * @param origins E.g. https://api.spotify.com and https://accounts.spotify.com.
+     * @return Completes when all origins answered or failed.
+     */
+    public CompletableFuture<Void> prewarm(URI... origins) {
+        CompletableFuture<?>[] requests = new CompletableFuture<?>[origins.length];
+        for (int i = 0; i < origins.length; i++) {
+            URI origin = origins[i];
+            long start = System.nanoTime();
+            HttpRequest request = HttpRequest.newBuilder(origin.resolve("/"))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(requestTimeout)
+                    .build();
+            requests[i] = httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        if (error != null) {
+                            logger.warn("Could not prewarm the connection to {}: {}", origin, error.getMessage());
+                        } else {
+                            logger.info("Connection to {} ready ({}, {}ms).", origin, response.version(), (System.nanoTime() - start) / 1_000_000);
+                        }
+                    });
+        }
+        return CompletableFuture.allOf(requests).exceptionally(error -> null);
+    }
+
+    @Override
+    public String get(URI uri, Header[] headers) throws IOException, SpotifyWebApiException {
+        return send("GET", uri, headers, null);
+    }
+
+    @Override
+    public String post(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException {
+        return send("POST", uri, headers, body);
+    }
+
+    @Override
+    public String put(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException {
+        return send("PUT", uri, headers, body);
+    }
+
+    @Override
+    public String delete(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException {
+        return send("DELETE", uri, headers, body);
+    }
+
+    /**
+     * @return The latency statistics per endpoint, the most used first.
+     */
+    public List<EndpointStats> getStats() {
+        List<EndpointStats> stats = new ArrayList<>();
+        metrics.forEach((endpoint, endpointMetrics) -> stats.add(endpointMetrics.snapshot(endpoint)));
+        stats.sort(Comparator.comparingLong(EndpointStats::count).reversed());
+        return stats;
+    }
+
+    private String send(String method, URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(requestTimeout);
+        for (Header header : headers) {
+            if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        if (body == null) {
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        } else {
+            if (body.getContentType() != null) {
+                builder.setHeader("Content-Type", body.getContentType());
+            }
+            builder.method(method, HttpRequest.BodyPublishers.ofByteArray(EntityUtils.toByteArray(body)));
+        }
+
+        EndpointMetrics endpointMetrics = metrics.computeIfAbsent(method + " " + endpoint(uri), e -> new EndpointMetrics());
+        long start = System.nanoTime();
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            endpointMetrics.record(System.nanoTime() - start, true);
+            throw new IOException("Interrupted while waiting for " + uri.getPath(), e);
+        } catch (IOException e) {
+            endpointMetrics.record(System.nanoTime() - start, true);
+            throw e;
+        }
+        endpointMetrics.record(System.nanoTime() - start, response.statusCode() >= 400);
+        return handleResponse(response);
+    }
+
+    /**
+     * Maps error statuses to exceptions like the library's SpotifyHttpManager does.
+     *
+     * @return The response body, or null if it is empty.
+     */
+    private static String handleResponse(HttpResponse<String> response) throws SpotifyWebApiException {
+        String body = response.body() == null || response.body().isEmpty() ? null : response.body();
+        int status = response.statusCode();
+        if (status < 400) {
+            return body;
+        }
+        String message = errorMessage(body, status);
+        switch (status) {
+            case 400 -> throw new BadRequestException(message);
+            case 401 -> throw new UnauthorizedException(message);
+            case 403 -> throw new ForbiddenException(message);
+            case 404 -> throw new NotFoundException(message);
+            case 429 -> {
+                Optional<String> retryAfter = response.headers().firstValue("Retry-After");
+                if (retryAfter.isPresent()) {
+                    try {
+                        throw new TooManyRequestsException(message, Integer.parseInt(retryAfter.get().trim()));
+                    } catch (NumberFormatException e) {
+                        // An HTTP date or garbage: the rate limiter falls back to its default wait.
+                        logger.debug("Ignoring Retry-After '{}'", retryAfter.get());
+                    }
+                }
+                throw new TooManyRequestsException(message);
+            }
+            case 500 -> throw new InternalServerErrorException(message);
+            case 502 -> throw new BadGatewayException(message);
+            case 503 -> throw new ServiceUnavailableException(message);
+            default -> {
+                return body;
+            }
+        }
+    }
+
+    private static String errorMessage(String body, int status) {
+        if (body != null) {
+            try {
+                JsonElement json = JsonParser.parseString(body);
+                if (json.isJsonObject() && json.getAsJsonObject().has("error")) {
+                    JsonObject object = json.getAsJsonObject();
+                    // The accounts service answers {"error": ..., "error_description": ...}, the Web API {"error": {"message": ...}}.
+                    if (object.has("error_description")) {
+                        return object.get("error_description").getAsString();
+                    }
+                    if (object.get("error").isJsonObject() && object.getAsJsonObject("error").has("message")) {
+                        return object.getAsJsonObject("error").get("message").getAsString();
+                    }
+                }
+            } catch (JsonParseException | IllegalStateException e) {
+                // Not JSON, fall through to the status.
+            }
+        }
+        return "HTTP " + status;
+    }
+
+    /**
+     * @return The path with IDs replaced, e.g. "/v1/playlists/{id}/tracks".
+     */
+    static String endpoint(URI uri) {
+        String path = uri.getPath();
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        StringBuilder endpoint = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            endpoint.append('/').append(ID_SEGMENT.matcher(segment).matches() ? "{id}" : segment);
+        }
+        return endpoint.length() == 0 ? "/" : endpoint.toString();
+    }
+
+    /**
+     * Counts and the most recent latencies of one endpoint.
+     */
+    private static final class EndpointMetrics {
+
+        private static final int SAMPLES = 512;
+
+        private final long[] recentNanos = new long[SAMPLES];
+        private long count;
+        private long errors;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void record(long nanos, boolean error) {
+            recentNanos[(int) (count % SAMPLES)] = nanos;
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            if (error) {
+                errors++;
+            }
+        }
+
+        synchronized EndpointStats snapshot(String endpoint) {
+            long[] sorted = Arrays.copyOf(recentNanos, (int) Math.min(count, SAMPLES));
+            Arrays.sort(sorted);
+            return new EndpointStats(endpoint, count, errors, count == 0 ? 0 : totalNanos / count / 1e6,
+                    percentile(sorted, 50), percentile(sorted, 95), maxNanos / 1e6);
+        }
+
+        private static double percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    /**
+     * @param endpoint The method and path, e.g. "GET /v1/search".
+     * @param count The number of requests.
+     * @param errors How many of them failed or were answered with an error status.
+     * @param p50Millis The median of the recent requests.
+     * @param p95Millis The 95th percentile of the recent requests.
+     */
+    public record EndpointStats(String endpoint, long count, long errors, double meanMillis,
+                                double p50Millis, double p95Millis, double maxMillis) {
+
+        @Override
+        public String toString() {
+            return String.format("%-40s %5d requests, %3d errors, mean %6.1fms, p50 %6.1fms, p95 %6.1fms, max %6.1fms",
+                    endpoint, count, errors, meanMillis, p50Millis, p95Millis, maxMillis);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package org.quarkos.spotify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.enums.ModelObjectType;
+import se.michaelthelin.spotify.model_objects.IPlaylistItem;
+import se.michaelthelin.spotify.model_objects.specification.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an offline mirror of the user's Spotify library: saved tracks, the tracks of their playlists and
+ * followed artists. All tracks are added to the {@link TrackResolutionCache}'s fuzzy index, so requests for
+ * songs from the user's own library resolve without a search round-trip.
+ *
+ * <p>Syncs are incremental: saved tracks are only fetched until the previously newest one shows up, and
+ * playlists are only refetched when their snapshot ID changed. The mirror is stored as JSON, with every track
+ * stored once and referenced by URI from the saved tracks and playlists.</p>
+ *
+ * Requires the scopes user-library-read, playlist-read-private and user-follow-read.
+ */
+public class SpotifyLibrarySync {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpotifyLibrarySync.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int SAVED_TRACKS_PAGE = 50;
+    private static final int PLAYLISTS_PAGE = 50;
+    private static final int PLAYLIST_ITEMS_PAGE = 100;
+    private static final int ARTISTS_PAGE = 50;
+
+    private final SpotifyApi spotifyApi;
+    private final TrackResolutionCache trackCache;
+    private final Path file;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "spotify-library-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Library library = Library.EMPTY;
+    private volatile Map<String, String> followedArtistsByName = Collections.emptyMap();
+    private int requests;
+
+    public SpotifyLibrarySync(SpotifyApi spotifyApi, TrackResolutionCache trackCache) {
+        this(spotifyApi, trackCache, Configuration.LIBRARY_FILE);
+    }
+
+    /**
+     * @param spotifyApi The API to sync with.
+     * @param trackCache The cache whose fuzzy index gets the library tracks.
+     * @param file The JSON file to store the mirror in, or null to keep it in memory only.
+     */
+    public SpotifyLibrarySync(SpotifyApi spotifyApi, TrackResolutionCache trackCache, Path file) {
+        this.spotifyApi = spotifyApi;
+        this.trackCache = trackCache;
+        this.file = file;
+    }
+
+    /**
+     * Loads the stored mirror, so matching works right away, and starts syncing in the background:
+     * once now, then every {@link Configuration#LIBRARY_SYNC_INTERVAL_MINUTES} minutes.
+     *
+     * @return This sync.
+     */
+    public SpotifyLibrarySync start() {
+        load();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                syncNow();
+            } catch (Exception e) {
+                logger.warn("Library sync failed, trying again in {} minutes: {}",
+                        Configuration.LIBRARY_SYNC_INTERVAL_MINUTES, e.getMessage());
+            }
+        }, 0, Configuration.LIBRARY_SYNC_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        return this;
+    }
+
+    /**
+     * Syncs the mirror with Spotify now and stores it.
+     *
+     * @return What the sync fetched.
+     * @throws Exception If a Spotify request fails; the previous mirror is kept.
+     */
+    public synchronized SyncResult syncNow() throws Exception {
+        long start = System.currentTimeMillis();
+        requests = 0;
+        Library previous = library;
+        Map<String, ResolvedTrack> tracks = new HashMap<>();
+
+        List<String> savedTracks = syncSavedTracks(previous, tracks);
+        int[] refetched = new int[1];
+        List<StoredPlaylist> playlists = syncPlaylists(previous, tracks, refetched);
+        List<String> followedArtists = fetchFollowedArtists();
+
+        // Keep only tracks that are still referenced, so removed songs drop out of the mirror.
+        Set<String> referenced = new HashSet<>(savedTracks);
+        playlists.forEach(playlist -> referenced.addAll(playlist.trackUris()));
+        List<ResolvedTrack> kept = new ArrayList<>();
+        for (String uri : referenced) {
+            ResolvedTrack track = tracks.get(uri);
+            if (track != null) {
+                kept.add(track);
+            }
+        }
+
+        apply(new Library(System.currentTimeMillis(), kept, savedTracks, playlists, followedArtists));
+        save();
+        SyncResult result = new SyncResult(savedTracks.size(), playlists.size(), refetched[0], followedArtists.size(),
+                kept.size(), requests, System.currentTimeMillis() - start);
+        logger.info("Library synced: {}", result);
+        return result;
+    }
+
+    /**
+     * @return The number of distinct tracks in the mirror.
+     */
+    public int getTrackCount() {
+        return library.tracks().size();
+    }
+
+    /**
+     * Maps a spoken artist name to the spelling of a followed artist, e.g. "ben e king" to "Ben E. King",
+     * which lets the high-precision search find it.
+     *
+     * @param artistName The artist name from the user's command (can be null).
+     * @return The followed artist's name, or the given name if the user doesn't follow such an artist.
+     */
+    public String canonicalArtist(String artistName) {
+        if (artistName == null) {
+            return null;
+        }
+        return followedArtistsByName.getOrDefault(TrackResolutionCache.normalize(artistName), artistName);
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Saved tracks come newest first. If the previously newest track shows up and the counts add up,
+     * the new tracks are simply put in front of the known ones; otherwise tracks were removed and the list
+     * is fetched in full.
+     */
+    private List<String> syncSavedTracks(Library previous, Map<String, ResolvedTrack> tracks) throws Exception {
+        String previousNewest = previous.savedTracks().isEmpty() ? null : previous.savedTracks().get(0);
+        List<String> uris = new ArrayList<>();
+        int offset = 0;
+        while (true) {
+            Paging<SavedTrack> page = spotifyApi.getUsersSavedTracks().limit(SAVED_TRACKS_PAGE).offset(offset).build().execute();
+            requests++;
+            for (SavedTrack saved : page.getItems()) {
+                Track track = saved.getTrack();
+                if (track == null) {
+                    continue;
+                }
+                if (track.getUri().equals(previousNewest) && uris.size() + previous.savedTracks().size() == page.getTotal()) {
+                    uris.addAll(previous.savedTracks());
+                    previous.tracksByUri().forEach(tracks::putIfAbsent);
+                    return uris;
+                }
+                uris.add(track.getUri());
+                tracks.put(track.getUri(), ResolvedTrack.of(track));
+            }
+            offset += page.getItems().length;
+            if (page.getNext() == null || page.getItems().length == 0) {
+                return uris;
+            }
+        }
+    }
+
+    private List<StoredPlaylist> syncPlaylists(Library previous, Map<String, ResolvedTrack> tracks, int[] refetched) throws Exception {
+        Map<String, StoredPlaylist> known = new HashMap<>();
+        previous.playlists().forEach(playlist -> known.put(playlist.id(), playlist));
+        Map<String, ResolvedTrack> previousTracks = previous.tracksByUri();
+
+        List<StoredPlaylist> playlists = new ArrayList<>();
+        int offset = 0;
+        while (true) {
+            Paging<PlaylistSimplified> page = spotifyApi.getListOfCurrentUsersPlaylists().limit(PLAYLISTS_PAGE).offset(offset).build().execute();
+            requests++;
+            for (PlaylistSimplified playlist : page.getItems()) {
+                StoredPlaylist stored = known.get(playlist.getId());
+                if (stored != null && Objects.equals(stored.snapshotId(), playlist.getSnapshotId())) {
+                    // Unchanged since the last sync.
+                    for (String uri : stored.trackUris()) {
+                        ResolvedTrack track = previousTracks.get(uri);
+                        if (track != null) {
+                            tracks.putIfAbsent(uri, track);
+                        }
+                    }
+                    playlists.add(stored);
+                } else {
+                    playlists.add(new StoredPlaylist(playlist.getId(), playlist.getName(), playlist.getSnapshotId(),
+                            fetchPlaylistTracks(playlist.getId(), tracks)));
+                    refetched[0]++;
+                }
+            }
+            offset += page.getItems().length;
+            if (page.getNext() == null || page.getItems().length == 0) {
+                return playlists;
+            }
+        }
+    }
+
+    private List<String> fetchPlaylistTracks(String playlistId, Map<String, ResolvedTrack> tracks) throws Exception {
+        List<String> uris = new ArrayList<>();
+        int offset = 0;
+        while (true) {
+            Paging<PlaylistTrack> page = spotifyApi.getPlaylistsItems(playlistId).limit(PLAYLIST_ITEMS_PAGE).offset(offset).build().execute();
+            requests++;
+            for (PlaylistTrack item : page.getItems()) {
+                IPlaylistItem playlistItem = item.getTrack();
+                // Podcast episodes and local files can't be matched against a song request.
+                if (playlistItem instanceof Track track && !Boolean.TRUE.equals(item.getIsLocal())) {
+                    uris.add(track.getUri());
+                    tracks.putIfAbsent(track.getUri(), ResolvedTrack.of(track));
+                }
+            }
+            offset += page.getItems().length;
+            if (page.getNext() == null || page.getItems().length == 0) {
+                return uris;
+            }
+        }
+    }
+
+    private List<String> fetchFollowedArtists() throws Exception {
+        List<String> artists = new ArrayList<>();
+        String after = null;
+        while (true) {
+            var request = spotifyApi.getUsersFollowedArtists(ModelObjectType.ARTIST).limit(ARTISTS_PAGE);
+            if (after != null) {
+                request.after(after);
+            }
+            PagingCursorbased<Artist> page = request.build().execute();
+            requests++;
+            for (Artist artist : page.getItems()) {
+                artists.add(artist.getName());
+            }
+            after = page.getCursors() != null && page.getCursors().length > 0 ? page.getCursors()[0].getAfter() : null;
+            if (page.getNext() == null || after == null || page.getItems().length == 0) {
+                return artists;
+            }
+        }
+    }
+
+    private void apply(Library updated) {
+        Set<String> keptUris = new HashSet<>();
+        for (ResolvedTrack track : updated.tracks()) {
+            trackCache.addToIndex(track);
+            keptUris.add(track.uri());
+        }
+        if (library != null) {
+            // Songs the user removed must not resolve locally anymore either.
+            for (ResolvedTrack track : library.tracks()) {
+                if (!keptUris.contains(track.uri())) {
+                    trackCache.removeFromIndex(track.uri());
+                }
+            }
+        }
+        Map<String, String> artists = new HashMap<>();
+        for (String artist : updated.followedArtists()) {
+            artists.put(TrackResolutionCache.normalize(artist), artist);
+        }
+        followedArtistsByName = artists;
+        library = updated;
+    }
+
+    private void load() {
+        if (file == null || !Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            apply(objectMapper.readValue(file.toFile(), Library.class));
+            logger.info("Loaded {} library tracks from {}", library.tracks().size(), file);
+        } catch (IOException e) {
+            logger.warn("Could not read the library mirror {}, waiting for the next sync: {}", file, e.getMessage());
+        }
+    }
+
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), library);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save the library mirror to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * The mirror as it is stored on disk.
+     *
+     * @param syncedAt When it was synced, in epoch milliseconds.
+     * @param tracks Every track once.
+     * @param savedTracks The URIs of the saved tracks, newest first.
+     * @param playlists The user's playlists.
+     * @param followedArtists The names of the followed artists.
+     */
+    record Library(long syncedAt, List<ResolvedTrack> tracks, List<String> savedTracks, List<StoredPlaylist> playlists,
+                   List<String> followedArtists) {
+
+        static final Library EMPTY = new Library(0, List.of(), List.of(), List.of(), List.of());
+
+        Map<String, ResolvedTrack> tracksByUri() {
+            Map<String, ResolvedTrack> byUri = new HashMap<>();
+            for (ResolvedTrack track : tracks) {
+                byUri.put(track.uri(), track);
+            }
+            return byUri;
+        }
+    }
+
+    record StoredPlaylist(String id, String name, String snapshotId, List<String> trackUris) {
+    }
+
+    /**
+     * @param savedTracks The number of saved tracks.
+     * @param playlists The number of playlists.
+     * @param playlistsRefetched How many playlists changed and were fetched again.
+     * @param followedArtists The number of followed artists.
+     * @param tracks The number of distinct tracks in the mirror.
+     * @param requests The number of Spotify requests the sync made.
+     * @param millis How long the sync took.
+     */
+    public record SyncResult(int savedTracks, int playlists, int playlistsRefetched, int followedArtists, int tracks,
+                             int requests, long millis) {
+    }
+}
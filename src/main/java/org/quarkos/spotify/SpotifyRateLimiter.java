@@ -0,0 +1,184 @@
+package org.quarkos.spotify;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.ParseException;
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.michaelthelin.spotify.IHttpManager;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the Spotify requests of the application within the rate limit. Wraps the HTTP manager of the
+ * {@link se.michaelthelin.spotify.SpotifyApi}:
+ *
+ * <ul>
+ *     <li>A token bucket lets short bursts through and then paces requests to a sustained rate,
+ *     so a burst of commands doesn't run into the limit in the first place.</li>
+ *     <li>When Spotify still answers 429, no request is sent until its Retry-After has passed, and the
+ *     rejected request is sent again once after that.</li>
+ *     <li>If a request would have to wait longer than the maximum wait, it fails right away with a
+ *     {@link TooManyRequestsException} instead of holding up a voice command for minutes.</li>
+ * </ul>
+ */
+public class SpotifyRateLimiter implements IHttpManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpotifyRateLimiter.class);
+    // Spotify always sends Retry-After; this is only used if it ever doesn't.
+    private static final int DEFAULT_RETRY_AFTER_SECONDS = 1;
+
+    private final IHttpManager delegate;
+    private final int burst;
+    private final double permitsPerNano;
+    private final long maxWaitNanos;
+
+    private double permits;
+    private long lastRefillNanos;
+    // System.nanoTime() has an arbitrary origin, so it is only ever compared by difference.
+    private long blockedUntilNanos;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong delayedRequests = new AtomicLong();
+    private final AtomicLong waitedNanos = new AtomicLong();
+    private final AtomicLong rateLimitedResponses = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    /**
+     * Uses the limits from the {@link Configuration}.
+     */
+    public SpotifyRateLimiter(IHttpManager delegate) {
+        this(delegate, Configuration.SPOTIFY_RATE_LIMIT_BURST, Configuration.SPOTIFY_RATE_LIMIT_PER_SECOND,
+                Configuration.SPOTIFY_MAX_RETRY_WAIT_MS);
+    }
+
+    /**
+     * @param delegate The HTTP manager that sends the requests.
+     * @param burst How many requests may be sent at once.
+     * @param perSecond How many requests per second may be sent in the long run.
+     * @param maxWaitMillis The longest a request waits for the limit before it fails.
+     */
+    public SpotifyRateLimiter(IHttpManager delegate, int burst, double perSecond, long maxWaitMillis) {
+        this.delegate = delegate;
+        this.burst = burst;
+        this.permitsPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.permits = burst;
+        this.lastRefillNanos = System.nanoTime();
+        this.blockedUntilNanos = lastRefillNanos;
+    }
+
+    @Override
+    public String get(URI uri, Header[] headers) throws IOException, SpotifyWebApiException, ParseException {
+        return send(uri, () -> delegate.get(uri, headers));
+    }
+
+    @Override
+    public String post(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+        return send(uri, () -> delegate.post(uri, headers, body));
+    }
+
+    @Override
+    public String put(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+        return send(uri, () -> delegate.put(uri, headers, body));
+    }
+
+    @Override
+    public String delete(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+        return send(uri, () -> delegate.delete(uri, headers, body));
+    }
+
+    /**
+     * @return A snapshot of the throttling statistics.
+     */
+    public ThrottleStats getStats() {
+        return new ThrottleStats(requests.get(), delayedRequests.get(), TimeUnit.NANOSECONDS.toMillis(waitedNanos.get()),
+                rateLimitedResponses.get(), retries.get(), rejectedRequests.get());
+    }
+
+    private String send(URI uri, Request request) throws IOException, SpotifyWebApiException, ParseException {
+        requests.incrementAndGet();
+        acquire(uri);
+        try {
+            return request.send();
+        } catch (TooManyRequestsException e) {
+            rateLimitedResponses.incrementAndGet();
+            int retryAfter = e.getRetryAfter() > 0 ? e.getRetryAfter() : DEFAULT_RETRY_AFTER_SECONDS;
+            logger.warn("Spotify rate limit reached on {}, pausing requests for {}s.", uri.getPath(), retryAfter);
+            blockFor(TimeUnit.SECONDS.toNanos(retryAfter));
+            // Waits for Retry-After, or fails right away if that is too long.
+            acquire(uri);
+            retries.incrementAndGet();
+            return request.send();
+        }
+    }
+
+    /**
+     * Takes a permit, waiting for the bucket to refill and for any Retry-After to pass.
+     */
+    private void acquire(URI uri) throws TooManyRequestsException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            permits = Math.min(burst, permits + (now - lastRefillNanos) * permitsPerNano);
+            lastRefillNanos = now;
+            long bucketWait = permits >= 1 ? 0 : (long) Math.ceil((1 - permits) / permitsPerNano);
+            waitNanos = Math.max(bucketWait, blockedUntilNanos - now);
+            if (waitNanos > maxWaitNanos) {
+                rejectedRequests.incrementAndGet();
+                int retryAfter = (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos));
+                throw new TooManyRequestsException("Spotify rate limit: not sending " + uri.getPath() + " for another "
+                        + retryAfter + "s", retryAfter);
+            }
+            // The permit is taken now, even if it only becomes available after the wait; later callers queue behind.
+            permits -= 1;
+        }
+        if (waitNanos > 0) {
+            delayedRequests.incrementAndGet();
+            waitedNanos.addAndGet(waitNanos);
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TooManyRequestsException("Interrupted while waiting for the Spotify rate limit", 0);
+            }
+        }
+    }
+
+    private synchronized void blockFor(long nanos) {
+        long until = System.nanoTime() + nanos;
+        if (until - blockedUntilNanos > 0) {
+            blockedUntilNanos = until;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        String send() throws IOException, SpotifyWebApiException, ParseException;
+    }
+
+    /**
+     * @param requests All requests that went through the limiter.
+     * @param delayedRequests How many had to wait before they were sent.
+     * @param waitedMillis How long they waited in total.
+     * @param rateLimitedResponses How often Spotify answered 429.
+     * @param retries How many requests were sent again after their Retry-After.
+     * @param rejectedRequests How many failed without being sent, because the wait would have been too long.
+     */
+    public record ThrottleStats(long requests, long delayedRequests, long waitedMillis, long rateLimitedResponses,
+                               long retries, long rejectedRequests) {
+
+        @Override
+        public String toString() {
+            return String.format("%d requests, %d delayed (%dms in total), %d rate limited, %d retried, %d rejected",
+                    requests, delayedRequests, waitedMillis, rateLimitedResponses, retries, rejectedRequests);
+        }
+    }
+}
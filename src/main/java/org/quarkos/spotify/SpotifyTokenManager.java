@@ -0,0 +1,297 @@
+package org.quarkos.spotify;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.michaelthelin.spotify.IHttpManager;
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.exceptions.SpotifyWebApiException;
+import se.michaelthelin.spotify.exceptions.detailed.BadRequestException;
+import se.michaelthelin.spotify.exceptions.detailed.UnauthorizedException;
+import se.michaelthelin.spotify.model_objects.credentials.AuthorizationCodeCredentials;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the Spotify access token valid for as long as the application runs:
+ *
+ * <ul>
+ *     <li>Tokens are persisted in a {@link SpotifyCredentialStore}. On start, a stored access token that is
+ *     still valid is used right away, otherwise the stored refresh token gets a new one. Only without stored
+ *     tokens does the user have to log in in the browser.</li>
+ *     <li>The access token is refreshed in the background {@link Configuration#SPOTIFY_TOKEN_REFRESH_MARGIN_SECONDS}
+ *     before it expires.</li>
+ *     <li>Should a request still be rejected with 401 (e.g. after the computer slept through the refresh),
+ *     the token is refreshed and the request is sent again once. This happens inside the HTTP manager of the
+ *     {@link SpotifyApi}, so callers never see it.</li>
+ * </ul>
+ */
+public class SpotifyTokenManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpotifyTokenManager.class);
+    private static final long RETRY_DELAY_SECONDS = 30;
+    private static final long MIN_REFRESH_DELAY_SECONDS = 10;
+
+    private final SpotifyApi spotifyApi;
+    private final SpotifyCredentialStore store;
+    private final TokenRefresher refresher;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "spotify-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> refreshTask;
+    private long expiresAtMillis;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong retriedRequests = new AtomicLong();
+
+    /**
+     * Sends requests through a new {@link SpotifyHttpTransport} and refreshes the access token with
+     * Spotify's token endpoint.
+     */
+    public SpotifyTokenManager(SpotifyApi.Builder apiBuilder, SpotifyCredentialStore store) {
+        this(apiBuilder, new SpotifyHttpTransport(), store, TokenRefresher.SPOTIFY_ACCOUNTS);
+    }
+
+    /**
+     * @param apiBuilder The configured builder for the API.
+     * @param httpManager The transport for the API's requests; it is wrapped to retry on 401.
+     * @param store Where the tokens are persisted.
+     * @param refresher Gets new credentials for the API's refresh token.
+     */
+    public SpotifyTokenManager(SpotifyApi.Builder apiBuilder, IHttpManager httpManager, SpotifyCredentialStore store,
+                               TokenRefresher refresher) {
+        this.store = store;
+        this.refresher = refresher;
+        this.spotifyApi = apiBuilder.setHttpManager(new RetryingHttpManager(httpManager)).build();
+    }
+
+    /**
+     * @return The API whose token this manager keeps valid.
+     */
+    public SpotifyApi getSpotifyApi() {
+        return spotifyApi;
+    }
+
+    /**
+     * Restores the session from the credential store.
+     *
+     * @return True if there is a usable session, false if the user has to log in.
+     */
+    public synchronized boolean restore() {
+        Optional<SpotifyCredentialStore.StoredCredentials> stored = store.load();
+        if (stored.isEmpty()) {
+            return false;
+        }
+        SpotifyCredentialStore.StoredCredentials credentials = stored.get();
+        spotifyApi.setRefreshToken(credentials.refreshToken());
+        if (credentials.accessToken() != null && credentials.expiresAtMillis() - refreshMarginMillis() > System.currentTimeMillis()) {
+            // Still valid for a while: no network round-trip at all before the first command.
+            spotifyApi.setAccessToken(credentials.accessToken());
+            expiresAtMillis = credentials.expiresAtMillis();
+            scheduleRefresh();
+            logger.info("Restored the Spotify session, the access token is valid for another {} minutes.",
+                    TimeUnit.MILLISECONDS.toMinutes(expiresAtMillis - System.currentTimeMillis()));
+            return true;
+        }
+        try {
+            refresh();
+            logger.info("Restored the Spotify session with the stored refresh token.");
+            return true;
+        } catch (BadRequestException e) {
+            // invalid_grant: the user revoked access or the token is too old.
+            logger.warn("The stored Spotify refresh token was rejected ({}), logging in again.", e.getMessage());
+            store.clear();
+            return false;
+        } catch (Exception e) {
+            // Most likely offline. The refresh token is still good, so keep trying in the background.
+            logger.warn("Could not refresh the Spotify access token ({}), retrying in {}s.", e.getMessage(), RETRY_DELAY_SECONDS);
+            scheduleRefreshIn(RETRY_DELAY_SECONDS);
+            return true;
+        }
+    }
+
+    /**
+     * Starts managing the tokens of a fresh login and persists them.
+     *
+     * @param credentials The credentials from the authorization code exchange.
+     */
+    public synchronized void onAuthorized(AuthorizationCodeCredentials credentials) {
+        apply(credentials);
+    }
+
+    /**
+     * Gets a new access token now.
+     */
+    public synchronized void refresh() throws IOException, SpotifyWebApiException, ParseException {
+        apply(refresher.refresh(spotifyApi));
+        refreshes.incrementAndGet();
+        logger.info("Spotify access token refreshed, valid for {} minutes.",
+                TimeUnit.MILLISECONDS.toMinutes(expiresAtMillis - System.currentTimeMillis()));
+    }
+
+    /**
+     * @return How often the access token was refreshed.
+     */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    /**
+     * @return How many requests were rejected with 401 and sent again with a new token.
+     */
+    public long getRetriedRequestCount() {
+        return retriedRequests.get();
+    }
+
+    /**
+     * Stops the background refresh.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Called when a request was rejected. Several requests failing at once only refresh once:
+     * whoever comes after the refresh finds a different token and just uses it.
+     *
+     * @param rejectedToken The access token the request was sent with.
+     * @return The access token to send the request again with.
+     */
+    private synchronized String refreshRejected(String rejectedToken) throws IOException, SpotifyWebApiException, ParseException {
+        if (rejectedToken.equals(spotifyApi.getAccessToken())) {
+            logger.info("Spotify rejected the access token, refreshing it.");
+            refresh();
+        }
+        return spotifyApi.getAccessToken();
+    }
+
+    private void apply(AuthorizationCodeCredentials credentials) {
+        spotifyApi.setAccessToken(credentials.getAccessToken());
+        if (credentials.getRefreshToken() != null) {
+            // Spotify may or may not rotate the refresh token; keep the old one if there is no new one.
+            spotifyApi.setRefreshToken(credentials.getRefreshToken());
+        }
+        expiresAtMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(credentials.getExpiresIn());
+        store.save(new SpotifyCredentialStore.StoredCredentials(spotifyApi.getRefreshToken(), spotifyApi.getAccessToken(), expiresAtMillis));
+        scheduleRefresh();
+    }
+
+    private void scheduleRefresh() {
+        long delayMillis = expiresAtMillis - refreshMarginMillis() - System.currentTimeMillis();
+        scheduleRefreshIn(Math.max(MIN_REFRESH_DELAY_SECONDS, TimeUnit.MILLISECONDS.toSeconds(delayMillis)));
+    }
+
+    private synchronized void scheduleRefreshIn(long delaySeconds) {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+        }
+        refreshTask = scheduler.schedule(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                logger.warn("Background refresh of the Spotify access token failed ({}), retrying in {}s.", e.getMessage(), RETRY_DELAY_SECONDS);
+                scheduleRefreshIn(RETRY_DELAY_SECONDS);
+            }
+        }, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private static long refreshMarginMillis() {
+        return TimeUnit.SECONDS.toMillis(Configuration.SPOTIFY_TOKEN_REFRESH_MARGIN_SECONDS);
+    }
+
+    /**
+     * Gets new credentials with the refresh token of the API.
+     */
+    @FunctionalInterface
+    public interface TokenRefresher {
+
+        /**
+         * Spotify's token endpoint; needs the client ID and secret on the API.
+         */
+        TokenRefresher SPOTIFY_ACCOUNTS = api -> api.authorizationCodeRefresh().build().execute();
+
+        AuthorizationCodeCredentials refresh(SpotifyApi api) throws IOException, SpotifyWebApiException, ParseException;
+    }
+
+    /**
+     * Sends requests with the wrapped HTTP manager and, on 401, once more with a refreshed token.
+     * Only requests authorized with a bearer token are retried, never the token requests themselves.
+     */
+    private class RetryingHttpManager implements IHttpManager {
+
+        private static final String BEARER = "Bearer ";
+
+        private final IHttpManager delegate;
+
+        RetryingHttpManager(IHttpManager delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String get(URI uri, Header[] headers) throws IOException, SpotifyWebApiException, ParseException {
+            try {
+                return delegate.get(uri, headers);
+            } catch (UnauthorizedException e) {
+                return delegate.get(uri, reauthorize(headers, e));
+            }
+        }
+
+        @Override
+        public String post(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+            try {
+                return delegate.post(uri, headers, body);
+            } catch (UnauthorizedException e) {
+                return delegate.post(uri, reauthorize(headers, e), body);
+            }
+        }
+
+        @Override
+        public String put(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+            try {
+                return delegate.put(uri, headers, body);
+            } catch (UnauthorizedException e) {
+                return delegate.put(uri, reauthorize(headers, e), body);
+            }
+        }
+
+        @Override
+        public String delete(URI uri, Header[] headers, HttpEntity body) throws IOException, SpotifyWebApiException, ParseException {
+            try {
+                return delegate.delete(uri, headers, body);
+            } catch (UnauthorizedException e) {
+                return delegate.delete(uri, reauthorize(headers, e), body);
+            }
+        }
+
+        /**
+         * @return The headers with the refreshed token, or rethrows the 401 if the request can't be retried.
+         */
+        private Header[] reauthorize(Header[] headers, UnauthorizedException rejection)
+                throws IOException, SpotifyWebApiException, ParseException {
+            for (int i = 0; i < headers.length; i++) {
+                if (HttpHeaders.AUTHORIZATION.equalsIgnoreCase(headers[i].getName()) && headers[i].getValue().startsWith(BEARER)) {
+                    String token = refreshRejected(headers[i].getValue().substring(BEARER.length()));
+                    Header[] retry = headers.clone();
+                    retry[i] = new BasicHeader(HttpHeaders.AUTHORIZATION, BEARER + token);
+                    retriedRequests.incrementAndGet();
+                    return retry;
+                }
+            }
+            throw rejection;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package org.quarkos.spotify;
+
+import com.neovisionaries.i18n.CountryCode;
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.model_objects.specification.ArtistSimplified;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+import se.michaelthelin.spotify.model_objects.specification.TrackSimplified;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Predicts what the user will ask for after a track started, and resolves it before they ask.
+ *
+ * <p>Once a track is playing, a background task fetches the next track of its album and the artist's top tracks,
+ * and looks up in the {@link PlayHistory} which tracks the user started after this one before. The predicted tracks
+ * are added to the {@link TrackResolutionCache}'s fuzzy index, so asking for one of them by name resolves without a
+ * search, and "play the next one by them" is answered from the prediction with no request at all besides playback.
+ * Optionally, the most likely next track is added to the user's Spotify queue right away
+ * ({@link Configuration#SPOTIFY_PREFETCH_QUEUE}), so it plays even without a command.</p>
+ *
+ * Queueing requires the scope user-modify-playback-state.
+ */
+public class TrackPrefetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackPrefetcher.class);
+    // Predictions skip tracks among this many recent plays.
+    private static final int RECENT_PLAYS = 20;
+    private static final int HISTORY_FOLLOWERS = 3;
+    private static final int ALBUM_PAGE = 50;
+
+    private final SpotifyApi spotifyApi;
+    private final TrackResolutionCache trackCache;
+    private final PlayHistory history;
+    private final CountryCode market;
+    private final boolean queueNext;
+    private final long waitMillis;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "spotify-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile CompletableFuture<Prediction> prediction;
+
+    private final AtomicLong prefetches = new AtomicLong();
+    private final AtomicLong prefetchedTracks = new AtomicLong();
+    private final AtomicLong queuedTracks = new AtomicLong();
+    private final AtomicLong servedPredictions = new AtomicLong();
+    private final AtomicLong missedPredictions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Uses the market, queueing and wait from the {@link Configuration}.
+     */
+    public TrackPrefetcher(SpotifyApi spotifyApi, TrackResolutionCache trackCache, PlayHistory history) {
+        this(spotifyApi, trackCache, history, market(Configuration.SPOTIFY_MARKET), Configuration.SPOTIFY_PREFETCH_QUEUE,
+                Configuration.SPOTIFY_PREFETCH_WAIT_MS);
+    }
+
+    /**
+     * @param spotifyApi The API to fetch the predictions with.
+     * @param trackCache The cache whose fuzzy index gets the predicted tracks.
+     * @param history The plays to learn from; every started track is recorded in it.
+     * @param market The market for the artists' top tracks.
+     * @param queueNext Whether to add the most likely next track to the user's queue.
+     * @param waitMillis How long {@link #nextByArtist()} waits for a prediction that is still being fetched.
+     */
+    public TrackPrefetcher(SpotifyApi spotifyApi, TrackResolutionCache trackCache, PlayHistory history, CountryCode market,
+                           boolean queueNext, long waitMillis) {
+        this.spotifyApi = spotifyApi;
+        this.trackCache = trackCache;
+        this.history = history;
+        this.market = market;
+        this.queueNext = queueNext;
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * Records a started track and starts predicting what comes after it. A prediction for the previous track
+     * that has not started yet is dropped.
+     *
+     * @param track The track, as found by a search; its artist and album are used as they are.
+     */
+    public void onTrackStarted(Track track) {
+        started(ResolvedTrack.of(track), track);
+    }
+
+    /**
+     * Like {@link #onTrackStarted(Track)}, for a track resolved from the cache; its artist and album are fetched
+     * in the background first.
+     */
+    public void onTrackStarted(ResolvedTrack track) {
+        started(track, null);
+    }
+
+    /**
+     * @return The track to play for "play the next one by them": the next song on the album of the current track,
+     * otherwise the artist's most popular track that wasn't played recently. Empty if nothing was started yet,
+     * or the prediction failed or took longer than the configured wait.
+     */
+    public Optional<ResolvedTrack> nextByArtist() {
+        CompletableFuture<Prediction> pending = prediction;
+        if (pending != null) {
+            try {
+                for (ResolvedTrack track : pending.get(waitMillis, TimeUnit.MILLISECONDS).byArtist()) {
+                    if (!history.playedRecently(track.uri(), RECENT_PLAYS)) {
+                        servedPredictions.incrementAndGet();
+                        return Optional.of(track);
+                    }
+                }
+            } catch (TimeoutException e) {
+                logger.warn("The prefetch for the current track is still running after {}ms.", waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException e) {
+                // Logged by the prefetch itself.
+            }
+        }
+        missedPredictions.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * @return The plays the predictions are based on.
+     */
+    public PlayHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * @return A snapshot of the prefetch statistics.
+     */
+    public PrefetchStats getStats() {
+        return new PrefetchStats(prefetches.get(), prefetchedTracks.get(), queuedTracks.get(), servedPredictions.get(),
+                missedPredictions.get(), failures.get());
+    }
+
+    /**
+     * Stops prefetching; a running prediction is abandoned.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void started(ResolvedTrack track, Track details) {
+        history.record(track);
+        CompletableFuture<Prediction> previous = prediction;
+        if (previous != null) {
+            // A prediction that is already running finishes, its tracks are still worth having in the index.
+            previous.cancel(false);
+        }
+        prediction = CompletableFuture.supplyAsync(() -> predict(track, details), executor);
+    }
+
+    private Prediction predict(ResolvedTrack track, Track details) {
+        prefetches.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            if (details == null) {
+                details = spotifyApi.getTrack(id(track.uri())).build().execute();
+            }
+            String artistId = firstArtistId(details.getArtists());
+
+            // Ordered by how likely they are meant by "the next one by them".
+            Map<String, ResolvedTrack> byArtist = new LinkedHashMap<>();
+            TrackSimplified nextOnAlbum = nextOnAlbum(details);
+            if (nextOnAlbum != null && Objects.equals(firstArtistId(nextOnAlbum.getArtists()), artistId)) {
+                byArtist.put(nextOnAlbum.getUri(), ResolvedTrack.of(nextOnAlbum));
+            }
+            if (artistId != null) {
+                for (Track topTrack : spotifyApi.getArtistsTopTracks(artistId, market).build().execute()) {
+                    byArtist.putIfAbsent(topTrack.getUri(), ResolvedTrack.of(topTrack));
+                }
+            }
+            byArtist.remove(track.uri());
+            byArtist.values().removeIf(candidate -> history.playedRecently(candidate.uri(), RECENT_PLAYS));
+            for (ResolvedTrack candidate : byArtist.values()) {
+                trackCache.addToIndex(candidate);
+            }
+            prefetchedTracks.addAndGet(byArtist.size());
+
+            Prediction result = new Prediction(track, List.copyOf(byArtist.values()), likelyNext(track, byArtist.values()));
+            logger.info("Prefetched {} tracks after '{}' in {}ms.", byArtist.size(), track.name(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            queue(result);
+            return result;
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            logger.warn("Could not prefetch the tracks after '{}': {}", track.name(), e.getMessage());
+            // The history doesn't need the network.
+            Prediction result = new Prediction(track, List.of(), likelyNext(track, List.of()));
+            queue(result);
+            return result;
+        }
+    }
+
+    /**
+     * @return The track after the given one on its album, or null if it is the last one.
+     */
+    private TrackSimplified nextOnAlbum(Track track) throws Exception {
+        if (track.getAlbum() == null || track.getAlbum().getId() == null) {
+            return null;
+        }
+        TrackSimplified[] albumTracks = spotifyApi.getAlbumsTracks(track.getAlbum().getId()).limit(ALBUM_PAGE).build().execute().getItems();
+        for (int i = 0; i < albumTracks.length - 1; i++) {
+            if (track.getUri().equals(albumTracks[i].getUri())) {
+                return albumTracks[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return What the user started after this track before, then the artist predictions.
+     */
+    private List<ResolvedTrack> likelyNext(ResolvedTrack track, Collection<ResolvedTrack> byArtist) {
+        Map<String, ResolvedTrack> likely = new LinkedHashMap<>();
+        for (ResolvedTrack follower : history.followers(track.uri(), HISTORY_FOLLOWERS)) {
+            if (!history.playedRecently(follower.uri(), RECENT_PLAYS)) {
+                likely.put(follower.uri(), follower);
+            }
+        }
+        for (ResolvedTrack candidate : byArtist) {
+            likely.putIfAbsent(candidate.uri(), candidate);
+        }
+        return List.copyOf(likely.values());
+    }
+
+    private void queue(Prediction prediction) {
+        if (!queueNext || prediction.likelyNext().isEmpty()) {
+            return;
+        }
+        ResolvedTrack next = prediction.likelyNext().get(0);
+        try {
+            spotifyApi.addItemToUsersPlaybackQueue(next.uri()).build().execute();
+            queuedTracks.incrementAndGet();
+            logger.info("Queued '{}' by {} as the likely next track.", next.name(), next.artist());
+        } catch (Exception e) {
+            logger.warn("Could not queue '{}': {}", next.name(), e.getMessage());
+        }
+    }
+
+    private static String firstArtistId(ArtistSimplified[] artists) {
+        return artists != null && artists.length > 0 ? artists[0].getId() : null;
+    }
+
+    /**
+     * @return The ID of a URI like "spotify:track:4uLU6hMCjMI75M1A2tKUQC".
+     */
+    private static String id(String uri) {
+        return uri.substring(uri.lastIndexOf(':') + 1);
+    }
+
+    private static CountryCode market(String code) {
+        CountryCode market = code == null || code.isEmpty() ? null : CountryCode.getByCode(code);
+        return market != null ? market : CountryCode.US;
+    }
+
+    /**
+     * @param track The started track.
+     * @param byArtist Other tracks by its artist, the most likely first.
+     * @param likelyNext What the user will probably ask for next, the most likely first.
+     */
+    private record Prediction(ResolvedTrack track, List<ResolvedTrack> byArtist, List<ResolvedTrack> likelyNext) {
+    }
+
+    /**
+     * @param prefetches How many predictions were made, one per started track.
+     * @param prefetchedTracks How many tracks were added to the index by them.
+     * @param queuedTracks How many tracks were added to the Spotify queue.
+     * @param servedPredictions How often "play the next one by them" was answered from a prediction.
+     * @param missedPredictions How often there was no prediction to answer it with.
+     * @param failures How many predictions failed to fetch.
+     */
+    public record PrefetchStats(long prefetches, long prefetchedTracks, long queuedTracks, long servedPredictions,
+                                long missedPredictions, long failures) {
+
+        @Override
+        public String toString() {
+            return String.format("%d prefetches (%d tracks, %d queued, %d failed), %d predictions served, %d missed",
+                    prefetches, prefetchedTracks, queuedTracks, failures, servedPredictions, missedPredictions);
+        }
+    }
+}
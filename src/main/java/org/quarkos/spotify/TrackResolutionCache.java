@@ -0,0 +1,235 @@
+package org.quarkos.spotify;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers which track a spoken request resolved to, so that asking for the same song again skips
+ * the Spotify search and the ranking and goes straight to playback.
+ *
+ * <p>Requests are first looked up by their normalized (track, artist) key. If that misses, a {@link TrigramIndex}
+ * over all resolved tracks (and library tracks added with {@link #addToIndex(ResolvedTrack)}) catches
+ * near-repeats like a misheard title. Resolved requests are persisted as JSON, written in the background.</p>
+ */
+public class TrackResolutionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackResolutionCache.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final char KEY_SEPARATOR = '\u001F';
+
+    private final Path file;
+    private final double fuzzyThreshold;
+    private final Map<String, StoredResolution> resolutions = new ConcurrentHashMap<>();
+    private final TrigramIndex index = new TrigramIndex();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "track-cache-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong fuzzyHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates an in-memory cache that is not persisted.
+     */
+    public TrackResolutionCache() {
+        this(null, Configuration.TRACK_CACHE_FUZZY_THRESHOLD);
+    }
+
+    /**
+     * @param file The JSON file to persist to, or null to keep the cache in memory only.
+     * @param fuzzyThreshold The minimum {@link TrackScorer} similarity (0 to 1) for a near-repeat to count as a hit.
+     */
+    public TrackResolutionCache(Path file, double fuzzyThreshold) {
+        this.file = file;
+        this.fuzzyThreshold = fuzzyThreshold;
+    }
+
+    /**
+     * Creates a cache persisted to the given file and loads what was saved there before.
+     * A missing or unreadable file starts an empty cache.
+     *
+     * @param file The JSON file, e.g. {@link Configuration#TRACK_CACHE_FILE}.
+     * @return The cache.
+     */
+    public static TrackResolutionCache load(Path file) {
+        TrackResolutionCache cache = new TrackResolutionCache(file, Configuration.TRACK_CACHE_FUZZY_THRESHOLD);
+        if (Files.isRegularFile(file)) {
+            try {
+                List<StoredResolution> stored = objectMapper.readValue(file.toFile(), new TypeReference<>() { });
+                for (StoredResolution resolution : stored) {
+                    cache.store(resolution);
+                }
+                logger.info("Loaded {} resolved tracks from {}", stored.size(), file);
+            } catch (IOException e) {
+                logger.warn("Could not read the track cache {}, starting empty: {}", file, e.getMessage());
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Looks up a request, first exactly, then fuzzily.
+     *
+     * @param trackName The track name from the user's command.
+     * @param artistName The artist name (can be null if not specified).
+     * @return The track the request, or a very similar one, resolved to before.
+     */
+    public Optional<ResolvedTrack> lookup(String trackName, String artistName) {
+        String name = normalize(trackName);
+        String artist = normalize(artistName);
+        StoredResolution exact = resolutions.get(name + KEY_SEPARATOR + artist);
+        if (exact != null) {
+            exactHits.incrementAndGet();
+            return Optional.of(exact.track());
+        }
+        Optional<ResolvedTrack> similar = index.findBest(TrackScorer.Query.of(trackName, artistName), fuzzyThreshold);
+        if (similar.isPresent()) {
+            fuzzyHits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return similar;
+    }
+
+    /**
+     * Records what a request resolved to and saves the cache in the background.
+     *
+     * @param trackName The track name from the user's command.
+     * @param artistName The artist name (can be null if not specified).
+     * @param track The track it resolved to.
+     */
+    public void put(String trackName, String artistName, ResolvedTrack track) {
+        store(new StoredResolution(normalize(trackName), normalize(artistName), track));
+        scheduleSave();
+    }
+
+    /**
+     * Makes a track findable by fuzzy lookups without a request for it, e.g. a track from the user's library.
+     * Such tracks are not persisted by this cache.
+     */
+    public void addToIndex(ResolvedTrack track) {
+        index.add(track);
+    }
+
+    /**
+     * Makes a track added with {@link #addToIndex(ResolvedTrack)} unfindable by fuzzy lookups again, e.g. one the
+     * user removed from their library. A track that a request resolved to stays findable, since it is in this
+     * cache on its own account.
+     */
+    public void removeFromIndex(String uri) {
+        // Removals only come with library syncs, so a scan over the resolutions is cheap enough.
+        boolean resolved = resolutions.values().stream().anyMatch(resolution -> resolution.track().uri().equals(uri));
+        if (!resolved) {
+            index.remove(uri);
+        }
+    }
+
+    /**
+     * @return The number of resolved requests.
+     */
+    public int size() {
+        return resolutions.size();
+    }
+
+    /**
+     * @return A snapshot of the lookup statistics.
+     */
+    public CacheStats getStats() {
+        return new CacheStats(exactHits.get(), fuzzyHits.get(), misses.get());
+    }
+
+    /**
+     * Writes the cache to its file now.
+     */
+    public synchronized void save() {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), new ArrayList<>(resolutions.values()));
+            // Replace in one step, so a crash while writing never leaves a truncated cache behind.
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save the track cache to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void store(StoredResolution resolution) {
+        resolutions.put(resolution.query() + KEY_SEPARATOR + resolution.artist(), resolution);
+        addToIndex(resolution.track());
+    }
+
+    /**
+     * Coalesces saves: any number of puts while a save is queued are written by that one save.
+     */
+    private void scheduleSave() {
+        if (file != null && savePending.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                savePending.set(false);
+                save();
+            });
+        }
+    }
+
+    /**
+     * Lower case, without accents and punctuation, single spaces: "Mr. Brightside" becomes "mr brightside".
+     *
+     * @param text The text, may be null.
+     * @return The normalized text, empty for null.
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFKD);
+        String plain = DIACRITICS.matcher(decomposed).replaceAll("");
+        return NON_ALPHANUMERIC.matcher(plain).replaceAll(" ").trim();
+    }
+
+    /**
+     * A resolved request as it is stored on disk.
+     *
+     * @param query The normalized track name of the request.
+     * @param artist The normalized artist of the request, empty if none was given.
+     * @param track The track it resolved to.
+     */
+    record StoredResolution(String query, String artist, ResolvedTrack track) {
+    }
+
+    public record CacheStats(long exactHits, long fuzzyHits, long misses) {
+
+        public double hitRate() {
+            long lookups = exactHits + fuzzyHits + misses;
+            return lookups == 0 ? 0 : (double) (exactHits + fuzzyHits) / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hit rate %.0f%% (%d exact, %d fuzzy, %d misses)", hitRate() * 100, exactHits, fuzzyHits, misses);
+        }
+    }
+}
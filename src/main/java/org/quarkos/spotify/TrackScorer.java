@@ -0,0 +1,330 @@
+package org.quarkos.spotify;
+
+import org.apache.commons.codec.language.ColognePhonetic;
+import org.apache.commons.codec.language.DoubleMetaphone;
+import se.michaelthelin.spotify.model_objects.specification.Track;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scores how well a track matches a spoken request. Each field (title, artist) is compared three ways:
+ *
+ * <ul>
+ *     <li>a bounded Levenshtein similarity, which stops as soon as the strings are too different to matter,</li>
+ *     <li>a token-set similarity, so word order and extra words ("the", "remastered") cost less,</li>
+ *     <li>a phonetic similarity over Double Metaphone and Cologne phonetics codes of the words, which catches
+ *     transcription errors that sound right but are spelled differently ("billy jean", "fönix").</li>
+ * </ul>
+ *
+ * Everything that only depends on one side is precomputed: a {@link Query} once per request, a {@link Candidate}
+ * once per track, so ranking thousands of library tracks only runs the comparisons themselves.
+ */
+public final class TrackScorer {
+
+    private static final double LEVENSHTEIN_WEIGHT = 0.5;
+    private static final double TOKEN_WEIGHT = 0.2;
+    private static final double PHONETIC_WEIGHT = 0.3;
+    // Strings further apart than this share of their length score 0 on the Levenshtein component anyway.
+    private static final double MAX_EDIT_SHARE = 0.5;
+    // Bounds are sorted with 20 bits of precision.
+    private static final double BOUND_ROUNDING = 1.0 / (1 << 20);
+
+    private static final DoubleMetaphone doubleMetaphone = new DoubleMetaphone();
+    private static final ColognePhonetic colognePhonetic = new ColognePhonetic();
+    // Grows with the vocabulary of the library, which is a few thousand words at most.
+    private static final Map<String, Integer> symbols = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextSymbol = new AtomicInteger();
+
+    private TrackScorer() {
+    }
+
+    /**
+     * Scores a candidate against a request.
+     *
+     * @return The similarity between 0 and 1. The title counts twice as much as the artist,
+     * and the artist only counts if the request names one.
+     */
+    public static double score(Query query, Candidate candidate) {
+        return score(query, candidate, 0);
+    }
+
+    /**
+     * Scores a candidate against a request, giving up early on candidates that cannot reach a minimum score.
+     * The cheap set comparisons run first and bound the possible total, and the edit distance is only
+     * computed as far as it can still matter, so most candidates of a large library cost next to nothing.
+     *
+     * @param minScore The score the candidate has to reach, e.g. the best score so far or a threshold.
+     * @return The similarity between 0 and 1, or some value below minScore if the candidate cannot reach it.
+     */
+    public static double score(Query query, Candidate candidate, double minScore) {
+        double titleWeight = query.artist() == null ? 1 : 2.0 / 3;
+        double artistWeight = 1 - titleWeight;
+        double title = setSimilarity(query.title(), candidate.title());
+        double artist = 0;
+        if (query.artist() != null && candidate.artist() != null) {
+            artist = setSimilarity(query.artist(), candidate.artist());
+        }
+        boolean hasArtist = artistWeight > 0 && candidate.artist() != null;
+        double bound = titleWeight * (title + LEVENSHTEIN_WEIGHT) + (hasArtist ? artistWeight * (artist + LEVENSHTEIN_WEIGHT) : 0);
+        if (bound < minScore) {
+            return bound;
+        }
+
+        // The title's edit distance has to make up whatever the rest can't.
+        double rest = bound - titleWeight * LEVENSHTEIN_WEIGHT;
+        title += LEVENSHTEIN_WEIGHT * levenshteinSimilarity(query.title().chars(), candidate.title().chars(),
+                (minScore - rest) / (titleWeight * LEVENSHTEIN_WEIGHT));
+        if (!hasArtist) {
+            return titleWeight * title;
+        }
+        rest = titleWeight * title + artistWeight * artist;
+        artist += LEVENSHTEIN_WEIGHT * levenshteinSimilarity(query.artist().chars(), candidate.artist().chars(),
+                (minScore - rest) / (artistWeight * LEVENSHTEIN_WEIGHT));
+        return titleWeight * title + artistWeight * artist;
+    }
+
+    /**
+     * Finds the best matching track for a request.
+     *
+     * @param tracks The candidates, e.g. from a search (can be null).
+     * @param trackName The track name from the user's command.
+     * @param artistName The artist name (can be null if not specified).
+     * @return The best track, or null if there are no candidates.
+     */
+    public static Track best(Track[] tracks, String trackName, String artistName) {
+        if (tracks == null) {
+            return null;
+        }
+        List<Candidate> candidates = new ArrayList<>(tracks.length);
+        for (Track track : tracks) {
+            candidates.add(Candidate.of(ResolvedTrack.of(track)));
+        }
+        int best = bestIndex(Query.of(trackName, artistName), candidates);
+        return best < 0 ? null : tracks[best];
+    }
+
+    /**
+     * Finds the best matching candidate for a request, e.g. among all tracks of the library.
+     *
+     * @return The best candidate, or null if there are none.
+     */
+    public static Candidate best(Query query, List<Candidate> candidates) {
+        int best = bestIndex(query, candidates);
+        return best < 0 ? null : candidates.get(best);
+    }
+
+    /**
+     * Scores the candidates in the order of their upper bounds, so the likely winners come first and
+     * everything whose bound is below the best score so far is never scored at all.
+     */
+    private static int bestIndex(Query query, List<Candidate> candidates) {
+        int size = candidates.size();
+        double[] bounds = new double[size];
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            bounds[i] = upperBound(query, candidates.get(i));
+            // The bound in the high bits and the index in the low bits, so sorting the longs sorts by bound.
+            order[i] = ((long) (bounds[i] * (1 << 20)) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        int best = -1;
+        double bestScore = -1;
+        for (int k = size - 1; k >= 0; k--) {
+            int i = (int) order[k];
+            if (bounds[i] + BOUND_ROUNDING < bestScore) {
+                break;
+            }
+            double score = score(query, candidates.get(i), bestScore);
+            if (score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The score the candidate would get if its names had no edit distance at all.
+     */
+    static double upperBound(Query query, Candidate candidate) {
+        double title = setSimilarity(query.title(), candidate.title()) + LEVENSHTEIN_WEIGHT;
+        if (query.artist() == null) {
+            return title;
+        }
+        double artist = candidate.artist() == null ? 0 : setSimilarity(query.artist(), candidate.artist()) + LEVENSHTEIN_WEIGHT;
+        return (2 * title + artist) / 3;
+    }
+
+    private static double setSimilarity(Field query, Field candidate) {
+        return TOKEN_WEIGHT * dice(query.tokens(), candidate.tokens())
+                + PHONETIC_WEIGHT * dice(query.phonetics(), candidate.phonetics());
+    }
+
+    /**
+     * @param minSimilarity Below this similarity the exact value doesn't matter and 0 is returned.
+     */
+    private static double levenshteinSimilarity(char[] a, char[] b, double minSimilarity) {
+        int longest = Math.max(a.length, b.length);
+        if (longest == 0) {
+            return 1;
+        }
+        int max = (int) Math.min(longest * MAX_EDIT_SHARE, Math.floor((1 - minSimilarity) * longest));
+        if (max < 0) {
+            return 0;
+        }
+        int distance = boundedLevenshtein(a, b, max);
+        return distance > max ? 0 : 1 - (double) distance / longest;
+    }
+
+    /**
+     * Levenshtein distance that only computes the diagonal band of width 2 * max + 1 and gives up
+     * once a whole row exceeds max.
+     *
+     * @return The distance, or max + 1 if it is larger than max.
+     */
+    static int boundedLevenshtein(char[] a, char[] b, int max) {
+        if (Math.abs(a.length - b.length) > max) {
+            return max + 1;
+        }
+        int outOfBand = max + 1;
+        int[] previous = new int[b.length + 1];
+        int[] current = new int[b.length + 1];
+        for (int j = 0; j <= b.length; j++) {
+            previous[j] = j <= max ? j : outOfBand;
+        }
+        for (int i = 1; i <= a.length; i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(b.length, i + max);
+            current[0] = i <= max ? i : outOfBand;
+            if (from > 1) {
+                current[from - 1] = outOfBand;
+            }
+            int rowMinimum = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a[i - 1] == b[j - 1] ? 0 : 1;
+                int value = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                current[j] = Math.min(value, outOfBand);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (to < b.length) {
+                current[to + 1] = outOfBand;
+            }
+            if (rowMinimum > max) {
+                return outOfBand;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length], outOfBand);
+    }
+
+    private static double dice(int[] a, int[] b) {
+        if (a.length == 0 || b.length == 0) {
+            return a.length == b.length ? 1 : 0;
+        }
+        // Both sides are sorted and distinct, so the intersection is a merge.
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return 2.0 * shared / (a.length + b.length);
+    }
+
+    /**
+     * @return The distinct phonetic codes of the words: Double Metaphone primary and alternate, and Cologne phonetics.
+     */
+    static Set<String> phonetics(Set<String> tokens) {
+        Set<String> codes = new HashSet<>();
+        for (String token : tokens) {
+            if (token.chars().allMatch(Character::isDigit)) {
+                codes.add("#" + token); // "99 luftballons": numbers have no sound code, keep them as they are.
+                continue;
+            }
+            String primary = doubleMetaphone.doubleMetaphone(token, false);
+            String alternate = doubleMetaphone.doubleMetaphone(token, true);
+            if (primary != null && !primary.isEmpty()) {
+                codes.add("m" + primary);
+            }
+            if (alternate != null && !alternate.isEmpty()) {
+                codes.add("m" + alternate);
+            }
+            String cologne = colognePhonetic.colognePhonetic(token);
+            if (cologne != null && !cologne.isEmpty()) {
+                codes.add("k" + cologne);
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Replaces words and codes by small numbers, so comparing two sets is a merge of sorted int arrays.
+     */
+    private static int[] symbols(Set<String> values) {
+        int[] ids = new int[values.size()];
+        int i = 0;
+        for (String value : values) {
+            ids[i++] = symbols.computeIfAbsent(value, v -> nextSymbol.getAndIncrement());
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * One field of a request or a candidate, normalized and with everything the comparisons need.
+     *
+     * @param normalized The text as normalized by {@link TrackResolutionCache#normalize(String)}.
+     * @param chars The same as characters, for the edit distance.
+     * @param tokens The symbols of the distinct words.
+     * @param phonetics The symbols of the distinct phonetic codes of the words.
+     */
+    record Field(String normalized, char[] chars, int[] tokens, int[] phonetics) {
+
+        static Field of(String text) {
+            String normalized = TrackResolutionCache.normalize(text);
+            Set<String> tokens = normalized.isEmpty() ? Set.of() : new HashSet<>(Arrays.asList(normalized.split(" ")));
+            return new Field(normalized, normalized.toCharArray(), symbols(tokens), symbols(TrackScorer.phonetics(tokens)));
+        }
+    }
+
+    /**
+     * A request, prepared once and then scored against any number of candidates.
+     *
+     * @param title The requested track name.
+     * @param artist The requested artist, or null if none was given.
+     */
+    public record Query(Field title, Field artist) {
+
+        public static Query of(String trackName, String artistName) {
+            Field artist = artistName == null || TrackResolutionCache.normalize(artistName).isEmpty() ? null : Field.of(artistName);
+            return new Query(Field.of(trackName), artist);
+        }
+    }
+
+    /**
+     * A track, prepared once and then scored against any number of requests.
+     *
+     * @param track The track.
+     * @param title Its name.
+     * @param artist Its artist, or null if it has none.
+     */
+    public record Candidate(ResolvedTrack track, Field title, Field artist) {
+
+        public static Candidate of(ResolvedTrack track) {
+            return new Candidate(track, Field.of(track.name()), track.artist() == null ? null : Field.of(track.artist()));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package org.quarkos.spotify;
+
+import java.util.*;
+
+/**
+ * A fuzzy index over track names and artists. Every name is split into character trigrams and phonetic codes,
+ * and an inverted index from those keys to tracks finds the candidates that share spelling or sound with a query,
+ * so a lookup only scores tracks that can possibly match instead of every known track. The candidates are then
+ * scored with the {@link TrackScorer}, which tolerates the typical Whisper mishearings ("bohemian rapsody",
+ * "dua leepa", "billy jean").
+ */
+final class TrigramIndex {
+
+    private final List<TrackScorer.Candidate> entries = new ArrayList<>();
+    private final Map<String, Integer> idsByUri = new HashMap<>();
+    private final Map<String, List<Integer>> postings = new HashMap<>();
+    private final Map<Integer, List<Integer>> phoneticPostings = new HashMap<>();
+    private int removed; // Entries left as null by remove(), still in the postings until the next compaction.
+
+    /**
+     * Adds a track, or replaces the entry with the same URI.
+     */
+    synchronized void add(ResolvedTrack track) {
+        // Scoring data is computed once here, not on every lookup.
+        TrackScorer.Candidate candidate = TrackScorer.Candidate.of(track);
+        Integer existing = idsByUri.get(track.uri());
+        if (existing != null) {
+            // Names of a URI don't change, only the stored track details are refreshed.
+            entries.set(existing, candidate);
+            return;
+        }
+        int id = entries.size();
+        entries.add(candidate);
+        idsByUri.put(track.uri(), id);
+        for (String trigram : trigrams(candidate.title().normalized())) {
+            postings.computeIfAbsent(trigram, t -> new ArrayList<>()).add(id);
+        }
+        for (int code : candidate.title().phonetics()) {
+            phoneticPostings.computeIfAbsent(code, c -> new ArrayList<>()).add(id);
+        }
+    }
+
+    /**
+     * Removes the track with the given URI, if it is indexed.
+     */
+    synchronized void remove(String uri) {
+        Integer id = idsByUri.remove(uri);
+        if (id == null) {
+            return;
+        }
+        entries.set(id, null);
+        removed++;
+        if (removed > entries.size() / 2) {
+            compact();
+        }
+    }
+
+    synchronized int size() {
+        return entries.size() - removed;
+    }
+
+    /**
+     * Rebuilds the postings without the removed entries.
+     */
+    private void compact() {
+        List<TrackScorer.Candidate> live = entries.stream().filter(Objects::nonNull).toList();
+        entries.clear();
+        idsByUri.clear();
+        postings.clear();
+        phoneticPostings.clear();
+        removed = 0;
+        for (TrackScorer.Candidate candidate : live) {
+            add(candidate.track());
+        }
+    }
+
+    /**
+     * Finds the most similar track.
+     *
+     * @param query The request.
+     * @param threshold The minimum similarity between 0 and 1.
+     * @return The best track with a similarity of at least the threshold, or empty.
+     */
+    synchronized Optional<ResolvedTrack> findBest(TrackScorer.Query query, double threshold) {
+        Set<String> trigrams = trigrams(query.title().normalized());
+        if (trigrams.isEmpty()) {
+            return Optional.empty();
+        }
+        // Only tracks sharing at least one trigram or sound with the title are ever scored.
+        List<List<Integer>> lists = new ArrayList<>();
+        for (String trigram : trigrams) {
+            lists.add(postings.get(trigram));
+        }
+        for (int code : query.title().phonetics()) {
+            lists.add(phoneticPostings.get(code));
+        }
+        boolean[] seen = new boolean[entries.size()];
+        ResolvedTrack best = null;
+        double bestScore = threshold;
+        for (List<Integer> ids : lists) {
+            if (ids == null) {
+                continue;
+            }
+            for (int id : ids) {
+                if (seen[id]) {
+                    continue;
+                }
+                seen[id] = true;
+                TrackScorer.Candidate candidate = entries.get(id);
+                if (candidate == null) {
+                    continue; // Removed.
+                }
+                double score = TrackScorer.score(query, candidate, bestScore);
+                if (score >= bestScore) {
+                    best = candidate.track();
+                    bestScore = score;
+                }
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * @return The trigrams of the text, padded with a space on both sides so short words still have some.
+     */
+    static Set<String> trigrams(String normalized) {
+        Set<String> trigrams = new HashSet<>();
+        if (normalized == null || normalized.isEmpty()) {
+            return trigrams;
+        }
+        String padded = " " + normalized + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+}
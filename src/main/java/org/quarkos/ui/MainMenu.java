@@ -137,7 +137,9 @@ public class MainMenu {
                 System.out.print(" - RECOMMENDED");
             }
         }
-        System.out.println((models.length + 1) + ". Back to Settings");
+        System.out.printf("%n %d. Automatic - picked per request from live latency and errors%s%n", models.length + 1,
+                Gemini.automaticModelSelection ? " (current)" : "");
+        System.out.println((models.length + 2) + ". Back to Settings");
         System.out.print("Please select an option: ");
     }
 
@@ -149,8 +151,12 @@ public class MainMenu {
         if (userInput > 0 && userInput <= models.length) {
             Model selectedModel = models[userInput - 1];
             Gemini.currentModel = selectedModel;
+            Gemini.automaticModelSelection = false;
             System.out.println("Model set to: " + selectedModel.getDisplayName());
         } else if (userInput == models.length + 1) {
+            Gemini.automaticModelSelection = true;
+            System.out.println("Model set to: automatic");
+        } else if (userInput == models.length + 2) {
         } else {
             System.out.println("Invalid selection.");
         }
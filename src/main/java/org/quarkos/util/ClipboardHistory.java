@@ -0,0 +1,191 @@
+package org.quarkos.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The questions answered from the clipboard with their answers, most recent last, so earlier answers can be
+ * brought back without asking again. Only the most recent entries are kept, in a ring buffer; the history can be
+ * persisted as JSON, written in the background.
+ *
+ * <p>A cursor walks through the history: {@link #previous()} and {@link #next()} move it, and a new entry puts it
+ * back on the newest one.</p>
+ */
+public class ClipboardHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClipboardHistory.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Path file;
+    private final Entry[] ring;
+    private int newest = -1; // index of the newest entry in the ring
+    private int size;
+    private int cursor; // how many entries back from the newest one
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "clipboard-history-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    /**
+     * Creates a history that is kept in memory only.
+     */
+    public ClipboardHistory() {
+        this(null, Configuration.CLIPBOARD_HISTORY_SIZE);
+    }
+
+    /**
+     * @param file The JSON file to persist to, or null to keep the history in memory only.
+     * @param capacity How many entries to keep.
+     */
+    public ClipboardHistory(Path file, int capacity) {
+        this.file = file;
+        this.ring = new Entry[capacity];
+    }
+
+    /**
+     * Creates a history persisted to the given file and loads what was saved there before.
+     * A missing or unreadable file starts an empty history.
+     *
+     * @param file The JSON file, e.g. {@link Configuration#CLIPBOARD_HISTORY_FILE}.
+     * @return The history.
+     */
+    public static ClipboardHistory load(Path file) {
+        ClipboardHistory history = new ClipboardHistory(file, Configuration.CLIPBOARD_HISTORY_SIZE);
+        if (Files.isRegularFile(file)) {
+            try {
+                List<Entry> stored = objectMapper.readValue(file.toFile(), new TypeReference<>() { });
+                for (Entry entry : stored) {
+                    history.add(entry);
+                }
+                logger.info("Loaded {} clipboard answers from {}", stored.size(), file);
+            } catch (IOException e) {
+                logger.warn("Could not read the clipboard history {}, starting empty: {}", file, e.getMessage());
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Adds an answer, moves the cursor to it and saves the history in the background.
+     */
+    public void record(Entry entry) {
+        add(entry);
+        scheduleSave();
+    }
+
+    /**
+     * @return The entry under the cursor, the newest one unless the cursor was moved.
+     */
+    public synchronized Optional<Entry> current() {
+        return size == 0 ? Optional.empty() : Optional.of(entry(cursor));
+    }
+
+    /**
+     * Moves the cursor to the next older entry, if there is one.
+     *
+     * @return The entry now under the cursor.
+     */
+    public synchronized Optional<Entry> previous() {
+        if (cursor < size - 1) {
+            cursor++;
+        }
+        return current();
+    }
+
+    /**
+     * Moves the cursor to the next newer entry, if there is one.
+     *
+     * @return The entry now under the cursor.
+     */
+    public synchronized Optional<Entry> next() {
+        if (cursor > 0) {
+            cursor--;
+        }
+        return current();
+    }
+
+    /**
+     * @return The entries, oldest first.
+     */
+    public synchronized List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int back = size - 1; back >= 0; back--) {
+            entries.add(entry(back));
+        }
+        return entries;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Writes the history to its file now.
+     */
+    public void save() {
+        if (file == null) {
+            return;
+        }
+        List<Entry> snapshot = entries();
+        try {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), snapshot);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not save the clipboard history to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private synchronized void add(Entry entry) {
+        newest = (newest + 1) % ring.length;
+        ring[newest] = entry; // Overwrites the oldest entry once the ring is full.
+        size = Math.min(size + 1, ring.length);
+        cursor = 0;
+    }
+
+    /**
+     * @param back How many entries back from the newest one.
+     */
+    private Entry entry(int back) {
+        return ring[Math.floorMod(newest - back, ring.length)];
+    }
+
+    /**
+     * Coalesces saves: any number of entries while a save is queued are written by that one save.
+     */
+    private void scheduleSave() {
+        if (file != null && savePending.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                savePending.set(false);
+                save();
+            });
+        }
+    }
+
+    /**
+     * @param question The clipboard text that was asked.
+     * @param answer The answer text.
+     * @param model The model that answered.
+     * @param latencyMillis How long the user waited for the answer.
+     * @param answeredAtMillis When it was answered.
+     */
+    public record Entry(String question, String answer, String model, long latencyMillis, long answeredAtMillis) {
+    }
+}
@@ -0,0 +1,354 @@
+package org.quarkos.util;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.quarkos.Configuration;
+import org.quarkos.Model;
+import org.quarkos.ai.Gemini;
+import org.quarkos.ai.RequestHedger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Watches the clipboard and answers new text in the background while Synapse is active, so the answer is
+ * usually ready by the time the clipboard prompt hotkey is pressed.
+ *
+ * <ul>
+ *     <li>The clipboard is polled: {@link java.awt.datatransfer.FlavorListener} only reports changes of the
+ *     data type, not new text replacing old text. A poll is one string comparison while nothing changes.</li>
+ *     <li>Text is only sent once it has stayed on the clipboard for {@link Configuration#CLIPBOARD_SETTLE_MS},
+ *     and a request for older text is cancelled when the clipboard changes.</li>
+ *     <li>Answers are cached by a hash of the text, so copying the same text again costs nothing.</li>
+ *     <li>Speculative requests are capped per hour, by count and by characters sent. Pressing the hotkey
+ *     always gets an answer, speculative or not.</li>
+ * </ul>
+ */
+public class ClipboardMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClipboardMonitor.class);
+    private static final long SPEND_WINDOW_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final Supplier<String> clipboard;
+    private final Function<String, Answer> answerer;
+    private final long pollMillis;
+    private final long settleMillis;
+    private final int maxRequestsPerHour;
+    private final long maxCharsPerHour;
+
+    private final ExecutorService prefetcher = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "clipboard-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledExecutorService poller;
+    private final Map<String, Answer> answers = new LinkedHashMap<>(16, 0.75f, true);
+    // Texts we put on the clipboard ourselves, e.g. answers, which are not questions.
+    private final Map<String, Boolean> ignored = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicReference<Prefetch> inFlight = new AtomicReference<>();
+    private final ArrayDeque<long[]> spend = new ArrayDeque<>(); // {time, characters} per speculative request
+    private volatile boolean active;
+
+    // Only touched by the polling thread.
+    private String lastText;
+    private String lastKey;
+    private long changedAt;
+    private String handledKey;
+
+    private final AtomicLong speculated = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong capped = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong inFlightHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Watches the system clipboard and answers with Gemini, see {@link #askGemini(String)}.
+     */
+    public ClipboardMonitor() {
+        this(ClipboardUtil::readText, ClipboardMonitor::askGemini,
+                Configuration.CLIPBOARD_POLL_MS, Configuration.CLIPBOARD_SETTLE_MS,
+                Configuration.CLIPBOARD_PREFETCH_MAX_PER_HOUR, Configuration.CLIPBOARD_PREFETCH_MAX_CHARS_PER_HOUR);
+    }
+
+    /**
+     * @param clipboard Reads the clipboard text, null if there is none.
+     * @param answerer Answers a prompt and says which model did; may block.
+     * @param pollMillis How often to read the clipboard.
+     * @param settleMillis How long text has to stay on the clipboard before it is answered speculatively.
+     * @param maxRequestsPerHour How many speculative requests may be sent per hour.
+     * @param maxCharsPerHour How many characters speculative requests may send per hour.
+     */
+    ClipboardMonitor(Supplier<String> clipboard, Function<String, Answer> answerer, long pollMillis, long settleMillis,
+                     int maxRequestsPerHour, long maxCharsPerHour) {
+        this.clipboard = clipboard;
+        this.answerer = answerer;
+        this.pollMillis = pollMillis;
+        this.settleMillis = settleMillis;
+        this.maxRequestsPerHour = maxRequestsPerHour;
+        this.maxCharsPerHour = maxCharsPerHour;
+    }
+
+    /**
+     * Starts polling the clipboard on a background thread.
+     *
+     * @return This monitor.
+     */
+    public synchronized ClipboardMonitor start() {
+        if (poller == null) {
+            poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "clipboard-monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            poller.scheduleWithFixedDelay(() -> {
+                try {
+                    poll();
+                } catch (RuntimeException e) {
+                    // A failed poll must not end the polling.
+                    logger.warn("Could not check the clipboard: {}", e.getMessage());
+                }
+            }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * @param active Whether new clipboard text is answered speculatively, e.g. only while Synapse is active.
+     */
+    public void setActive(boolean active) {
+        this.active = active;
+        if (!active) {
+            cancelInFlight();
+        }
+    }
+
+    /**
+     * Answers the text: from the cache, by waiting for the speculative request already running for it, or by
+     * asking right away. Blocks.
+     *
+     * @param text The prompt, usually the clipboard text.
+     * @return The response, with the model that gave it.
+     */
+    public Answer answer(String text) {
+        String key = key(text);
+        Answer cached;
+        synchronized (answers) {
+            cached = answers.get(key);
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            logger.info("Answering from the prefetched answers.");
+            return cached;
+        }
+        Prefetch prefetch = inFlight.get();
+        if (prefetch != null && prefetch.key().equals(key)) {
+            try {
+                Answer answer = prefetch.future().get();
+                inFlightHits.incrementAndGet();
+                logger.info("Answering with the prefetch already running.");
+                return answer;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the answer.");
+            } catch (ExecutionException | CancellationException e) {
+                logger.debug("Prefetch failed, asking again: {}", e.getMessage());
+            }
+        }
+        misses.incrementAndGet();
+        Answer answer = answerer.apply(text);
+        remember(key, answer);
+        return answer;
+    }
+
+    /**
+     * Marks text we put on the clipboard ourselves, e.g. an answer, so it is not answered in turn.
+     */
+    public void ignore(String text) {
+        if (text == null) {
+            return;
+        }
+        synchronized (ignored) {
+            ignored.put(key(text), Boolean.TRUE);
+            trim(ignored, Configuration.CLIPBOARD_ANSWER_CACHE_SIZE);
+        }
+    }
+
+    /**
+     * @return A snapshot of the prefetch statistics.
+     */
+    public MonitorStats getStats() {
+        return new MonitorStats(speculated.get(), cancelled.get(), capped.get(), hits.get(), inFlightHits.get(), misses.get());
+    }
+
+    /**
+     * Stops polling and cancels a running prefetch.
+     */
+    public synchronized void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+        cancelInFlight();
+        prefetcher.shutdownNow();
+    }
+
+    /**
+     * Reads the clipboard once and starts a prefetch for text that is new and has settled. Does nothing while
+     * inactive, so the clipboard isn't read then, and text copied in the meantime is answered once active again.
+     */
+    void poll() {
+        if (!active) {
+            lastText = null;
+            lastKey = null;
+            return;
+        }
+        String text = clipboard.get();
+        long now = System.currentTimeMillis();
+        if (text == null || text.isBlank()) {
+            lastText = null;
+            lastKey = null;
+            return;
+        }
+        if (!text.equals(lastText)) {
+            lastText = text;
+            lastKey = key(text);
+            changedAt = now;
+            Prefetch prefetch = inFlight.get();
+            if (prefetch != null && !prefetch.key().equals(lastKey)) {
+                cancelInFlight(); // The user moved on.
+            }
+        }
+        if (lastKey.equals(handledKey) || now - changedAt < settleMillis) {
+            return;
+        }
+        handledKey = lastKey;
+        if (shouldAnswer(text, lastKey)) {
+            speculate(text, lastKey, now);
+        }
+    }
+
+    private boolean shouldAnswer(String text, String key) {
+        if (text.length() < Configuration.CLIPBOARD_PREFETCH_MIN_CHARS || text.length() > Configuration.CLIPBOARD_PREFETCH_MAX_CHARS) {
+            return false;
+        }
+        synchronized (ignored) {
+            if (ignored.containsKey(key)) {
+                return false;
+            }
+        }
+        synchronized (answers) {
+            return !answers.containsKey(key);
+        }
+    }
+
+    private void speculate(String text, String key, long now) {
+        if (!withinBudget(text.length(), now)) {
+            capped.incrementAndGet();
+            logger.info("Speculative answer budget used up, waiting for the hotkey.");
+            return;
+        }
+        speculated.incrementAndGet();
+        logger.debug("Prefetching the answer for new clipboard text ({} characters).", text.length());
+        try {
+            Future<Answer> future = prefetcher.submit(() -> {
+                Answer answer = answerer.apply(text);
+                remember(key, answer);
+                return answer;
+            });
+            inFlight.set(new Prefetch(key, future));
+        } catch (RejectedExecutionException e) {
+            // Shut down.
+        }
+    }
+
+    private boolean withinBudget(int chars, long now) {
+        synchronized (spend) {
+            while (!spend.isEmpty() && now - spend.peekFirst()[0] > SPEND_WINDOW_MS) {
+                spend.removeFirst();
+            }
+            long spentChars = 0;
+            for (long[] request : spend) {
+                spentChars += request[1];
+            }
+            if (spend.size() >= maxRequestsPerHour || spentChars + chars > maxCharsPerHour) {
+                return false;
+            }
+            spend.addLast(new long[]{now, chars});
+            return true;
+        }
+    }
+
+    private void cancelInFlight() {
+        Prefetch prefetch = inFlight.getAndSet(null);
+        if (prefetch != null && prefetch.future().cancel(true)) {
+            cancelled.incrementAndGet();
+        }
+    }
+
+    private void remember(String key, Answer answer) {
+        if (answer == null) {
+            return;
+        }
+        synchronized (answers) {
+            answers.put(key, answer);
+            trim(answers, Configuration.CLIPBOARD_ANSWER_CACHE_SIZE);
+        }
+    }
+
+    private static void trim(Map<String, ?> map, int size) {
+        while (map.size() > size) {
+            map.remove(map.keySet().iterator().next());
+        }
+    }
+
+    private static String key(String text) {
+        return DigestUtils.sha256Hex(text);
+    }
+
+    /**
+     * Asks Gemini with the model routed for clipboard questions, hedged if
+     * {@link Configuration#CLIPBOARD_HEDGING_ENABLED}.
+     */
+    private static Answer askGemini(String prompt) {
+        if (Configuration.CLIPBOARD_HEDGING_ENABLED) {
+            RequestHedger.Result result = Gemini.generateHedgedResponse(prompt);
+            return new Answer(result.answer(), result.model());
+        }
+        Map.Entry<String, Model> response = Gemini.generateRoutedResponse(prompt);
+        return new Answer(response.getKey(), response.getValue());
+    }
+
+    private record Prefetch(String key, Future<Answer> future) {
+    }
+
+    /**
+     * @param response The response.
+     * @param model The model that gave it; with hedging or a fallback, not necessarily the one asked first.
+     */
+    public record Answer(String response, Model model) {
+    }
+
+    /**
+     * @param speculated Speculative requests sent.
+     * @param cancelled Speculative requests cancelled because the clipboard changed.
+     * @param capped New clipboard texts not answered because of the spend cap.
+     * @param hits Hotkey presses answered from the cache.
+     * @param inFlightHits Hotkey presses that waited for a running prefetch.
+     * @param misses Hotkey presses that had to ask right away.
+     */
+    public record MonitorStats(long speculated, long cancelled, long capped, long hits, long inFlightHits, long misses) {
+
+        @Override
+        public String toString() {
+            return String.format("%d speculated, %d cancelled, %d capped, %d cache hits, %d in-flight hits, %d misses",
+                    speculated, cancelled, capped, hits, inFlightHits, misses);
+        }
+    }
+}
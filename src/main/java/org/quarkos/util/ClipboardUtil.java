@@ -13,6 +13,21 @@ public class ClipboardUtil {
         clipboard.setContents(stringSelection, null);
     }
 
+    /**
+     * Reads the clipboard text without complaining, for frequent polling.
+     * @return The text, or null if the clipboard holds something else or is busy
+     */
+    public static String readText() {
+        try {
+            if (!clipboard.isDataFlavorAvailable(DataFlavor.stringFlavor)) {
+                return null;
+            }
+            return (String) clipboard.getData(DataFlavor.stringFlavor);
+        } catch (Exception e) {
+            return null; // Another application holds the clipboard, or it changed while reading.
+        }
+    }
+
     public static String getClipboardContent() {
         try {
             return (String) clipboard.getData(DataFlavor.stringFlavor); // get clipboard content as String
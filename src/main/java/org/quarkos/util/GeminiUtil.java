@@ -1,65 +1,66 @@
 package org.quarkos.util;
 
 import com.google.genai.types.FunctionCall;
+import org.quarkos.ai.FunctionDeclarations;
+import org.quarkos.ai.tool.ToolFunction;
+import org.quarkos.ai.tool.ToolParam;
 import org.quarkos.spotify.SpotifyAuthenticator;
 import org.quarkos.spotify.SpotifyController;
-import org.quarkos.voice.AzureTextToSpeech;
-import se.michaelthelin.spotify.SpotifyApi;
+import org.quarkos.voice.AudioOutputService;
+import org.quarkos.voice.TextToSpeech;
 
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class GeminiUtil {
-    private static final SpotifyApi spotifyApi = SpotifyAuthenticator.getSpotifyApi();
-    private static final SpotifyController spotifyController = new SpotifyController(spotifyApi);
-    private static final AzureTextToSpeech tts = new AzureTextToSpeech();
+    // One controller per application: each starts its own library sync and prefetcher on the same files.
+    private static volatile SpotifyController spotifyController;
     private static final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    // Spoken before a playback action; they are among the pre-synthesized phrases, see Configuration#TTS_COMMON_PHRASES.
+    private static final Map<String, String> CONTROL_CONFIRMATIONS = Map.of(
+            "pause", "Pausing music.",
+            "resume", "Resuming music.",
+            "skip", "Skipping to the next song.",
+            "previous", "Going back to the previous song.",
+            "more", "Playing more by this artist."
+    );
 
     /**
-     * Handles a function call from the Gemini model by dispatching it to the appropriate method.
+     * Sets the controller the playback tools use, so they share the one the application created.
+     * If none is set, one is created on first use.
+     */
+    public static void setSpotifyController(SpotifyController controller) {
+        spotifyController = controller;
+    }
+
+    private static SpotifyController spotifyController() {
+        if (spotifyController == null) {
+            synchronized (GeminiUtil.class) {
+                if (spotifyController == null) {
+                    spotifyController = new SpotifyController(SpotifyAuthenticator.getSpotifyApi());
+                }
+            }
+        }
+        return spotifyController;
+    }
+
+    /**
+     * Handles a function call from the Gemini model by dispatching it to the matching {@link ToolFunction} method.
+     * The returned map is the tool output and can be sent back to the model as a FunctionResponse.
      *
      * @param functionCall The FunctionCall object from the Gemini response.
+     * @return The result of the function, never null.
      */
-    public static void handleFunctionCall(FunctionCall functionCall) {
-        String functionName = functionCall.name()
-                .orElseThrow(() -> new IllegalArgumentException("Function call is missing a name."));
-        Map<String, Object> args = functionCall.args().orElse(java.util.Collections.emptyMap());
-
-        switch (functionName) {
-            case "getWeather":
-                String city = (String) args.get("city");
-                getWeather(city);
-                break;
-            case "playMusic":
-                String songName = (String) args.get("songName");
-                String artist = (String) args.get("artist");
-                playMusic(songName, artist);
-                break;
-            case "controlPlayback":
-                String action = (String) args.get("action");
-                controlPlayback(action);
-                break;
-            case "setTimer":
-                String durationStr = (String) args.get("duration");
-                String timerName = (String) args.get("timerName");
-                setTimer(durationStr, timerName);
-                break;
-            case "setAlarm":
-                String timeStr = (String) args.get("time");
-                String label = (String) args.get("label");
-                setAlarm(timeStr, label);
-                break;
-            case "getTime":
-                String timezone = (String) args.get("timezone");
-                System.out.println("Getting time for timezone: " + timezone);
-                // Implement the actual logic to get time here
-                break;
-            default:
-                System.err.println("Unknown function call: " + functionName);
-                break;
-        }
+    public static Map<String, Object> handleFunctionCall(FunctionCall functionCall) {
+        return FunctionDeclarations.getRegistry().dispatch(functionCall);
     }
 
     /**
@@ -67,47 +68,90 @@ public class GeminiUtil {
      *
      * @param city The city to get the weather for.
      */
-    private static void getWeather(String city) {
+    @ToolFunction(description = "gets the weather for a requested city")
+    private static Map<String, Object> getWeather(@ToolParam("city") String city) {
         System.out.println("Getting weather for " + city);
         // Implement the actual logic to get weather here
+        return error("Weather lookup is not available yet.");
+    }
+
+    @ToolFunction(description = "Gets the current date and time, optionally for a specific timezone.")
+    private static Map<String, Object> getTime(
+            @ToolParam(value = "timezone", description = "IANA timezone, e.g. 'Europe/Vienna'. Defaults to the local timezone.") String timezone) {
+        System.out.println("Getting time for timezone: " + timezone);
+        ZoneId zone;
+        try {
+            zone = timezone != null && !timezone.isBlank() ? ZoneId.of(timezone) : ZoneId.systemDefault();
+        } catch (DateTimeException e) {
+            return error("Unknown timezone: " + timezone);
+        }
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        Map<String, Object> result = ok();
+        result.put("timezone", zone.getId());
+        result.put("time", now.format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        return result;
     }
 
-    private static void playMusic(String songName, String artist) {
+    @ToolFunction(description = "Plays a song on Spotify. Can specify artist to improve search.")
+    private static Map<String, Object> playMusic(@ToolParam("songName") String songName, @ToolParam("artist") String artist) {
         if (songName == null || songName.isBlank()) {
-            tts.speak("Please specify a song to play.");
-            return;
+            TextToSpeech.speak("Please specify a song to play.");
+            return error("No song name given.");
         }
         String response = "Playing " + songName;
         if (artist != null && !artist.isBlank()) {
             response += " by " + artist;
         }
         response += " on Spotify.";
-        tts.speak(response);
-        spotifyController.searchAndPlayTrack(songName, artist);
+        TextToSpeech.speak(response);
+        spotifyController().searchAndPlayTrack(songName, artist);
+        Map<String, Object> result = ok();
+        result.put("songName", songName);
+        if (artist != null) {
+            result.put("artist", artist);
+        }
+        return result;
     }
 
-    private static void controlPlayback(String action) {
+    @ToolFunction(description = "Controls music playback on Spotify.")
+    private static Map<String, Object> controlPlayback(
+            @ToolParam(value = "action", description = "'more' plays another song by the current artist",
+                    allowedValues = {"pause", "resume", "skip", "previous", "more"}) String action) {
         if (action == null || action.isBlank()) {
-            return;
+            return error("No playback action given.");
+        }
+        String confirmation = CONTROL_CONFIRMATIONS.get(action.toLowerCase());
+        if (confirmation != null) {
+            TextToSpeech.speak(confirmation);
         }
-        tts.speak(action.substring(0, 1).toUpperCase() + action.substring(1) + "ing music.");
         switch (action.toLowerCase()) {
             case "pause":
-                spotifyController.pause();
+                spotifyController().pause();
                 break;
             case "resume":
-                spotifyController.resume();
+                spotifyController().resume();
                 break;
             case "skip":
-                spotifyController.skip();
+                spotifyController().skip();
                 break;
             case "previous":
-                spotifyController.previous();
+                spotifyController().previous();
                 break;
+            case "more":
+                spotifyController().playMoreByArtist();
+                break;
+            default:
+                return error("Unknown playback action: " + action);
         }
+        Map<String, Object> result = ok();
+        result.put("action", action);
+        return result;
     }
 
-    private static void setTimer(String durationStr, String timerName) {
+    @ToolFunction(description = "Sets a timer for a specified duration.")
+    private static Map<String, Object> setTimer(
+            @ToolParam(value = "duration", description = "e.g., '10 minutes', '1 hour 30 seconds'") String durationStr,
+            @ToolParam("timerName") String timerName) {
         // Basic parsing, needs a more robust implementation
         long seconds = 0;
         try {
@@ -124,17 +168,59 @@ public class GeminiUtil {
                 }
             }
         } catch (Exception e) {
-            tts.speak("Sorry, I didn't understand the timer duration.");
-            return;
+            TextToSpeech.speak("Sorry, I didn't understand the timer duration.");
+            return error("Could not parse timer duration: " + durationStr);
         }
 
         String timerLabel = timerName != null && !timerName.isBlank() ? timerName : "Timer";
-        tts.speak("Setting a " + durationStr + " timer.");
-        executorService.schedule(() -> tts.speak(timerLabel + " is up!"), seconds, TimeUnit.SECONDS);
+        TextToSpeech.speak("Setting a " + durationStr + " timer.");
+        executorService.schedule(() -> {
+            // Takes over from whatever is being said; the timer thread doesn't wait for it.
+            AudioOutputService output = AudioOutputService.getDefault();
+            output.submit(AudioOutputService.tone(output.getFormat(), 880, 200, 0.5), AudioOutputService.Priority.ALERT);
+            TextToSpeech.speak(timerLabel + " is up!", AudioOutputService.Priority.ALERT);
+        }, seconds, TimeUnit.SECONDS);
+        Map<String, Object> result = ok();
+        result.put("timerName", timerLabel);
+        result.put("seconds", seconds);
+        return result;
     }
 
-    private static void setAlarm(String timeStr, String label) {
-        tts.speak("Sorry, setting alarms is not implemented yet.");
+    @ToolFunction(description = "Sets an alarm for a specific time.")
+    private static Map<String, Object> setAlarm(
+            @ToolParam(value = "time", description = "e.g., '7 AM', 'tomorrow at 8:30 PM'") String timeStr,
+            @ToolParam("label") String label) {
+        TextToSpeech.speak("Sorry, setting alarms is not implemented yet.");
         // Implement alarm logic here, likely involving parsing timeStr and scheduling.
+        return error("Setting alarms is not implemented yet.");
+    }
+
+    @ToolFunction(description = "Creates a reminder for the user at a specific time.")
+    private static Map<String, Object> createReminder(
+            @ToolParam(value = "reminderText", description = "The text of the reminder") String reminderText,
+            @ToolParam(value = "timeString", description = "The time for the reminder, e.g., 'in 10 minutes', 'at 8pm'") String timeString) {
+        Date reminderTime;
+        try {
+            reminderTime = ReminderManager.setReminder(reminderText, timeString);
+        } catch (IllegalArgumentException e) {
+            return error(e.getMessage());
+        }
+        Map<String, Object> result = ok();
+        result.put("reminderText", reminderText);
+        result.put("time", reminderTime.toInstant().toString());
+        return result;
+    }
+
+    private static Map<String, Object> ok() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", "ok");
+        return result;
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", "error");
+        result.put("error", message);
+        return result;
     }
 }
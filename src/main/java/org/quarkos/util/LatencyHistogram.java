@@ -0,0 +1,131 @@
+package org.quarkos.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with logarithmic buckets: each bucket is about 9% wider than the previous one,
+ * over 20 doublings from its floor, by default from 100µs up to about 100s, so percentiles are accurate to within
+ * a few percent at any scale while recording costs a few atomic increments. Meant to be shared by all threads that
+ * measure the same operation.
+ */
+public class LatencyHistogram {
+
+    private static final long DEFAULT_MIN_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final int BUCKETS_PER_DOUBLING = 8;
+    private static final int BUCKETS = 20 * BUCKETS_PER_DOUBLING + 1;
+    private static final double LOG_GROWTH = Math.log(2) / BUCKETS_PER_DOUBLING;
+
+    private final long minNanos;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(DEFAULT_MIN_NANOS);
+    }
+
+    /**
+     * @param minNanos The upper bound of the smallest bucket, e.g. 1µs for operations that take microseconds.
+     */
+    public LatencyHistogram(long minNanos) {
+        if (minNanos < 1) {
+            throw new IllegalArgumentException("minNanos must be at least 1.");
+        }
+        this.minNanos = minNanos;
+    }
+
+    /**
+     * @param nanos The measured latency.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Records the time since the given start.
+     *
+     * @param startNanos A {@link System#nanoTime()} taken before the operation.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * @param percentile E.g. 95 for the 95th percentile.
+     * @return The latency in milliseconds that the given share of the measurements did not exceed,
+     * rounded up to its bucket; 0 without measurements.
+     */
+    public double percentileMillis(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // The largest value can't be above the maximum, even if its bucket reaches further.
+                return Math.min(upperBoundNanos(i), maxNanos.get()) / 1e6;
+            }
+        }
+        return maxNanos.get() / 1e6;
+    }
+
+    public double meanMillis() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / (double) n / 1e6;
+    }
+
+    public double maxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+
+    /**
+     * @return The count, mean and the usual percentiles at once.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(count(), meanMillis(), percentileMillis(50), percentileMillis(95), percentileMillis(99), maxMillis());
+    }
+
+    private int bucket(long nanos) {
+        if (nanos <= minNanos) {
+            return 0;
+        }
+        int bucket = (int) Math.ceil(Math.log((double) nanos / minNanos) / LOG_GROWTH);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    private long upperBoundNanos(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (long) (minNanos * Math.exp(bucket * LOG_GROWTH));
+    }
+
+    public record Snapshot(long count, double meanMillis, double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+
+        @Override
+        public String toString() {
+            return String.format("%d samples, mean %s, p50 %s, p95 %s, p99 %s, max %s", count, format(meanMillis),
+                    format(p50Millis), format(p95Millis), format(p99Millis), format(maxMillis));
+        }
+
+        // Below a millisecond in microseconds, so fast operations don't all show as 0.0ms.
+        private static String format(double millis) {
+            return millis > 0 && millis < 1 ? String.format("%.0fµs", millis * 1000) : String.format("%.1fms", millis);
+        }
+    }
+}
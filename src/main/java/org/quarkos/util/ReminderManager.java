@@ -2,7 +2,8 @@ package org.quarkos.util;
 
 import com.joestelmach.natty.DateGroup;
 import com.joestelmach.natty.Parser;
-import org.quarkos.voice.AzureTextToSpeech;
+import org.quarkos.voice.AudioOutputService;
+import org.quarkos.voice.TextToSpeech;
 
 import java.util.Date;
 import java.util.List;
@@ -20,36 +21,40 @@ public class ReminderManager {
      *
      * @param reminderText The text of the reminder message.
      * @param timeString   The natural language string representing the time (e.g., "in 5 minutes", "tomorrow at 9am").
+     * @return When the reminder will be spoken.
+     * @throws IllegalArgumentException If the text or time is missing, the time can't be parsed or is in the past;
+     *                                  the user has been told already.
      */
-    public static void setReminder(String reminderText, String timeString) {
+    public static Date setReminder(String reminderText, String timeString) {
         if (reminderText == null || reminderText.isBlank()) {
-            AzureTextToSpeech.speak("What should I remind you about?");
-            return;
+            TextToSpeech.speak("What should I remind you about?");
+            throw new IllegalArgumentException("No reminder text given.");
         }
         if (timeString == null || timeString.isBlank()) {
-            AzureTextToSpeech.speak("When should I remind you?");
-            return;
+            TextToSpeech.speak("When should I remind you?");
+            throw new IllegalArgumentException("No reminder time given.");
         }
 
         List<DateGroup> groups = nattyParser.parse(timeString);
         if (groups.isEmpty()) {
-            AzureTextToSpeech.speak("Sorry, I didn't understand the time for the reminder.");
-            return;
+            TextToSpeech.speak("Sorry, I didn't understand the time for the reminder.");
+            throw new IllegalArgumentException("Could not parse reminder time: " + timeString);
         }
 
         Date reminderTime = groups.get(0).getDates().get(0);
         long delay = reminderTime.getTime() - System.currentTimeMillis();
 
         if (delay < 0) {
-            AzureTextToSpeech.speak("I can't set a reminder in the past.");
-            return;
+            TextToSpeech.speak("I can't set a reminder in the past.");
+            throw new IllegalArgumentException("Reminder time is in the past: " + reminderTime);
         }
 
         scheduler.schedule(() -> {
-            AzureTextToSpeech.speak("Here is your reminder: " + reminderText);
+            TextToSpeech.speak("Here is your reminder: " + reminderText, AudioOutputService.Priority.ALERT);
         }, delay, TimeUnit.MILLISECONDS);
 
-        AzureTextToSpeech.speak("Okay, I will remind you to " + reminderText + " at " + reminderTime);
+        TextToSpeech.speak("Okay, I will remind you to " + reminderText + " at " + reminderTime);
+        return reminderTime;
     }
 }
 
@@ -0,0 +1,525 @@
+package org.quarkos.voice;
+
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays all of the application's audio through one long-lived output line, so callers never wait for playback
+ * and several sounds can be requested at once.
+ *
+ * <p>Callers {@link #submit(byte[], Priority) submit} PCM audio, or {@link #open(Priority) open} a playback and write
+ * to it while it is still being synthesized, and get a {@link Playback} back right away. Submissions go through a
+ * lock-free queue to a single mixer thread, which plays them by these rules:</p>
+ *
+ * <ul>
+ *     <li>Speech plays one utterance at a time, in the order it was submitted.</li>
+ *     <li>An {@link Priority#ALERT alert} (a timer going off, a reminder) takes over from ordinary speech, which is
+ *     held and continues after the alert.</li>
+ *     <li>{@link Priority#EARCON Earcons} are mixed on top of speech, ducked to
+ *     {@link Configuration#AUDIO_DUCK_GAIN} while speech is playing.</li>
+ * </ul>
+ *
+ * {@link #interrupt()} stops everything at once, e.g. when the user starts talking. {@link #getOutputLevel(long)}
+ * tells how loud the recent output was, so the microphone can tell the user's voice from its own echo.
+ * The audio format is 16-bit signed little-endian PCM, by default {@link TextToSpeech#AUDIO_FORMAT}.
+ */
+public class AudioOutputService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioOutputService.class);
+    private static final int FRAME_MILLIS = 20;
+    private static final long STARVED_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final int LEVEL_HISTORY_FRAMES = 64;
+
+    private static volatile AudioOutputService defaultService;
+
+    /**
+     * How important a sound is; see the class comment for how they play together.
+     */
+    public enum Priority {
+        EARCON, SPEECH, ALERT
+    }
+
+    private final AudioFormat format;
+    private final Sink sink;
+    private final int frameBytes;
+    private final float duckGain;
+    private final ConcurrentLinkedQueue<Playback> submissions = new ConcurrentLinkedQueue<>();
+    private final Thread mixer;
+    private volatile boolean running = true;
+    private volatile long interruptedAt;
+
+    // Only touched by the mixer thread.
+    private final Map<Priority, ArrayDeque<Playback>> waiting = new EnumMap<>(Priority.class);
+    private final Map<Priority, Playback> playing = new EnumMap<>(Priority.class);
+    private int levelIndex;
+    // The RMS of the last frames played, each packed with the time it was played: millis << 16 | rms.
+    private final AtomicLongArray levels = new AtomicLongArray(LEVEL_HISTORY_FRAMES);
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong interrupted = new AtomicLong();
+
+    /**
+     * Plays to the default audio device.
+     */
+    public AudioOutputService(AudioFormat format) {
+        this(format, new LineSink(format), Configuration.AUDIO_DUCK_GAIN);
+    }
+
+    /**
+     * @param format The format of all submitted audio: 16-bit signed little-endian PCM.
+     * @param sink Where the mixed audio goes; writing is expected to block while its buffer is full.
+     * @param duckGain The volume of earcons while speech is playing, 0 to 1.
+     */
+    AudioOutputService(AudioFormat format, Sink sink, float duckGain) {
+        if (format.getSampleSizeInBits() != 16 || format.isBigEndian() || format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED) {
+            throw new IllegalArgumentException("Only 16-bit signed little-endian PCM can be mixed: " + format);
+        }
+        this.format = format;
+        this.sink = sink;
+        this.duckGain = duckGain;
+        int frameSize = format.getFrameSize();
+        this.frameBytes = Math.max(1, (int) (format.getFrameRate() * FRAME_MILLIS / 1000)) * frameSize;
+        for (Priority priority : Priority.values()) {
+            waiting.put(priority, new ArrayDeque<>());
+        }
+        this.mixer = new Thread(this::mix, "audio-output");
+        mixer.setDaemon(true);
+        mixer.start();
+    }
+
+    /**
+     * @return The service for {@link TextToSpeech#AUDIO_FORMAT}, started on first use.
+     */
+    public static AudioOutputService getDefault() {
+        if (defaultService == null) {
+            synchronized (AudioOutputService.class) {
+                if (defaultService == null) {
+                    defaultService = new AudioOutputService(TextToSpeech.AUDIO_FORMAT);
+                }
+            }
+        }
+        return defaultService;
+    }
+
+    /**
+     * Plays complete audio. Returns right away.
+     *
+     * @param pcm The audio in this service's format.
+     * @param priority How important it is.
+     * @return The playback, e.g. to wait for it or cancel it.
+     */
+    public Playback submit(byte[] pcm, Priority priority) {
+        Playback playback = open(priority);
+        playback.write(pcm, 0, pcm.length);
+        playback.finish();
+        return playback;
+    }
+
+    /**
+     * Queues a playback whose audio is written later, e.g. while it is being synthesized. It starts playing
+     * with the first chunk written once it is its turn; {@link Playback#finish()} must be called after the last one.
+     *
+     * @param priority How important it is.
+     * @return The playback to write to.
+     */
+    public Playback open(Priority priority) {
+        Playback playback = new Playback(priority);
+        submitted.incrementAndGet();
+        submissions.add(playback);
+        LockSupport.unpark(mixer);
+        return playback;
+    }
+
+    /**
+     * Stops what is playing and drops everything waiting to be played, including audio submitted concurrently
+     * with this call.
+     */
+    public void interrupt() {
+        interruptedAt = System.nanoTime();
+        LockSupport.unpark(mixer);
+        sink.flush();
+    }
+
+    /**
+     * @return Whether anything is playing or waiting to be played.
+     */
+    public boolean isBusy() {
+        return completed.get() + interrupted.get() < submitted.get();
+    }
+
+    /**
+     * The reference signal for echo suppression: what the microphone may be picking up from the speakers.
+     *
+     * @param windowMillis How far back to look; should cover the output buffer and the room's echo.
+     * @return The highest RMS of the audio played within the window, 0 if nothing was played.
+     */
+    public long getOutputLevel(long windowMillis) {
+        long since = System.currentTimeMillis() - windowMillis;
+        long level = 0;
+        for (int i = 0; i < LEVEL_HISTORY_FRAMES; i++) {
+            long packed = levels.get(i);
+            if (packed >>> 16 >= since) {
+                level = Math.max(level, packed & 0xFFFF);
+            }
+        }
+        return level;
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return A snapshot of the playback statistics.
+     */
+    public OutputStats getStats() {
+        return new OutputStats(submitted.get(), completed.get(), interrupted.get());
+    }
+
+    /**
+     * Stops the mixer thread and closes the output line.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(mixer);
+    }
+
+    /**
+     * A sine tone with short fades, e.g. as an earcon.
+     *
+     * @param format The format to generate in.
+     * @param frequencyHz The pitch.
+     * @param millis The length.
+     * @param volume 0 to 1.
+     * @return The PCM audio.
+     */
+    public static byte[] tone(AudioFormat format, double frequencyHz, int millis, double volume) {
+        int channels = format.getChannels();
+        int frames = (int) (format.getFrameRate() * millis / 1000);
+        int fadeFrames = Math.max(1, Math.min(frames / 4, (int) (format.getFrameRate() / 100)));
+        byte[] pcm = new byte[frames * channels * 2];
+        for (int frame = 0; frame < frames; frame++) {
+            double fade = Math.min(1, Math.min(frame, frames - 1 - frame) / (double) fadeFrames);
+            short sample = (short) (Math.sin(2 * Math.PI * frequencyHz * frame / format.getFrameRate()) * volume * fade * Short.MAX_VALUE);
+            for (int channel = 0; channel < channels; channel++) {
+                int index = (frame * channels + channel) * 2;
+                pcm[index] = (byte) sample;
+                pcm[index + 1] = (byte) (sample >> 8);
+            }
+        }
+        return pcm;
+    }
+
+    private void mix() {
+        byte[] out = new byte[frameBytes];
+        int[] sums = new int[frameBytes / 2];
+        long handledInterrupt = interruptedAt;
+        while (running) {
+            long interruptRequest = interruptedAt;
+            if (interruptRequest != handledInterrupt) {
+                handledInterrupt = interruptRequest;
+                dropAll();
+            }
+            Playback submission;
+            while ((submission = submissions.poll()) != null) {
+                waiting.get(submission.priority).add(submission);
+            }
+
+            Playback alert = current(Priority.ALERT);
+            // Speech waits while an alert is playing, it is not even started. An alert that is still being
+            // synthesized doesn't hold it yet, or the current sentence would stop mid-word for nothing.
+            Playback speech = alert != null && alert.hasAudio() ? alert : current(Priority.SPEECH);
+            Playback earcon = current(Priority.EARCON);
+            if (speech == null && earcon == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            Arrays.fill(sums, 0);
+            int length = 0;
+            if (speech != null) {
+                length = Math.max(length, speech.mixInto(sums, 1f));
+            }
+            if (earcon != null) {
+                length = Math.max(length, earcon.mixInto(sums, speech != null ? duckGain : 1f));
+            }
+            if (length == 0) {
+                // Everything that plays is still being synthesized.
+                LockSupport.parkNanos(this, STARVED_PARK_NANOS);
+                continue;
+            }
+            long squares = 0;
+            for (int i = 0; i < length / 2; i++) {
+                int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sums[i]));
+                out[2 * i] = (byte) sample;
+                out[2 * i + 1] = (byte) (sample >> 8);
+                squares += (long) sample * sample;
+            }
+            long rms = (long) Math.sqrt((double) squares / (length / 2));
+            levels.set(levelIndex, System.currentTimeMillis() << 16 | rms);
+            levelIndex = (levelIndex + 1) % LEVEL_HISTORY_FRAMES;
+            try {
+                sink.write(out, 0, length);
+            } catch (RuntimeException e) {
+                logger.error("Audio output failed, dropping what was queued.", e);
+                dropAll();
+            }
+        }
+        sink.close();
+    }
+
+    /**
+     * @return The playback that plays next at this priority, or null if there is none.
+     */
+    private Playback current(Priority priority) {
+        Playback current = playing.get(priority);
+        while (current == null || current.isOver()) {
+            if (current != null) {
+                playing.remove(priority);
+                retire(current);
+            }
+            current = waiting.get(priority).poll();
+            if (current == null) {
+                return null;
+            }
+            playing.put(priority, current);
+        }
+        return current;
+    }
+
+    private void dropAll() {
+        for (Priority priority : Priority.values()) {
+            Playback current = playing.remove(priority);
+            if (current != null) {
+                current.cancel();
+                retire(current);
+            }
+            for (Playback queued : waiting.get(priority)) {
+                queued.cancel();
+                retire(queued);
+            }
+            waiting.get(priority).clear();
+        }
+        Playback submission;
+        while ((submission = submissions.poll()) != null) {
+            submission.cancel();
+            retire(submission);
+        }
+        logger.info("Audio output interrupted.");
+    }
+
+    /**
+     * Counts a playback that is over and completes it.
+     */
+    private void retire(Playback playback) {
+        (playback.isCancelled() ? interrupted : completed).incrementAndGet();
+        playback.done.complete(null);
+    }
+
+    /**
+     * One sound to play. Written by its producer, read by the mixer thread; chunks are handed over through a
+     * lock-free queue.
+     */
+    public final class Playback {
+
+        private final Priority priority;
+        private final ConcurrentLinkedQueue<byte[]> chunks = new ConcurrentLinkedQueue<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile boolean finished;
+        private volatile boolean cancelled;
+        // Only touched by the mixer thread.
+        private byte[] chunk;
+        private int offset;
+        private boolean started;
+
+        private Playback(Priority priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Adds audio to play after what was written before. Ignored once the playback was cancelled.
+         */
+        public void write(byte[] pcm, int offset, int length) {
+            if (!cancelled && length > 0) {
+                byte[] copy = new byte[length];
+                System.arraycopy(pcm, offset, copy, 0, length);
+                chunks.add(copy);
+                LockSupport.unpark(mixer);
+            }
+        }
+
+        /**
+         * Marks the end of the audio: the playback completes once everything written is played.
+         */
+        public void finish() {
+            finished = true;
+            LockSupport.unpark(mixer);
+        }
+
+        /**
+         * Stops this playback, or drops it if it hasn't started yet.
+         */
+        public void cancel() {
+            cancelled = true;
+            LockSupport.unpark(mixer);
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return Completes when the playback was played to the end or was cancelled.
+         */
+        public CompletableFuture<Void> completion() {
+            return done;
+        }
+
+        /**
+         * Adds up to one frame of this playback's samples to the mix.
+         *
+         * @return The number of bytes mixed; 0 if no audio is available yet.
+         */
+        private int mixInto(int[] sums, float gain) {
+            int mixed = 0;
+            while (mixed < sums.length * 2) {
+                if (chunk == null || offset == chunk.length) {
+                    chunk = chunks.poll();
+                    offset = 0;
+                    if (chunk == null) {
+                        break;
+                    }
+                }
+                int length = Math.min(chunk.length - offset, sums.length * 2 - mixed) & ~1;
+                if (length == 0) {
+                    // An odd chunk length would split a sample; the half sample is dropped.
+                    chunk = null;
+                    continue;
+                }
+                for (int i = 0; i < length; i += 2) {
+                    short sample = (short) ((chunk[offset + i] & 0xFF) | (chunk[offset + i + 1] << 8));
+                    sums[(mixed + i) / 2] += (int) (sample * gain);
+                }
+                offset += length;
+                mixed += length;
+            }
+            started |= mixed > 0;
+            return mixed;
+        }
+
+        /**
+         * @return Whether this playback has started playing or has audio to start with.
+         */
+        private boolean hasAudio() {
+            return started || !chunks.isEmpty();
+        }
+
+        private boolean isOver() {
+            return cancelled || (finished && chunks.isEmpty() && (chunk == null || offset == chunk.length));
+        }
+    }
+
+    /**
+     * Where the mixed audio goes.
+     */
+    interface Sink {
+
+        void write(byte[] pcm, int offset, int length);
+
+        /**
+         * Drops audio that was written but not played yet.
+         */
+        void flush();
+
+        void close();
+    }
+
+    /**
+     * The default audio device, through one {@link SourceDataLine} opened on first use and kept open.
+     */
+    private static final class LineSink implements Sink {
+
+        private final AudioFormat format;
+        private volatile SourceDataLine line;
+        private boolean unavailable;
+
+        LineSink(AudioFormat format) {
+            this.format = format;
+        }
+
+        @Override
+        public void write(byte[] pcm, int offset, int length) {
+            SourceDataLine output = line();
+            if (output != null) {
+                output.write(pcm, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() {
+            SourceDataLine output = line;
+            if (output != null) {
+                output.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            SourceDataLine output = line;
+            if (output != null) {
+                output.drain();
+                output.close();
+            }
+        }
+
+        private SourceDataLine line() {
+            if (line == null && !unavailable) {
+                try {
+                    SourceDataLine output = AudioSystem.getSourceDataLine(format);
+                    // A small buffer, so an interrupt silences the output quickly.
+                    output.open(format, (int) (format.getFrameRate() * format.getFrameSize() * Configuration.AUDIO_OUTPUT_BUFFER_MS / 1000));
+                    output.start();
+                    line = output;
+                } catch (LineUnavailableException | IllegalArgumentException e) {
+                    logger.error("No audio output available, sounds will not be played: {}", e.getMessage());
+                    unavailable = true;
+                }
+            }
+            return line;
+        }
+    }
+
+    /**
+     * @param submitted All playbacks.
+     * @param completed How many of them played to the end.
+     * @param interrupted How many were cancelled or interrupted.
+     */
+    public record OutputStats(long submitted, long completed, long interrupted) {
+
+        @Override
+        public String toString() {
+            return String.format("%d sounds, %d played, %d interrupted", submitted, completed, interrupted);
+        }
+    }
+}
@@ -2,15 +2,21 @@ package org.quarkos.voice;
 
 import com.microsoft.cognitiveservices.speech.*;
 import io.github.cdimascio.dotenv.Dotenv;
+import org.quarkos.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.sound.sampled.*;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
 
-public class AzureTextToSpeech {
+/**
+ * Speaks text with an Azure neural voice.
+ *
+ * <p>One {@link SpeechSynthesizer} is created on first use and kept for the life of the application, so its
+ * connection to Azure is reused instead of being set up for every sentence. The audio is requested as raw PCM
+ * and streamed: every chunk is handed on as soon as Azure sends it, not once the whole sentence is synthesized.</p>
+ */
+public class AzureTextToSpeech implements TtsEngine {
 
     private static final Logger logger = LoggerFactory.getLogger(AzureTextToSpeech.class);
 
@@ -18,57 +24,104 @@ public class AzureTextToSpeech {
     private static final String AZURE_SUBSCRIPTION_KEY = dotenv.get("AZURE_SUBSCRIPTION_KEY");
     private static final String AZURE_REGION = dotenv.get("AZURE_REGION");
 
-    public static void speak(String textToSpeak) {
-        byte[] audioData = generateAudioBytes(textToSpeak);
-        if (audioData != null && audioData.length > 0) {
-            playWavBytes(audioData);
-        } else {
-            logger.error("Audio synthesis failed or produced no data. Cannot play sound.");
-        }
+    // Raw PCM instead of WAV, so every chunk can be played as it arrives. Matches TextToSpeech.AUDIO_FORMAT.
+    private static final SpeechSynthesisOutputFormat OUTPUT_FORMAT = SpeechSynthesisOutputFormat.Raw24Khz16BitMonoPcm;
+    private static final int CHUNK_BYTES = 4_800; // 100ms of audio
+
+    private final String voice;
+    private SpeechSynthesizer synthesizer;
+    private boolean unavailable = AZURE_SUBSCRIPTION_KEY == null || AZURE_REGION == null;
+
+    public AzureTextToSpeech() {
+        this(Configuration.TTS_VOICE);
     }
 
-    private static byte[] generateAudioBytes(String textToSpeak) {
-        SpeechConfig speechConfig = SpeechConfig.fromSubscription(AZURE_SUBSCRIPTION_KEY, AZURE_REGION);
+    /**
+     * @param voice The Azure voice name, e.g. "en-US-NovaTurboMultilingualNeural".
+     */
+    public AzureTextToSpeech(String voice) {
+        this.voice = voice;
+    }
 
-        speechConfig.setSpeechSynthesisVoiceName("en-US-NovaTurboMultilingualNeural");
+    @Override
+    public String name() {
+        return "azure";
+    }
 
-        try (SpeechSynthesizer synthesizer = new SpeechSynthesizer(speechConfig, null)) {
+    @Override
+    public String voiceId() {
+        return "azure\n" + voice + '\n' + OUTPUT_FORMAT;
+    }
 
-            logger.info("Synthesizing text with voice 'en-US-NovaTurboMultilingualNeural': '{}'", textToSpeak);
-            SpeechSynthesisResult result = synthesizer.SpeakTextAsync(textToSpeak).get();
+    @Override
+    public synchronized boolean isAvailable() {
+        return !unavailable;
+    }
 
-            if (result.getReason() == ResultReason.SynthesizingAudioCompleted) {
-                logger.info("Synthesis completed successfully.");
-                return result.getAudioData();
-            } else if (result.getReason() == ResultReason.Canceled) {
-                SpeechSynthesisCancellationDetails cancellation = SpeechSynthesisCancellationDetails.fromResult(result);
-                logger.error("Speech synthesis canceled. Reason: {}", cancellation.getReason());
-                if (cancellation.getReason() == CancellationReason.Error) {
-                    logger.error("Error Code: {}. Details: {}", cancellation.getErrorCode(), cancellation.getErrorDetails());
+    /**
+     * Synthesizes one sentence at a time; the synthesizer is shared.
+     */
+    @Override
+    public synchronized boolean synthesize(String text, AudioSink sink, BooleanSupplier cancelled) {
+        SpeechSynthesizer speechSynthesizer = synthesizer();
+        if (speechSynthesizer == null) {
+            return false;
+        }
+        logger.info("Synthesizing text with voice '{}': '{}'", voice, text);
+        try (SpeechSynthesisResult result = speechSynthesizer.StartSpeakingTextAsync(text).get()) {
+            if (result.getReason() == ResultReason.Canceled) {
+                logCancellation(result);
+                return false;
+            }
+            try (AudioDataStream stream = AudioDataStream.fromResult(result)) {
+                byte[] chunk = new byte[CHUNK_BYTES];
+                long read;
+                while ((read = stream.readData(chunk)) > 0) {
+                    if (cancelled.getAsBoolean()) {
+                        // Interrupted: stop synthesizing, the rest will never be played.
+                        speechSynthesizer.StopSpeakingAsync().get();
+                        logger.info("Speech interrupted, synthesis stopped.");
+                        return false;
+                    }
+                    sink.write(chunk, 0, (int) read);
                 }
+                if (stream.getStatus() != StreamStatus.AllData) {
+                    logger.warn("Speech synthesis ended early ({}).", stream.getStatus());
+                    return false;
+                }
+                return true;
             }
         } catch (InterruptedException | ExecutionException e) {
             logger.error("An error occurred during speech synthesis.", e);
             if (e instanceof InterruptedException) {
                 Thread.currentThread().interrupt();
             }
+            return false;
         }
-        return null;
     }
 
-    private static void playWavBytes(byte[] audioData) {
-        try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(audioData);
-             AudioInputStream audioInputStream = AudioSystem.getAudioInputStream(byteArrayInputStream);
-             Clip clip = AudioSystem.getClip()) {
-
-            clip.open(audioInputStream);
-            logger.info("Starting playback...");
-            clip.start();
-            clip.drain();
-            logger.info("Playback finished.");
+    /**
+     * @return The shared synthesizer, created on first use, or null if Azure is not configured.
+     */
+    private SpeechSynthesizer synthesizer() {
+        if (synthesizer == null && !unavailable) {
+            SpeechConfig speechConfig = SpeechConfig.fromSubscription(AZURE_SUBSCRIPTION_KEY, AZURE_REGION);
+            speechConfig.setSpeechSynthesisVoiceName(voice);
+            speechConfig.setSpeechSynthesisOutputFormat(OUTPUT_FORMAT);
+            // No audio config: the audio comes back to us instead of going to the default speaker.
+            synthesizer = new SpeechSynthesizer(speechConfig, null);
+        }
+        if (unavailable) {
+            logger.error("AZURE_SUBSCRIPTION_KEY and AZURE_REGION must be set to synthesize speech with Azure.");
+        }
+        return synthesizer;
+    }
 
-        } catch (UnsupportedAudioFileException | IOException | LineUnavailableException e) {
-            logger.error("Error during audio playback", e);
+    private static void logCancellation(SpeechSynthesisResult result) {
+        SpeechSynthesisCancellationDetails cancellation = SpeechSynthesisCancellationDetails.fromResult(result);
+        logger.error("Speech synthesis canceled. Reason: {}", cancellation.getReason());
+        if (cancellation.getReason() == CancellationReason.Error) {
+            logger.error("Error Code: {}. Details: {}", cancellation.getErrorCode(), cancellation.getErrorDetails());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+package org.quarkos.voice;
+
+import org.quarkos.Configuration;
+
+/**
+ * Tells the user's voice from the echo of our own speech while audio is playing, using the level of what was just
+ * played as the reference signal.
+ *
+ * <p>How much of the output reaches the microphone (the echo coupling) is learned from the chunks that are not
+ * speech: it starts out conservative, follows a louder echo quickly and relaxes slowly. A chunk only counts as speech if it is clearly
+ * louder than the expected echo and than a raised start threshold; barge-in needs a few such chunks in a row,
+ * so a click or a loud syllable of our own speech does not cut it off.</p>
+ */
+final class BargeInDetector {
+
+    private static final double INITIAL_COUPLING = 1.0; // as loud as the output, until the room is known
+    private static final double MAX_COUPLING = 4.0;
+    private static final double ATTACK = 0.5;
+    private static final double RELEASE = 0.995;
+    private static final long MIN_REFERENCE_LEVEL = 50; // quieter output says nothing about the coupling
+
+    private final long startThreshold;
+    private final double echoMargin;
+    private final int minSpeechChunks;
+    private double coupling = INITIAL_COUPLING;
+    private int speechChunks;
+
+    BargeInDetector() {
+        this(Math.round(Configuration.START_SPEAKING_THRESHOLD * Configuration.BARGE_IN_THRESHOLD_FACTOR),
+                Configuration.BARGE_IN_ECHO_MARGIN,
+                chunks(Configuration.BARGE_IN_MIN_SPEECH_MS));
+    }
+
+    /**
+     * @param startThreshold The lowest RMS that counts as speech while audio is playing.
+     * @param echoMargin How much louder than the expected echo speech has to be.
+     * @param minSpeechChunks How many speech chunks in a row are a barge-in.
+     */
+    BargeInDetector(long startThreshold, double echoMargin, int minSpeechChunks) {
+        this.startThreshold = startThreshold;
+        this.echoMargin = echoMargin;
+        this.minSpeechChunks = minSpeechChunks;
+    }
+
+    /**
+     * Called for every microphone chunk while audio is playing or just played.
+     *
+     * @param micLevel The RMS of the microphone chunk.
+     * @param outputLevel The RMS of the recent output, see {@link AudioOutputService#getOutputLevel(long)}.
+     * @return True once the user has been talking over the output long enough to interrupt it.
+     */
+    boolean isBargeIn(long micLevel, long outputLevel) {
+        if (micLevel > Math.max(startThreshold, echoThreshold(outputLevel))) {
+            if (++speechChunks >= minSpeechChunks) {
+                speechChunks = 0;
+                return true;
+            }
+            return false;
+        }
+        speechChunks = 0;
+        learn(micLevel, outputLevel);
+        return false;
+    }
+
+    /**
+     * @param outputLevel The RMS of the recent output.
+     * @return The microphone level below which a chunk may be nothing but echo.
+     */
+    long echoThreshold(long outputLevel) {
+        return Math.round(coupling * outputLevel * echoMargin);
+    }
+
+    double getCoupling() {
+        return coupling;
+    }
+
+    private void learn(long micLevel, long outputLevel) {
+        if (outputLevel < MIN_REFERENCE_LEVEL) {
+            return;
+        }
+        double observed = Math.min(MAX_COUPLING, (double) micLevel / outputLevel);
+        coupling = observed > coupling ? coupling + ATTACK * (observed - coupling) : Math.max(observed, coupling * RELEASE);
+    }
+
+    private static int chunks(long millis) {
+        double chunkMillis = 1000.0 * Configuration.AUDIO_BUFFER_SIZE / (Configuration.SAMPLE_RATE * (Configuration.AUDIO_FORMAT_BITS / 8));
+        return Math.max(1, (int) Math.ceil(millis / chunkMillis));
+    }
+}
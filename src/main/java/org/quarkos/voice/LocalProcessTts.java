@@ -0,0 +1,145 @@
+package org.quarkos.voice;
+
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Speaks text on this machine with a command line synthesizer, by default
+ * <a href="https://github.com/rhasspy/piper">Piper</a>: the text goes to the program's standard input, raw 16-bit
+ * mono PCM comes back on its standard output and is resampled to {@link TextToSpeech#AUDIO_FORMAT} on the fly.
+ *
+ * <p>There is no network round trip, so short confirmations start playing sooner than with a cloud voice.
+ * The engine counts as unavailable if the program is not installed, or after
+ * {@value #MAX_CONSECUTIVE_FAILURES} failures in a row, e.g. because its voice model is missing.</p>
+ */
+public class LocalProcessTts implements TtsEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalProcessTts.class);
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+    private static final long EXIT_TIMEOUT_MS = 5_000;
+
+    private final List<String> command;
+    private final int sampleRate;
+    private final int chunkBytes;
+    private Boolean installed;
+    private int consecutiveFailures;
+
+    public LocalProcessTts() {
+        this(Configuration.LOCAL_TTS_COMMAND, Configuration.LOCAL_TTS_SAMPLE_RATE);
+    }
+
+    /**
+     * @param command The program and its arguments.
+     * @param sampleRate The sample rate of the program's output.
+     */
+    public LocalProcessTts(List<String> command, int sampleRate) {
+        this.command = List.copyOf(command);
+        this.sampleRate = sampleRate;
+        this.chunkBytes = sampleRate / 10 * 2; // 100ms of audio
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    @Override
+    public String voiceId() {
+        return "local\n" + String.join(" ", command) + '\n' + sampleRate;
+    }
+
+    @Override
+    public synchronized boolean isAvailable() {
+        if (installed == null) {
+            installed = !command.isEmpty() && isInstalled(command.get(0));
+            if (!installed) {
+                logger.info("Local speech synthesizer '{}' not found, using the cloud voice only.", command.isEmpty() ? "" : command.get(0));
+            }
+        }
+        return installed && consecutiveFailures < MAX_CONSECUTIVE_FAILURES;
+    }
+
+    @Override
+    public boolean synthesize(String text, AudioSink sink, BooleanSupplier cancelled) {
+        Process process;
+        try {
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        } catch (IOException e) {
+            logger.warn("Could not start the local speech synthesizer: {}", e.getMessage());
+            failed();
+            return false;
+        }
+        try {
+            try (OutputStream stdin = process.getOutputStream()) {
+                stdin.write((text.replace('\n', ' ') + '\n').getBytes(StandardCharsets.UTF_8));
+            }
+            PcmResampler resampler = new PcmResampler(sampleRate, (int) TextToSpeech.AUDIO_FORMAT.getSampleRate());
+            byte[] chunk = new byte[chunkBytes];
+            InputStream stdout = process.getInputStream();
+            int read;
+            while ((read = stdout.read(chunk)) > 0) {
+                if (cancelled.getAsBoolean()) {
+                    process.destroyForcibly();
+                    return false;
+                }
+                byte[] resampled = resampler.process(chunk, 0, read);
+                sink.write(resampled, 0, resampled.length);
+            }
+            if (!process.waitFor(EXIT_TIMEOUT_MS, TimeUnit.MILLISECONDS) || process.exitValue() != 0) {
+                logger.warn("The local speech synthesizer failed for '{}'.", text);
+                failed();
+                return false;
+            }
+            synchronized (this) {
+                consecutiveFailures = 0;
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn("The local speech synthesizer failed: {}", e.getMessage());
+            failed();
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            process.destroyForcibly();
+        }
+    }
+
+    private synchronized void failed() {
+        if (++consecutiveFailures == MAX_CONSECUTIVE_FAILURES) {
+            logger.warn("The local speech synthesizer failed {} times in a row, using the cloud voice only.", MAX_CONSECUTIVE_FAILURES);
+        }
+    }
+
+    /**
+     * @return Whether the program exists, either as a path or on the PATH.
+     */
+    private static boolean isInstalled(String program) {
+        if (program.contains(File.separator)) {
+            return Files.isExecutable(Path.of(program));
+        }
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            if (!directory.isEmpty() && Files.isExecutable(Path.of(directory, program))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+package org.quarkos.voice;
+
+/**
+ * Converts a stream of 16-bit signed little-endian mono PCM to another sample rate by linear interpolation.
+ * Chunks may end anywhere, even in the middle of a sample; the state between them is kept, so the output is the
+ * same however the input is split.
+ */
+final class PcmResampler {
+
+    private final int fromRate;
+    private final int toRate;
+    // Counted from the start of the stream, so the positions are exact however many chunks there were.
+    private long outputs;
+    private long windowStart; // the input sample at the start of the next window
+    private int previousSample;
+    private boolean hasPrevious;
+    private int pendingByte = -1;
+
+    PcmResampler(int fromRate, int toRate) {
+        this.fromRate = fromRate;
+        this.toRate = toRate;
+    }
+
+    /**
+     * @return The resampled audio; whole samples only.
+     */
+    byte[] process(byte[] pcm, int offset, int length) {
+        int[] samples = decode(pcm, offset, length);
+        if (fromRate == toRate) {
+            return encode(samples, samples.length);
+        }
+        // With the last sample of the previous chunk in front, so interpolation continues across chunks.
+        int first = hasPrevious ? 1 : 0;
+        int[] window = new int[samples.length + first];
+        if (hasPrevious) {
+            window[0] = previousSample;
+        }
+        System.arraycopy(samples, 0, window, first, samples.length);
+        if (window.length < 2) {
+            if (window.length == 1) {
+                previousSample = window[0];
+                hasPrevious = true;
+            }
+            return new byte[0];
+        }
+
+        int[] out = new int[(int) ((long) window.length * toRate / fromRate) + 1];
+        int count = 0;
+        int index;
+        while ((index = (int) (outputs * fromRate / toRate - windowStart)) + 1 < window.length) {
+            double fraction = (double) (outputs * fromRate % toRate) / toRate;
+            out[count++] = (int) Math.round(window[index] * (1 - fraction) + window[index + 1] * fraction);
+            outputs++;
+        }
+        windowStart += window.length - 1;
+        previousSample = window[window.length - 1];
+        hasPrevious = true;
+        return encode(out, count);
+    }
+
+    private int[] decode(byte[] pcm, int offset, int length) {
+        int available = length + (pendingByte >= 0 ? 1 : 0);
+        int[] samples = new int[available / 2];
+        int read = offset;
+        for (int i = 0; i < samples.length; i++) {
+            int low;
+            if (i == 0 && pendingByte >= 0) {
+                low = pendingByte;
+                pendingByte = -1;
+            } else {
+                low = pcm[read++] & 0xff;
+            }
+            samples[i] = (short) (low | (pcm[read++] << 8));
+        }
+        if (read < offset + length) {
+            pendingByte = pcm[read] & 0xff;
+        }
+        return samples;
+    }
+
+    private static byte[] encode(int[] samples, int count) {
+        byte[] pcm = new byte[count * 2];
+        for (int i = 0; i < count; i++) {
+            pcm[2 * i] = (byte) samples[i];
+            pcm[2 * i + 1] = (byte) (samples[i] >> 8);
+        }
+        return pcm;
+    }
+}
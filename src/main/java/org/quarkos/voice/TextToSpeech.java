@@ -0,0 +1,100 @@
+package org.quarkos.voice;
+
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Speaks text through the {@link AudioOutputService}.
+ *
+ * <ul>
+ *     <li>{@link #speak(String)} returns right away. Synthesis runs on a background thread, one sentence after
+ *     the other.</li>
+ *     <li>A {@link TtsRouter} picks the voice: cached audio if there is any, the on-device {@link LocalProcessTts}
+ *     for short confirmations and {@link AzureTextToSpeech} for everything else, each the fallback of the other.</li>
+ *     <li>{@link #presynthesize(List)} fills the cache with the common confirmations at startup.</li>
+ * </ul>
+ */
+public class TextToSpeech {
+
+    private static final Logger logger = LoggerFactory.getLogger(TextToSpeech.class);
+
+    /** The format every {@link TtsEngine} delivers: 24kHz 16-bit signed little-endian mono PCM. */
+    public static final AudioFormat AUDIO_FORMAT = new AudioFormat(24_000f, 16, 1, true, false);
+
+    private static final TtsRouter router = new TtsRouter(new AzureTextToSpeech(), new LocalProcessTts(),
+            new TtsAudioCache(Configuration.TTS_CACHE_DIR, Configuration.TTS_MEMORY_CACHE_BYTES, Configuration.TTS_DISK_CACHE_BYTES),
+            Configuration.TTS_LOCAL_MAX_CHARS);
+    // Synthesizes one sentence after the other, in the order they were spoken.
+    private static final ExecutorService synthesisExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tts-synthesis");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Speaks the text after what is already being spoken. Returns right away.
+     *
+     * @return The playback, e.g. to wait for it or cancel it.
+     */
+    public static AudioOutputService.Playback speak(String textToSpeak) {
+        return speak(textToSpeak, AudioOutputService.Priority.SPEECH);
+    }
+
+    /**
+     * Speaks the text with the given priority, e.g. {@link AudioOutputService.Priority#ALERT} for a timer going off.
+     * Returns right away.
+     *
+     * @return The playback, e.g. to wait for it or cancel it.
+     */
+    public static AudioOutputService.Playback speak(String textToSpeak, AudioOutputService.Priority priority) {
+        // Opened now, so sentences play in the order they were spoken, however long each takes to synthesize.
+        AudioOutputService.Playback playback = AudioOutputService.getDefault().open(priority);
+        if (textToSpeak == null || textToSpeak.isBlank()) {
+            playback.finish();
+            return playback;
+        }
+        synthesisExecutor.execute(() -> {
+            try {
+                if (!playback.isCancelled()) {
+                    router.speak(textToSpeak, playback::write, playback::isCancelled);
+                }
+            } finally {
+                playback.finish();
+            }
+        });
+        return playback;
+    }
+
+    /**
+     * Stops the speech that is playing and drops what is waiting to be spoken.
+     */
+    public static void interrupt() {
+        AudioOutputService.getDefault().interrupt();
+    }
+
+    /**
+     * Synthesizes the phrases that are not cached yet in the background, e.g. the confirmations in
+     * {@link Configuration#TTS_COMMON_PHRASES}.
+     */
+    public static void presynthesize(List<String> phrases) {
+        Thread thread = new Thread(() -> {
+            int synthesized = router.presynthesize(phrases);
+            logger.info("Pre-synthesized {} of {} common phrases.", synthesized, phrases.size());
+        }, "tts-presynthesize");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return The router, e.g. to read the statistics per engine.
+     */
+    public static TtsRouter getRouter() {
+        return router;
+    }
+}
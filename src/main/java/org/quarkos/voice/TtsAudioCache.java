@@ -0,0 +1,177 @@
+package org.quarkos.voice;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A two-level LRU cache of synthesized speech: recently spoken audio is kept in memory, everything else on disk,
+ * so a phrase is only ever synthesized once, even across restarts. Both levels are bounded in bytes and drop
+ * the least recently spoken audio first; on disk, the file's modification time is its last use.
+ *
+ * <p>Keys are free-form (e.g. voice, format and text) and stored hashed, so any text makes a valid file name.</p>
+ */
+public class TtsAudioCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TtsAudioCache.class);
+    private static final String EXTENSION = ".pcm";
+
+    private final Path directory;
+    private final long memoryLimitBytes;
+    private final long diskLimitBytes;
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param directory Where to store the audio, or null to keep it in memory only.
+     * @param memoryLimitBytes How much audio to keep in memory.
+     * @param diskLimitBytes How much audio to keep on disk.
+     */
+    public TtsAudioCache(Path directory, long memoryLimitBytes, long diskLimitBytes) {
+        this.directory = directory;
+        this.memoryLimitBytes = memoryLimitBytes;
+        this.diskLimitBytes = diskLimitBytes;
+    }
+
+    /**
+     * @param key The cache key.
+     * @return The audio, from memory or disk.
+     */
+    public Optional<byte[]> get(String key) {
+        synchronized (memory) {
+            byte[] audio = memory.get(key);
+            if (audio != null) {
+                memoryHits.incrementAndGet();
+                return Optional.of(audio);
+            }
+        }
+        if (directory != null) {
+            Path file = file(key);
+            try {
+                byte[] audio = Files.readAllBytes(file);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                remember(key, audio);
+                diskHits.incrementAndGet();
+                return Optional.of(audio);
+            } catch (IOException e) {
+                // Not cached on disk.
+            }
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * @param key The cache key.
+     * @return Whether the audio is cached, without counting as a use.
+     */
+    public boolean contains(String key) {
+        synchronized (memory) {
+            if (memory.containsKey(key)) {
+                return true;
+            }
+        }
+        return directory != null && Files.isRegularFile(file(key));
+    }
+
+    /**
+     * Caches audio in memory and writes it to disk.
+     *
+     * @param key The cache key.
+     * @param audio The complete audio.
+     */
+    public void put(String key, byte[] audio) {
+        remember(key, audio);
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            Path file = file(key);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, audio);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            trimDisk();
+        } catch (IOException e) {
+            logger.warn("Could not write speech to the cache {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * @return A snapshot of the lookup statistics.
+     */
+    public CacheStats getStats() {
+        return new CacheStats(memoryHits.get(), diskHits.get(), misses.get());
+    }
+
+    private void remember(String key, byte[] audio) {
+        if (audio.length > memoryLimitBytes) {
+            return;
+        }
+        synchronized (memory) {
+            byte[] previous = memory.put(key, audio);
+            memoryBytes += audio.length - (previous == null ? 0 : previous.length);
+            Iterator<byte[]> eldest = memory.values().iterator();
+            while (memoryBytes > memoryLimitBytes && eldest.hasNext()) {
+                memoryBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the cache fits its limit.
+     */
+    private synchronized void trimDisk() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(EXTENSION)).toList();
+        }
+        Map<Path, Long> sizes = new HashMap<>();
+        Map<Path, Long> lastUsed = new HashMap<>();
+        long total = 0;
+        for (Path file : files) {
+            long size = Files.size(file);
+            sizes.put(file, size);
+            lastUsed.put(file, Files.getLastModifiedTime(file).toMillis());
+            total += size;
+        }
+        if (total <= diskLimitBytes) {
+            return;
+        }
+        List<Path> oldestFirst = new ArrayList<>(files);
+        oldestFirst.sort(Comparator.comparing(lastUsed::get));
+        for (Path file : oldestFirst) {
+            if (total <= diskLimitBytes) {
+                break;
+            }
+            Files.deleteIfExists(file);
+            total -= sizes.get(file);
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(DigestUtils.sha256Hex(key) + EXTENSION);
+    }
+
+    public record CacheStats(long memoryHits, long diskHits, long misses) {
+
+        @Override
+        public String toString() {
+            return String.format("%d memory hits, %d disk hits, %d misses", memoryHits, diskHits, misses);
+        }
+    }
+}
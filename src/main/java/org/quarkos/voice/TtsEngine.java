@@ -0,0 +1,41 @@
+package org.quarkos.voice;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * A speech synthesizer. Engines deliver 16-bit mono PCM in {@link TextToSpeech#AUDIO_FORMAT}, chunk by chunk
+ * as it is synthesized, so playback can start before the sentence is complete.
+ */
+public interface TtsEngine {
+
+    /**
+     * @return A short name for logs and statistics, e.g. "azure".
+     */
+    String name();
+
+    /**
+     * @return The engine, voice and output format; part of the cache key, so audio of different voices is never
+     * mixed up.
+     */
+    String voiceId();
+
+    /**
+     * @return False if the engine is not configured or known not to work, e.g. because its program is missing.
+     */
+    boolean isAvailable();
+
+    /**
+     * Synthesizes the text.
+     *
+     * @param text The text to speak.
+     * @param sink Gets the audio as soon as it is available.
+     * @param cancelled Checked between chunks; the synthesis stops once it returns true.
+     * @return True if all audio was delivered, false if the synthesis failed or was cancelled.
+     */
+    boolean synthesize(String text, AudioSink sink, BooleanSupplier cancelled);
+
+    @FunctionalInterface
+    interface AudioSink {
+        void write(byte[] pcm, int offset, int length);
+    }
+}
@@ -0,0 +1,190 @@
+package org.quarkos.voice;
+
+import org.quarkos.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides which {@link TtsEngine} speaks a text.
+ *
+ * <ol>
+ *     <li>Cached audio plays first, the cloud voice's if there is both.</li>
+ *     <li>Short texts, like "Pausing music.", go to the local engine, which starts playing sooner;
+ *     everything else goes to the cloud engine, which sounds better.</li>
+ *     <li>If an engine fails before it delivered any audio, the other one speaks instead.</li>
+ * </ol>
+ *
+ * Complete audio is cached per engine voice. The time to the first audio is measured per engine.
+ */
+public class TtsRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TtsRouter.class);
+
+    private final TtsEngine cloud;
+    private final TtsEngine local;
+    private final TtsAudioCache cache;
+    private final int localMaxChars;
+    private final Map<TtsEngine, Counters> counters = new LinkedHashMap<>();
+
+    /**
+     * @param cloud The engine for longer answers, usually {@link AzureTextToSpeech}.
+     * @param local The engine for short confirmations, or null to always use the cloud engine.
+     * @param cache The cache of synthesized speech.
+     * @param localMaxChars The longest text the local engine speaks.
+     */
+    public TtsRouter(TtsEngine cloud, TtsEngine local, TtsAudioCache cache, int localMaxChars) {
+        this.cloud = cloud;
+        this.local = local;
+        this.cache = cache;
+        this.localMaxChars = localMaxChars;
+        counters.put(cloud, new Counters());
+        if (local != null) {
+            counters.put(local, new Counters());
+        }
+    }
+
+    /**
+     * Speaks the text with cached audio or the best engine for it. Blocks until the synthesis is done.
+     *
+     * @param sink Gets the audio as soon as it is available.
+     * @param cancelled Checked between chunks; the synthesis stops once it returns true.
+     * @return True if all audio was delivered.
+     */
+    public boolean speak(String text, TtsEngine.AudioSink sink, BooleanSupplier cancelled) {
+        for (TtsEngine engine : counters.keySet()) {
+            String key = cacheKey(engine, text);
+            if (cache.contains(key)) {
+                Optional<byte[]> cached = cache.get(key);
+                if (cached.isPresent()) {
+                    logger.info("Speaking cached {} audio: '{}'", engine.name(), text);
+                    counters.get(engine).cacheHits.incrementAndGet();
+                    sink.write(cached.get(), 0, cached.get().length);
+                    return true;
+                }
+            }
+        }
+        List<TtsEngine> engines = route(text);
+        if (engines.isEmpty()) {
+            logger.error("No speech synthesizer is available to speak '{}'.", text);
+            return false;
+        }
+        for (TtsEngine engine : engines) {
+            Counters engineCounters = counters.get(engine);
+            engineCounters.utterances.incrementAndGet();
+            ByteArrayOutputStream audio = new ByteArrayOutputStream();
+            long start = System.nanoTime();
+            boolean complete = engine.synthesize(text, (pcm, offset, length) -> {
+                if (audio.size() == 0 && length > 0) {
+                    engineCounters.firstAudio.recordSince(start);
+                    logger.info("First {} audio after {}ms.", engine.name(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+                sink.write(pcm, offset, length);
+                audio.write(pcm, offset, length);
+            }, cancelled);
+            if (complete) {
+                cache.put(cacheKey(engine, text), audio.toByteArray());
+                return true;
+            }
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            engineCounters.failures.incrementAndGet();
+            if (audio.size() > 0) {
+                // Half a sentence was already played, starting over with another voice would be worse.
+                return false;
+            }
+            logger.warn("The {} speech synthesizer failed, trying the next one.", engine.name());
+        }
+        return false;
+    }
+
+    /**
+     * Synthesizes the phrases that the cloud engine has not cached yet, so they never wait for it. Blocks.
+     *
+     * @return How many phrases were synthesized.
+     */
+    public int presynthesize(List<String> phrases) {
+        int synthesized = 0;
+        for (String phrase : phrases) {
+            if (!cloud.isAvailable()) {
+                break;
+            }
+            String key = cacheKey(cloud, phrase);
+            if (cache.contains(key)) {
+                continue;
+            }
+            ByteArrayOutputStream audio = new ByteArrayOutputStream();
+            if (!cloud.synthesize(phrase, audio::write, () -> false)) {
+                break; // The rest would most likely fail the same way.
+            }
+            cache.put(key, audio.toByteArray());
+            synthesized++;
+        }
+        return synthesized;
+    }
+
+    /**
+     * @return The available engines for the text, best first.
+     */
+    List<TtsEngine> route(String text) {
+        List<TtsEngine> engines = new ArrayList<>(2);
+        boolean localFirst = local != null && text.length() <= localMaxChars;
+        if (localFirst && local.isAvailable()) {
+            engines.add(local);
+        }
+        if (cloud.isAvailable()) {
+            engines.add(cloud);
+        }
+        if (!localFirst && local != null && local.isAvailable()) {
+            engines.add(local);
+        }
+        return engines;
+    }
+
+    /**
+     * @return The statistics per engine, by engine name.
+     */
+    public Map<String, EngineStats> getStats() {
+        Map<String, EngineStats> stats = new LinkedHashMap<>();
+        counters.forEach((engine, engineCounters) -> stats.put(engine.name(), new EngineStats(
+                engineCounters.utterances.get(), engineCounters.failures.get(), engineCounters.cacheHits.get(),
+                engineCounters.firstAudio.snapshot())));
+        return stats;
+    }
+
+    public TtsAudioCache getCache() {
+        return cache;
+    }
+
+    private static String cacheKey(TtsEngine engine, String text) {
+        return engine.voiceId() + '\n' + text;
+    }
+
+    private static final class Counters {
+        final AtomicLong utterances = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong cacheHits = new AtomicLong();
+        final LatencyHistogram firstAudio = new LatencyHistogram();
+    }
+
+    /**
+     * @param utterances Texts the engine was asked to synthesize.
+     * @param failures Syntheses that failed, not counting interruptions.
+     * @param cacheHits Texts spoken with audio the engine synthesized before.
+     * @param firstAudio The time from the request to the first chunk of audio.
+     */
+    public record EngineStats(long utterances, long failures, long cacheHits, LatencyHistogram.Snapshot firstAudio) {
+
+        @Override
+        public String toString() {
+            return String.format("%d utterances, %d failures, %d cache hits, first audio: %s",
+                    utterances, failures, cacheHits, firstAudio);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.quarkos.voice;
 
 import org.quarkos.Configuration;
+import org.quarkos.intent.IntentRouter;
 import org.quarkos.voice.command.CommandParser;
 import org.quarkos.voice.command.GeminiCommandParser;
 import org.slf4j.Logger;
@@ -21,10 +22,15 @@ import java.util.concurrent.TimeUnit;
  * It uses a simple but effective Voice Activity Detection (VAD) mechanism based on
  * Root Mean Square (RMS) audio levels to detect when a user starts and stops speaking.
  * It records audio, buffers it, and sends it for transcription on a separate thread.
+ *
+ * <p>While the {@link AudioOutputService} is playing, the microphone also hears our own speech. A
+ * {@link BargeInDetector} then decides what counts as the user's voice, using the output level as reference;
+ * when the user talks over the speech, it is interrupted right away and the command is recorded, so commands
+ * can follow each other without waiting for the confirmation to finish.</p>
  */
 public class WhisperVoiceListener implements Runnable {
 
-    private final Object commandParser; // Can be CommandParser or GeminiCommandParser
+    private final Object commandParser; // Can be CommandParser, GeminiCommandParser or IntentRouter
     private volatile boolean isListening = false;
 
     private ExecutorService transcriptionExecutor;
@@ -38,6 +44,10 @@ public class WhisperVoiceListener implements Runnable {
         this.commandParser = commandParser;
     }
 
+    public WhisperVoiceListener(IntentRouter intentRouter) {
+        this.commandParser = intentRouter;
+    }
+
     public void startListening() {
         if (isListening) {
             logger.info("Already listening.");
@@ -84,6 +94,8 @@ public class WhisperVoiceListener implements Runnable {
             microphone.open(format);
             microphone.start();
             logger.info("Voice listener started. Waiting for command...");
+            AudioOutputService output = AudioOutputService.getDefault();
+            BargeInDetector bargeInDetector = new BargeInDetector();
 
             ByteArrayOutputStream commandAudioBuffer = new ByteArrayOutputStream();
 
@@ -103,13 +115,21 @@ public class WhisperVoiceListener implements Runnable {
 
                 // Calculate the volume of the current audio chunk.
                 long rms = calculateRMS(data);
+                // What the microphone may be hearing from our own speakers.
+                long outputLevel = output.getOutputLevel(Configuration.BARGE_IN_ECHO_TAIL_MS);
+                boolean outputActive = outputLevel > 0 || output.isBusy();
 
                 if (isSpeaking) {
                     // If we are in "speaking" mode, append the audio to our command buffer.
                     commandAudioBuffer.write(data, 0, bytesRead);
 
                     // Check if the user has stopped talking.
-                    if (rms < Configuration.STOP_SPEAKING_THRESHOLD) {
+                    // Echo alone doesn't keep the recording going.
+                    long stopThreshold = Configuration.STOP_SPEAKING_THRESHOLD;
+                    if (outputActive) {
+                        stopThreshold = Math.max(stopThreshold, bargeInDetector.echoThreshold(outputLevel));
+                    }
+                    if (rms < stopThreshold) {
                         if (silenceStartTime == -1) silenceStartTime = System.currentTimeMillis();
 
                         // If silence persists for long enough, we consider the command finished.
@@ -138,7 +158,18 @@ public class WhisperVoiceListener implements Runnable {
                     }
 
                     // If the audio volume exceeds the start threshold, begin recording the command.
-                    if (rms > Configuration.START_SPEAKING_THRESHOLD) {
+                    // While audio is playing, only speech clearly louder than its echo counts, and it stops the audio.
+                    boolean speechStarted;
+                    if (outputActive) {
+                        speechStarted = bargeInDetector.isBargeIn(rms, outputLevel);
+                        if (speechStarted) {
+                            logger.info("   (Barge-in detected, stopping playback...)");
+                            TextToSpeech.interrupt();
+                        }
+                    } else {
+                        speechStarted = rms > Configuration.START_SPEAKING_THRESHOLD;
+                    }
+                    if (speechStarted) {
                         logger.info("   (Speaking detected, recording...)");
                         isSpeaking = true;
                         commandStartTime = System.currentTimeMillis();
@@ -195,6 +226,17 @@ public class WhisperVoiceListener implements Runnable {
                 byte[] wavAudioData = WhisperTranscriber.createWavInMemory(audioData, format);
                 logger.info("WAV data created ({} bytes), sending to Gemini parser.", wavAudioData.length);
                 ((GeminiCommandParser) commandParser).parse(wavAudioData);
+            } else if (commandParser instanceof IntentRouter) {
+                // Simple commands are handled locally, everything else goes to the LLM.
+                String transcript = WhisperTranscriber.transcribe(audioData, format);
+                if (transcript != null && !transcript.isBlank()) {
+                    logger.info("\nUnderstood: \"" + transcript.trim() + "\"");
+                    IntentRouter router = (IntentRouter) commandParser;
+                    router.route(transcript);
+                    logger.info("Routing stats: {}", router.getStats());
+                } else {
+                    logger.warn("\nCould not understand audio.");
+                }
             } else if (commandParser instanceof CommandParser) {
                 // If using the text-based parser, transcribe first.
                 String transcript = WhisperTranscriber.transcribe(audioData, format);
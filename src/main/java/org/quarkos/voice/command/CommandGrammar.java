@@ -0,0 +1,437 @@
+package org.quarkos.voice.command;
+
+import org.quarkos.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A declarative grammar for voice commands, loaded from language packs in {@code /grammar/<language>.properties}.
+ * Every rule of every language is expanded and compiled into one word trie with slot edges, so matching a command
+ * walks its words once, no matter how many rules or languages are loaded; only slot edges backtrack, to find where
+ * a slot value ends.
+ *
+ * <p>Rule syntax: plain words, {@code [optional words]}, {@code (alternative|words)}, {@code {slot}}
+ * for free text and {@code $synonym} for a synonym set of the same pack.
+ * Slots are greedy, so in "play stand by me by ben e king" the last "by" separates the artist.</p>
+ */
+public class CommandGrammar {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandGrammar.class);
+
+    private static final Pattern TIMESTAMPS = Pattern.compile("\\[[^\\]]*\\]");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}']+");
+    private static final Pattern SYNONYM_REFERENCE = Pattern.compile("\\$(\\w+)");
+    private static final Pattern RULE_TOKEN = Pattern.compile("[\\[\\]()|{}]|[^\\s\\[\\]()|{}]+");
+    private static final Pattern LINE_BREAK = Pattern.compile("\\R");
+    private static final int MAX_EXPANSIONS_PER_RULE = 10_000;
+
+    private static volatile CommandGrammar defaultGrammar;
+
+    private final Node root = new Node();
+    private final Set<List<String>> fillers = new HashSet<>();
+    // Fillers, wake words and lead-ins ("i want to"), which are only skipped before the command.
+    private final Set<List<String>> prefixes = new HashSet<>();
+    private final Map<String, Set<String>> wordLists = new HashMap<>();
+    private final PhraseMatcher junkMatcher;
+    private int maxFillerLength = 0;
+    private int maxPrefixLength = 0;
+
+    private CommandGrammar(List<String> languages) {
+        PhraseMatcher.Builder junk = PhraseMatcher.builder();
+        for (String language : languages) {
+            Properties pack = loadPack(language);
+            Map<String, String> synonyms = new HashMap<>();
+            for (String key : pack.stringPropertyNames()) {
+                if (key.startsWith("synonym.")) {
+                    synonyms.put(key.substring("synonym.".length()), pack.getProperty(key));
+                }
+            }
+
+            for (String key : new TreeSet<>(pack.stringPropertyNames())) {
+                String value = pack.getProperty(key);
+                if (key.startsWith("intent.")) {
+                    String intent = key.substring("intent.".length());
+                    for (List<String> sequence : expand(resolveSynonyms(value, synonyms), key)) {
+                        addRule(sequence, new Rule(intent, language));
+                    }
+                } else if (key.equals("list.filler")) {
+                    for (String filler : splitList(value)) {
+                        List<String> tokens = tokenize(filler);
+                        fillers.add(tokens);
+                        maxFillerLength = Math.max(maxFillerLength, tokens.size());
+                        prefixes.add(tokens);
+                        maxPrefixLength = Math.max(maxPrefixLength, tokens.size());
+                    }
+                } else if (key.equals("list.prefix")) {
+                    for (String prefix : splitList(value)) {
+                        List<String> tokens = tokenize(prefix);
+                        prefixes.add(tokens);
+                        maxPrefixLength = Math.max(maxPrefixLength, tokens.size());
+                    }
+                } else if (key.equals("list.junk")) {
+                    junk.add(splitList(value), 0);
+                } else if (key.startsWith("list.")) {
+                    Set<String> words = wordLists.computeIfAbsent(key.substring("list.".length()), name -> new HashSet<>());
+                    for (String word : splitList(value)) {
+                        words.addAll(tokenize(word));
+                    }
+                }
+            }
+        }
+        this.junkMatcher = junk.build();
+    }
+
+    /**
+     * Loads and compiles the language packs.
+     *
+     * @param languages The languages to load, e.g. "en" and "de".
+     * @return The compiled grammar.
+     * @throws IllegalStateException If a pack is missing or a rule cannot be parsed.
+     */
+    public static CommandGrammar load(List<String> languages) {
+        long start = System.nanoTime();
+        CommandGrammar grammar = new CommandGrammar(languages);
+        logger.info("Command grammar for {} compiled in {}ms", languages, (System.nanoTime() - start) / 1_000_000);
+        return grammar;
+    }
+
+    /**
+     * @return The grammar for {@link Configuration#COMMAND_LANGUAGES}, compiled on first use.
+     */
+    public static CommandGrammar getDefault() {
+        if (defaultGrammar == null) {
+            synchronized (CommandGrammar.class) {
+                if (defaultGrammar == null) {
+                    defaultGrammar = load(Configuration.COMMAND_LANGUAGES);
+                }
+            }
+        }
+        return defaultGrammar;
+    }
+
+    /**
+     * Matches a command against all rules.
+     *
+     * @param text The command, a plain string or Whisper output with timestamps.
+     * @return The matched intent with its slot values, or empty if no rule matches the whole command. Only fillers,
+     * wake words and lead-ins from the language packs are skipped before it ("hey synapse play ...",
+     * "i want to play ..."), so questions like "what's the next song" do not match.
+     */
+    public Optional<GrammarMatch> match(String text) {
+        if (text == null || text.isBlank()) {
+            return Optional.empty();
+        }
+        List<String> tokens = tokenize(extractCommandFromTranscription(text));
+        int from = 0;
+        int to = tokens.size();
+
+        // Strip politeness and wake words in front ("hey synapse please pause"), politeness at the end
+        // ("skip this song please").
+        int length;
+        while (from < to && (length = phrasePrefix(prefixes, maxPrefixLength, tokens, from, to)) > 0) {
+            from += length;
+        }
+        while (from < to && (length = fillerSuffix(tokens, from, to)) > 0) {
+            to -= length;
+        }
+        if (from >= to) {
+            return Optional.empty();
+        }
+
+        int[] slotStarts = new int[4];
+        int[] slotEnds = new int[4];
+        String[] slotNames = new String[4];
+        String command = String.join(" ", tokens.subList(from, to));
+        int skippedWords = tokens.size() - (to - from);
+        return walk(root, tokens, from, to, slotNames, slotStarts, slotEnds, 0)
+                .map(match -> new GrammarMatch(match.rule().intent(), match.slots(), match.rule().language(),
+                        command, skippedWords));
+    }
+
+    /**
+     * @param name The list name from the language packs, e.g. "compound" for {@code list.compound}.
+     * @return The words of that list across all loaded languages.
+     */
+    public Set<String> getWordList(String name) {
+        return Collections.unmodifiableSet(wordLists.getOrDefault(name, Collections.emptySet()));
+    }
+
+    /**
+     * Depth-first walk of the trie. Words are tried before slots, and a slot prefers the longest value after which
+     * the rest of the rule still matches, which makes the match deterministic: exact phrases beat free text,
+     * and the last separator wins.
+     */
+    private Optional<RuleMatch> walk(Node node, List<String> tokens, int position, int end,
+                                     String[] slotNames, int[] slotStarts, int[] slotEnds, int slotCount) {
+        if (position == end) {
+            if (node.rule == null) {
+                return Optional.empty();
+            }
+            Map<String, String> slots = new LinkedHashMap<>();
+            for (int i = 0; i < slotCount; i++) {
+                String value = removeJunk(String.join(" ", tokens.subList(slotStarts[i], slotEnds[i])));
+                if (value.isEmpty()) {
+                    return Optional.empty(); // "play the song" has no title left, try the other paths.
+                }
+                slots.put(slotNames[i], value);
+            }
+            return Optional.of(new RuleMatch(node.rule, slots));
+        }
+
+        Node next = node.words.get(tokens.get(position));
+        if (next != null) {
+            Optional<RuleMatch> match = walk(next, tokens, position + 1, end, slotNames, slotStarts, slotEnds, slotCount);
+            if (match.isPresent()) {
+                return match;
+            }
+        }
+
+        if (!node.slots.isEmpty() && slotCount < slotNames.length) {
+            for (Map.Entry<String, Node> slot : node.slots.entrySet()) {
+                slotNames[slotCount] = slot.getKey();
+                slotStarts[slotCount] = position;
+                // Longest slot that still leaves words for the rest of the rule first, the whole remainder last.
+                for (int slotEnd = end - 1; slotEnd > position; slotEnd--) {
+                    slotEnds[slotCount] = slotEnd;
+                    Optional<RuleMatch> match = walk(slot.getValue(), tokens, slotEnd, end, slotNames, slotStarts, slotEnds, slotCount + 1);
+                    if (match.isPresent()) {
+                        return match;
+                    }
+                }
+                slotEnds[slotCount] = end;
+                Optional<RuleMatch> match = walk(slot.getValue(), tokens, end, end, slotNames, slotStarts, slotEnds, slotCount + 1);
+                if (match.isPresent()) {
+                    return match;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private String removeJunk(String value) {
+        List<PhraseMatcher.Match> junk = junkMatcher.findAll(value);
+        if (junk.isEmpty()) {
+            return value;
+        }
+        char[] chars = value.toCharArray();
+        for (PhraseMatcher.Match match : junk) {
+            Arrays.fill(chars, match.start(), match.end(), ' ');
+        }
+        return String.join(" ", tokenize(new String(chars)));
+    }
+
+    private static int phrasePrefix(Set<List<String>> phrases, int maxLength, List<String> tokens, int from, int to) {
+        for (int length = Math.min(maxLength, to - from); length > 0; length--) {
+            if (phrases.contains(tokens.subList(from, from + length))) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    private int fillerSuffix(List<String> tokens, int from, int to) {
+        for (int length = Math.min(maxFillerLength, to - from); length > 0; length--) {
+            if (fillers.contains(tokens.subList(to - length, to))) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    private void addRule(List<String> sequence, Rule rule) {
+        Node node = root;
+        for (String element : sequence) {
+            if (element.startsWith("{")) {
+                node = node.slots.computeIfAbsent(element.substring(1, element.length() - 1), name -> new Node());
+            } else {
+                node = node.words.computeIfAbsent(element, word -> new Node());
+            }
+        }
+        if (node.rule == null) {
+            node.rule = rule;
+        } else if (!node.rule.intent().equals(rule.intent())) {
+            logger.warn("'{}' is already mapped to {} ({}), ignoring {} ({})", String.join(" ", sequence),
+                    node.rule.intent(), node.rule.language(), rule.intent(), rule.language());
+        }
+    }
+
+    private static Properties loadPack(String language) {
+        String resource = "/grammar/" + language + ".properties";
+        try (InputStream stream = CommandGrammar.class.getResourceAsStream(resource)) {
+            if (stream == null) {
+                throw new IllegalStateException("Missing language pack " + resource);
+            }
+            Properties pack = new Properties();
+            try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                pack.load(reader);
+            }
+            return pack;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read language pack " + resource, e);
+        }
+    }
+
+    private static String resolveSynonyms(String rule, Map<String, String> synonyms) {
+        Matcher matcher = SYNONYM_REFERENCE.matcher(rule);
+        StringBuilder resolved = new StringBuilder();
+        while (matcher.find()) {
+            String synonym = synonyms.get(matcher.group(1));
+            if (synonym == null) {
+                throw new IllegalStateException("Unknown synonym $" + matcher.group(1) + " in rule: " + rule);
+            }
+            matcher.appendReplacement(resolved, Matcher.quoteReplacement("(" + synonym + ")"));
+        }
+        matcher.appendTail(resolved);
+        return resolved.toString();
+    }
+
+    private static List<String> splitList(String value) {
+        return Arrays.stream(value.split("\\|")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+
+    /**
+     * Expands a rule into every word sequence it accepts. Slots stay in the sequence as "{name}".
+     */
+    private static List<List<String>> expand(String rule, String key) {
+        List<String> lexemes = new ArrayList<>();
+        Matcher matcher = RULE_TOKEN.matcher(rule.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            lexemes.add(matcher.group());
+        }
+        RuleParser parser = new RuleParser(lexemes, key);
+        List<List<String>> expansions = parser.parseAlternatives();
+        if (parser.position != lexemes.size()) {
+            throw new IllegalStateException("Unexpected '" + lexemes.get(parser.position) + "' in " + key);
+        }
+        return expansions;
+    }
+
+    /**
+     * Turns Whisper output into the spoken text: drops the language detection lines and the timestamps.
+     */
+    static String extractCommandFromTranscription(String rawInput) {
+        return Arrays.stream(LINE_BREAK.split(rawInput))
+                .map(String::trim)
+                .filter(line -> !line.startsWith("Detecting language"))
+                .filter(line -> !line.startsWith("Detected language"))
+                .map(line -> TIMESTAMPS.matcher(line).replaceAll(" "))
+                .collect(Collectors.joining(" "))
+                .trim();
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private record Rule(String intent, String language) {
+    }
+
+    private record RuleMatch(Rule rule, Map<String, String> slots) {
+    }
+
+    private static class Node {
+        private final Map<String, Node> words = new HashMap<>();
+        private final Map<String, Node> slots = new LinkedHashMap<>(2);
+        private Rule rule;
+    }
+
+    /**
+     * Recursive descent parser for the rule syntax.
+     */
+    private static class RuleParser {
+        private final List<String> lexemes;
+        private final String key;
+        private int position = 0;
+
+        RuleParser(List<String> lexemes, String key) {
+            this.lexemes = lexemes;
+            this.key = key;
+        }
+
+        List<List<String>> parseAlternatives() {
+            List<List<String>> result = new ArrayList<>(parseSequence());
+            while (peek("|")) {
+                position++;
+                result.addAll(parseSequence());
+            }
+            return result;
+        }
+
+        private List<List<String>> parseSequence() {
+            List<List<String>> result = new ArrayList<>();
+            result.add(new ArrayList<>());
+            while (position < lexemes.size() && !peek("|") && !peek(")") && !peek("]")) {
+                List<List<String>> element = parseElement();
+                List<List<String>> combined = new ArrayList<>();
+                for (List<String> prefix : result) {
+                    for (List<String> suffix : element) {
+                        List<String> sequence = new ArrayList<>(prefix);
+                        sequence.addAll(suffix);
+                        combined.add(sequence);
+                    }
+                }
+                if (combined.size() > MAX_EXPANSIONS_PER_RULE) {
+                    throw new IllegalStateException("Rule " + key + " expands to too many phrases.");
+                }
+                result = combined;
+            }
+            return result;
+        }
+
+        private List<List<String>> parseElement() {
+            String lexeme = lexemes.get(position++);
+            switch (lexeme) {
+                case "(" -> {
+                    List<List<String>> alternatives = parseAlternatives();
+                    expect(")");
+                    return alternatives;
+                }
+                case "[" -> {
+                    List<List<String>> alternatives = parseAlternatives();
+                    expect("]");
+                    alternatives.add(new ArrayList<>());
+                    return alternatives;
+                }
+                case "{" -> {
+                    String name = lexemes.get(position++);
+                    expect("}");
+                    List<List<String>> slot = new ArrayList<>();
+                    slot.add(new ArrayList<>(List.of("{" + name + "}")));
+                    return slot;
+                }
+                default -> {
+                    List<List<String>> word = new ArrayList<>();
+                    word.add(new ArrayList<>(tokenize(lexeme)));
+                    return word;
+                }
+            }
+        }
+
+        private boolean peek(String lexeme) {
+            return position < lexemes.size() && lexemes.get(position).equals(lexeme);
+        }
+
+        private void expect(String lexeme) {
+            if (!peek(lexeme)) {
+                throw new IllegalStateException("Expected '" + lexeme + "' in " + key);
+            }
+            position++;
+        }
+    }
+}
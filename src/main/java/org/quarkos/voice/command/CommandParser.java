@@ -1,131 +1,85 @@
 package org.quarkos.voice.command;
 
-import org.quarkos.Configuration;
 import org.quarkos.spotify.SpotifyController;
 
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 /**
  * FINAL intelligent command parser.
  * It understands both simple commands and multi-line transcription formats.
- * It finds triggers, strips junk words, separates the track from the artist,
- * and passes both pieces of information to the PlaySongCommand.
+ * Commands are matched by the {@link CommandGrammar}, which covers playback controls and play requests
+ * in every configured language, and each recognized intent is turned into its {@link Command}.
+ * Everything runs offline, no network round-trip is needed to understand a command.
  */
 public class CommandParser {
 
+    // Playback controls by grammar intent; "play" carries slots and is built separately.
+    private static final Map<String, Function<SpotifyController, Command>> CONTROL_COMMANDS = Map.of(
+            "pause", PauseCommand::new,
+            "resume", ResumeCommand::new,
+            "skip", SkipCommand::new,
+            "previous", PreviousCommand::new,
+            "more", PlayMoreByArtistCommand::new
+    );
+
     private final SpotifyController spotifyController;
+    private final CommandGrammar grammar;
 
     public CommandParser(SpotifyController spotifyController) {
+        this(spotifyController, CommandGrammar.getDefault());
+    }
+
+    public CommandParser(SpotifyController spotifyController, CommandGrammar grammar) {
         this.spotifyController = spotifyController;
+        this.grammar = grammar;
     }
 
     /**
      * Parses the user's spoken command, whether it's a simple string or
-     * a multi-line transcription output.
+     * a multi-line transcription output, and executes it.
      *
      * @param text The raw input from the user or transcription service.
      */
     public void parse(String text) {
         if (text == null || text.isBlank()) return;
 
-        // First, try to extract a command from a transcription format.
-        String commandToParse = extractCommandFromTranscription(text);
-
-        // If no command was extracted, assume the original text is the command.
-        // This maintains compatibility with simple, single-line commands.
-        if (commandToParse.isEmpty()) {
-            commandToParse = text;
-        }
-
-        String lowerCaseText = commandToParse.toLowerCase();
-        Optional<String> foundTrigger = findFirstWord(lowerCaseText, Configuration.PLAY_TRIGGERS);
-
-        if (foundTrigger.isPresent()) {
-            String query = lowerCaseText.substring(lowerCaseText.indexOf(foundTrigger.get()) + foundTrigger.get().length()).trim();
-
-            // Clean the query by removing all junk words
-            for (String junk : Configuration.JUNK_WORDS) {
-                query = query.replaceAll("\b" + junk + "\b", " ").trim();
-            }
-            query = query.replaceAll("\s+", " "); // Condense multiple spaces
-
-            Optional<String> foundSeparator = findFirstWord(query, Configuration.ARTIST_SEPARATORS);
-            String trackName;
-            String artistName = null; // Default to null if no artist is found
-
-            if (foundSeparator.isPresent()) {
-                // If a separator like "by" or "von" was found, split the string
-                int separatorIndex = query.indexOf(foundSeparator.get());
-                trackName = query.substring(0, separatorIndex).trim();
-                artistName = query.substring(separatorIndex + foundSeparator.get().length()).trim();
-            } else {
-                // If no separator, the whole query is the track name
-                trackName = query;
-            }
-
-            // More robust punctuation cleaning
-            trackName = trackName.replaceAll("^[.,?¿!¡\\s]+|[.,?¿!¡\\s]+$", "").trim();
-            if (artistName != null) {
-                artistName = artistName.replaceAll("^[.,?¿!¡\\s]+|[.,?¿!¡\\s]+$", "").trim();
-            }
-
-            if (!trackName.isEmpty()) {
-                // This now correctly calls the constructor with two arguments.
-                new PlaySongCommand(spotifyController, trackName, artistName).execute();
-            } else {
-                System.out.println("Could not extract a song title from the command: '" + text + "'");
-            }
+        Optional<Command> command = grammar.match(text).flatMap(this::toCommand);
+        if (command.isPresent()) {
+            command.get().execute();
         } else {
-            System.out.println("Unknown command: '" + commandToParse + "'");
+            System.out.println("Unknown command or no song title found: '" + text + "'");
         }
     }
 
     /**
-     * Extracts the actual spoken text from a multi-line transcription output.
-     * It looks for lines with timestamps like "[00:00.000 --> 00:02.000]"
-     * and concatenates the text following them.
+     * Extracts the track and artist from a play command without executing it.
      *
-     * @param rawInput The raw, potentially multi-line input from a transcription service.
-     * @return The combined command string, or an empty string if no transcription lines are found.
+     * @param text The raw input from the user or transcription service.
+     * @return The requested track and artist, or empty if the text is not a play command.
      */
-    private String extractCommandFromTranscription(String rawInput) {
-        return Arrays.stream(rawInput.split("\\R"))
-                .map(String::trim)
-                .filter(line -> !line.startsWith("Detecting language"))
-                .filter(line -> !line.startsWith("Detected language"))
-                .filter(line -> !line.matches("\\[\\d{2}:\\d{2}\\.\\d{3} --> \\d{2}:\\d{2}\\.\\d{3}\\]"))
-                .collect(Collectors.joining(" "))
-                .trim();
+    public Optional<PlayRequest> extractPlayRequest(String text) {
+        if (text == null || text.isBlank()) return Optional.empty();
+        return grammar.match(text)
+                .filter(match -> match.intent().equals("play"))
+                .map(match -> new PlayRequest(match.slot("track"), match.slot("artist")));
+    }
+
+    private Optional<Command> toCommand(GrammarMatch match) {
+        if (match.intent().equals("play")) {
+            return Optional.of(new PlaySongCommand(spotifyController, match.slot("track"), match.slot("artist")));
+        }
+        Function<SpotifyController, Command> factory = CONTROL_COMMANDS.get(match.intent());
+        return factory == null ? Optional.empty() : Optional.of(factory.apply(spotifyController));
     }
 
     /**
-     * Finds the first occurrence of any word from a given list in a text string.
+     * A parsed play command.
      *
-     * @param text The text to search within.
-     * @param words The list of words to find.
-     * @return An Optional containing the first found word, or empty if none are found.
+     * @param trackName The cleaned track name.
+     * @param artistName The cleaned artist name, or null if none was given.
      */
-    private Optional<String> findFirstWord(String text, List<String> words) {
-        return words.stream()
-                .map(word -> {
-                    Pattern pattern = Pattern.compile("\\b" + Pattern.quote(word) + "\\b");
-                    Matcher matcher = pattern.matcher(text);
-                    if (matcher.find()) return new MatchResult(word, matcher.start());
-                    return null;
-                })
-                .filter(java.util.Objects::nonNull)
-                .min(Comparator.comparingInt(MatchResult::getIndex))
-                .map(MatchResult::getWord);
-    }
-
-    private record MatchResult(String word, int index) {
-        public String getWord() { return word; }
-        public int getIndex() { return index; }
+    public record PlayRequest(String trackName, String artistName) {
     }
-}
\ No newline at end of file
+}
@@ -2,7 +2,6 @@ package org.quarkos.voice.command;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
-import org.quarkos.Model;
 import org.quarkos.ai.Gemini;
 import org.quarkos.spotify.SpotifyController;
 import org.slf4j.Logger;
@@ -39,7 +38,7 @@ public class GeminiCommandParser {
         try {
             logger.info("Step 4: Sending audio to Gemini AI for parsing...");
             // Use Gemini AI to extract song and artist from the audio data.
-            Map.Entry<String, Long> response = Gemini.extractSongFromAudio(audioData, Model.GEMINI_2_5_FLASH_LITE_PREVIEW_06_17.getModelName());
+            Map.Entry<String, Long> response = Gemini.extractSongFromAudio(audioData);
             String jsonResponse = response.getKey();
             logger.info("Step 5: Received response from Gemini AI: {}", jsonResponse);
 
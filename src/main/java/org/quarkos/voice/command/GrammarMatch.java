@@ -0,0 +1,19 @@
+package org.quarkos.voice.command;
+
+import java.util.Map;
+
+/**
+ * A command recognized by the {@link CommandGrammar}.
+ *
+ * @param intent The intent of the matched rule, e.g. "pause" or "play".
+ * @param slots The free text slot values by name, e.g. "track" and "artist". Optional slots that were not said are absent.
+ * @param language The language pack the rule came from.
+ * @param command The words that matched the rule, lower case and separated by single spaces.
+ * @param skippedWords How many fillers, wake words and lead-ins around the command were skipped.
+ */
+public record GrammarMatch(String intent, Map<String, String> slots, String language, String command, int skippedWords) {
+
+    public String slot(String name) {
+        return slots.get(name);
+    }
+}
@@ -0,0 +1,20 @@
+package org.quarkos.voice.command;
+
+import org.quarkos.spotify.SpotifyController;
+
+/**
+ * Command to pause playback.
+ */
+public class PauseCommand implements Command {
+
+    private final SpotifyController spotifyController;
+
+    public PauseCommand(SpotifyController spotifyController) {
+        this.spotifyController = spotifyController;
+    }
+
+    @Override
+    public void execute() {
+        spotifyController.pause();
+    }
+}
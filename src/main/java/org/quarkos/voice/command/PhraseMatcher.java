@@ -0,0 +1,196 @@
+package org.quarkos.voice.command;
+
+import java.util.*;
+
+/**
+ * An Aho-Corasick automaton that finds many phrases in a text in a single pass.
+ * It is built once from the phrase lists and then reused for every command, so parsing
+ * no longer compiles a regex per phrase. Matches only count at word boundaries,
+ * e.g. "by" matches in "numb by linkin park" but not in "maybe".
+ * Phrases and text are expected in lower case.
+ */
+public final class PhraseMatcher {
+
+    private static final int ROOT = 0;
+
+    private final int[] asciiClass = new int[128];
+    private final Map<Character, Integer> otherClass = new HashMap<>();
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final int[][] outputs;
+    private final String[] phrases;
+    private final int[] kinds;
+
+    private PhraseMatcher(List<String> phraseList, List<Integer> kindList) {
+        this.phrases = phraseList.toArray(new String[0]);
+        this.kinds = kindList.stream().mapToInt(Integer::intValue).toArray();
+
+        // Map every character used by a phrase to a small dense index; 0 means "not in any phrase".
+        int nextClass = 1;
+        for (String phrase : phrases) {
+            for (char c : phrase.toCharArray()) {
+                if (classOf(c) == 0) {
+                    if (c < 128) {
+                        asciiClass[c] = nextClass++;
+                    } else {
+                        otherClass.put(c, nextClass++);
+                    }
+                }
+            }
+        }
+        this.alphabetSize = nextClass;
+
+        // Build the trie.
+        List<int[]> gotoRows = new ArrayList<>();
+        List<List<Integer>> outputLists = new ArrayList<>();
+        gotoRows.add(newRow());
+        outputLists.add(new ArrayList<>());
+        for (int id = 0; id < phrases.length; id++) {
+            int state = ROOT;
+            for (char c : phrases[id].toCharArray()) {
+                int cls = classOf(c);
+                if (gotoRows.get(state)[cls] <= 0) {
+                    gotoRows.add(newRow());
+                    outputLists.add(new ArrayList<>());
+                    gotoRows.get(state)[cls] = gotoRows.size() - 1;
+                }
+                state = gotoRows.get(state)[cls];
+            }
+            outputLists.get(state).add(id);
+        }
+
+        // Breadth-first pass: compute failure links and turn the trie into a full transition table (a DFA).
+        int stateCount = gotoRows.size();
+        int[] failure = new int[stateCount];
+        this.transitions = new int[stateCount * alphabetSize];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int cls = 0; cls < alphabetSize; cls++) {
+            int next = gotoRows.get(ROOT)[cls];
+            if (next > 0) {
+                failure[next] = ROOT;
+                transitions[cls] = next;
+                queue.add(next);
+            } else {
+                transitions[cls] = ROOT;
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputLists.get(state).addAll(outputLists.get(failure[state]));
+            for (int cls = 0; cls < alphabetSize; cls++) {
+                int next = gotoRows.get(state)[cls];
+                if (next > 0) {
+                    failure[next] = transitions[failure[state] * alphabetSize + cls];
+                    transitions[state * alphabetSize + cls] = next;
+                    queue.add(next);
+                } else {
+                    transitions[state * alphabetSize + cls] = transitions[failure[state] * alphabetSize + cls];
+                }
+            }
+        }
+
+        this.outputs = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            outputs[state] = outputLists.get(state).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * @return A builder to add phrases to.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Finds all phrase occurrences that start and end at a word boundary.
+     *
+     * @param text The lower case text to search.
+     * @return All matches, ordered by end position. Overlapping matches are all reported.
+     */
+    public List<Match> findAll(String text) {
+        List<Match> matches = new ArrayList<>();
+        int state = ROOT;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            state = transitions[state * alphabetSize + classOf(text.charAt(i))];
+            int[] found = outputs[state];
+            if (found.length == 0) {
+                continue;
+            }
+            int end = i + 1;
+            if (end < length && isWordChar(text.charAt(end))) {
+                continue;
+            }
+            for (int id : found) {
+                int start = end - phrases[id].length();
+                if (start == 0 || !isWordChar(text.charAt(start - 1))) {
+                    matches.add(new Match(start, end, phrases[id], kinds[id]));
+                }
+            }
+        }
+        return matches;
+    }
+
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClass[c];
+        }
+        Integer cls = otherClass.get(c);
+        return cls != null ? cls : 0;
+    }
+
+    private int[] newRow() {
+        int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '\'';
+    }
+
+    /**
+     * A phrase found in the text.
+     *
+     * @param start Index of the first character.
+     * @param end Index after the last character.
+     * @param phrase The phrase that matched.
+     * @param kind The kind the phrase was added with.
+     */
+    public record Match(int start, int end, String phrase, int kind) {
+    }
+
+    public static final class Builder {
+        private final List<String> phrases = new ArrayList<>();
+        private final List<Integer> kinds = new ArrayList<>();
+        private final Set<String> seen = new HashSet<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds phrases of one kind, e.g. all play triggers.
+         * A phrase added with several kinds is reported once per kind.
+         */
+        public Builder add(Collection<String> newPhrases, int kind) {
+            for (String phrase : newPhrases) {
+                add(phrase, kind);
+            }
+            return this;
+        }
+
+        public Builder add(String phrase, int kind) {
+            String normalized = phrase.toLowerCase(Locale.ROOT).trim();
+            if (!normalized.isEmpty() && seen.add(normalized + '\u0000' + kind)) {
+                phrases.add(normalized);
+                kinds.add(kind);
+            }
+            return this;
+        }
+
+        public PhraseMatcher build() {
+            return new PhraseMatcher(phrases, kinds);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.quarkos.voice.command;
+
+import org.quarkos.spotify.SpotifyController;
+
+/**
+ * Command to play another track by the artist that is playing, e.g. "play the next one by them".
+ */
+public class PlayMoreByArtistCommand implements Command {
+
+    private final SpotifyController spotifyController;
+
+    public PlayMoreByArtistCommand(SpotifyController spotifyController) {
+        this.spotifyController = spotifyController;
+    }
+
+    @Override
+    public void execute() {
+        spotifyController.playMoreByArtist();
+    }
+}
@@ -0,0 +1,20 @@
+package org.quarkos.voice.command;
+
+import org.quarkos.spotify.SpotifyController;
+
+/**
+ * Command to go back to the previous track.
+ */
+public class PreviousCommand implements Command {
+
+    private final SpotifyController spotifyController;
+
+    public PreviousCommand(SpotifyController spotifyController) {
+        this.spotifyController = spotifyController;
+    }
+
+    @Override
+    public void execute() {
+        spotifyController.previous();
+    }
+}
@@ -0,0 +1,20 @@
+package org.quarkos.voice.command;
+
+import org.quarkos.spotify.SpotifyController;
+
+/**
+ * Command to resume playback.
+ */
+public class ResumeCommand implements Command {
+
+    private final SpotifyController spotifyController;
+
+    public ResumeCommand(SpotifyController spotifyController) {
+        this.spotifyController = spotifyController;
+    }
+
+    @Override
+    public void execute() {
+        spotifyController.resume();
+    }
+}
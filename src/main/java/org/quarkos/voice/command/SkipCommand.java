@@ -0,0 +1,20 @@
+package org.quarkos.voice.command;
+
+import org.quarkos.spotify.SpotifyController;
+
+/**
+ * Command to skip to the next track.
+ */
+public class SkipCommand implements Command {
+
+    private final SpotifyController spotifyController;
+
+    public SkipCommand(SpotifyController spotifyController) {
+        this.spotifyController = spotifyController;
+    }
+
+    @Override
+    public void execute() {
+        spotifyController.skip();
+    }
+}
@@ -0,0 +1,102 @@
+package org.quarkos.ai;
+
+import com.google.genai.types.Candidate;
+import com.google.genai.types.Content;
+import com.google.genai.types.FunctionCall;
+import com.google.genai.types.FunctionCallingConfigMode;
+import com.google.genai.types.FunctionResponse;
+import com.google.genai.types.GenerateContentConfig;
+import com.google.genai.types.GenerateContentResponse;
+import com.google.genai.types.Part;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FunctionCallingAgentTest {
+
+    private final List<List<Content>> requests = new ArrayList<>();
+    private final List<GenerateContentConfig> configs = new ArrayList<>();
+
+    @Test
+    public void feedsFunctionResultsBack() {
+        FunctionCallingAgent agent = agent(5, List.of(
+                functionCalls("getTime", "getWeather"),
+                text("It is 13:37 and sunny.")));
+
+        FunctionCallingAgent.AgentResult result = agent.run("What time is it and how is the weather?");
+        agent.shutdown();
+
+        assertEquals("It is 13:37 and sunny.", result.text());
+        assertEquals(2, result.steps().size());
+        assertEquals(List.of("getTime", "getWeather"), result.steps().get(0).functionCalls());
+        assertEquals(List.of(), result.steps().get(1).functionCalls());
+
+        // Prompt, the model's function calls and their results, in call order.
+        List<Content> secondRequest = requests.get(1);
+        assertEquals(3, secondRequest.size());
+        assertEquals("model", secondRequest.get(1).role().orElse(null));
+        List<Part> responses = secondRequest.get(2).parts().orElseThrow();
+        assertEquals("getTime", responses.get(0).functionResponse().flatMap(FunctionResponse::name).orElse(null));
+        assertEquals(Map.of("result", "getTime"),
+                responses.get(0).functionResponse().flatMap(FunctionResponse::response).orElse(null));
+        assertEquals("getWeather", responses.get(1).functionResponse().flatMap(FunctionResponse::name).orElse(null));
+        assertFalse(functionCallingDisabled(configs.get(0)));
+    }
+
+    @Test
+    public void lastStepMustAnswerWithoutFunctions() {
+        FunctionCallingAgent agent = agent(2, List.of(functionCalls("getTime"), functionCalls("getTime")));
+
+        FunctionCallingAgent.AgentResult result = agent.run("What time is it?");
+        agent.shutdown();
+
+        assertNull(result.text());
+        assertEquals(2, result.steps().size());
+        assertFalse(functionCallingDisabled(configs.get(0)));
+        assertTrue(functionCallingDisabled(configs.get(1)));
+    }
+
+    private FunctionCallingAgent agent(int maxSteps, List<GenerateContentResponse> responses) {
+        Iterator<GenerateContentResponse> next = responses.iterator();
+        return new FunctionCallingAgent(maxSteps, (history, config) -> {
+            requests.add(List.copyOf(history));
+            configs.add(config);
+            return next.next();
+        }, call -> Map.of("result", call.name().orElse("?")));
+    }
+
+    private static boolean functionCallingDisabled(GenerateContentConfig config) {
+        return config.toolConfig()
+                .flatMap(toolConfig -> toolConfig.functionCallingConfig())
+                .flatMap(functionCalling -> functionCalling.mode())
+                .map(mode -> mode.knownEnum() == FunctionCallingConfigMode.Known.NONE)
+                .orElse(false);
+    }
+
+    private static GenerateContentResponse functionCalls(String... names) {
+        List<Part> parts = new ArrayList<>();
+        for (String name : names) {
+            parts.add(Part.builder().functionCall(FunctionCall.builder().name(name).id(name).build()).build());
+        }
+        return response(parts);
+    }
+
+    private static GenerateContentResponse text(String text) {
+        return response(List.of(Part.fromText(text)));
+    }
+
+    private static GenerateContentResponse response(List<Part> parts) {
+        Content content = Content.builder().role("model").parts(parts).build();
+        return GenerateContentResponse.builder()
+                .candidates(List.of(Candidate.builder().content(content).build()))
+                .build();
+    }
+}
@@ -46,4 +46,4 @@ public class GeminiTest {
         }
 
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package org.quarkos.ai;
+
+import org.junit.Test;
+import org.quarkos.Model;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ModelRaceTest {
+
+    private static final List<Model> MODELS = List.of(Model.GEMINI_2_5_FLASH, Model.GEMINI_2_0_FLASH);
+
+    @Test
+    public void firstKeepsTheFastestAnswer() throws Exception {
+        ModelRace race = new ModelRace(answerer(Map.of(Model.GEMINI_2_5_FLASH, 2_000L, Model.GEMINI_2_0_FLASH, 10L)));
+        ModelRace.Result result = race.race("q", MODELS, ModelRace.Strategy.FIRST, 5_000);
+        assertEquals(Model.GEMINI_2_0_FLASH, result.model());
+        assertEquals("q by gemini-2.0-flash", result.answer());
+        race.shutdown();
+    }
+
+    @Test
+    public void bestWaitsForThePreferredModelUntilTheTimeout() throws Exception {
+        ModelRace race = new ModelRace(answerer(Map.of(Model.GEMINI_2_5_FLASH, 200L, Model.GEMINI_2_0_FLASH, 10L)));
+        assertEquals(Model.GEMINI_2_5_FLASH, race.race("q", MODELS, ModelRace.Strategy.BEST, 5_000).model());
+        // Too slow: the other answer is kept.
+        assertEquals(Model.GEMINI_2_0_FLASH, race.race("q", MODELS, ModelRace.Strategy.BEST, 100).model());
+        race.shutdown();
+    }
+
+    @Test
+    public void failsWhenNoModelAnswers() throws Exception {
+        ModelRace race = new ModelRace((prompt, model) -> {
+            throw new IllegalStateException("quota exceeded");
+        });
+        try {
+            race.race("q", MODELS, ModelRace.Strategy.FIRST, 1_000);
+            fail();
+        } catch (ExecutionException expected) {
+            // Neither model answered.
+        }
+        race.shutdown();
+    }
+
+    private static BiFunction<String, Model, String> answerer(Map<Model, Long> delays) {
+        return (prompt, model) -> {
+            try {
+                Thread.sleep(delays.get(model));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return prompt + " by " + model.getModelName();
+        };
+    }
+}
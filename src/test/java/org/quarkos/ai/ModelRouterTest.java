@@ -0,0 +1,84 @@
+package org.quarkos.ai;
+
+import org.junit.Test;
+import org.quarkos.Model;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModelRouterTest {
+
+    private static final Model BEST = Model.GEMINI_2_5_FLASH;
+    private static final Model FALLBACK = Model.GEMINI_2_0_FLASH;
+    private static final ModelRouter.RequestClass CLIPBOARD = ModelRouter.RequestClass.CLIPBOARD;
+    private static final long WINDOW_MS = 60_000;
+
+    private final AtomicLong now = new AtomicLong();
+    private final ModelRouter router = new ModelRouter(
+            Map.of(CLIPBOARD, new ModelRouter.Route(List.of(BEST, FALLBACK), 1_000)), 95, 0.2, 5, WINDOW_MS, 2, now::get);
+
+    @Test
+    public void avoidsAModelThatMissesItsLatencyObjectiveUntilItsMeasurementsExpire() {
+        assertEquals(BEST, router.choose(CLIPBOARD)); // Nothing known yet.
+        for (int i = 0; i < 5; i++) {
+            router.record(CLIPBOARD, BEST, TimeUnit.MILLISECONDS.toNanos(3_000), true);
+        }
+        assertEquals(FALLBACK, router.choose(CLIPBOARD));
+        assertFalse(router.getStats(CLIPBOARD).get(BEST).healthy());
+
+        now.addAndGet(WINDOW_MS); // Still the previous window to go by.
+        assertEquals(FALLBACK, router.choose(CLIPBOARD));
+        now.addAndGet(2 * WINDOW_MS);
+        assertEquals(BEST, router.choose(CLIPBOARD));
+    }
+
+    @Test
+    public void fallsBackWhenAModelFails() {
+        String answer = router.call(CLIPBOARD, model -> {
+            if (model == BEST) {
+                throw new IllegalStateException("503");
+            }
+            return model.getModelName();
+        });
+        assertEquals(FALLBACK.getModelName(), answer);
+        assertEquals(1, router.getStats(CLIPBOARD).get(BEST).errors());
+
+        for (int i = 0; i < 4; i++) {
+            try {
+                router.call(CLIPBOARD, BEST, model -> {
+                    throw new IllegalStateException("503");
+                });
+                fail();
+            } catch (IllegalStateException expected) {
+                // Recorded as an error.
+            }
+        }
+        assertEquals(FALLBACK, router.choose(CLIPBOARD));
+        assertTrue(router.getStats(CLIPBOARD).get(BEST).recentErrorRate() > 0.2);
+    }
+
+    @Test
+    public void neitherCountsNorRetriesACancelledRequest() {
+        AtomicLong requests = new AtomicLong();
+        try {
+            router.call(CLIPBOARD, model -> {
+                requests.incrementAndGet();
+                Thread.currentThread().interrupt(); // Cancelled, e.g. because the clipboard changed.
+                throw new IllegalStateException(new InterruptedIOException());
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(1, requests.get());
+        assertEquals(0, router.getStats(CLIPBOARD).get(BEST).errors());
+    }
+}
@@ -0,0 +1,109 @@
+package org.quarkos.ai;
+
+import org.junit.After;
+import org.junit.Test;
+import org.quarkos.Model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RequestHedgerTest {
+
+    private static final Model PRIMARY = Model.GEMINI_2_5_FLASH_LITE_PREVIEW_06_17;
+    private static final Model SECONDARY = Model.GEMINI_2_0_FLASH;
+
+    private final Map<Model, Long> delays = new ConcurrentHashMap<>();
+    private final Map<Model, AtomicInteger> calls = new ConcurrentHashMap<>();
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+    private final RequestHedger hedger = new RequestHedger(this::answer, 95, 50, 3);
+
+    @After
+    public void tearDown() {
+        hedger.shutdown();
+    }
+
+    @Test
+    public void doesNotHedgeFastRequests() throws Exception {
+        delays.put(PRIMARY, 5L);
+        delays.put(SECONDARY, 5L);
+        // A delay no request reaches, so a slow machine can't trigger the hedge.
+        RequestHedger patient = new RequestHedger(this::answer, 95, 60_000, 3);
+
+        try {
+            RequestHedger.Result result = patient.request("q", PRIMARY, SECONDARY);
+            assertEquals(PRIMARY, result.model());
+            assertFalse(result.hedged());
+            assertEquals(null, calls.get(SECONDARY));
+        } finally {
+            patient.shutdown();
+        }
+    }
+
+    @Test
+    public void hedgesSlowRequestsAndCancelsTheLoser() throws Exception {
+        delays.put(PRIMARY, 2_000L);
+        delays.put(SECONDARY, 5L);
+
+        RequestHedger.Result result = hedger.request("q", PRIMARY, SECONDARY);
+        assertEquals(SECONDARY, result.model());
+        assertTrue(result.hedged());
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        hedger.shutdown();
+        assertTrue(hedger.awaitTermination(1, TimeUnit.SECONDS));
+
+        RequestHedger.HedgeStats stats = hedger.getStats();
+        assertEquals(1, stats.hedged());
+        assertEquals(1.0, stats.winRate(), 0);
+        assertEquals(1, stats.primaryLatency().count()); // At least as long as it ran.
+    }
+
+    @Test
+    public void hedgesRightAwayWhenThePrimaryFails() throws Exception {
+        delays.put(PRIMARY, -1L);
+        delays.put(SECONDARY, 5L);
+
+        assertEquals(SECONDARY, hedger.request("q", PRIMARY, SECONDARY).model());
+    }
+
+    @Test
+    public void hedgeDelayFollowsThePrimaryLatency() throws Exception {
+        // Each answer takes 10ms on a clock only the answers move.
+        AtomicLong clock = new AtomicLong();
+        RequestHedger timed = new RequestHedger((prompt, model) -> {
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10));
+            return model.getModelName();
+        }, 95, 60_000, 3, clock::get);
+
+        try {
+            assertEquals(60_000, timed.hedgeDelayMillis(PRIMARY)); // Not enough samples yet.
+            for (int i = 0; i < 3; i++) {
+                assertFalse(timed.request("q", PRIMARY, SECONDARY).hedged());
+            }
+            assertEquals(10, timed.hedgeDelayMillis(PRIMARY));
+        } finally {
+            timed.shutdown();
+        }
+    }
+
+    private String answer(String prompt, Model model) {
+        calls.computeIfAbsent(model, m -> new AtomicInteger()).incrementAndGet();
+        if (delays.get(model) < 0) {
+            throw new IllegalStateException("failed");
+        }
+        try {
+            Thread.sleep(delays.get(model));
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+            throw new IllegalStateException(e);
+        }
+        return model.getModelName();
+    }
+}
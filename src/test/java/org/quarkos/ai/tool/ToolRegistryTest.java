@@ -0,0 +1,86 @@
+package org.quarkos.ai.tool;
+
+import com.google.genai.types.FunctionDeclaration;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ToolRegistryTest {
+
+    enum Unit { CELSIUS, FAHRENHEIT }
+
+    static class TestTools {
+        static int calls = 0;
+
+        @ToolFunction(description = "Returns the forecast.")
+        static Map<String, Object> forecast(@ToolParam(value = "city", required = true) String city,
+                                            @ToolParam("days") int days,
+                                            @ToolParam("unit") Unit unit) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("city", city);
+            result.put("days", days);
+            result.put("unit", unit);
+            return result;
+        }
+
+        @ToolFunction(name = "ping", description = "Does nothing.")
+        static void doPing() {
+            calls++;
+        }
+    }
+
+    @Test
+    public void generatesDeclarationsFromAnnotations() {
+        ToolRegistry registry = ToolRegistry.scan(TestTools.class);
+        List<FunctionDeclaration> declarations = registry.getDeclarations();
+
+        assertEquals(2, declarations.size());
+        FunctionDeclaration forecast = declarations.stream()
+                .filter(declaration -> declaration.name().orElse("").equals("forecast"))
+                .findFirst()
+                .orElseThrow();
+        String json = forecast.toJson();
+        assertTrue(json.contains("\"city\""));
+        assertTrue(json.contains("INTEGER"));
+        assertTrue(json.contains("fahrenheit"));
+        assertTrue(forecast.parameters().get().required().get().contains("city"));
+    }
+
+    @Test
+    public void bindsTypedArguments() {
+        ToolRegistry registry = ToolRegistry.scan(TestTools.class);
+        Map<String, Object> args = new LinkedHashMap<>();
+        args.put("city", "Salzburg");
+        args.put("days", 3.0);
+        args.put("unit", "Celsius");
+
+        Map<String, Object> result = registry.dispatch("forecast", args);
+
+        assertEquals("Salzburg", result.get("city"));
+        assertEquals(3, result.get("days"));
+        assertEquals(Unit.CELSIUS, result.get("unit"));
+    }
+
+    @Test
+    public void reportsErrorsInsteadOfThrowing() {
+        ToolRegistry registry = ToolRegistry.scan(TestTools.class);
+
+        assertEquals("error", registry.dispatch("unknown", Map.of()).get("status"));
+        assertEquals("error", registry.dispatch("forecast", Map.of()).get("status"));
+        assertEquals("error", registry.dispatch("forecast", Map.of("city", "Wien", "unit", "kelvin")).get("status"));
+    }
+
+    @Test
+    public void voidFunctionsReturnOk() {
+        ToolRegistry registry = ToolRegistry.scan(TestTools.class);
+        int before = TestTools.calls;
+
+        assertEquals("ok", registry.dispatch("ping", Map.of()).get("status"));
+        assertEquals(before + 1, TestTools.calls);
+    }
+}
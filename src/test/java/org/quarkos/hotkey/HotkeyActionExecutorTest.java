@@ -0,0 +1,95 @@
+package org.quarkos.hotkey;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HotkeyActionExecutorTest {
+
+    private final HotkeyActionExecutor executor = new HotkeyActionExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void singleFlightDropsTriggersWhileRunning() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        HotkeyActionExecutor.Action action = executor.register("prompt", () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            awaitQuietly(release);
+        }, HotkeyActionExecutor.Policy.SINGLE_FLIGHT, 0);
+
+        action.trigger();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        action.trigger();
+        action.trigger();
+        release.countDown();
+
+        HotkeyActionExecutor.ActionStats stats = action.getStats();
+        assertEquals(3, stats.triggered());
+        assertEquals(2, stats.dropped());
+        assertEquals(1, runs.get());
+        assertEquals(1, stats.startLatency().count());
+    }
+
+    @Test
+    public void cancelPreviousInterruptsTheRunningAction() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CountDownLatch secondRan = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        HotkeyActionExecutor.Action action = executor.register("prompt", () -> {
+            if (runs.incrementAndGet() == 1) {
+                firstStarted.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            } else {
+                secondRan.countDown();
+            }
+        }, HotkeyActionExecutor.Policy.CANCEL_PREVIOUS, 0);
+
+        action.trigger();
+        assertTrue(firstStarted.await(1, TimeUnit.SECONDS));
+        action.trigger();
+
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertTrue(secondRan.await(1, TimeUnit.SECONDS));
+        assertEquals(1, action.getStats().cancelled());
+    }
+
+    @Test
+    public void debounceDropsRepeatedPresses() throws Exception {
+        CountDownLatch ran = new CountDownLatch(1);
+        HotkeyActionExecutor.Action action = executor.register("toggle", ran::countDown,
+                HotkeyActionExecutor.Policy.DEBOUNCE, 10_000);
+
+        action.trigger();
+        action.trigger();
+
+        assertTrue(ran.await(1, TimeUnit.SECONDS));
+        assertEquals(1, action.getStats().dropped());
+        assertEquals(1, executor.getStats().size());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
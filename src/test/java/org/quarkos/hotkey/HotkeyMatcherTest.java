@@ -0,0 +1,105 @@
+package org.quarkos.hotkey;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HotkeyMatcherTest {
+
+    // Key codes as in NativeKeyEvent.
+    private static final int CTRL = 0x001D;
+    private static final int SHIFT = 0x002A;
+    private static final int ALT = 0x0038;
+    private static final int C = 0x002E;
+    private static final int D = 0x0020;
+    private static final int SPACE = 0x0039;
+
+    @Test
+    public void triggersOnlyOnTheExactChord() {
+        HotkeyMatcher<String> matcher = new HotkeyMatcher<>(1_000);
+        matcher.put(HotkeyCombination.of(C, CTRL, SHIFT), "clipboard");
+        matcher.put(HotkeyCombination.of(C, CTRL), "copy");
+
+        assertNull(matcher.keyPressed(CTRL));
+        assertEquals("copy", matcher.keyPressed(C).action());
+        matcher.keyReleased(C);
+        assertNull(matcher.keyPressed(SHIFT));
+        assertEquals("clipboard", matcher.keyPressed(C).action());
+
+        // One key too many.
+        assertNull(matcher.keyPressed(ALT));
+        matcher.keyReleased(ALT);
+        matcher.keyReleased(C);
+        matcher.keyReleased(SHIFT);
+        matcher.keyReleased(CTRL);
+        assertNull(matcher.keyPressed(C));
+        assertEquals(1, matcher.getPressedCount());
+    }
+
+    @Test
+    public void ignoresAutoRepeatAndRemovedHotkeys() {
+        HotkeyMatcher<String> matcher = new HotkeyMatcher<>(1_000);
+        HotkeyCombination debug = HotkeyCombination.ctrlShiftKey(D);
+        matcher.put(debug, "debug");
+
+        matcher.keyPressed(CTRL);
+        matcher.keyPressed(SHIFT);
+        assertEquals(HotkeySequence.of(debug), matcher.keyPressed(D).sequence());
+        assertNull(matcher.keyPressed(D));
+
+        matcher.keyReleased(D);
+        assertEquals("debug", matcher.remove(debug));
+        assertNull(matcher.keyPressed(D));
+        assertEquals(0, matcher.size());
+    }
+
+    @Test
+    public void matchesLeaderSequencesWithinTheTimeout() {
+        HotkeyMatcher<String> matcher = new HotkeyMatcher<>(1_000);
+        HotkeySequence leader = HotkeySequence.of(HotkeyCombination.ctrlKey(SPACE));
+        matcher.put(leader.then(C), "clipboard");
+        matcher.put(leader.then(HotkeyCombination.shiftKey(D)), "debug");
+
+        tap(matcher, 0, CTRL, SPACE);
+        assertTrue(matcher.isSequencePending());
+        matcher.keyPressed(SHIFT, ms(100)); // A modifier doesn't end the sequence.
+        assertEquals("debug", matcher.keyPressed(D, ms(200)).action());
+        matcher.reset();
+
+        tap(matcher, 0, CTRL, SPACE);
+        assertNull(matcher.keyPressed(C, ms(2_000))); // Too late.
+        assertFalse(matcher.isSequencePending());
+    }
+
+    @Test
+    public void rejectsSequencesThatStartWithABoundCombination() {
+        HotkeyMatcher<String> matcher = new HotkeyMatcher<>(1_000);
+        matcher.put(HotkeyCombination.ctrlKey(SPACE), "leader");
+        try {
+            matcher.put(HotkeySequence.of(HotkeyCombination.ctrlKey(SPACE)).then(C), "clipboard");
+            fail("Expected the sequence to conflict with the combination");
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, matcher.size());
+        }
+    }
+
+    /**
+     * Presses the keys one after the other, then releases them.
+     */
+    private static void tap(HotkeyMatcher<String> matcher, long nanos, int... keyCodes) {
+        for (int keyCode : keyCodes) {
+            matcher.keyPressed(keyCode, nanos);
+        }
+        for (int keyCode : keyCodes) {
+            matcher.keyReleased(keyCode);
+        }
+    }
+
+    private static long ms(long millis) {
+        return millis * 1_000_000;
+    }
+}
@@ -0,0 +1,87 @@
+package org.quarkos.intent;
+
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LocalIntentClassifierTest {
+
+    private final LocalIntentClassifier classifier = new LocalIntentClassifier();
+
+    @Test
+    public void recognizesPlaybackControls() {
+        assertAction("pause", "Pause.");
+        assertAction("pause", "please stop the music");
+        assertAction("skip", "Next song, please!");
+        assertAction("skip", "[00:00.000 --> 00:01.500]  Skip this song.");
+        assertAction("resume", "resume");
+        assertAction("previous", "Go back");
+        assertAction("skip", "nächstes Lied bitte");
+    }
+
+    @Test
+    public void splitsSongAndArtist() {
+        Intent intent = classifier.classify("Can you play the song Bohemian Rhapsody by Queen?").orElseThrow();
+        assertEquals("playMusic", intent.functionName());
+        assertEquals("bohemian rhapsody", intent.args().get("songName"));
+        assertEquals("queen", intent.args().get("artist"));
+        assertTrue(intent.confidence() >= 0.8);
+    }
+
+    @Test
+    public void lastSeparatorWins() {
+        Intent intent = classifier.classify("play stand by me by ben e king").orElseThrow();
+        assertEquals("stand by me", intent.args().get("songName"));
+        assertEquals("ben e king", intent.args().get("artist"));
+
+        Intent withoutArtist = classifier.classify("play Numb").orElseThrow();
+        assertEquals("numb", withoutArtist.args().get("songName"));
+        assertNull(withoutArtist.args().get("artist"));
+    }
+
+    @Test
+    public void leavesAmbiguousCommandsToTheLlm() {
+        assertFalse(classifier.classify("What's the weather in Salzburg?").isPresent());
+        assertFalse(classifier.classify("pause and set a timer for ten minutes").isPresent());
+        Optional<Intent> compound = classifier.classify("play Numb and then set a timer");
+        assertTrue(compound.isPresent());
+        assertTrue(compound.get().confidence() < 0.8);
+        assertTrue(classifier.classify("play some music from the eighties").get().confidence() < 0.8);
+    }
+
+    @Test
+    public void leavesQuestionsNegationsAndCompoundRequestsToTheLlm() {
+        assertFalse(classifier.classify("What's the next song?").isPresent());
+        assertFalse(classifier.classify("Why did you pause?").isPresent());
+        assertFalse(classifier.classify("Don't pause").isPresent());
+        assertFalse(classifier.classify("How do I go back?").isPresent());
+        assertFalse(classifier.classify("Who sings the song you play?").isPresent());
+        assertFalse(classifier.classify("Set a timer for ten minutes and then go back").isPresent());
+    }
+
+    @Test
+    public void isLessSureWhenWordsAroundTheCommandWereSkipped() {
+        assertEquals(1.0, classifier.classify("pause").orElseThrow().confidence(), 0);
+        double withWakeWord = classifier.classify("Hey Synapse, pause").orElseThrow().confidence();
+        assertTrue(withWakeWord < 1.0 && withWakeWord >= 0.8);
+        assertTrue(classifier.classify("I want to play Numb").orElseThrow().confidence()
+                < classifier.classify("play Numb").orElseThrow().confidence());
+    }
+
+    @Test
+    public void leavesRequestsAroundAPlayCommandToTheLlm() {
+        Optional<Intent> reminder = classifier.classify("Remind me to play Numb by Linkin Park tomorrow");
+        assertFalse(reminder.isPresent() && reminder.get().confidence() >= 0.8);
+    }
+
+    private void assertAction(String action, String text) {
+        Intent intent = classifier.classify(text).orElseThrow(() -> new AssertionError("No intent for: " + text));
+        assertEquals("controlPlayback", intent.functionName());
+        assertEquals(action, intent.args().get("action"));
+    }
+}
@@ -0,0 +1,206 @@
+package org.quarkos.spotify;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class PlaybackCoalescerTest {
+
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+    private final ManualScheduler scheduler = new ManualScheduler();
+
+    @Test
+    public void batchesRepeatedSkipsAfterTheFirstOne() {
+        PlaybackCoalescer coalescer = coalescer(200);
+
+        for (int i = 0; i < 5; i++) {
+            coalescer.submit(PlaybackCoalescer.Action.NEXT);
+            scheduler.advance(50);
+        }
+        coalescer.submit(PlaybackCoalescer.Action.PREVIOUS);
+        assertEquals(List.of("NEXT x1"), executed);
+
+        scheduler.advance(199);
+        assertEquals(List.of("NEXT x1"), executed); // The window restarted with the last command.
+        scheduler.advance(1);
+        assertEquals(List.of("NEXT x1", "NEXT x3"), executed);
+        assertEquals(5, coalescer.getStats().coalesced());
+        assertEquals(1, coalescer.getStats().batches());
+    }
+
+    @Test
+    public void anotherCommandEndsTheBurst() {
+        PlaybackCoalescer coalescer = coalescer(10_000);
+
+        coalescer.submit(PlaybackCoalescer.Action.NEXT);
+        coalescer.submit(PlaybackCoalescer.Action.NEXT);
+        coalescer.submit(PlaybackCoalescer.Action.PAUSE);
+        coalescer.submit(PlaybackCoalescer.Action.PAUSE);
+        coalescer.submit(PlaybackCoalescer.Action.RESUME);
+
+        assertEquals(List.of("NEXT x1", "NEXT x1", "PAUSE x1", "RESUME x1"), executed);
+    }
+
+    @Test
+    public void aFlushedBatchRunsBeforeLaterCommands() {
+        PlaybackCoalescer coalescer = coalescer(200);
+
+        coalescer.submit(PlaybackCoalescer.Action.NEXT);
+        coalescer.submit(PlaybackCoalescer.Action.NEXT);
+        coalescer.submit(PlaybackCoalescer.Action.NEXT);
+        scheduler.advance(200);
+        coalescer.submit(PlaybackCoalescer.Action.NEXT);
+
+        assertEquals(List.of("NEXT x1", "NEXT x2", "NEXT x1"), executed);
+    }
+
+    private PlaybackCoalescer coalescer(long windowMillis) {
+        return new PlaybackCoalescer((action, count) -> executed.add(action + " x" + count), windowMillis,
+                scheduler, scheduler::nanoTime);
+    }
+
+    /**
+     * Runs tasks on the calling thread, scheduled ones once the test moves its clock past their time.
+     */
+    private static class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+        private final List<Task> scheduled = new ArrayList<>();
+        private long nanoTime = 0;
+
+        long nanoTime() {
+            return nanoTime;
+        }
+
+        void advance(long millis) {
+            long target = nanoTime + TimeUnit.MILLISECONDS.toNanos(millis);
+            while (true) {
+                Task next = null;
+                for (Task task : scheduled) {
+                    if (task.dueNanos <= target && (next == null || task.dueNanos < next.dueNanos)) {
+                        next = task;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                scheduled.remove(next);
+                nanoTime = next.dueNanos;
+                next.done = true;
+                next.runnable.run();
+            }
+            nanoTime = target;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            Task task = new Task(command, nanoTime + unit.toNanos(delay));
+            scheduled.add(task);
+            return task;
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void shutdown() {
+            scheduled.clear();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            scheduled.clear();
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+
+        private class Task implements ScheduledFuture<Object> {
+            private final Runnable runnable;
+            private final long dueNanos;
+            private boolean done;
+            private boolean cancelled;
+
+            Task(Runnable runnable, long dueNanos) {
+                this.runnable = runnable;
+                this.dueNanos = dueNanos;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(dueNanos - nanoTime, TimeUnit.NANOSECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                cancelled = scheduled.remove(this);
+                done = true;
+                return cancelled;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+
+            @Override
+            public boolean isDone() {
+                return done;
+            }
+
+            @Override
+            public Object get() {
+                return null;
+            }
+
+            @Override
+            public Object get(long timeout, TimeUnit unit) {
+                return null;
+            }
+        }
+    }
+}
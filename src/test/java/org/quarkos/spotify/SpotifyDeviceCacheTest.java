@@ -0,0 +1,64 @@
+package org.quarkos.spotify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quarkos.benchmark.MockSpotifyServer;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpotifyDeviceCacheTest {
+
+    private static final String DEVICES_PATH = "/v1/me/player/devices";
+
+    private MockSpotifyServer server;
+    private SpotifyDeviceCache cache;
+    private SpotifyController controller;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockSpotifyServer(0);
+        cache = new SpotifyDeviceCache(server.createApi(), 60_000, 0);
+        controller = new SpotifyController(server.createApi(), cache);
+    }
+
+    @After
+    public void tearDown() {
+        cache.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void reusesTheDeviceAcrossCommands() throws Exception {
+        controller.pause();
+        controller.resume();
+        controller.skip();
+        awaitSent();
+
+        assertEquals(1, server.getRequestCount(DEVICES_PATH));
+        assertEquals(2, cache.getStats().hits());
+        assertEquals(1, cache.getStats().misses());
+    }
+
+    @Test
+    public void refetchesAndRetriesWhenTheDeviceIsGone() throws Exception {
+        controller.pause();
+        awaitSent();
+        server.setDevices("phone");
+
+        controller.resume();
+        awaitSent();
+
+        assertEquals(2, server.getRequestCount(DEVICES_PATH));
+        assertEquals(2, server.getRequestCount("/v1/me/player/play"));
+        assertEquals(1, cache.getStats().invalidations());
+        assertEquals("phone", cache.getDeviceId());
+    }
+
+    private void awaitSent() throws InterruptedException {
+        assertTrue(controller.getPlaybackCoalescer().awaitSent(5, TimeUnit.SECONDS));
+    }
+}
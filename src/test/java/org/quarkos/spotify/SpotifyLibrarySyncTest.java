@@ -0,0 +1,93 @@
+package org.quarkos.spotify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quarkos.benchmark.MockSpotifyServer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpotifyLibrarySyncTest {
+
+    private MockSpotifyServer server;
+    private TrackResolutionCache trackCache;
+    private SpotifyLibrarySync sync;
+    private Path file;
+    private String numb;
+    private String rhapsody;
+    private String africa;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockSpotifyServer(0);
+        numb = server.addTrack("Numb", "Linkin Park");
+        rhapsody = server.addTrack("Bohemian Rhapsody", "Queen");
+        africa = server.addTrack("Africa", "Toto");
+        server.saveTrack(numb);
+        server.setPlaylist("road", "Road Trip", List.of(rhapsody, numb));
+        server.setFollowedArtists("Ben E. King");
+
+        file = Files.createTempDirectory("library").resolve("library.json");
+        trackCache = new TrackResolutionCache();
+        sync = new SpotifyLibrarySync(server.createApi(), trackCache, file);
+    }
+
+    @After
+    public void tearDown() {
+        sync.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void mirrorsTheLibraryIntoTheFuzzyIndex() throws Exception {
+        SpotifyLibrarySync.SyncResult result = sync.syncNow();
+
+        assertEquals(2, result.tracks());
+        assertEquals("spotify:track:" + rhapsody, trackCache.lookup("bohemian rapsody", null).orElseThrow().uri());
+        assertEquals("Ben E. King", sync.canonicalArtist("ben e king"));
+        assertEquals(0, trackCache.size()); // Library tracks are indexed, not stored as resolved requests.
+    }
+
+    @Test
+    public void syncsIncrementally() throws Exception {
+        sync.syncNow();
+        server.resetCounts();
+
+        SpotifyLibrarySync.SyncResult unchanged = sync.syncNow();
+        assertEquals(0, unchanged.playlistsRefetched());
+        assertEquals(0, server.getRequestCount("/v1/playlists/road/tracks"));
+
+        server.saveTrack(africa);
+        server.setPlaylist("road", "Road Trip", List.of(rhapsody));
+        SpotifyLibrarySync.SyncResult changed = sync.syncNow();
+        assertEquals(2, changed.savedTracks());
+        assertEquals(1, changed.playlistsRefetched());
+        assertEquals(3, changed.tracks());
+
+        // A restart starts from the stored mirror.
+        TrackResolutionCache restartedCache = new TrackResolutionCache();
+        SpotifyLibrarySync restarted = new SpotifyLibrarySync(server.createApi(), restartedCache, file);
+        restarted.start();
+        restarted.shutdown();
+        assertEquals(3, restarted.getTrackCount());
+        assertEquals("spotify:track:" + africa, restartedCache.lookup("africa", "toto").orElseThrow().uri());
+    }
+
+    @Test
+    public void removedSongsNoLongerResolve() throws Exception {
+        server.saveTrack(africa);
+        sync.syncNow();
+        assertTrue(trackCache.lookup("africa", "toto").isPresent());
+
+        server.unsaveTrack(africa);
+        sync.syncNow();
+        assertFalse(trackCache.lookup("africa", "toto").isPresent());
+        assertTrue(trackCache.lookup("numb", "linkin park").isPresent());
+    }
+}
@@ -0,0 +1,89 @@
+package org.quarkos.spotify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quarkos.benchmark.MockSpotifyServer;
+import se.michaelthelin.spotify.SpotifyApi;
+import se.michaelthelin.spotify.exceptions.detailed.TooManyRequestsException;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SpotifyRateLimiterTest {
+
+    private static final String DEVICES_PATH = "/v1/me/player/devices";
+
+    private MockSpotifyServer server;
+    private SpotifyRateLimiter limiter;
+    private SpotifyApi api;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockSpotifyServer(0);
+        limiter = new SpotifyRateLimiter(new SpotifyHttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(5), true), 2, 20, 2_000);
+        api = server.apiBuilder().setHttpManager(limiter).build();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void waitsForRetryAfterAndSendsAgain() throws Exception {
+        server.rejectNext(1, 1);
+        long start = System.nanoTime();
+        api.getUsersAvailableDevices().build().execute();
+
+        assertTrue(System.nanoTime() - start >= 1_000_000_000L);
+        assertEquals(2, server.getRequestCount(DEVICES_PATH));
+        assertEquals(1, limiter.getStats().rateLimitedResponses());
+        assertEquals(1, limiter.getStats().retries());
+    }
+
+    @Test
+    public void waitsTheDefaultForARetryAfterDate() throws Exception {
+        server.rejectNext(1, "Wed, 21 Oct 2015 07:28:00 GMT");
+        api.getUsersAvailableDevices().build().execute();
+
+        assertEquals(2, server.getRequestCount(DEVICES_PATH));
+        assertEquals(1, limiter.getStats().retries());
+    }
+
+    @Test
+    public void failsFastWhenRetryAfterIsTooLong() throws Exception {
+        server.rejectNext(1, 60);
+        try {
+            api.getUsersAvailableDevices().build().execute();
+            fail("Expected the rate limit to fail the request");
+        } catch (TooManyRequestsException e) {
+            assertEquals(60, e.getRetryAfter(), 1);
+        }
+        // Nothing is sent while Spotify asked to wait.
+        try {
+            api.getUsersAvailableDevices().build().execute();
+            fail("Expected the rate limit to fail the request");
+        } catch (TooManyRequestsException e) {
+            assertEquals(1, server.getRequestCount(DEVICES_PATH));
+        }
+        assertEquals(2, limiter.getStats().rejectedRequests());
+    }
+
+    @Test
+    public void pacesBurstsToTheSustainedRate() throws Exception {
+        // A slow rate, so a request never takes long enough on its own to refill a permit.
+        SpotifyRateLimiter slow = new SpotifyRateLimiter(new SpotifyHttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(5), true), 2, 4, 2_000);
+        SpotifyApi slowApi = server.apiBuilder().setHttpManager(slow).build();
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            slowApi.getUsersAvailableDevices().build().execute();
+        }
+        // 2 at once, then 2 more at 4 per second.
+        assertTrue(System.nanoTime() - start >= 490_000_000L);
+        assertEquals(2, slow.getStats().delayedRequests());
+    }
+}
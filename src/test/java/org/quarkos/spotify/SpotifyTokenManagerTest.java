@@ -0,0 +1,68 @@
+package org.quarkos.spotify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quarkos.benchmark.MockSpotifyServer;
+import se.michaelthelin.spotify.model_objects.credentials.AuthorizationCodeCredentials;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpotifyTokenManagerTest {
+
+    private static final String DEVICES_PATH = "/v1/me/player/devices";
+
+    private MockSpotifyServer server;
+    private SpotifyCredentialStore store;
+    private SpotifyTokenManager tokenManager;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockSpotifyServer(0);
+        store = new SpotifyCredentialStore(Files.createTempDirectory("spotify").resolve("credentials.json"));
+        tokenManager = new SpotifyTokenManager(server.apiBuilder(), new SpotifyHttpTransport(), store, api -> new AuthorizationCodeCredentials.Builder()
+                .setAccessToken(server.issueAccessToken())
+                .setExpiresIn(3600)
+                .build());
+    }
+
+    @After
+    public void tearDown() {
+        tokenManager.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void retriesOnceWithARefreshedToken() throws Exception {
+        tokenManager.getSpotifyApi().setRefreshToken("refresh");
+        server.issueAccessToken(); // The API's token expires.
+
+        tokenManager.getSpotifyApi().getUsersAvailableDevices().build().execute();
+        tokenManager.getSpotifyApi().getUsersAvailableDevices().build().execute();
+
+        assertEquals(3, server.getRequestCount(DEVICES_PATH));
+        assertEquals(1, tokenManager.getRefreshCount());
+        assertEquals(1, tokenManager.getRetriedRequestCount());
+        assertEquals("refresh", store.load().orElseThrow().refreshToken());
+    }
+
+    @Test
+    public void restoresTheSessionWithoutLogin() throws Exception {
+        String valid = server.issueAccessToken();
+        store.save(new SpotifyCredentialStore.StoredCredentials("refresh", valid, System.currentTimeMillis() + 3_600_000));
+        assertTrue(tokenManager.restore());
+        tokenManager.getSpotifyApi().getUsersAvailableDevices().build().execute();
+        assertEquals(0, tokenManager.getRefreshCount());
+
+        // An expired access token is refreshed right away.
+        store.save(new SpotifyCredentialStore.StoredCredentials("refresh", valid, System.currentTimeMillis() - 1));
+        assertTrue(tokenManager.restore());
+        tokenManager.getSpotifyApi().getUsersAvailableDevices().build().execute();
+        assertEquals(1, tokenManager.getRefreshCount());
+        assertEquals(0, tokenManager.getRetriedRequestCount());
+    }
+}
@@ -0,0 +1,82 @@
+package org.quarkos.spotify;
+
+import com.neovisionaries.i18n.CountryCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quarkos.benchmark.MockSpotifyServer;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrackPrefetcherTest {
+
+    private static final String SEARCH_PATH = "/v1/search";
+    private static final String PLAY_PATH = "/v1/me/player/play";
+
+    private MockSpotifyServer server;
+    private SpotifyDeviceCache deviceCache;
+    private TrackResolutionCache trackCache;
+    private PlayHistory history;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockSpotifyServer(0);
+        server.addTrack("Hello", "Adele", "25");
+        server.addTrack("Send My Love", "Adele", "25");
+        server.addTrack("Rolling in the Deep", "Adele", "21");
+        server.addTrack("Bohemian Rhapsody", "Queen", "A Night at the Opera");
+        deviceCache = new SpotifyDeviceCache(server.createApi(), 60_000, 0);
+        trackCache = new TrackResolutionCache();
+        history = new PlayHistory();
+    }
+
+    @After
+    public void tearDown() {
+        deviceCache.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void playsTheNextOneByThemWithoutSearching() {
+        TrackPrefetcher prefetcher = new TrackPrefetcher(server.createApi(), trackCache, history, CountryCode.US, false, 5_000);
+        SpotifyController controller = new SpotifyController(server.createApi(), deviceCache, trackCache, null, prefetcher);
+
+        controller.searchAndPlayTrack("hello", "adele");
+        int searches = server.getRequestCount(SEARCH_PATH);
+
+        // The next song of the album first, then the artist's top tracks.
+        controller.playMoreByArtist();
+        assertEquals("Send My Love", history.last().orElseThrow().name());
+        controller.playMoreByArtist();
+        assertEquals("Rolling in the Deep", history.last().orElseThrow().name());
+
+        assertEquals(searches, server.getRequestCount(SEARCH_PATH));
+        assertEquals(3, server.getRequestCount(PLAY_PATH));
+        assertEquals(2, prefetcher.getStats().servedPredictions());
+    }
+
+    @Test
+    public void preResolvesAndQueuesLikelyNextTracks() {
+        TrackPrefetcher prefetcher = new TrackPrefetcher(server.createApi(), trackCache, history, CountryCode.US, true, 5_000);
+        ResolvedTrack hello = new ResolvedTrack("spotify:track:mock0", "Hello", "Adele");
+        ResolvedTrack rhapsody = new ResolvedTrack("spotify:track:mock3", "Bohemian Rhapsody", "Queen");
+        for (int i = 0; i < 26; i++) {
+            // Far enough back that neither counts as just played.
+            history.record(i % 2 == 0 ? hello : rhapsody);
+        }
+        for (int i = 0; i < 20; i++) {
+            history.record(new ResolvedTrack("spotify:track:other" + i, "Other " + i, "Someone"));
+        }
+
+        prefetcher.onTrackStarted(hello);
+        prefetcher.nextByArtist(); // Waits for the prediction.
+
+        // What the user played after "Hello" before is queued, the artist's songs resolve from the cache.
+        assertEquals(List.of(rhapsody.uri()), server.getQueuedUris());
+        assertTrue(trackCache.lookup("rolling in the deep", "adele").isPresent());
+        assertEquals(List.of(rhapsody), history.followers(hello.uri(), 3));
+    }
+}
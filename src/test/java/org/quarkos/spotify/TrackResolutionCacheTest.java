@@ -0,0 +1,68 @@
+package org.quarkos.spotify;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class TrackResolutionCacheTest {
+
+    private static final ResolvedTrack RHAPSODY = new ResolvedTrack("spotify:track:1", "Bohemian Rhapsody", "Queen");
+    private static final ResolvedTrack NUMB = new ResolvedTrack("spotify:track:2", "Numb", "Linkin Park");
+
+    @Test
+    public void findsRepeatsAndNearRepeats() {
+        TrackResolutionCache cache = new TrackResolutionCache();
+        cache.put("bohemian rhapsody", "queen", RHAPSODY);
+        cache.put("numb", "linkin park", NUMB);
+
+        assertEquals(RHAPSODY, cache.lookup("Bohemian Rhapsody", "Queen").orElseThrow());
+        assertEquals(RHAPSODY, cache.lookup("bohemian rapsody", "queen").orElseThrow());
+        assertEquals(NUMB, cache.lookup("numb", null).orElseThrow());
+        assertFalse(cache.lookup("in the end", "linkin park").isPresent());
+
+        assertEquals(1, cache.getStats().exactHits());
+        assertEquals(2, cache.getStats().fuzzyHits());
+        assertEquals(1, cache.getStats().misses());
+    }
+
+    @Test
+    public void removedLibraryTracksNoLongerMatch() {
+        TrackResolutionCache cache = new TrackResolutionCache();
+        cache.addToIndex(RHAPSODY);
+        cache.addToIndex(NUMB);
+
+        cache.removeFromIndex(RHAPSODY.uri());
+        assertFalse(cache.lookup("bohemian rapsody", "queen").isPresent());
+        cache.removeFromIndex(NUMB.uri()); // Compacts the index.
+        assertFalse(cache.lookup("numb", null).isPresent());
+
+        cache.addToIndex(NUMB);
+        assertEquals(NUMB, cache.lookup("numb", null).orElseThrow());
+    }
+
+    @Test
+    public void removingALibraryTrackKeepsResolvedRequests() {
+        TrackResolutionCache cache = new TrackResolutionCache();
+        cache.put("bohemian rhapsody", "queen", RHAPSODY);
+        cache.addToIndex(RHAPSODY); // Also in the library.
+
+        cache.removeFromIndex(RHAPSODY.uri());
+        assertEquals(RHAPSODY, cache.lookup("bohemian rapsody", "queen").orElseThrow());
+    }
+
+    @Test
+    public void survivesARestart() throws Exception {
+        Path file = Files.createTempDirectory("track-cache").resolve("track-cache.json");
+        TrackResolutionCache cache = new TrackResolutionCache(file, 0.8);
+        cache.put("mr brightside", "the killers", new ResolvedTrack("spotify:track:3", "Mr. Brightside", "The Killers"));
+        cache.save();
+
+        TrackResolutionCache reloaded = TrackResolutionCache.load(file);
+        assertEquals(1, reloaded.size());
+        assertEquals("spotify:track:3", reloaded.lookup("Mr. Brightside", "The Killers").orElseThrow().uri());
+    }
+}
@@ -0,0 +1,38 @@
+package org.quarkos.spotify;
+
+import org.apache.commons.text.similarity.LevenshteinDistance;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrackScorerTest {
+
+    @Test
+    public void prefersTheTitleThatSoundsRight() {
+        List<TrackScorer.Candidate> candidates = List.of(
+                TrackScorer.Candidate.of(new ResolvedTrack("spotify:track:1", "Billy Bean", "Juno Reactor")),
+                TrackScorer.Candidate.of(new ResolvedTrack("spotify:track:2", "Billie Jean", "Michael Jackson")),
+                TrackScorer.Candidate.of(new ResolvedTrack("spotify:track:3", "Blinding Kites", "Paper Planes")),
+                TrackScorer.Candidate.of(new ResolvedTrack("spotify:track:4", "Blinding Lights", "The Weeknd")));
+
+        assertEquals("Billie Jean", TrackScorer.best(TrackScorer.Query.of("billy jean", null), candidates).track().name());
+        assertEquals("Blinding Lights", TrackScorer.best(TrackScorer.Query.of("blinding lites", null), candidates).track().name());
+    }
+
+    @Test
+    public void boundedLevenshteinAgreesWithinTheBound() {
+        String[] words = {"", "numb", "bohemian rhapsody", "bohemian rapsody", "rhapsody in blue", "levitating", "levitation"};
+        LevenshteinDistance levenshtein = LevenshteinDistance.getDefaultInstance();
+        for (String a : words) {
+            for (String b : words) {
+                int distance = levenshtein.apply(a, b);
+                for (int max = 0; max <= 20; max++) {
+                    int bounded = TrackScorer.boundedLevenshtein(a.toCharArray(), b.toCharArray(), max);
+                    assertEquals(a + " / " + b + " / " + max, Math.min(distance, max + 1), bounded);
+                }
+            }
+        }
+    }
+}
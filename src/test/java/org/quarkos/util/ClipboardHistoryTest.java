@@ -0,0 +1,52 @@
+package org.quarkos.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ClipboardHistoryTest {
+
+    @Test
+    public void walksBackAndForthAndDropsTheOldest() {
+        ClipboardHistory history = new ClipboardHistory(null, 3);
+        assertFalse(history.current().isPresent());
+        for (int i = 1; i <= 4; i++) {
+            history.record(entry(i));
+        }
+
+        assertEquals(3, history.size());
+        assertEquals("q4", history.current().orElseThrow().question());
+        assertEquals("q3", history.previous().orElseThrow().question());
+        assertEquals("q2", history.previous().orElseThrow().question());
+        assertEquals("q2", history.previous().orElseThrow().question()); // q1 was dropped.
+        assertEquals("q3", history.next().orElseThrow().question());
+
+        // A new answer moves the cursor back to the newest one.
+        history.record(entry(5));
+        assertEquals("q5", history.current().orElseThrow().question());
+        assertEquals("q5", history.next().orElseThrow().question());
+    }
+
+    @Test
+    public void survivesARestart() throws IOException {
+        Path file = Files.createTempDirectory("clipboard-history").resolve("history.json");
+        ClipboardHistory history = new ClipboardHistory(file, 10);
+        history.record(entry(1));
+        history.record(entry(2));
+        history.save();
+
+        ClipboardHistory loaded = ClipboardHistory.load(file);
+        assertEquals(List.of(entry(1), entry(2)), loaded.entries());
+        assertEquals("q2", loaded.current().orElseThrow().question());
+    }
+
+    private static ClipboardHistory.Entry entry(int i) {
+        return new ClipboardHistory.Entry("q" + i, "a" + i, "gemini-2.5-flash", 100L * i, 1_000L * i);
+    }
+}
@@ -0,0 +1,111 @@
+package org.quarkos.util;
+
+import org.junit.After;
+import org.junit.Test;
+import org.quarkos.Model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClipboardMonitorTest {
+
+    private static final Model MODEL = Model.GEMINI_2_0_FLASH;
+
+    private final AtomicReference<String> clipboard = new AtomicReference<>();
+    private final List<String> asked = new CopyOnWriteArrayList<>();
+    private ClipboardMonitor monitor;
+
+    @After
+    public void tearDown() {
+        monitor.shutdown();
+    }
+
+    @Test
+    public void answersNewClipboardTextAheadOfTheHotkey() throws Exception {
+        monitor = new ClipboardMonitor(clipboard::get, prompt -> {
+            asked.add(prompt);
+            return new ClipboardMonitor.Answer("answer to " + prompt, MODEL);
+        }, 1_000, 0, 10, 10_000);
+        monitor.setActive(true);
+
+        clipboard.set("What is the capital of Austria?");
+        monitor.poll();
+        monitor.poll(); // Already prefetched.
+
+        assertEquals(new ClipboardMonitor.Answer("answer to What is the capital of Austria?", MODEL),
+                monitor.answer("What is the capital of Austria?"));
+        assertEquals(List.of("What is the capital of Austria?"), asked);
+
+        // Our own answer on the clipboard is not a question.
+        monitor.ignore("Vienna is the capital of Austria.");
+        clipboard.set("Vienna is the capital of Austria.");
+        monitor.poll();
+        assertEquals(1, asked.size());
+
+        ClipboardMonitor.MonitorStats stats = monitor.getStats();
+        assertEquals(1, stats.speculated());
+        assertEquals(1, stats.hits() + stats.inFlightHits());
+        assertEquals(0, stats.misses());
+    }
+
+    @Test
+    public void answersTextCopiedWhileInactiveOnceActivated() {
+        AtomicInteger reads = new AtomicInteger();
+        monitor = new ClipboardMonitor(() -> {
+            reads.incrementAndGet();
+            return clipboard.get();
+        }, prompt -> {
+            asked.add(prompt);
+            return new ClipboardMonitor.Answer("answer", MODEL);
+        }, 1_000, 0, 10, 10_000);
+
+        clipboard.set("Copied before Synapse was activated");
+        monitor.poll();
+        assertEquals(0, reads.get());
+
+        monitor.setActive(true);
+        monitor.poll();
+        assertEquals("answer", monitor.answer("Copied before Synapse was activated").response());
+        assertEquals(List.of("Copied before Synapse was activated"), asked);
+    }
+
+    @Test
+    public void cancelsOutdatedPrefetchesAndKeepsToTheCap() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        monitor = new ClipboardMonitor(clipboard::get, prompt -> {
+            asked.add(prompt);
+            if (prompt.startsWith("first")) {
+                started.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+            return new ClipboardMonitor.Answer("answer", MODEL);
+        }, 1_000, 0, 1, 10_000);
+        monitor.setActive(true);
+
+        clipboard.set("first question, a long one");
+        monitor.poll();
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        clipboard.set("second question, over the cap");
+        monitor.poll();
+
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        assertEquals(1, monitor.getStats().cancelled());
+        assertEquals(1, monitor.getStats().capped());
+
+        // The hotkey still gets an answer.
+        assertEquals("answer", monitor.answer("second question, over the cap").response());
+        assertEquals(1, monitor.getStats().misses());
+    }
+}
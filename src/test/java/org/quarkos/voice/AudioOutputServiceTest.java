@@ -0,0 +1,140 @@
+package org.quarkos.voice;
+
+import org.junit.After;
+import org.junit.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioOutputServiceTest {
+
+    // 20 samples per 20ms frame.
+    private static final AudioFormat FORMAT = new AudioFormat(1_000f, 16, 1, true, false);
+
+    private final CapturingSink sink = new CapturingSink();
+    private final AudioOutputService output = new AudioOutputService(FORMAT, sink, 0.3f);
+
+    @After
+    public void tearDown() {
+        output.shutdown();
+    }
+
+    @Test
+    public void alertsTakeOverFromSpeechAndEarconsAreDucked() throws Exception {
+        AudioOutputService.Playback speech = output.open(AudioOutputService.Priority.SPEECH);
+        output.submit(samples(20, 1000), AudioOutputService.Priority.EARCON).completion().get(1, TimeUnit.SECONDS);
+        speech.write(samples(20, 1000), 0, 40);
+        awaitOutput(40);
+
+        output.submit(samples(20, 5000), AudioOutputService.Priority.ALERT).completion().get(1, TimeUnit.SECONDS);
+        speech.write(samples(20, 2000), 0, 40);
+        speech.finish();
+        speech.completion().get(1, TimeUnit.SECONDS);
+
+        short[] played = sink.samples();
+        assertEquals(80, played.length);
+        assertEquals(300, played[0]); // The earcon, ducked under the speech that is about to start.
+        assertEquals(1000, played[20]);
+        assertEquals(5000, played[40]);
+        assertEquals(2000, played[60]);
+    }
+
+    @Test
+    public void speechKeepsPlayingUntilTheAlertHasAudio() throws Exception {
+        AudioOutputService.Playback speech = output.open(AudioOutputService.Priority.SPEECH);
+        speech.write(samples(20, 1000), 0, 40);
+        awaitOutput(20);
+
+        AudioOutputService.Playback alert = output.open(AudioOutputService.Priority.ALERT); // Still synthesizing.
+        speech.write(samples(20, 2000), 0, 40);
+        awaitOutput(40);
+
+        alert.write(samples(20, 5000), 0, 40);
+        alert.finish();
+        alert.completion().get(1, TimeUnit.SECONDS);
+        speech.write(samples(20, 3000), 0, 40);
+        speech.finish();
+        speech.completion().get(1, TimeUnit.SECONDS);
+
+        short[] played = sink.samples();
+        assertEquals(80, played.length);
+        assertEquals(2000, played[20]);
+        assertEquals(5000, played[40]);
+        assertEquals(3000, played[60]);
+    }
+
+    @Test
+    public void interruptDropsPlayingAndQueuedSpeech() throws Exception {
+        AudioOutputService.Playback first = output.open(AudioOutputService.Priority.SPEECH);
+        AudioOutputService.Playback second = output.submit(samples(20, 1000), AudioOutputService.Priority.SPEECH);
+        first.write(samples(20, 1000), 0, 40);
+        awaitOutput(20);
+
+        output.interrupt();
+        first.completion().get(1, TimeUnit.SECONDS);
+        second.completion().get(1, TimeUnit.SECONDS);
+
+        assertTrue(first.isCancelled());
+        assertEquals(2, output.getStats().interrupted());
+        assertEquals(20, sink.samples().length);
+        assertFalse(output.isBusy());
+    }
+
+    @Test
+    public void reportsTheLevelOfRecentOutput() throws Exception {
+        assertEquals(0, output.getOutputLevel(1_000));
+
+        output.submit(samples(40, 3000), AudioOutputService.Priority.SPEECH).completion().get(1, TimeUnit.SECONDS);
+
+        assertEquals(3000, output.getOutputLevel(1_000));
+    }
+
+    private void awaitOutput(int samples) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1_000;
+        while (sink.samples().length < samples && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(samples, sink.samples().length);
+    }
+
+    private static byte[] samples(int count, int value) {
+        byte[] pcm = new byte[count * 2];
+        for (int i = 0; i < count; i++) {
+            pcm[2 * i] = (byte) value;
+            pcm[2 * i + 1] = (byte) (value >> 8);
+        }
+        return pcm;
+    }
+
+    private static final class CapturingSink implements AudioOutputService.Sink {
+
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(byte[] pcm, int offset, int length) {
+            written.write(pcm, offset, length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        synchronized short[] samples() {
+            byte[] bytes = written.toByteArray();
+            short[] samples = new short[bytes.length / 2];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (short) ((bytes[2 * i] & 0xFF) | (bytes[2 * i + 1] << 8));
+            }
+            return samples;
+        }
+    }
+}
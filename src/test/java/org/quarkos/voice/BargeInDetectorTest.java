@@ -0,0 +1,42 @@
+package org.quarkos.voice;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BargeInDetectorTest {
+
+    @Test
+    public void ignoresTheEchoOfOurOwnSpeech() {
+        BargeInDetector detector = new BargeInDetector(1200, 2.0, 3);
+        // The speakers reach the microphone at about a fifth of their level.
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(detector.isBargeIn(i % 2 == 0 ? 1600 : 1400, 8000));
+        }
+        assertTrue(detector.getCoupling() < 0.25);
+    }
+
+    @Test
+    public void detectsSpeechOverTheEchoAfterAFewChunks() {
+        BargeInDetector detector = new BargeInDetector(1200, 2.0, 3);
+        for (int i = 0; i < 1000; i++) {
+            detector.isBargeIn(1500, 8000);
+        }
+
+        assertFalse(detector.isBargeIn(5000, 8000));
+        assertFalse(detector.isBargeIn(5000, 8000));
+        assertFalse(detector.isBargeIn(1500, 8000)); // A single loud syllable is not enough.
+        assertFalse(detector.isBargeIn(5000, 8000));
+        assertFalse(detector.isBargeIn(5000, 8000));
+        assertTrue(detector.isBargeIn(5000, 8000));
+    }
+
+    @Test
+    public void needsTheRaisedThresholdWhenNothingIsAudible() {
+        BargeInDetector detector = new BargeInDetector(1200, 2.0, 1);
+
+        assertFalse(detector.isBargeIn(900, 0));
+        assertTrue(detector.isBargeIn(1300, 0));
+    }
+}
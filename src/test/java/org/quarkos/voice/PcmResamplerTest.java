@@ -0,0 +1,31 @@
+package org.quarkos.voice;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PcmResamplerTest {
+
+    @Test
+    public void resamplesTheSameHoweverTheInputIsSplit() {
+        byte[] input = new byte[2 * 441];
+        for (int i = 0; i < 441; i++) {
+            short sample = (short) (i * 50);
+            input[2 * i] = (byte) sample;
+            input[2 * i + 1] = (byte) (sample >> 8);
+        }
+        byte[] whole = new PcmResampler(22_050, 24_000).process(input, 0, input.length);
+
+        PcmResampler resampler = new PcmResampler(22_050, 24_000);
+        ByteArrayOutputStream split = new ByteArrayOutputStream();
+        for (int offset = 0; offset < input.length; offset += 37) {
+            split.writeBytes(resampler.process(input, offset, Math.min(37, input.length - offset)));
+        }
+
+        assertEquals(479, whole.length / 2);
+        assertArrayEquals(whole, split.toByteArray());
+    }
+}
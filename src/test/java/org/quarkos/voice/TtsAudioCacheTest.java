@@ -0,0 +1,48 @@
+package org.quarkos.voice;
+
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TtsAudioCacheTest {
+
+    @Test
+    public void evictsTheLeastRecentlySpokenAudio() {
+        TtsAudioCache cache = new TtsAudioCache(null, 25, 0);
+        cache.put("pausing", new byte[10]);
+        cache.put("resuming", new byte[10]);
+        cache.get("pausing");
+        cache.put("skipping", new byte[10]);
+
+        assertTrue(cache.contains("pausing"));
+        assertFalse(cache.contains("resuming"));
+        assertTrue(cache.contains("skipping"));
+    }
+
+    @Test
+    public void keepsAudioOnDiskAcrossInstances() throws Exception {
+        Path directory = Files.createTempDirectory("tts");
+        new TtsAudioCache(directory, 1024, 25).put("timer", new byte[]{1, 2, 3});
+
+        TtsAudioCache restarted = new TtsAudioCache(directory, 1024, 25);
+        assertArrayEquals(new byte[]{1, 2, 3}, restarted.get("timer").orElseThrow());
+        assertArrayEquals(new byte[]{1, 2, 3}, restarted.get("timer").orElseThrow());
+        assertEquals(1, restarted.getStats().diskHits());
+        assertEquals(1, restarted.getStats().memoryHits());
+
+        // Over the disk limit, the file that was used least recently goes.
+        try (Stream<Path> files = Files.list(directory)) {
+            Files.setLastModifiedTime(files.findFirst().orElseThrow(), FileTime.fromMillis(0));
+        }
+        restarted.put("long sentence", new byte[24]);
+        assertFalse(new TtsAudioCache(directory, 1024, 25).get("timer").isPresent());
+    }
+}
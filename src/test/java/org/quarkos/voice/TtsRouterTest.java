@@ -0,0 +1,111 @@
+package org.quarkos.voice;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TtsRouterTest {
+
+    @Test
+    public void sendsShortTextsToTheLocalEngineAndCachesThem() {
+        FakeEngine cloud = new FakeEngine("cloud", (byte) 1);
+        FakeEngine local = new FakeEngine("local", (byte) 2);
+        TtsRouter router = new TtsRouter(cloud, local, new TtsAudioCache(null, 1024, 0), 20);
+
+        assertArrayEquals(new byte[]{2, 2}, speak(router, "Pausing music."));
+        assertArrayEquals(new byte[]{1, 1}, speak(router, "Bohemian Rhapsody is a song by Queen from 1975."));
+        assertArrayEquals(new byte[]{2, 2}, speak(router, "Pausing music."));
+
+        assertEquals(List.of("Pausing music."), local.spoken);
+        assertEquals(1, router.getStats().get("local").cacheHits());
+        assertEquals(1, router.getStats().get("local").firstAudio().count());
+        assertEquals(1, router.getStats().get("cloud").utterances());
+    }
+
+    @Test
+    public void fallsBackToTheOtherEngineOnlyBeforeAnyAudio() {
+        FakeEngine cloud = new FakeEngine("cloud", (byte) 1);
+        FakeEngine local = new FakeEngine("local", (byte) 2);
+        local.failBeforeAudio = true;
+        TtsRouter router = new TtsRouter(cloud, local, new TtsAudioCache(null, 1024, 0), 20);
+
+        assertArrayEquals(new byte[]{1, 1}, speak(router, "Pausing music."));
+        assertEquals(1, router.getStats().get("local").failures());
+
+        local.failBeforeAudio = false;
+        local.failAfterAudio = true;
+        ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        assertFalse(router.speak("Resuming music.", audio::write, () -> false));
+        assertArrayEquals(new byte[]{2}, audio.toByteArray());
+        assertEquals(List.of("Pausing music."), cloud.spoken);
+    }
+
+    @Test
+    public void usesTheCloudEngineWhenTheLocalOneIsNotInstalled() {
+        FakeEngine cloud = new FakeEngine("cloud", (byte) 1);
+        FakeEngine local = new FakeEngine("local", (byte) 2);
+        local.available = false;
+        TtsRouter router = new TtsRouter(cloud, local, new TtsAudioCache(null, 1024, 0), 20);
+
+        assertArrayEquals(new byte[]{1, 1}, speak(router, "Pausing music."));
+        assertEquals(1, router.presynthesize(List.of("Pausing music.", "Resuming music.")));
+        assertTrue(local.spoken.isEmpty());
+    }
+
+    private static byte[] speak(TtsRouter router, String text) {
+        ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        assertTrue(router.speak(text, audio::write, () -> false));
+        return audio.toByteArray();
+    }
+
+    private static class FakeEngine implements TtsEngine {
+        final String name;
+        final byte sample;
+        final List<String> spoken = new ArrayList<>();
+        boolean available = true;
+        boolean failBeforeAudio;
+        boolean failAfterAudio;
+
+        FakeEngine(String name, byte sample) {
+            this.name = name;
+            this.sample = sample;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String voiceId() {
+            return name;
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public boolean synthesize(String text, AudioSink sink, BooleanSupplier cancelled) {
+            if (failBeforeAudio) {
+                return false;
+            }
+            sink.write(new byte[]{sample}, 0, 1);
+            if (failAfterAudio) {
+                return false;
+            }
+            sink.write(new byte[]{sample}, 0, 1);
+            spoken.add(text);
+            return true;
+        }
+    }
+}
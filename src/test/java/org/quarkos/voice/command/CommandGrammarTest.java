@@ -0,0 +1,72 @@
+package org.quarkos.voice.command;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class CommandGrammarTest {
+
+    private final CommandGrammar grammar = CommandGrammar.load(List.of("en", "de"));
+
+    @Test
+    public void matchesControlsInBothLanguages() {
+        assertIntent("pause", "en", "Pause the music, please.");
+        assertIntent("skip", "en", "skip to the next track");
+        assertIntent("skip", "de", "Bitte nächster Titel");
+        assertIntent("previous", "de", "vorheriges Stück");
+        assertIntent("resume", "de", "Musik fortsetzen");
+    }
+
+    @Test
+    public void exactPhrasesBeatSlots() {
+        assertIntent("resume", "en", "play the music");
+        assertIntent("previous", "en", "play the last song again");
+        assertIntent("more", "en", "Play the next one by them, please");
+        assertIntent("more", "de", "Spiel noch was von denen");
+    }
+
+    @Test
+    public void fillsSlots() {
+        GrammarMatch match = grammar.match("Spiel mal Stück vom Glück von Tim Bendzko").orElseThrow();
+        assertEquals("play", match.intent());
+        assertEquals("stück vom glück", match.slot("track"));
+        assertEquals("tim bendzko", match.slot("artist"));
+
+        GrammarMatch withoutArtist = grammar.match("listen to Hotel California").orElseThrow();
+        assertEquals("hotel california", withoutArtist.slot("track"));
+        assertNull(withoutArtist.slot("artist"));
+    }
+
+    @Test
+    public void requiresTheWholeCommandToMatch() {
+        assertFalse(grammar.match("pause and set a timer").isPresent());
+        assertFalse(grammar.match("please").isPresent());
+    }
+
+    @Test
+    public void skipsOnlyWakeWordsAndLeadInsBeforeTheCommand() {
+        assertIntent("pause", "en", "Hey Synapse, please pause");
+        assertIntent("play", "en", "I want to play Hello by Adele");
+        assertIntent("previous", "de", "Synapse, zurück");
+    }
+
+    @Test
+    public void doesNotMatchCommandsInsideOtherSentences() {
+        assertFalse(grammar.match("What's the next song?").isPresent());
+        assertFalse(grammar.match("Why did you pause?").isPresent());
+        assertFalse(grammar.match("How do I go back?").isPresent());
+        assertFalse(grammar.match("Who sings the song you play?").isPresent());
+        assertFalse(grammar.match("Don't pause").isPresent());
+        assertFalse(grammar.match("Set a timer for ten minutes and then go back").isPresent());
+    }
+
+    private void assertIntent(String intent, String language, String text) {
+        GrammarMatch match = grammar.match(text).orElseThrow(() -> new AssertionError("No match for: " + text));
+        assertEquals(intent, match.intent());
+        assertEquals(language, match.language());
+    }
+}
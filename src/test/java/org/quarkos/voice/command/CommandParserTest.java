@@ -0,0 +1,59 @@
+package org.quarkos.voice.command;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class CommandParserTest {
+
+    private final CommandParser parser = new CommandParser(null);
+
+    @Test
+    public void splitsTrackAndArtist() {
+        CommandParser.PlayRequest request = parser.extractPlayRequest("Play Bohemian Rhapsody by Queen.").orElseThrow();
+        assertEquals("bohemian rhapsody", request.trackName());
+        assertEquals("queen", request.artistName());
+    }
+
+    @Test
+    public void removesJunkWords() {
+        CommandParser.PlayRequest request = parser.extractPlayRequest("Can you play the song Numb by the artist Linkin Park?").orElseThrow();
+        assertEquals("numb", request.trackName());
+        assertEquals("linkin park", request.artistName());
+    }
+
+    @Test
+    public void separatorMustBeAWholeWord() {
+        CommandParser.PlayRequest request = parser.extractPlayRequest("play maybe tomorrow").orElseThrow();
+        assertEquals("maybe tomorrow", request.trackName());
+        assertNull(request.artistName());
+    }
+
+    @Test
+    public void findsTheCommandAfterOtherWords() {
+        CommandParser.PlayRequest request = parser.extractPlayRequest("hey synapse play Bohemian Rhapsody by Queen").orElseThrow();
+        assertEquals("bohemian rhapsody", request.trackName());
+        assertEquals("queen", request.artistName());
+
+        request = parser.extractPlayRequest("I want to play Hello by Adele").orElseThrow();
+        assertEquals("hello", request.trackName());
+        assertEquals("adele", request.artistName());
+    }
+
+    @Test
+    public void handlesTranscriptionOutput() {
+        String transcript = "Detecting language using up to the first 30 seconds.\nDetected language: German\n"
+                + "[00:00.000 --> 00:02.000]\nSpiele Atemlos von Helene Fischer";
+        CommandParser.PlayRequest request = parser.extractPlayRequest(transcript).orElseThrow();
+        assertEquals("atemlos", request.trackName());
+        assertEquals("helene fischer", request.artistName());
+    }
+
+    @Test
+    public void ignoresNonPlayCommands() {
+        assertFalse(parser.extractPlayRequest("What's the weather like?").isPresent());
+        assertFalse(parser.extractPlayRequest("play the song").isPresent());
+    }
+}
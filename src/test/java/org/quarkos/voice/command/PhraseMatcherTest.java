@@ -0,0 +1,22 @@
+package org.quarkos.voice.command;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PhraseMatcherTest {
+
+    @Test
+    public void respectsWordBoundaries() {
+        PhraseMatcher matcher = PhraseMatcher.builder()
+                .add(List.of("by", "play", "please play"), 0)
+                .build();
+
+        List<PhraseMatcher.Match> matches = matcher.findAll("please play maybe by me");
+
+        assertEquals(List.of("please play", "play", "by"), matches.stream().map(PhraseMatcher.Match::phrase).toList());
+        assertEquals(18, matches.get(2).start());
+    }
+}